@@ -1,6 +1,7 @@
 package com.buyone.mediaservice.config;
 
 import java.net.URI;
+import java.time.Duration;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.context.annotation.Bean;
@@ -8,8 +9,12 @@ import org.springframework.context.annotation.Configuration;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
 import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.http.nio.netty.NettyNioAsyncHttpClient;
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.S3Configuration;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
 import com.buyone.mediaservice.config.CloudflareR2Properties;
 
 
@@ -33,6 +38,54 @@ public class CloudflareR2Config {
                 .credentialsProvider(StaticCredentialsProvider.create(credentials))
                 .region(Region.of(props.getRegion())) // "auto" for R2 [web:12][web:32]
                 .endpointOverride(URI.create(props.getEndpoint())) // https://<account>.r2.cloudflarestorage.com [web:6][web:32]
+                .serviceConfiguration(s3Configuration())
+                .build();
+    }
+    
+    // Non-blocking client for multi-object work: calls return futures right away and share one
+    // bounded connection pool, instead of holding a request thread per WAN round-trip
+    @Bean
+    public S3AsyncClient r2S3AsyncClient() {
+        AwsBasicCredentials credentials = AwsBasicCredentials.create(
+                props.getAccessKeyId(),
+                props.getSecretAccessKey()
+        );
+        
+        return S3AsyncClient.builder()
+                .credentialsProvider(StaticCredentialsProvider.create(credentials))
+                .region(Region.of(props.getRegion()))
+                .endpointOverride(URI.create(props.getEndpoint()))
+                .serviceConfiguration(s3Configuration())
+                .httpClientBuilder(NettyNioAsyncHttpClient.builder()
+                        .maxConcurrency(props.getMaxConcurrency())
+                        .maxPendingConnectionAcquires(props.getMaxPendingConnectionAcquires())
+                        .connectionAcquisitionTimeout(Duration.ofMillis(props.getConnectionAcquisitionTimeoutMs()))
+                        .connectionTimeout(Duration.ofMillis(props.getConnectionTimeoutMs()))
+                        .connectionMaxIdleTime(Duration.ofMillis(props.getConnectionMaxIdleMs()))
+                        .useIdleConnectionReaper(true))
+                .overrideConfiguration(config -> config.apiCallTimeout(Duration.ofMillis(props.getApiCallTimeoutMs())))
+                .build();
+    }
+    
+    // Signs direct-to-bucket upload URLs locally, no request to R2
+    @Bean
+    public S3Presigner r2S3Presigner() {
+        AwsBasicCredentials credentials = AwsBasicCredentials.create(
+                props.getAccessKeyId(),
+                props.getSecretAccessKey()
+        );
+        
+        return S3Presigner.builder()
+                .credentialsProvider(StaticCredentialsProvider.create(credentials))
+                .region(Region.of(props.getRegion()))
+                .endpointOverride(URI.create(props.getEndpoint()))
+                .serviceConfiguration(s3Configuration())
+                .build();
+    }
+    
+    private S3Configuration s3Configuration() {
+        return S3Configuration.builder()
+                .pathStyleAccessEnabled(props.isPathStyleAccess())
                 .build();
     }
 }
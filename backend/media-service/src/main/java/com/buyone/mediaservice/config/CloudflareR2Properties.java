@@ -14,4 +14,19 @@ public class CloudflareR2Properties {
     private String region;
     private String endpoint;
     private String bucket;
+    
+    // Objects at or above this size go through S3 multipart upload (R2/S3 minimum part is 5MB)
+    private long multipartThreshold = 16L * 1024 * 1024;
+    private int partSize = 8 * 1024 * 1024;
+    
+    // Path-style URLs (endpoint/bucket/key); R2 takes both, local S3 stand-ins usually need this
+    private boolean pathStyleAccess = false;
+    
+    // Async client: one Netty connection pool shared by every parallel storage call
+    private int maxConcurrency = 128;                 // open connections to R2
+    private int maxPendingConnectionAcquires = 10_000; // calls waiting for a connection, then failed fast
+    private long connectionAcquisitionTimeoutMs = 10_000;
+    private long connectionTimeoutMs = 2_000;
+    private long connectionMaxIdleMs = 60_000;
+    private long apiCallTimeoutMs = 30_000;           // whole call, retries included
 }
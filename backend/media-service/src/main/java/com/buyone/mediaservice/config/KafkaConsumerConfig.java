@@ -0,0 +1,96 @@
+package com.buyone.mediaservice.config;
+
+import com.buyone.productservice.event.ProductDeletedEvent;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.ExponentialBackOffWithMaxRetries;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Listener container for product.deleted.
+ *
+ * - Batch mode, one consumer thread per partition of the topic (3).
+ * - Offsets are committed only after the listener acknowledges a fully cleaned-up batch.
+ * - A failing batch is retried in place with exponential backoff, then its records go to the DLT.
+ * - Values go through an ErrorHandlingDeserializer (JsonDeserializer delegate, see application.yml),
+ *   so a record that cannot be deserialized does not fail every poll of its partition: the
+ *   listener reports it by index and it goes to the DLT straight away, with its original bytes
+ *   (DeserializationException is not retryable). The DLT template writes those byte[] values
+ *   as they are; only events that were read but could not be cleaned up go out as JSON.
+ *
+ * Per-partition lag comes from the consumer's own metrics, which Spring Boot binds to Micrometer
+ * for its auto-configured consumer factory: kafka.consumer.fetch.manager.records.lag{topic,partition}.
+ */
+@Configuration
+public class KafkaConsumerConfig {
+    
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<String, ProductDeletedEvent> productDeletedListenerFactory(
+            ConsumerFactory<String, ProductDeletedEvent> consumerFactory,
+            DefaultErrorHandler productDeletedErrorHandler,
+            @Value("${app.kafka.product-deleted.concurrency:3}") int concurrency) {
+        ConcurrentKafkaListenerContainerFactory<String, ProductDeletedEvent> factory =
+                new ConcurrentKafkaListenerContainerFactory<>();
+        factory.setConsumerFactory(consumerFactory);
+        factory.setBatchListener(true);
+        factory.setConcurrency(concurrency);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.MANUAL);
+        factory.setCommonErrorHandler(productDeletedErrorHandler);
+        return factory;
+    }
+    
+    // the only producer of this service, so it stands in for Boot's template (JsonSerializer would
+    // turn the raw bytes of an undeserializable record into a base64 JSON string)
+    @Bean
+    public KafkaTemplate<Object, Object> deadLetterKafkaTemplate(KafkaProperties kafkaProperties) {
+        return new KafkaTemplate<>(deadLetterProducerFactory(kafkaProperties.buildProducerProperties()));
+    }
+    
+    // key serializer stays the configured one (null here), values are picked by type in order
+    static DefaultKafkaProducerFactory<Object, Object> deadLetterProducerFactory(Map<String, Object> producerProperties) {
+        Map<Class<?>, Serializer<?>> byType = new LinkedHashMap<>();
+        byType.put(byte[].class, new ByteArraySerializer());
+        byType.put(Object.class, new JsonSerializer<>());
+        return new DefaultKafkaProducerFactory<>(producerProperties, null, new DelegatingByTypeSerializer(byType, true));
+    }
+    
+    @Bean
+    public DefaultErrorHandler productDeletedErrorHandler(
+            KafkaTemplate<Object, Object> deadLetterKafkaTemplate,
+            @Value("${app.kafka.topic.product-deleted-dlt}") String deadLetterTopic,
+            @Value("${app.kafka.product-deleted.retry.max-attempts:5}") int maxRetries,
+            @Value("${app.kafka.product-deleted.retry.initial-interval-ms:1000}") long initialIntervalMs,
+            @Value("${app.kafka.product-deleted.retry.max-interval-ms:10000}") long maxIntervalMs) {
+        DeadLetterPublishingRecoverer recoverer = deadLetterRecoverer(deadLetterKafkaTemplate, deadLetterTopic);
+        
+        // retries block the partition, keep the whole sequence well under max.poll.interval.ms
+        ExponentialBackOffWithMaxRetries backOff = new ExponentialBackOffWithMaxRetries(maxRetries);
+        backOff.setInitialInterval(initialIntervalMs);
+        backOff.setMultiplier(2.0);
+        backOff.setMaxInterval(maxIntervalMs);
+        return new DefaultErrorHandler(recoverer, backOff);
+    }
+    
+    // partition -1: let the producer pick, the DLT does not need the source's partition count
+    static DeadLetterPublishingRecoverer deadLetterRecoverer(KafkaTemplate<Object, Object> kafkaTemplate,
+                                                             String deadLetterTopic) {
+        return new DeadLetterPublishingRecoverer(kafkaTemplate,
+                (record, ex) -> new TopicPartition(deadLetterTopic, -1));
+    }
+}
@@ -0,0 +1,25 @@
+package com.buyone.mediaservice.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+
+// Calls to product-service, resolved through Eureka ("http://product-service/...")
+@Configuration
+public class ProductServiceClientConfig {
+    
+    @Bean
+    @LoadBalanced
+    public RestTemplate productServiceRestTemplate(RestTemplateBuilder builder,
+                                                  @Value("${app.product-service.timeout-ms:2000}") long timeoutMs) {
+        return builder
+                .setConnectTimeout(Duration.ofMillis(timeoutMs))
+                .setReadTimeout(Duration.ofMillis(timeoutMs))
+                .build();
+    }
+}
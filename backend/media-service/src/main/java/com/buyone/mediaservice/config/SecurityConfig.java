@@ -24,6 +24,8 @@ public class SecurityConfig {
                         // Public endpoints (no auth needed)
                         .requestMatchers(HttpMethod.GET, "/media/images/**").permitAll()
                         .requestMatchers(HttpMethod.GET, "/media/**").permitAll()
+                        // read-only batch listing, POST only for the size of its body
+                        .requestMatchers(HttpMethod.POST, "/media/images/products:batch").permitAll()
                         // Actuator health for startup script
                         .requestMatchers("/actuator/health").permitAll()
 
@@ -1,23 +1,43 @@
 package com.buyone.mediaservice.controller;
 
 import com.buyone.mediaservice.model.Media;
+import com.buyone.mediaservice.request.MediaBatchUploadRequest;
 import com.buyone.mediaservice.request.MediaUploadRequest;
+import com.buyone.mediaservice.request.PresignedUploadRequest;
+import com.buyone.mediaservice.request.ProductMediaBatchRequest;
+import com.buyone.mediaservice.request.UploadSessionRequest;
 import com.buyone.mediaservice.response.MediaResponse;
 import com.buyone.mediaservice.response.MediaListResponse;
 import com.buyone.mediaservice.response.DeleteMediaResponse;
 import com.buyone.mediaservice.response.ApiResponse;
+import com.buyone.mediaservice.response.BatchUploadResponse;
+import com.buyone.mediaservice.response.PresignedUploadResponse;
+import com.buyone.mediaservice.response.UploadSessionResponse;
+import com.buyone.mediaservice.exception.MediaNotFoundException;
+import com.buyone.mediaservice.exception.RangeNotSatisfiableException;
+import com.buyone.mediaservice.service.ImageDiskCache;
+import com.buyone.mediaservice.service.ImageResizer;
+import com.buyone.mediaservice.service.ImageVariantGenerator;
 import com.buyone.mediaservice.service.MediaService;
+import com.buyone.mediaservice.service.RangeRequests;
 import com.buyone.mediaservice.service.StorageService;
+import com.buyone.mediaservice.service.StoredObject;
+import com.buyone.mediaservice.service.UploadSessionService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import jakarta.validation.Valid;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.http.ResponseEntity;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.InputStream;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/media/images")
@@ -26,6 +46,9 @@ public class MediaController {
     
     private final MediaService mediaService;
     private final StorageService storageService;
+    private final ImageDiskCache imageDiskCache;
+    private final ImageResizer imageResizer;
+    private final UploadSessionService uploadSessionService;
     // use @Value or service constant and put into yml
     private static final int MAX_IMAGES_PER_PRODUCT = 5;
     
@@ -40,6 +63,22 @@ public class MediaController {
         return ResponseEntity.ok(response);
     }
     
+    // Galleries of many products at once (a listing page), instead of one request per product.
+    // POST only because the id list can be long; it reads, and is as public as the GET above.
+    @PostMapping(value = "/products:batch", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ApiResponse<Map<String, MediaListResponse>>> listMediaForProducts(
+            @Valid @RequestBody ProductMediaBatchRequest request
+    ) {
+        Map<String, MediaListResponse> payload = new LinkedHashMap<>();
+        mediaService.mediaListForProducts(request.getProductIds()).forEach((productId, responses) ->
+                payload.put(productId, new MediaListResponse(responses, responses.size(), MAX_IMAGES_PER_PRODUCT)));
+        ApiResponse<Map<String, MediaListResponse>> response = ApiResponse.<Map<String, MediaListResponse>>builder()
+                .success(true)
+                .data(payload)
+                .build();
+        return ResponseEntity.ok(response);
+    }
+    
     //    Right now, your getMedia is perfect for APIs (Angular) to fetch metadata,
     //    but to actually display the avatar image in <img>,
     //    you’ll eventually need an endpoint that returns image/jpeg bytes.
@@ -57,15 +96,134 @@ public class MediaController {
         return ResponseEntity.ok(response);
     }
     
-    // raw image api
+    // raw image api: streamed from the local disk cache or from storage, never held in memory as a whole
     @GetMapping("/{mediaId}/file")
-    public ResponseEntity<Resource> getImageFile(@PathVariable String mediaId) {
-        Media media = mediaService.findMediaEntity(mediaId); // or reuse getMedia + repo
-        Resource resource = storageService.loadAsResource(media.getImagePath());
+    public ResponseEntity<StreamingResponseBody> getImageFile(
+            @PathVariable String mediaId,
+            @RequestParam(value = "size", required = false) Integer size, // longest side in px, picks the closest variant
+            @RequestParam(value = "w", required = false) Integer width,  // exact on-demand size from the allow-list
+            @RequestParam(value = "h", required = false) Integer height,
+            @RequestParam(value = "fit", required = false) String fit,   // contain (default) or cover
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        Media media = mediaService.findMediaEntity(mediaId);
+        if (width != null || height != null) {
+            return serveResized(imageResizer.resize(media, width, height, fit), ifNoneMatch);
+        }
+        String imagePath = ImageVariantGenerator.imagePathFor(media, size);
+        // the original's type was sniffed on upload; variants are written with their real type
+        String contentType = imagePath.equals(media.getImagePath()) ? media.getContentType() : null;
+        return serve(imagePath, contentType, range, ifNoneMatch);
+    }
+    
+    // Objects by storage key: the public base URL for backends without a public bucket
+    // (local-storage profile), e.g. /media/images/objects/media/<id>.png
+    @GetMapping("/objects/{*key}")
+    public ResponseEntity<StreamingResponseBody> getObject(
+            @PathVariable String key,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        String imagePath = key.startsWith("/") ? key.substring(1) : key;
+        if (!imagePath.startsWith("media/") || imagePath.startsWith(StorageService.STAGING_PREFIX)) {
+            throw new MediaNotFoundException(imagePath);
+        }
+        return serve(imagePath, null, range, ifNoneMatch);
+    }
+    
+    // contentType overrides what storage reports when the caller knows better (null: use storage's)
+    private ResponseEntity<StreamingResponseBody> serve(String imagePath, String contentType,
+                                                        String range, String ifNoneMatch) {
+        Optional<ImageDiskCache.Hit> hit = imageDiskCache.open(imagePath);
+        if (hit.isPresent()) {
+            return serveCached(hit.get(), contentType, range, ifNoneMatch);
+        }
+        
+        StoredObject object = storageService.load(imagePath, range, ifNoneMatch);
+        if (object.notModified()) {
+            return notModified(object.eTag());
+        }
         
+        ResponseEntity.BodyBuilder builder = fileResponse(
+                object.partial() ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK,
+                contentType != null ? contentType : object.contentType(), object.contentLength(), object.eTag());
+        if (object.partial()) {
+            builder.header(HttpHeaders.CONTENT_RANGE, object.contentRange());
+        }
+        if (!object.partial() && imageDiskCache.accepts(object.contentLength())) {
+            // full read on a miss: fill the disk cache while the client receives the bytes
+            return builder.body(out -> imageDiskCache.fill(imagePath, object, out));
+        }
+        // transferTo copies remote streams through a fixed 8 KB buffer, so memory per download
+        // stays constant; local files override it with FileChannel.transferTo
+        return builder.body(out -> {
+            try (InputStream in = object.content()) {
+                in.transferTo(out);
+            }
+        });
+    }
+    
+    // On-demand sizes are small and already in memory: no ranges, sent in one write
+    private static ResponseEntity<StreamingResponseBody> serveResized(ImageResizer.Resized resized, String ifNoneMatch) {
+        if (RangeRequests.eTagMatches(ifNoneMatch, resized.eTag())) {
+            return notModified(resized.eTag());
+        }
         return ResponseEntity.ok()
-                .contentType(MediaType.IMAGE_JPEG) // or detect from file/metadata
-                .body(resource);
+                .contentType(MediaType.parseMediaType(resized.contentType()))
+                .contentLength(resized.content().length)
+                .eTag(resized.eTag())
+                .body(out -> out.write(resized.content()));
+    }
+    
+    private ResponseEntity<StreamingResponseBody> serveCached(ImageDiskCache.Hit hit, String contentType,
+                                                              String range, String ifNoneMatch) {
+        ImageDiskCache.Entry entry = hit.entry();
+        if (RangeRequests.eTagMatches(ifNoneMatch, entry.eTag())) {
+            hit.close();
+            return notModified(entry.eTag());
+        }
+        
+        RangeRequests.Span span;
+        try {
+            span = RangeRequests.resolve(range, entry.size());
+        } catch (RangeNotSatisfiableException e) {
+            hit.close();
+            throw e;
+        }
+        long position = span != null ? span.start() : 0;
+        long count = span != null ? span.length() : entry.size();
+        ResponseEntity.BodyBuilder builder = fileResponse(
+                span != null ? HttpStatus.PARTIAL_CONTENT : HttpStatus.OK,
+                contentType != null ? contentType : entry.contentType(), count, entry.eTag());
+        if (span != null) {
+            builder.header(HttpHeaders.CONTENT_RANGE, span.contentRange());
+        }
+        return builder.body(out -> imageDiskCache.transferTo(hit, position, count, out));
+    }
+    
+    private static ResponseEntity.BodyBuilder fileResponse(HttpStatus status, String contentType,
+                                                           long contentLength, String eTag) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(status)
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .contentType(contentType != null
+                        ? MediaType.parseMediaType(contentType)
+                        : MediaType.APPLICATION_OCTET_STREAM);
+        if (contentLength >= 0) {
+            builder.contentLength(contentLength);
+        }
+        if (eTag != null) {
+            builder.eTag(eTag);
+        }
+        return builder;
+    }
+    
+    private static ResponseEntity<StreamingResponseBody> notModified(String eTag) {
+        ResponseEntity.BodyBuilder builder = ResponseEntity.status(HttpStatus.NOT_MODIFIED);
+        if (eTag != null) {
+            builder.eTag(eTag);
+        }
+        return builder.build();
     }
     
     
@@ -91,6 +249,150 @@ public class MediaController {
         return ResponseEntity.status(201).body(response);
     }
     
+    // Product gallery: several images in one request, one result per file
+    @PostMapping(value = "/batch", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public ResponseEntity<ApiResponse<BatchUploadResponse>> uploadProductImages(
+            @Valid @ModelAttribute MediaBatchUploadRequest request,
+            @RequestHeader("X-USER-ID") String currentUserId,
+            @RequestHeader("X-USER-ROLE") String currentUserRole
+    ) {
+        BatchUploadResponse result = mediaService.uploadProductImages(
+                request.getFiles(),
+                request.getOwnerId(),
+                currentUserId,
+                currentUserRole
+        );
+        // 201 all stored, 207 some stored, 400 none stored
+        HttpStatus status = result.failed() == 0 ? HttpStatus.CREATED
+                : result.uploaded() > 0 ? HttpStatus.MULTI_STATUS
+                : HttpStatus.BAD_REQUEST;
+        ApiResponse<BatchUploadResponse> response = ApiResponse.<BatchUploadResponse>builder()
+                .success(result.uploaded() > 0)
+                .message(result.uploaded() + " of " + request.getFiles().size() + " images uploaded")
+                .data(result)
+                .build();
+        return ResponseEntity.status(status).body(response);
+    }
+    
+    // Direct upload, step 1: the client PUTs the bytes to uploadUrl, not to us
+    @PostMapping(value = "/uploads", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ApiResponse<PresignedUploadResponse>> createUpload(
+            @Valid @RequestBody PresignedUploadRequest request,
+            @RequestHeader("X-USER-ID") String currentUserId,
+            @RequestHeader("X-USER-ROLE") String currentUserRole
+    ) {
+        PresignedUploadResponse upload = mediaService.createUpload(
+                request.getOwnerId(),
+                request.getOwnerType(),
+                request.getContentType(),
+                request.getContentLength(),
+                currentUserId,
+                currentUserRole
+        );
+        ApiResponse<PresignedUploadResponse> response = ApiResponse.<PresignedUploadResponse>builder()
+                .success(true)
+                .message("Upload URL created")
+                .data(upload)
+                .build();
+        return ResponseEntity.status(201).body(response);
+    }
+    
+    // Direct upload, step 2: after the PUT succeeded
+    @PostMapping("/uploads/{mediaId}/complete")
+    public ResponseEntity<ApiResponse<MediaResponse>> completeUpload(
+            @PathVariable String mediaId,
+            @RequestHeader("X-USER-ID") String currentUserId,
+            @RequestHeader("X-USER-ROLE") String currentUserRole
+    ) {
+        MediaResponse media = mediaService.completeUpload(mediaId, currentUserId, currentUserRole);
+        ApiResponse<MediaResponse> response = ApiResponse.<MediaResponse>builder()
+                .success(true)
+                .message("Image uploaded successfully")
+                .data(media)
+                .build();
+        return ResponseEntity.ok(response);
+    }
+    
+    // Resumable upload: create a session, PUT chunks (retry / resume any of them), then complete
+    @PostMapping(value = "/upload-sessions", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<ApiResponse<UploadSessionResponse>> createUploadSession(
+            @Valid @RequestBody UploadSessionRequest request,
+            @RequestHeader("X-USER-ID") String currentUserId,
+            @RequestHeader("X-USER-ROLE") String currentUserRole
+    ) {
+        UploadSessionResponse session = uploadSessionService.create(
+                request.getOwnerId(),
+                request.getOwnerType(),
+                request.getContentType(),
+                request.getFilename(),
+                request.getTotalSize(),
+                currentUserId,
+                currentUserRole
+        );
+        ApiResponse<UploadSessionResponse> response = ApiResponse.<UploadSessionResponse>builder()
+                .success(true)
+                .message("Upload session created")
+                .data(session)
+                .build();
+        return ResponseEntity.status(201).body(response);
+    }
+    
+    @PutMapping(value = "/upload-sessions/{sessionId}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<ApiResponse<UploadSessionResponse>> uploadChunk(
+            @PathVariable String sessionId,
+            @PathVariable int index,
+            InputStream body,
+            @RequestHeader("X-USER-ID") String currentUserId
+    ) {
+        UploadSessionResponse session = uploadSessionService.writeChunk(sessionId, index, body, currentUserId);
+        ApiResponse<UploadSessionResponse> response = ApiResponse.<UploadSessionResponse>builder()
+                .success(true)
+                .message("Chunk " + index + " received")
+                .data(session)
+                .build();
+        return ResponseEntity.ok(response);
+    }
+    
+    // HEAD rather than GET: GET /media/** is public, a session's progress is not
+    @RequestMapping(value = "/upload-sessions/{sessionId}", method = RequestMethod.HEAD)
+    public ResponseEntity<Void> uploadSessionStatus(
+            @PathVariable String sessionId,
+            @RequestHeader("X-USER-ID") String currentUserId
+    ) {
+        UploadSessionResponse session = uploadSessionService.status(sessionId, currentUserId);
+        return ResponseEntity.ok()
+                .header("Upload-Offset", String.valueOf(session.receivedBytes()))
+                .header("Upload-Length", String.valueOf(session.totalSize()))
+                .header("Upload-Next-Chunk", String.valueOf(session.nextChunk()))
+                .header("Upload-Expires", session.expiresAt().toString())
+                .header(HttpHeaders.CACHE_CONTROL, "no-store")
+                .build();
+    }
+    
+    @PostMapping("/upload-sessions/{sessionId}/complete")
+    public ResponseEntity<ApiResponse<MediaResponse>> completeUploadSession(
+            @PathVariable String sessionId,
+            @RequestHeader("X-USER-ID") String currentUserId,
+            @RequestHeader("X-USER-ROLE") String currentUserRole
+    ) {
+        MediaResponse media = uploadSessionService.complete(sessionId, currentUserId, currentUserRole);
+        ApiResponse<MediaResponse> response = ApiResponse.<MediaResponse>builder()
+                .success(true)
+                .message("Image uploaded successfully")
+                .data(media)
+                .build();
+        return ResponseEntity.status(201).body(response);
+    }
+    
+    @DeleteMapping("/upload-sessions/{sessionId}")
+    public ResponseEntity<Void> abortUploadSession(
+            @PathVariable String sessionId,
+            @RequestHeader("X-USER-ID") String currentUserId
+    ) {
+        uploadSessionService.abort(sessionId, currentUserId);
+        return ResponseEntity.noContent().build();
+    }
+    
     @PutMapping(value = "/{mediaId}", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<ApiResponse<MediaResponse>> updateMedia(
             @PathVariable String mediaId,
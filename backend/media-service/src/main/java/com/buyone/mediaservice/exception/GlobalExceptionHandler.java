@@ -1,6 +1,7 @@
 package com.buyone.mediaservice.exception;
 
 import com.buyone.mediaservice.response.ErrorResponse;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.HttpRequestMethodNotSupportedException;
@@ -82,12 +83,34 @@ public class GlobalExceptionHandler {
         return buildError(HttpStatus.METHOD_NOT_ALLOWED, "Method Not Allowed: " + ex.getMessage(), request.getRequestURI());
     }
     
+    // 416: Range header outside the stored object
+    @ExceptionHandler(RangeNotSatisfiableException.class)
+    public ResponseEntity<ErrorResponse> handleRangeNotSatisfiable(RangeNotSatisfiableException ex, HttpServletRequest request) {
+        ResponseEntity<ErrorResponse> error = buildError(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, ex.getMessage(), request.getRequestURI());
+        if (ex.getSize() < 0) {
+            return error;
+        }
+        // RFC 9110: a 416 tells the client the current length of the representation
+        return ResponseEntity.status(error.getStatusCode())
+                .header(HttpHeaders.CONTENT_RANGE, "bytes */" + ex.getSize())
+                .body(error.getBody());
+    }
+    
     // 409: Conflict
     @ExceptionHandler(ConflictException.class)
     public ResponseEntity<ErrorResponse> handleConflict(ConflictException ex, HttpServletRequest request) {
         return buildError(HttpStatus.CONFLICT, ex.getMessage(), request.getRequestURI());
     }
     
+    // 503: Server busy (e.g. every resize slot taken), the client may retry shortly
+    @ExceptionHandler(ServiceUnavailableException.class)
+    public ResponseEntity<ErrorResponse> handleServiceUnavailable(ServiceUnavailableException ex, HttpServletRequest request) {
+        ResponseEntity<ErrorResponse> error = buildError(HttpStatus.SERVICE_UNAVAILABLE, ex.getMessage(), request.getRequestURI());
+        return ResponseEntity.status(error.getStatusCode())
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(error.getBody());
+    }
+    
     // 500: Fallback for unhandled exceptions
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ErrorResponse> handleGeneric(Exception ex, HttpServletRequest request) {
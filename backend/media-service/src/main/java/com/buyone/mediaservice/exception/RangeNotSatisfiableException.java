@@ -0,0 +1,31 @@
+package com.buyone.mediaservice.exception;
+
+public class RangeNotSatisfiableException extends RuntimeException {
+    // size of the whole object for Content-Range: bytes */<size>; -1 when unknown
+    private final long size;
+    
+    public RangeNotSatisfiableException() {
+        super();
+        this.size = -1;
+    }
+    public RangeNotSatisfiableException(String message) {
+        super(message);
+        this.size = -1;
+    }
+    public RangeNotSatisfiableException(String message, long size) {
+        super(message);
+        this.size = size;
+    }
+    public RangeNotSatisfiableException(String message, Throwable cause) {
+        super(message, cause);
+        this.size = -1;
+    }
+    public RangeNotSatisfiableException(Throwable cause) {
+        super(cause);
+        this.size = -1;
+    }
+    
+    public long getSize() {
+        return size;
+    }
+}
@@ -1,47 +1,124 @@
 package com.buyone.mediaservice.listener;
 
+import com.buyone.mediaservice.model.Media;
 import com.buyone.mediaservice.model.MediaOwnerType;
+import com.buyone.mediaservice.model.MediaVariant;
 import com.buyone.mediaservice.repository.MediaRepository;
-import com.buyone.mediaservice.service.StorageService;
+import com.buyone.mediaservice.service.AsyncStorageService;
+import com.buyone.mediaservice.service.BlobStore;
+import com.buyone.mediaservice.service.DeleteRetryQueue;
+import com.buyone.mediaservice.service.ImageDiskCache;
+import com.buyone.mediaservice.service.MediaQuota;
 import com.buyone.productservice.event.ProductDeletedEvent;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
-import org.springframework.context.annotation.Profile;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.kafka.annotation.KafkaListener;
-import org.springframework.context.annotation.Profile;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class ProductEventListener {
     
     private final MediaRepository mediaRepository;
-    private final StorageService storageService;
+    private final AsyncStorageService asyncStorageService;
+    private final BlobStore blobStore;
+    private final ImageDiskCache imageDiskCache;
+    private final DeleteRetryQueue deleteRetryQueue;
+    private final MediaQuota mediaQuota;
     
+    // Batch listener: a poll's worth of deleted products is cleaned up with one query, one
+    // deleteMany and one bulk storage delete. Exceptions propagate so the container retries
+    // the batch (cleanup is idempotent) and dead-letters it after the last attempt.
+    // A record the ErrorHandlingDeserializer could not read ends the batch: the records before
+    // it are cleaned up, then it is reported by index so only it goes to the DLT.
     @KafkaListener(
             topics = "${app.kafka.topic.product-deleted}",
-            groupId = "media-service"
+            groupId = "media-service",
+            containerFactory = "productDeletedListenerFactory"
     )
-    public void onProductDeleted(ProductDeletedEvent event) {
-        log.info("🗑️ Cleaning up images for product: {}", event.getProductId());
-        // Find all media for this product
-        var medias = mediaRepository.findAllByOwnerIdAndOwnerType(
-                event.getProductId(),
-                MediaOwnerType.PRODUCT
-        );
+    public void onProductDeleted(List<ConsumerRecord<String, ProductDeletedEvent>> records, Acknowledgment ack) {
+        int poison = firstUndeserializable(records);
+        List<String> productIds = records.subList(0, poison).stream()
+                .map(ConsumerRecord::value)
+                .filter(Objects::nonNull)
+                .map(ProductDeletedEvent::getProductId)
+                .filter(Objects::nonNull)
+                .distinct()
+                .toList();
+        log.info("🗑️ Cleaning up images for {} products", productIds.size());
+        if (!productIds.isEmpty()) {
+            cleanUp(productIds);
+        }
+        if (poison < records.size()) {
+            ConsumerRecord<String, ProductDeletedEvent> record = records.get(poison);
+            String message = "Undeserializable product.deleted record at " + record.topic() + "-"
+                    + record.partition() + "@" + record.offset();
+            log.warn("⚠️ {}, sending it to the DLT", message);
+            throw new BatchListenerFailedException(message, new DeserializationException(message, null, false, null), poison);
+        }
+        ack.acknowledge();
+    }
+    
+    private static int firstUndeserializable(List<ConsumerRecord<String, ProductDeletedEvent>> records) {
+        for (int i = 0; i < records.size(); i++) {
+            ConsumerRecord<String, ProductDeletedEvent> record = records.get(i);
+            if (record.value() == null
+                    && record.headers().lastHeader(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER) != null) {
+                return i;
+            }
+        }
+        return records.size();
+    }
+    
+    // Also used by MediaReconciler for products whose event never arrived
+    public void cleanUp(List<String> productIds) {
+        // Find all media for these products
+        var medias = mediaRepository.findAllByOwnerIdInAndOwnerType(productIds, MediaOwnerType.PRODUCT);
+        mediaQuota.forget(productIds);
+        if (medias.isEmpty()) {
+            return;
+        }
         
-        for (var media : medias) {
-            try {
-                storageService.delete(media.getImagePath());
-                mediaRepository.deleteById(media.getId());
-                log.info("✅ Deleted image: {}", media.getId());  // ADD LOG
-            } catch (Exception e) {
-                log.error("❌ Failed to delete image {}: {}", media.getId(), e.getMessage());
+        // Documents first (one deleteMany), so nothing keeps pointing at objects that are about to go
+        List<String> ids = medias.stream().map(Media::getId).toList();
+        mediaRepository.deleteAllById(ids);
+        
+        // Originals are shared by content: only those left without any reference are deleted
+        List<String> keys = new ArrayList<>(blobStore.releaseAll(medias));
+        for (Media media : medias) {
+            if (media.getVariants() != null) {
+                media.getVariants().stream().map(MediaVariant::getImagePath).forEach(keys::add);
+            }
+            if (media.getResizedPaths() != null) {
+                keys.addAll(media.getResizedPaths());
             }
         }
-        log.info("✅ Product cleanup complete: {}", event.getProductId());  // ADD LOG
+        keys.forEach(imageDiskCache::invalidate);
+        
+        // every 1000-key chunk in flight at once; waited for so a failure still reaches the retry queue
+        List<String> failed;
+        try {
+            failed = asyncStorageService.deleteAll(keys).join();
+        } catch (RuntimeException e) {
+            // the documents are already gone, nothing else would ever delete these objects
+            log.warn("⚠️ Bulk delete of {} objects failed: {}", keys.size(), e.getMessage());
+            failed = keys;
+        }
+        if (!failed.isEmpty()) {
+            log.warn("⚠️ {} of {} objects not deleted, queued for retry", failed.size(), keys.size());
+            deleteRetryQueue.enqueue(failed);
+        }
+        log.info("✅ Product cleanup complete: {} products, {} images", productIds.size(), ids.size());
     }
-        // Optional: log or produce audit event
 }
@@ -0,0 +1,25 @@
+package com.buyone.mediaservice.model;
+
+// Fixed derivative sizes generated for every upload; maxDimension bounds the longer side
+public enum ImageVariant {
+    THUMB("thumb", 150),
+    SMALL("small", 320),
+    MEDIUM("medium", 640),
+    LARGE("large", 1280);
+    
+    private final String key;
+    private final int maxDimension;
+    
+    ImageVariant(String key, int maxDimension) {
+        this.key = key;
+        this.maxDimension = maxDimension;
+    }
+    
+    public String getKey() {
+        return key;
+    }
+    
+    public int getMaxDimension() {
+        return maxDimension;
+    }
+}
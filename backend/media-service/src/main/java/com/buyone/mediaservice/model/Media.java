@@ -3,23 +3,53 @@ package com.buyone.mediaservice.model;
 import lombok.*;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.time.Instant;
+import java.util.List;
 
 @Data
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
 @Document("media")
+// owner_gallery serves the per-owner count (quota) from the index alone, and the gallery listings
+// (single owner and $in over many) without a collection scan or an in-memory sort.
+// The storage key / hash indexes let MediaReconciler find what references one window of the bucket listing.
+@CompoundIndexes({
+        @CompoundIndex(name = "owner_gallery", def = "{'ownerId': 1, 'ownerType': 1, 'createdAt': 1}"),
+        @CompoundIndex(name = "variant_paths", def = "{'variants.imagePath': 1}")
+})
 public class Media {
     
     @Id
     private String id;
     private String ownerId; // userId or productId
     private MediaOwnerType ownerType; // USER or PRODUCT
+    @Indexed
     private String imagePath;   // where the file is stored (relative path or URL)
+    @Indexed(sparse = true)
+    private String contentHash; // SHA-256 of the bytes = id of the shared StoredBlob; null for legacy per-media blobs
     
     @CreatedDate
     private Instant createdAt;
+    
+    private List<MediaVariant> variants; // resized derivatives, filled in asynchronously after upload
+    @Indexed
+    private List<String> resizedPaths;   // on-demand sizes rendered so far (?w=&h=), removed with the variants
+    
+    private String contentType; // e.g. image/png
+    private Long size;          // bytes of the original
+    private Integer width;      // pixels of the original as stored (upright)
+    private Integer height;
+    private String placeholder; // BlurHash of the original, decoded by clients into a blurred preview
+    
+    // Direct (presigned) uploads: set while the client has not completed the upload yet.
+    // Mongo's TTL monitor removes documents that are never completed.
+    @Indexed(expireAfterSeconds = 0)
+    private Instant uploadExpiresAt;
+    private String uploadedBy;  // user that requested the upload URL
 }
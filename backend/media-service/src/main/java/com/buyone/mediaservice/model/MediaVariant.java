@@ -0,0 +1,15 @@
+package com.buyone.mediaservice.model;
+
+import lombok.*;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MediaVariant {
+    
+    private String name;      // ImageVariant key, e.g. "thumb"
+    private int width;
+    private int height;
+    private String imagePath; // storage key of the derivative
+}
@@ -0,0 +1,24 @@
+package com.buyone.mediaservice.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Images (completed and pending) a product holds against its quota, see MediaQuota.
+ * count is only changed with conditional atomic updates, never read-modify-written.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document("media_quotas")
+public class OwnerImageCount {
+    
+    @Id
+    private String ownerId;     // productId
+    private long count;
+    private Instant updatedAt;  // last reservation / release
+}
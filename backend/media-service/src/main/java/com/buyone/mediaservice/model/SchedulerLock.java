@@ -0,0 +1,24 @@
+package com.buyone.mediaservice.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * Lease on a scheduled job shared by every replica: held by {@code lockedBy} until {@code lockedUntil}.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document("scheduler_locks")
+public class SchedulerLock {
+    
+    @Id
+    private String name;
+    private String lockedBy;
+    private Instant lockedAt;
+    private Instant lockedUntil;
+}
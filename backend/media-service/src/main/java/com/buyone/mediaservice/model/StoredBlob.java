@@ -0,0 +1,30 @@
+package com.buyone.mediaservice.model;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+/**
+ * One stored object shared by every Media with the same bytes.
+ * refCount = number of Media documents pointing at it; the object is deleted when it drops to 0.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@Document("blobs")
+public class StoredBlob {
+    
+    @Id
+    private String digest;      // hex SHA-256 of the content
+    @Indexed
+    private String imagePath;   // storage key, unique per incarnation of this digest
+    private String contentType;
+    private long size;
+    private long refCount;
+    private boolean stored;     // false until the first PUT completed
+    private Instant createdAt;
+}
@@ -3,10 +3,27 @@ package com.buyone.mediaservice.repository;
 import com.buyone.mediaservice.model.Media;
 import com.buyone.mediaservice.model.MediaOwnerType;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.data.mongodb.repository.Update;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 
 public interface MediaRepository extends MongoRepository<Media, String> {
     long countByOwnerIdAndOwnerType(String ownerId, MediaOwnerType ownerType);
     List<Media> findAllByOwnerIdAndOwnerType(String ownerId, MediaOwnerType ownerType);
+    List<Media> findAllByOwnerIdInAndOwnerType(Collection<String> ownerIds, MediaOwnerType ownerType);
+    // one $in query for many galleries; walks the (ownerId, ownerType, createdAt) index in order
+    List<Media> findAllByOwnerIdInAndOwnerTypeOrderByCreatedAtAsc(Collection<String> ownerIds, MediaOwnerType ownerType);
+    // direct uploads: both only match while the document is still pending, so exactly one caller wins
+    @Query("{ '_id': ?0, 'uploadExpiresAt': { $ne: null } }")
+    @Update("{ '$unset': { 'uploadExpiresAt': 1 }, "
+            + "'$set': { 'imagePath': ?1, 'contentHash': ?2, 'createdAt': ?3, 'size': ?4, "
+            + "'width': ?5, 'height': ?6, 'placeholder': ?7 } }")
+    long completePendingUpload(String id, String imagePath, String contentHash, Instant createdAt, long size,
+                               Integer width, Integer height, String placeholder);
+    long deleteByIdAndUploadExpiresAtNotNull(String id);
+    // unlike deleteById, reports whether this call removed the document (0 when a concurrent delete won)
+    long removeById(String id);
 }
@@ -0,0 +1,18 @@
+package com.buyone.mediaservice.request;
+
+import jakarta.validation.constraints.*;
+import lombok.Data;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.List;
+
+// Product gallery upload: several images for one product in a single request
+@Data
+public class MediaBatchUploadRequest {
+    
+    @NotEmpty(message = "At least one file is required")
+    private List<MultipartFile> files;
+    
+    @NotBlank(message = "Owner ID is required")
+    private String ownerId;
+}
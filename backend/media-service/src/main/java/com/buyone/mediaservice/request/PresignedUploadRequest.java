@@ -0,0 +1,24 @@
+package com.buyone.mediaservice.request;
+
+import com.buyone.mediaservice.model.MediaOwnerType;
+import jakarta.validation.constraints.*;
+import lombok.Data;
+
+@Data
+public class PresignedUploadRequest {
+    
+    @NotBlank(message = "Owner ID is required")
+    private String ownerId;
+    
+    @NotNull(message = "Owner type is required")
+    private MediaOwnerType ownerType;
+    
+    @NotBlank(message = "Content type is required")
+    @Pattern(regexp = "image/[\\w.+-]+", message = "Only image files are allowed!")
+    private String contentType;
+    
+    @NotNull(message = "Content length is required")
+    @Positive(message = "Content length must be positive")
+    @Max(value = 2L * 1024 * 1024, message = "File exceeds 2MB size limit!")
+    private Long contentLength;
+}
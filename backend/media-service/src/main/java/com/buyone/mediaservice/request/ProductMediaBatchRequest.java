@@ -0,0 +1,15 @@
+package com.buyone.mediaservice.request;
+
+import jakarta.validation.constraints.*;
+import lombok.Data;
+
+import java.util.List;
+
+// Galleries for a page of products in one call (e.g. a product listing)
+@Data
+public class ProductMediaBatchRequest {
+    
+    @NotEmpty(message = "At least one product ID is required")
+    @Size(max = 100, message = "At most 100 product IDs per request")
+    private List<@NotBlank(message = "Product ID must not be blank") String> productIds;
+}
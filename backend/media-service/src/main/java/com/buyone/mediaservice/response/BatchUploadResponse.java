@@ -0,0 +1,5 @@
+package com.buyone.mediaservice.response;
+
+import java.util.List;
+
+public record BatchUploadResponse(List<BatchUploadResult> results, int uploaded, int failed) {}
@@ -0,0 +1,8 @@
+package com.buyone.mediaservice.response;
+
+public record BatchUploadResult(
+        String filename,
+        boolean success,
+        MediaResponse media, // null when the file failed
+        String error         // null when the file succeeded
+) {}
@@ -1,10 +1,15 @@
 package com.buyone.mediaservice.response;
 
 import java.time.Instant;
+import java.util.Map;
 
 public record MediaResponse(
         String id,
         String ownerId,
         String url,          // e.g. /media/images/{id}
-        Instant createdAt
+        Instant createdAt,
+        Map<String, String> variants, // variant name -> url, empty until derivatives are ready
+        Integer width,                // null until known (legacy; ingest busy: set once variants are built)
+        Integer height,
+        String placeholder            // BlurHash string, see https://blurha.sh
 ) {}
\ No newline at end of file
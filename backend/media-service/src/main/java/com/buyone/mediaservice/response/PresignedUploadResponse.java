@@ -0,0 +1,12 @@
+package com.buyone.mediaservice.response;
+
+import java.time.Instant;
+import java.util.Map;
+
+public record PresignedUploadResponse(
+        String mediaId,
+        String uploadUrl,
+        String method,               // always PUT
+        Map<String, String> headers, // must be sent exactly as given, they are signed
+        Instant expiresAt
+) {}
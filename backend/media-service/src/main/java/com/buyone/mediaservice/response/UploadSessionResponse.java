@@ -0,0 +1,13 @@
+package com.buyone.mediaservice.response;
+
+import java.time.Instant;
+
+public record UploadSessionResponse(
+        String sessionId,
+        long totalSize,
+        int chunkSize,       // every chunk but the last has exactly this size
+        int chunkCount,
+        long receivedBytes,  // contiguous bytes received from offset 0
+        int nextChunk,       // first chunk index not received yet, == chunkCount when done
+        Instant expiresAt    // extended by every chunk
+) {}
@@ -0,0 +1,383 @@
+package com.buyone.mediaservice.service.impl;
+
+import com.buyone.mediaservice.exception.BadRequestException;
+import com.buyone.mediaservice.exception.InvalidFileException;
+import com.buyone.mediaservice.exception.MediaNotFoundException;
+import com.buyone.mediaservice.service.RangeRequests;
+import com.buyone.mediaservice.service.StorageService;
+import com.buyone.mediaservice.service.StoredKey;
+import com.buyone.mediaservice.service.StoredObject;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * StorageService on a local (or mounted) filesystem, enabled with the "local-storage" profile.
+ *
+ * - Keys keep the R2 format ("media/<id>.png"); on disk they are URL-encoded into a single
+ *   file name under two shard levels taken from SHA-256(key): root/ab/cd/media%2F<id>.png
+ * - Writes go to a temp file in the same shard and are renamed into place atomically, so
+ *   readers see either the old object or the complete new one.
+ * - Reads hand out a FileChannel-backed stream whose transferTo() uses FileChannel.transferTo.
+ * - ETag is derived from size and mtime (like nginx), Content-Type from the key's extension.
+ */
+@Service
+@Profile("local-storage")
+@Slf4j
+public class FileSystemStorageService implements StorageService {
+
+    private static final long MAX_FILE_SIZE_BYTES = 2L * 1024 * 1024;
+    private static final String TMP_SUFFIX = ".tmp";
+
+    private final Path root;
+
+    public FileSystemStorageService(@Value("${app.media.storage.root:${java.io.tmpdir}/media-store}") String root) {
+        this.root = Paths.get(root).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public String store(MultipartFile file, String mediaId) {
+        if (file.isEmpty()) {
+            throw new BadRequestException("Cannot store empty file");
+        }
+        if (file.getSize() > MAX_FILE_SIZE_BYTES) {
+            throw new InvalidFileException("File too large, max 2MB");
+        }
+        if (file.getContentType() == null || !file.getContentType().startsWith("image/")) {
+            throw new InvalidFileException("Only image/* uploads are allowed");
+        }
+
+        String originalFilename = file.getOriginalFilename();
+        String extension = "";
+        if (originalFilename != null && originalFilename.contains(".")) {
+            extension = originalFilename.substring(originalFilename.lastIndexOf('.'));
+        }
+        String key = "media/" + mediaId + extension;
+        put(key, file, file.getContentType());
+        return key;
+    }
+
+    // contentType is not kept, reads derive it from the key's extension
+    @Override
+    public void put(String key, MultipartFile file, String contentType) {
+        Path target = pathFor(key);
+        Path tmp = tempFileFor(target);
+        try {
+            Files.createDirectories(target.getParent());
+            // moves the servlet's temp part when it is on the same filesystem, copies otherwise
+            file.transferTo(tmp);
+            commit(tmp, target);
+        } catch (IOException e) {
+            deleteQuietly(tmp);
+            throw new InvalidFileException("Failed to store uploaded file", e);
+        }
+    }
+
+    @Override
+    public void put(String key, byte[] content, String contentType) {
+        Path target = pathFor(key);
+        Path tmp = tempFileFor(target);
+        try {
+            Files.createDirectories(target.getParent());
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                ByteBuffer buffer = ByteBuffer.wrap(content);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            commit(tmp, target);
+        } catch (IOException e) {
+            deleteQuietly(tmp);
+            throw new UncheckedIOException("Failed to write " + key, e);
+        }
+    }
+
+    @Override
+    public StoredObject load(String imagePath, String range, String ifNoneMatch) {
+        Path file = pathFor(imagePath);
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            long size = channel.size();
+            String eTag = eTagOf(attributes);
+
+            if (RangeRequests.eTagMatches(ifNoneMatch, eTag)) {
+                channel.close();
+                return StoredObject.unchanged(eTag);
+            }
+            RangeRequests.Span span = RangeRequests.resolve(range, size);
+            long start = span != null ? span.start() : 0;
+            long length = span != null ? span.length() : size;
+
+            return new StoredObject(
+                    new FileRegionInputStream(channel, start, length),
+                    length,
+                    contentTypeOf(imagePath),
+                    eTag,
+                    span != null ? span.contentRange() : null,
+                    false
+            );
+        } catch (NoSuchFileException e) {
+            closeQuietly(channel);
+            throw new MediaNotFoundException(imagePath);
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new UncheckedIOException("Failed to read " + imagePath, e);
+        } catch (RuntimeException e) {
+            closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    @Override
+    public StoredObject head(String imagePath) {
+        Path file = pathFor(imagePath);
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            return new StoredObject(null, attributes.size(), contentTypeOf(imagePath), eTagOf(attributes), null, false);
+        } catch (NoSuchFileException e) {
+            throw new MediaNotFoundException(imagePath);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + imagePath, e);
+        }
+    }
+
+    // There is no bucket a client could upload to directly
+    @Override
+    public String presignPut(String key, String contentType, long contentLength, Duration ttl) {
+        throw new BadRequestException("Direct uploads are not available with local storage, use POST /media/images");
+    }
+
+    // Same as DeleteObject on R2: deleting a missing key is not an error
+    @Override
+    public void delete(String imagePath) {
+        try {
+            Files.deleteIfExists(pathFor(imagePath));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to delete " + imagePath, e);
+        }
+    }
+
+    @Override
+    public List<String> deleteAll(Collection<String> imagePaths) {
+        List<String> failed = new ArrayList<>();
+        for (String key : imagePaths) {
+            if (key == null) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(pathFor(key));
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not delete {}: {}", key, e.getMessage());
+                failed.add(key);
+            }
+        }
+        return failed;
+    }
+    
+    // Files are sharded by hash, not by key, so every page walks the whole tree and keeps only the
+    // maxKeys smallest keys after startAfter in a bounded heap: memory stays O(maxKeys).
+    @Override
+    public List<StoredKey> list(String prefix, String startAfter, int maxKeys) {
+        PriorityQueue<StoredKey> page = new PriorityQueue<>(Comparator.comparing(StoredKey::key).reversed());
+        try (Stream<Path> files = Files.walk(root)) {
+            files.filter(file -> !file.getFileName().toString().endsWith(TMP_SUFFIX))
+                    .filter(Files::isRegularFile)
+                    .forEach(file -> {
+                        String key = URLDecoder.decode(file.getFileName().toString(), StandardCharsets.UTF_8);
+                        if (!key.startsWith(prefix)) {
+                            return;
+                        }
+                        if (startAfter != null && key.compareTo(startAfter) <= 0) {
+                            return;
+                        }
+                        if (page.size() == maxKeys && key.compareTo(page.peek().key()) >= 0) {
+                            return;
+                        }
+                        try {
+                            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                            page.offer(new StoredKey(key, attributes.size(), attributes.lastModifiedTime().toInstant()));
+                        } catch (IOException e) {
+                            return; // deleted while listing
+                        }
+                        if (page.size() > maxKeys) {
+                            page.poll();
+                        }
+                    });
+        } catch (NoSuchFileException e) {
+            return List.of();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list " + root, e);
+        }
+        List<StoredKey> keys = new ArrayList<>(page);
+        keys.sort(Comparator.comparing(StoredKey::key));
+        return keys;
+    }
+    
+    Path pathFor(String key) {
+        String hash = sha256Hex(key);
+        Path file = root.resolve(hash.substring(0, 2))
+                .resolve(hash.substring(2, 4))
+                .resolve(URLEncoder.encode(key, StandardCharsets.UTF_8));
+        // URL encoding removes '/', this only guards against "." / ".." style keys
+        if (!file.normalize().startsWith(root)) {
+            throw new BadRequestException("Invalid storage key: " + key);
+        }
+        return file;
+    }
+
+    private static Path tempFileFor(Path target) {
+        return target.resolveSibling(target.getFileName() + "." + UUID.randomUUID() + TMP_SUFFIX);
+    }
+
+    private static void commit(Path tmp, Path target) throws IOException {
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static String eTagOf(BasicFileAttributes attributes) {
+        return "\"" + Long.toHexString(attributes.lastModifiedTime().toMillis())
+                + "-" + Long.toHexString(attributes.size()) + "\"";
+    }
+
+    private static String contentTypeOf(String key) {
+        return MediaTypeFactory.getMediaType(key)
+                .orElse(MediaType.APPLICATION_OCTET_STREAM)
+                .toString();
+    }
+
+    private static String sha256Hex(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("Failed to delete temp file {}", file, e);
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.debug("Failed to close file channel", e);
+        }
+    }
+
+    /**
+     * Reads [start, start + length) of a file through positional reads.
+     * transferTo(out) skips user-space copies and lets the kernel move the bytes.
+     */
+    static final class FileRegionInputStream extends InputStream {
+
+        private final FileChannel channel;
+        private final long end;
+        private long position;
+
+        FileRegionInputStream(FileChannel channel, long start, long length) {
+            this.channel = channel;
+            this.position = start;
+            this.end = start + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (n < 0) {
+                return -1;
+            }
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, end - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(end - position, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public long transferTo(OutputStream out) throws IOException {
+            WritableByteChannel target = Channels.newChannel(out);
+            long start = position;
+            while (position < end) {
+                long n = channel.transferTo(position, end - position, target);
+                if (n <= 0) {
+                    break;
+                }
+                position += n;
+            }
+            return position - start;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
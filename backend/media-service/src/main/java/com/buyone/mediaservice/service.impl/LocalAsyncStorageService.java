@@ -0,0 +1,59 @@
+package com.buyone.mediaservice.service.impl;
+
+import com.buyone.mediaservice.service.AsyncStorageService;
+import com.buyone.mediaservice.service.StorageService;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * AsyncStorageService for the "local-storage" profile: local disk I/O has no round-trip to
+ * hide, so the blocking StorageService calls simply run on a small pool of their own.
+ */
+@Service
+@Profile("local-storage")
+public class LocalAsyncStorageService implements AsyncStorageService {
+
+    private final StorageService storageService;
+    private final ExecutorService executor;
+
+    public LocalAsyncStorageService(StorageService storageService,
+                                    @Value("${app.media.storage.async-threads:4}") int threads) {
+        this.storageService = storageService;
+        AtomicInteger threadIds = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "media-local-storage-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, MultipartFile file, String contentType) {
+        return CompletableFuture.runAsync(() -> storageService.put(key, file, contentType), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, byte[] content, String contentType) {
+        return CompletableFuture.runAsync(() -> storageService.put(key, content, contentType), executor);
+    }
+
+    @Override
+    public CompletableFuture<List<String>> deleteAll(Collection<String> imagePaths) {
+        return CompletableFuture.supplyAsync(() -> storageService.deleteAll(imagePaths), executor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -2,37 +2,99 @@ package com.buyone.mediaservice.service.impl;
 
 import com.buyone.mediaservice.model.Media;
 import com.buyone.mediaservice.model.MediaOwnerType;
+import com.buyone.mediaservice.model.MediaVariant;
+import com.buyone.mediaservice.model.StoredBlob;
 import com.buyone.mediaservice.repository.MediaRepository;
+import com.buyone.mediaservice.response.BatchUploadResponse;
+import com.buyone.mediaservice.response.BatchUploadResult;
 import com.buyone.mediaservice.response.MediaResponse;
 import com.buyone.mediaservice.response.DeleteMediaResponse;
+import com.buyone.mediaservice.response.PresignedUploadResponse;
+import com.buyone.mediaservice.service.BlobStore;
+import com.buyone.mediaservice.service.DeleteRetryQueue;
+import com.buyone.mediaservice.service.ImageFormat;
+import com.buyone.mediaservice.service.ImageOptimizer;
+import com.buyone.mediaservice.service.IngestedImage;
+import com.buyone.mediaservice.service.ImageVariantGenerator;
+import com.buyone.mediaservice.service.MediaQuota;
 import com.buyone.mediaservice.service.MediaService;
 import com.buyone.mediaservice.service.StorageService;
+import com.buyone.mediaservice.service.StoredObject;
 import com.buyone.mediaservice.exception.MediaNotFoundException;
 import com.buyone.mediaservice.exception.InvalidFileException;
 import com.buyone.mediaservice.exception.ConflictException;
 import com.buyone.mediaservice.exception.ForbiddenException;
-import lombok.RequiredArgsConstructor;
+import com.buyone.mediaservice.exception.BadRequestException;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.types.ObjectId;
 
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.beans.factory.annotation.Value;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
-@RequiredArgsConstructor
+@Slf4j
 public class MediaServiceImpl implements MediaService {
     
     private final MediaRepository mediaRepository;
+    private final BlobStore blobStore;
     private final StorageService storageService;
+    private final ImageVariantGenerator imageVariantGenerator;
+    private final ImageOptimizer imageOptimizer;
+    private final MediaQuota mediaQuota;
+    private final DeleteRetryQueue deleteRetryQueue;
+    // Ingest and hashing for gallery batches, shared across requests (the PUTs go out on the async client)
+    private final ExecutorService storageUploadPool;
     
     private static final int MAX_IMAGES_PER_PRODUCT = 5;
     private static final long MAX_FILE_SIZE_BYTES = 2L * 1024 * 1024;
+    private static final Duration COMPLETION_GRACE = Duration.ofMinutes(10);
 
     @Value("${app.media.public-base-url}")
     private String publicBucketBaseUrl;
     
+    @Value("${app.media.direct-upload.url-ttl-seconds:300}")
+    private long directUploadUrlTtlSeconds;
+    
+    public MediaServiceImpl(MediaRepository mediaRepository,
+                            BlobStore blobStore,
+                            StorageService storageService,
+                            ImageVariantGenerator imageVariantGenerator,
+                            ImageOptimizer imageOptimizer,
+                            MediaQuota mediaQuota,
+                            DeleteRetryQueue deleteRetryQueue,
+                            @Value("${app.media.batch-upload.threads:16}") int batchUploadThreads) {
+        this.mediaRepository = mediaRepository;
+        this.blobStore = blobStore;
+        this.storageService = storageService;
+        this.imageVariantGenerator = imageVariantGenerator;
+        this.imageOptimizer = imageOptimizer;
+        this.mediaQuota = mediaQuota;
+        this.deleteRetryQueue = deleteRetryQueue;
+        AtomicInteger threadIds = new AtomicInteger();
+        this.storageUploadPool = Executors.newFixedThreadPool(batchUploadThreads, r -> {
+            Thread t = new Thread(r, "media-batch-upload-" + threadIds.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+    
     @Override
     public MediaResponse uploadImage(MultipartFile file,
                                     String ownerId,
@@ -40,6 +102,75 @@ public class MediaServiceImpl implements MediaService {
                                     String currentUserId,
                                     String currentUserRole) {
         validateImageFile(file);
+        checkPermissions(ownerId, ownerType, currentUserId, currentUserRole);
+        // The quota slot is taken before anything is stored and given back if the upload fails
+        reserveSlots(ownerId, ownerType, 1);
+
+        Media media;
+        List<Media> replacedAvatars;
+        try {
+            // If this is a user avatar, ensure only one avatar per user.
+            // The old ones are removed only once the new avatar is fully written.
+            replacedAvatars = ownerType == MediaOwnerType.USER
+                    ? mediaRepository.findAllByOwnerIdAndOwnerType(ownerId, MediaOwnerType.USER).stream()
+                            .filter(m -> m.getUploadExpiresAt() == null)
+                            .toList()
+                    : List.of();
+            
+            // Blob first, then a single insert of the complete document. A failed store leaves
+            // nothing behind; a failed insert is compensated by releasing the blob reference.
+            // The blob is shared by content: "media/<sha256>_<suffix>.png"
+            // Stripped / recompressed bytes are what gets hashed and stored
+            IngestedImage image = imageOptimizer.ingest(file);
+            StoredBlob blob = blobStore.store(image.file());
+            
+            media = Media.builder()
+                    .id(new ObjectId().toHexString())
+                    .ownerId(ownerId)
+                    .ownerType(ownerType)
+                    .imagePath(blob.getImagePath())
+                    .contentHash(blob.getDigest())
+                    .contentType(blob.getContentType())
+                    .size(blob.getSize())
+                    .width(image.width())
+                    .height(image.height())
+                    .placeholder(image.placeholder())
+                    .createdAt(Instant.now())
+                    .build();
+            try {
+                media = mediaRepository.insert(media);
+            } catch (RuntimeException e) {
+                blobStore.release(blob, e);
+                throw e;
+            }
+        } catch (RuntimeException e) {
+            releaseSlots(ownerId, ownerType, 1);
+            throw e;
+        }
+        
+        removeReplacedAvatars(replacedAvatars);
+        imageVariantGenerator.generateAsync(media);
+        
+        return toResponse(media);
+    }
+    
+    // Role / ownership rules and the product quota, shared by multipart, direct and resumable uploads.
+    // The quota part is an early check only, the slot itself is reserved when the upload is stored.
+    @Override
+    public void checkUploadAllowed(String ownerId,
+                                   MediaOwnerType ownerType,
+                                   String currentUserId,
+                                   String currentUserRole) {
+        checkPermissions(ownerId, ownerType, currentUserId, currentUserRole);
+        if (ownerType == MediaOwnerType.PRODUCT && !mediaQuota.hasRoom(ownerId, 1, MAX_IMAGES_PER_PRODUCT)) {
+            throw quotaExceeded();
+        }
+    }
+    
+    private void checkPermissions(String ownerId,
+                                  MediaOwnerType ownerType,
+                                  String currentUserId,
+                                  String currentUserRole) {
         boolean isSeller = "SELLER".equals(currentUserRole);
         boolean isClient = "CLIENT".equals(currentUserRole);
 
@@ -57,62 +188,313 @@ public class MediaServiceImpl implements MediaService {
         if (ownerType == MediaOwnerType.PRODUCT && !isSeller) {
             throw new ForbiddenException("Only Seller can upload product images.");
         }
-
-        // If this is a user avatar, ensure only one avatar per user
-        if (ownerType == MediaOwnerType.USER) {
-            List<Media> existingAvatar = mediaRepository.findAllByOwnerIdAndOwnerType(ownerId, MediaOwnerType.USER);
-            for (Media m : existingAvatar) {
-                storageService.delete(m.getImagePath());
-                mediaRepository.delete(m);
-            }
+    }
+    
+    // Max 5 images per product (pending direct uploads count too, until they are completed or expire)
+    private void reserveSlots(String ownerId, MediaOwnerType ownerType, int slots) {
+        if (ownerType == MediaOwnerType.PRODUCT && !mediaQuota.tryReserve(ownerId, slots, MAX_IMAGES_PER_PRODUCT)) {
+            throw quotaExceeded();
         }
-
-        // If this is a product image, enforce max 5 images per product
+    }
+    
+    private void releaseSlots(String ownerId, MediaOwnerType ownerType, int slots) {
         if (ownerType == MediaOwnerType.PRODUCT) {
-            long imageCount = mediaRepository.countByOwnerIdAndOwnerType(ownerId, MediaOwnerType.PRODUCT);
-            if (imageCount >= MAX_IMAGES_PER_PRODUCT) {
-                throw new ConflictException("This product already has the maximum number of images (" + MAX_IMAGES_PER_PRODUCT + ").");
+            mediaQuota.release(ownerId, slots);
+        }
+    }
+    
+    private static ConflictException quotaExceeded() {
+        return new ConflictException("This product already has the maximum number of images (" + MAX_IMAGES_PER_PRODUCT + ").");
+    }
+    
+    // Documents first, then the objects of every replaced avatar in one parallel delete the response does not wait for
+    private void removeReplacedAvatars(List<Media> replacedAvatars) {
+        if (replacedAvatars.isEmpty()) {
+            return;
+        }
+        mediaRepository.deleteAll(replacedAvatars);
+        blobStore.releaseAllAsync(replacedAvatars).thenAccept(failed -> {
+            if (!failed.isEmpty()) {
+                log.warn("{} replaced avatar object(s) not deleted, queued for retry", failed.size());
+                deleteRetryQueue.enqueue(failed);
             }
+        });
+        replacedAvatars.forEach(imageVariantGenerator::deleteVariants);
+    }
+    
+    @Override
+    public PresignedUploadResponse createUpload(String ownerId,
+                                                MediaOwnerType ownerType,
+                                                String contentType,
+                                                long contentLength,
+                                                String currentUserId,
+                                                String currentUserRole) {
+        if (contentLength <= 0 || contentLength > MAX_FILE_SIZE_BYTES) {
+            throw new InvalidFileException("File exceeds 2MB size limit!");
+        }
+        ImageFormat format = ImageFormat.fromMimeType(contentType);
+        if (format == null) {
+            throw new InvalidFileException("Only JPEG, PNG, GIF and WebP images are allowed!");
+        }
+        contentType = format.mimeType();
+        checkPermissions(ownerId, ownerType, currentUserId, currentUserRole);
+        // The pending document holds the slot until it is completed, deleted or expires
+        reserveSlots(ownerId, ownerType, 1);
+        
+        // Bytes bypass this service: they go to a staging key the client can write to until the URL
+        // expires, and only get a content-addressed (published) key once completed
+        String mediaId = new ObjectId().toHexString();
+        String imagePath = StorageService.STAGING_PREFIX + mediaId + format.extension();
+        Duration ttl = Duration.ofSeconds(directUploadUrlTtlSeconds);
+        Instant expiresAt = Instant.now().plus(ttl);
+        String uploadUrl;
+        try {
+            uploadUrl = storageService.presignPut(imagePath, contentType, contentLength, ttl);
+            
+            // The pending document outlives the URL a little, so an upload finished at the last
+            // second can still be completed
+            mediaRepository.insert(Media.builder()
+                    .id(mediaId)
+                    .ownerId(ownerId)
+                    .ownerType(ownerType)
+                    .imagePath(imagePath)
+                    .contentType(contentType)
+                    .size(contentLength)
+                    .uploadedBy(currentUserId)
+                    .uploadExpiresAt(expiresAt.plus(COMPLETION_GRACE))
+                    .build());
+        } catch (RuntimeException e) {
+            releaseSlots(ownerId, ownerType, 1);
+            throw e;
         }
+        
+        return new PresignedUploadResponse(mediaId, uploadUrl, "PUT",
+                Map.of("Content-Type", contentType, "Content-Length", String.valueOf(contentLength)),
+                expiresAt);
+    }
     
+    @Override
+    public MediaResponse completeUpload(String mediaId,
+                                        String currentUserId,
+                                        String currentUserRole) {
+        Media media = mediaRepository.findById(mediaId)
+                .orElseThrow(() -> new MediaNotFoundException(mediaId));
+        if (media.getUploadExpiresAt() == null) {
+            return toResponse(media); // already completed
+        }
+        if (!media.getUploadedBy().equals(currentUserId)) {
+            throw new ForbiddenException("You can only complete your own uploads.");
+        }
+        // Mongo's TTL monitor only runs every minute or so, the document can outlive its expiry
+        if (media.getUploadExpiresAt().isBefore(Instant.now())) {
+            discardUpload(media);
+            throw new BadRequestException("The upload for media " + mediaId + " has expired.");
+        }
         
-        Media media = Media.builder()
-                .ownerId(ownerId)
-                .ownerType(ownerType)
-                .createdAt(Instant.now())
-                .build();
+        // The presigned URL pins type and length, HEAD confirms what actually landed
+        StoredObject object;
+        try {
+            object = storageService.head(media.getImagePath());
+        } catch (MediaNotFoundException e) {
+            throw new BadRequestException("Nothing has been uploaded for media " + mediaId + " yet.");
+        }
+        if (object.contentLength() != media.getSize()
+                || !media.getContentType().equalsIgnoreCase(object.contentType())) {
+            discardUpload(media);
+            throw new InvalidFileException("Uploaded file does not match the declared type or size.");
+        }
+        // At most 2MB (the signed length, confirmed above). The signed Content-Type is only a
+        // claim too: the leading bytes have to agree with it
+        byte[] content = download(media.getImagePath());
+        if (ImageFormat.fromMimeType(media.getContentType())
+                != ImageFormat.detect(content, Math.min(content.length, ImageFormat.HEADER_LENGTH))) {
+            discardUpload(media);
+            throw new InvalidFileException("Uploaded file does not match the declared type or size.");
+        }
         
-        media = mediaRepository.save(media);
+        // The same ingest stage as a multipart upload, after the fact: metadata strip, upright
+        // pixels, size budget, dimensions and placeholder. The result is stored like one too
+        // (content-addressed), so what gets published is exactly the bytes checked here, whatever
+        // the client PUTs to the staging key afterwards.
+        String stagingPath = media.getImagePath();
+        IngestedImage ingested = imageOptimizer.ingest(content, stagingPath, media.getContentType());
+        StoredBlob blob = blobStore.store(ingested.file());
         
-        // store() should return something like "media/<id>.png"
-        String imagePath = storageService.store(file, media.getId());
+        List<Media> replacedAvatars = media.getOwnerType() == MediaOwnerType.USER
+                ? mediaRepository.findAllByOwnerIdAndOwnerType(media.getOwnerId(), MediaOwnerType.USER).stream()
+                        .filter(m -> !m.getId().equals(mediaId) && m.getUploadExpiresAt() == null)
+                        .toList()
+                : List.of();
         
-        media.setImagePath(imagePath);
-        media = mediaRepository.save(media);
+        Instant completedAt = Instant.now();
+        long completed;
+        try {
+            completed = mediaRepository.completePendingUpload(mediaId, blob.getImagePath(), blob.getDigest(),
+                    completedAt, blob.getSize(), ingested.width(), ingested.height(), ingested.placeholder());
+        } catch (RuntimeException e) {
+            blobStore.release(blob, e);
+            throw e;
+        }
+        if (completed == 0) {
+            // a concurrent call completed it first (or it expired and was removed) since it was read
+            blobStore.release(blob, null);
+            return mediaRepository.findById(mediaId)
+                    .filter(m -> m.getUploadExpiresAt() == null)
+                    .map(this::toResponse)
+                    .orElseThrow(() -> new MediaNotFoundException(mediaId));
+        }
+        media.setUploadExpiresAt(null);
+        media.setImagePath(blob.getImagePath());
+        media.setContentHash(blob.getDigest());
+        media.setCreatedAt(completedAt);
+        media.setSize(blob.getSize());
+        media.setWidth(ingested.width());
+        media.setHeight(ingested.height());
+        media.setPlaceholder(ingested.placeholder());
         
-        // Public Cloudflare URL, e.g. https://pub-....r2.dev/media/<id>.png
-        String url = publicBucketBaseUrl + "/" + imagePath;
+        // left to the reconciler if this fails, the staging key is never served either way
+        try {
+            storageService.delete(stagingPath);
+        } catch (RuntimeException e) {
+            log.warn("Failed to delete staged upload {}", stagingPath, e);
+        }
         
-        return new MediaResponse(
-                media.getId(),
-                media.getOwnerId(),
-                url,
-                media.getCreatedAt()
-        );
+        removeReplacedAvatars(replacedAvatars);
+        imageVariantGenerator.generateAsync(media);
+        return toResponse(media);
+    }
+    
+    // The slot is released only by whoever actually removed the pending document
+    private void discardUpload(Media media) {
+        storageService.delete(media.getImagePath());
+        if (mediaRepository.deleteByIdAndUploadExpiresAtNotNull(media.getId()) > 0) {
+            releaseSlots(media.getOwnerId(), media.getOwnerType(), 1);
+        }
+    }
+    
+    private byte[] download(String imagePath) {
+        StoredObject object = storageService.load(imagePath, null, null);
+        try (InputStream in = object.content()) {
+            return in.readAllBytes();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + imagePath, e);
+        }
+    }
+    
+    @Override
+    public BatchUploadResponse uploadProductImages(List<MultipartFile> files,
+                                                   String productId,
+                                                   String currentUserId,
+                                                   String currentUserRole) {
+        if (!"SELLER".equals(currentUserRole)) {
+            throw new ForbiddenException("Only Seller can upload product images.");
+        }
+        if (files == null || files.isEmpty()) {
+            throw new InvalidFileException("No file provided!");
+        }
+        
+        // One reservation for the whole batch instead of one per file
+        if (!mediaQuota.tryReserve(productId, files.size(), MAX_IMAGES_PER_PRODUCT)) {
+            long imageCount = mediaQuota.used(productId);
+            throw new ConflictException("This product can take " + Math.max(0, MAX_IMAGES_PER_PRODUCT - imageCount)
+                    + " more image(s), maximum is " + MAX_IMAGES_PER_PRODUCT + ".");
+        }
+        BatchUploadResponse response = null;
+        try {
+            response = storeBatch(files, productId);
+            return response;
+        } finally {
+            // slots of the files that were not inserted (all of them if the batch failed) go back
+            mediaQuota.release(productId, files.size() - (response != null ? response.uploaded() : 0));
+        }
+    }
+    
+    private BatchUploadResponse storeBatch(List<MultipartFile> files, String productId) {
+        // Invalid files fail on their own, valid ones are stored in parallel
+        BatchUploadResult[] results = new BatchUploadResult[files.size()];
+        List<CompletableFuture<IngestedBlob>> stores = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            MultipartFile file = files.get(i);
+            try {
+                validateImageFile(file);
+                // Ingest and hashing on the pool, the PUT itself in flight on the async client
+                stores.add(CompletableFuture.supplyAsync(() -> imageOptimizer.ingest(file), storageUploadPool)
+                        .thenCompose(image -> blobStore.storeAsync(image.file())
+                                .thenApply(blob -> new IngestedBlob(image, blob))));
+            } catch (InvalidFileException e) {
+                results[i] = new BatchUploadResult(file.getOriginalFilename(), false, null, e.getMessage());
+                stores.add(null);
+            }
+        }
+        
+        Instant now = Instant.now();
+        List<Media> stored = new ArrayList<>(files.size());
+        List<StoredBlob> storedBlobs = new ArrayList<>(files.size());
+        List<Integer> storedIndexes = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            if (stores.get(i) == null) {
+                continue;
+            }
+            try {
+                IngestedBlob ingested = stores.get(i).join();
+                StoredBlob blob = ingested.blob();
+                stored.add(Media.builder()
+                        .id(new ObjectId().toHexString())
+                        .ownerId(productId)
+                        .ownerType(MediaOwnerType.PRODUCT)
+                        .imagePath(blob.getImagePath())
+                        .contentHash(blob.getDigest())
+                        .contentType(blob.getContentType())
+                        .size(blob.getSize())
+                        .width(ingested.image().width())
+                        .height(ingested.image().height())
+                        .placeholder(ingested.image().placeholder())
+                        .createdAt(now)
+                        .build());
+                storedBlobs.add(blob);
+                storedIndexes.add(i);
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                // Only validation messages go back to the client, storage errors stay in the log
+                String error = cause instanceof InvalidFileException ? cause.getMessage() : "Upload failed";
+                log.warn("Batch upload of {} for product {} failed", files.get(i).getOriginalFilename(), productId, cause);
+                results[i] = new BatchUploadResult(files.get(i).getOriginalFilename(), false, null, error);
+            }
+        }
+        
+        // Single bulk insert for every stored blob; on failure every reference is given back
+        List<Media> inserted = List.of();
+        if (!stored.isEmpty()) {
+            try {
+                inserted = mediaRepository.insert(stored);
+            } catch (RuntimeException e) {
+                for (StoredBlob blob : storedBlobs) {
+                    blobStore.release(blob, e);
+                }
+                throw e;
+            }
+        }
+        for (int k = 0; k < inserted.size(); k++) {
+            Media media = inserted.get(k);
+            int i = storedIndexes.get(k);
+            results[i] = new BatchUploadResult(files.get(i).getOriginalFilename(), true, toResponse(media), null);
+            imageVariantGenerator.generateAsync(media);
+        }
+        
+        return new BatchUploadResponse(List.of(results), inserted.size(), files.size() - inserted.size());
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        storageUploadPool.shutdown();
     }
     
     @Override
     public MediaResponse getMedia(String id) {
         Media media = mediaRepository.findById(id)
+                .filter(m -> m.getUploadExpiresAt() == null)
                 .orElseThrow(() -> new MediaNotFoundException(id));
-        // Public Cloudflare URL, e.g. https://pub-....r2.dev/media/<id>.png
-        String url = publicBucketBaseUrl + "/" + media.getImagePath();
-        return new MediaResponse(
-                media.getId(),
-                media.getOwnerId(),
-                url,
-                media.getCreatedAt()
-        );
+        return toResponse(media);
     }
     
     @Override
@@ -134,25 +516,39 @@ public class MediaServiceImpl implements MediaService {
             throw new ForbiddenException("You can only update your own media.");
         }
         
+        // New blob first; the old one (possibly shared with other media) is released
+        // only once the document points at the new one
+        Media previous = Media.builder()
+                .imagePath(media.getImagePath())
+                .contentHash(media.getContentHash())
+                .variants(media.getVariants())
+                .resizedPaths(media.getResizedPaths())
+                .build();
+        IngestedImage image = imageOptimizer.ingest(file);
+        StoredBlob blob = blobStore.store(image.file());
         
-        storageService.delete(media.getImagePath());
-        
-        String newImagePath = storageService.store(file, media.getId());
-        
-        media.setImagePath(newImagePath);
+        media.setImagePath(blob.getImagePath());
+        media.setContentHash(blob.getDigest());
+        media.setContentType(blob.getContentType());
+        media.setSize(blob.getSize());
+        media.setWidth(image.width());
+        media.setHeight(image.height());
+        media.setPlaceholder(image.placeholder());
         media.setCreatedAt(Instant.now());
+        media.setVariants(null);
+        media.setResizedPaths(null);
         
-        media = mediaRepository.save(media);
-        
-        // Public Cloudflare URL, e.g. https://pub-....r2.dev/media/<id>.png
-        String url = publicBucketBaseUrl + "/" + newImagePath;
+        try {
+            media = mediaRepository.save(media);
+        } catch (RuntimeException e) {
+            blobStore.release(blob, e);
+            throw e;
+        }
+        blobStore.release(previous);
+        imageVariantGenerator.deleteVariants(previous);
+        imageVariantGenerator.generateAsync(media);
         
-        return new MediaResponse(
-                media.getId(),
-                media.getOwnerId(),
-                url,
-                media.getCreatedAt()
-        );
+        return toResponse(media);
     }
     
     @Override
@@ -199,8 +595,12 @@ public class MediaServiceImpl implements MediaService {
         //     throw new ForbiddenException("Only sellers can manage user avatars.");
         // }
         
-        storageService.delete(media.getImagePath());
-        mediaRepository.deleteById(id);
+        // only the request that actually removed the document gives back the blob reference and the slot
+        if (mediaRepository.removeById(id) > 0) {
+            releaseSlots(media.getOwnerId(), media.getOwnerType(), 1);
+            blobStore.release(media);
+            imageVariantGenerator.deleteVariants(media);
+        }
         return new DeleteMediaResponse(id, "Deleted successfully");
     }
     
@@ -209,21 +609,63 @@ public class MediaServiceImpl implements MediaService {
         List<Media> medias = mediaRepository.findAllByOwnerIdAndOwnerType(productId, MediaOwnerType.PRODUCT);
         
         return medias.stream()
-                .map(m -> new MediaResponse(
-                        m.getId(),
-                        m.getOwnerId(),
-                        publicBucketBaseUrl + "/" + m.getImagePath(),
-                        m.getCreatedAt()
-                ))
+                .filter(m -> m.getUploadExpiresAt() == null) // direct uploads not completed yet
+                .map(this::toResponse)
                 .toList();
     }
     
+    @Override
+    public Map<String, List<MediaResponse>> mediaListForProducts(List<String> productIds) {
+        Map<String, List<MediaResponse>> galleries = new LinkedHashMap<>();
+        for (String productId : productIds) {
+            galleries.putIfAbsent(productId, new ArrayList<>());
+        }
+        if (galleries.isEmpty()) {
+            return galleries;
+        }
+        
+        // one round trip for the whole page, grouped here; createdAt order is kept per product
+        List<Media> medias = mediaRepository.findAllByOwnerIdInAndOwnerTypeOrderByCreatedAtAsc(
+                galleries.keySet(), MediaOwnerType.PRODUCT);
+        for (Media media : medias) {
+            List<MediaResponse> gallery = galleries.get(media.getOwnerId());
+            if (gallery != null && media.getUploadExpiresAt() == null) {
+                gallery.add(toResponse(media));
+            }
+        }
+        return galleries;
+    }
+    
     @Override
     public Media findMediaEntity(String id) {
         return mediaRepository.findById(id)
+                .filter(m -> m.getUploadExpiresAt() == null)
                 .orElseThrow(() -> new MediaNotFoundException(id));
     }
     
+    // Public Cloudflare URLs, e.g. https://pub-....r2.dev/media/<id>.png
+    private MediaResponse toResponse(Media media) {
+        Map<String, String> variants = new LinkedHashMap<>();
+        if (media.getVariants() != null) {
+            for (MediaVariant variant : media.getVariants()) {
+                variants.put(variant.getName(), publicBucketBaseUrl + "/" + variant.getImagePath());
+            }
+        }
+        return new MediaResponse(
+                media.getId(),
+                media.getOwnerId(),
+                publicBucketBaseUrl + "/" + media.getImagePath(),
+                media.getCreatedAt(),
+                variants,
+                media.getWidth(),
+                media.getHeight(),
+                media.getPlaceholder()
+        );
+    }
+    
+    private record IngestedBlob(IngestedImage image, StoredBlob blob) {
+    }
+    
     private void validateImageFile(MultipartFile file) {
         if (file == null || file.isEmpty()) {
             throw new InvalidFileException("No file provided!");
@@ -231,9 +673,7 @@ public class MediaServiceImpl implements MediaService {
         if (file.getSize() > MAX_FILE_SIZE_BYTES) {
             throw new InvalidFileException("File exceeds 2MB size limit!");
         }
-        String contentType = file.getContentType();
-        if (contentType == null || !contentType.startsWith("image/")) {
-            throw new InvalidFileException("Only image files are allowed!");
-        }
+        // The client's Content-Type is not checked: BlobStore detects the format from the bytes
+        // and rejects anything that is not a supported image
     }
 }
@@ -0,0 +1,115 @@
+package com.buyone.mediaservice.service.impl;
+
+import com.buyone.mediaservice.config.CloudflareR2Properties;
+import com.buyone.mediaservice.exception.InvalidFileException;
+import com.buyone.mediaservice.service.AsyncStorageService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.Delete;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Error;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * AsyncStorageService on the R2 S3AsyncClient (see CloudflareR2Config for the connection pool).
+ *
+ * - Single PutObject requests from memory: every upload is at most 2MB, far below the
+ *   multipart threshold the blocking client uses for large objects.
+ * - Bulk deletes send all their 1000-key DeleteObjects chunks at once instead of one after the other.
+ */
+@Service
+@Profile("!local-storage")
+@RequiredArgsConstructor
+@Slf4j
+public class R2AsyncStorageService implements AsyncStorageService {
+
+    private static final int MAX_KEYS_PER_DELETE = 1000;
+
+    private final S3AsyncClient r2S3AsyncClient;
+    private final CloudflareR2Properties props;
+
+    @Override
+    public CompletableFuture<Void> put(String key, MultipartFile file, String contentType) {
+        byte[] content;
+        try {
+            content = file.getBytes();
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(new InvalidFileException("Failed to read uploaded file", e));
+        }
+        return put(key, content, contentType);
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String key, byte[] content, String contentType) {
+        return r2S3AsyncClient.putObject(PutObjectRequest.builder()
+                                .bucket(props.getBucket())
+                                .key(key)
+                                .contentType(contentType)
+                                .contentLength((long) content.length)
+                                .build(),
+                        AsyncRequestBody.fromBytes(content))
+                .handle((response, error) -> {
+                    if (error != null) {
+                        // Any AWS/R2 error while putting object → 500 via global handler
+                        throw new RuntimeException("Failed to store file in R2", unwrap(error));
+                    }
+                    return null;
+                });
+    }
+
+    // DeleteObjects takes at most 1000 keys per request; quiet mode returns only the errors
+    @Override
+    public CompletableFuture<List<String>> deleteAll(Collection<String> imagePaths) {
+        List<String> keys = imagePaths.stream().filter(Objects::nonNull).distinct().toList();
+        List<CompletableFuture<List<String>>> chunks = new ArrayList<>();
+        for (int from = 0; from < keys.size(); from += MAX_KEYS_PER_DELETE) {
+            chunks.add(deleteChunk(keys.subList(from, Math.min(from + MAX_KEYS_PER_DELETE, keys.size()))));
+        }
+        return CompletableFuture.allOf(chunks.toArray(CompletableFuture[]::new))
+                .thenApply(done -> chunks.stream()
+                        .flatMap(chunk -> chunk.join().stream())
+                        .toList());
+    }
+
+    private CompletableFuture<List<String>> deleteChunk(List<String> chunk) {
+        return r2S3AsyncClient.deleteObjects(DeleteObjectsRequest.builder()
+                        .bucket(props.getBucket())
+                        .delete(Delete.builder()
+                                .objects(chunk.stream()
+                                        .map(key -> ObjectIdentifier.builder().key(key).build())
+                                        .toList())
+                                .quiet(true)
+                                .build())
+                        .build())
+                .handle((response, error) -> {
+                    if (error != null) {
+                        log.warn("R2 DeleteObjects failed for {} keys: {}", chunk.size(), unwrap(error).getMessage());
+                        return chunk;
+                    }
+                    List<String> failed = new ArrayList<>();
+                    for (S3Error s3Error : response.errors()) {
+                        log.warn("R2 could not delete {}: {} {}", s3Error.key(), s3Error.code(), s3Error.message());
+                        failed.add(s3Error.key());
+                    }
+                    return failed;
+                });
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+}
@@ -4,31 +4,73 @@ import com.buyone.mediaservice.config.CloudflareR2Properties;
 import com.buyone.mediaservice.exception.InvalidFileException;
 import com.buyone.mediaservice.exception.MediaNotFoundException;
 import com.buyone.mediaservice.exception.BadRequestException;
+import com.buyone.mediaservice.exception.RangeNotSatisfiableException;
 import com.buyone.mediaservice.service.StorageService;
-import com.buyone.mediaservice.config.CloudflareR2Properties;
+import com.buyone.mediaservice.service.StoredKey;
+import com.buyone.mediaservice.service.StoredObject;
 import lombok.RequiredArgsConstructor;
-import org.springframework.core.io.InputStreamResource;
-import org.springframework.core.io.Resource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.core.exception.SdkException;
 import software.amazon.awssdk.core.sync.RequestBody;
 import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.Delete;
 import software.amazon.awssdk.services.s3.model.DeleteObjectRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
 import software.amazon.awssdk.services.s3.model.GetObjectRequest;
 import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
 import software.amazon.awssdk.services.s3.model.NoSuchKeyException;
+import software.amazon.awssdk.services.s3.model.ObjectIdentifier;
 import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+import software.amazon.awssdk.services.s3.presigner.model.PutObjectPresignRequest;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 @Service
+@Profile("!local-storage")
 @RequiredArgsConstructor
+@Slf4j
 public class StorageServiceImpl implements StorageService {
     
+    private static final int MAX_KEYS_PER_DELETE = 1000;
+    private static final int MAX_KEYS_PER_LIST = 1000;
+    
+    // Single "bytes=first-last", "bytes=first-" or "bytes=-suffix"; anything else is ignored
+    // and the full object is served, which RFC 9110 allows.
+    private static final Pattern SINGLE_RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+    
     private final S3Client r2S3Client;
     private final CloudflareR2Properties props;
+    private final S3Presigner r2S3Presigner;
     
     @Override
     public String store(MultipartFile file, String mediaId) {
@@ -51,17 +93,29 @@ public class StorageServiceImpl implements StorageService {
             extension = originalFilename.substring(originalFilename.lastIndexOf('.'));
         }
         String key = "media/" + mediaId + extension;
-        
+        put(key, file, file.getContentType());
+        return key;
+    }
+    
+    @Override
+    public void put(String key, MultipartFile file, String contentType) {
         try {
+            if (file.getSize() >= props.getMultipartThreshold()) {
+                multipartUpload(file, key, contentType);
+                return;
+            }
             PutObjectRequest putReq = PutObjectRequest.builder()
                     .bucket(props.getBucket())
                     .key(key)
-                    .contentType(file.getContentType())
+                    .contentType(contentType)
+                    .contentLength(file.getSize())
                     .build();
             
-            r2S3Client.putObject(putReq, RequestBody.fromBytes(file.getBytes()));
-            return key;
-        } catch (IOException e) {
+            // Stream straight from the multipart part (memory or temp file) with a known length,
+            // no intermediate byte[]. The provider reopens the part if the SDK retries.
+            r2S3Client.putObject(putReq, RequestBody.fromContentProvider(
+                    () -> openStream(file), file.getSize(), contentType));
+        } catch (IOException | UncheckedIOException e) {
             throw new InvalidFileException("Failed to read uploaded file", e);
         } catch (Exception e) {
             // Any AWS/R2 error while putting object → 500 via global handler
@@ -70,25 +124,173 @@ public class StorageServiceImpl implements StorageService {
     }
     
     @Override
-    public Resource loadAsResource(String imagePath) {
+    public void put(String key, byte[] content, String contentType) {
+        r2S3Client.putObject(PutObjectRequest.builder()
+                        .bucket(props.getBucket())
+                        .key(key)
+                        .contentType(contentType)
+                        .contentLength((long) content.length)
+                        .build(),
+                RequestBody.fromBytes(content));
+    }
+    
+    // Large objects: one reusable part buffer per upload instead of the whole file
+    private void multipartUpload(MultipartFile file, String key, String contentType) throws IOException {
+        String uploadId = r2S3Client.createMultipartUpload(CreateMultipartUploadRequest.builder()
+                        .bucket(props.getBucket())
+                        .key(key)
+                        .contentType(contentType)
+                        .build())
+                .uploadId();
+        
+        List<CompletedPart> parts = new ArrayList<>();
+        byte[] buffer = new byte[props.getPartSize()];
+        try (InputStream in = file.getInputStream()) {
+            int partNumber = 1;
+            int read;
+            while ((read = in.readNBytes(buffer, 0, buffer.length)) > 0) {
+                int length = read;
+                UploadPartResponse part = r2S3Client.uploadPart(UploadPartRequest.builder()
+                                .bucket(props.getBucket())
+                                .key(key)
+                                .uploadId(uploadId)
+                                .partNumber(partNumber)
+                                .contentLength((long) length)
+                                .build(),
+                        RequestBody.fromContentProvider(
+                                () -> new ByteArrayInputStream(buffer, 0, length), length, contentType));
+                parts.add(CompletedPart.builder().partNumber(partNumber).eTag(part.eTag()).build());
+                partNumber++;
+            }
+            r2S3Client.completeMultipartUpload(CompleteMultipartUploadRequest.builder()
+                    .bucket(props.getBucket())
+                    .key(key)
+                    .uploadId(uploadId)
+                    .multipartUpload(CompletedMultipartUpload.builder().parts(parts).build())
+                    .build());
+        } catch (IOException | RuntimeException e) {
+            r2S3Client.abortMultipartUpload(AbortMultipartUploadRequest.builder()
+                    .bucket(props.getBucket())
+                    .key(key)
+                    .uploadId(uploadId)
+                    .build());
+            throw e;
+        }
+    }
+    
+    private static InputStream openStream(MultipartFile file) {
+        try {
+            return file.getInputStream();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+    
+    @Override
+    public StoredObject load(String imagePath, String range, String ifNoneMatch) {
+        GetObjectRequest.Builder getReq = GetObjectRequest.builder()
+                .bucket(props.getBucket())
+                .key(imagePath);
+        if (isSingleRange(range)) {
+            getReq.range(range.trim());
+        }
+        if (ifNoneMatch != null && !ifNoneMatch.isBlank()) {
+            getReq.ifNoneMatch(ifNoneMatch);
+        }
+        
         try {
-            GetObjectRequest getReq = GetObjectRequest.builder()
+            // Not read here: the controller copies it to the response through a fixed buffer
+            ResponseInputStream<GetObjectResponse> s3Object = r2S3Client.getObject(getReq.build());
+            GetObjectResponse meta = s3Object.response();
+            return new StoredObject(
+                    s3Object,
+                    meta.contentLength() != null ? meta.contentLength() : -1,
+                    meta.contentType(),
+                    meta.eTag(),
+                    meta.contentRange(),
+                    false
+            );
+        } catch (NoSuchKeyException e) {
+            throw new MediaNotFoundException(imagePath);
+        } catch (S3Exception e) {
+            if (e.statusCode() == HttpStatus.NOT_MODIFIED.value()) {
+                // the object's own ETag (If-None-Match may list several, or be *), or none
+                return StoredObject.unchanged(responseHeader(e, HttpHeaders.ETAG));
+            }
+            if (e.statusCode() == HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE.value()) {
+                throw new RangeNotSatisfiableException("Requested range not satisfiable: " + range, sizeOf(imagePath));
+            }
+            throw e;
+        }
+    }
+    
+    private static String responseHeader(S3Exception e, String name) {
+        if (e.awsErrorDetails() == null || e.awsErrorDetails().sdkHttpResponse() == null) {
+            return null;
+        }
+        return e.awsErrorDetails().sdkHttpResponse().firstMatchingHeader(name).orElse(null);
+    }
+    
+    // A 416 from R2 does not say how large the object is; -1 if that can't be found out either
+    private long sizeOf(String imagePath) {
+        try {
+            return head(imagePath).contentLength();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+    
+    private static boolean isSingleRange(String range) {
+        if (range == null) {
+            return false;
+        }
+        Matcher m = SINGLE_RANGE.matcher(range.trim());
+        return m.matches() && !(m.group(1).isEmpty() && m.group(2).isEmpty());
+    }
+    
+    @Override
+    public StoredObject head(String imagePath) {
+        try {
+            HeadObjectResponse meta = r2S3Client.headObject(HeadObjectRequest.builder()
                     .bucket(props.getBucket())
                     .key(imagePath)
-                    .build();
-            
-            ResponseInputStream<GetObjectResponse> s3Object =
-                    r2S3Client.getObject(getReq);
-            
-            byte[] bytes = s3Object.readAllBytes();
-            return new InputStreamResource(new ByteArrayInputStream(bytes));
+                    .build());
+            return new StoredObject(
+                    null,
+                    meta.contentLength() != null ? meta.contentLength() : -1,
+                    meta.contentType(),
+                    meta.eTag(),
+                    null,
+                    false
+            );
         } catch (NoSuchKeyException e) {
             throw new MediaNotFoundException(imagePath);
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to read object from R2", e);
+        } catch (S3Exception e) {
+            // HEAD has no body, older SDKs surface the 404 as a plain S3Exception
+            if (e.statusCode() == HttpStatus.NOT_FOUND.value()) {
+                throw new MediaNotFoundException(imagePath);
+            }
+            throw e;
         }
     }
     
+    // Content-Type and Content-Length are part of the signature: the client must send exactly these
+    @Override
+    public String presignPut(String key, String contentType, long contentLength, Duration ttl) {
+        PutObjectRequest putReq = PutObjectRequest.builder()
+                .bucket(props.getBucket())
+                .key(key)
+                .contentType(contentType)
+                .contentLength(contentLength)
+                .build();
+        return r2S3Presigner.presignPutObject(PutObjectPresignRequest.builder()
+                        .signatureDuration(ttl)
+                        .putObjectRequest(putReq)
+                        .build())
+                .url()
+                .toString();
+    }
+    
     @Override
     public void delete(String imagePath) {
         try {
@@ -102,4 +304,50 @@ public class StorageServiceImpl implements StorageService {
             throw new MediaNotFoundException(imagePath);
         }
     }
+    
+    // DeleteObjects takes at most 1000 keys per request; quiet mode returns only the errors
+    @Override
+    public List<String> deleteAll(Collection<String> imagePaths) {
+        List<String> keys = imagePaths.stream().filter(Objects::nonNull).distinct().toList();
+        List<String> failed = new ArrayList<>();
+        for (int from = 0; from < keys.size(); from += MAX_KEYS_PER_DELETE) {
+            List<String> chunk = keys.subList(from, Math.min(from + MAX_KEYS_PER_DELETE, keys.size()));
+            try {
+                DeleteObjectsResponse response = r2S3Client.deleteObjects(DeleteObjectsRequest.builder()
+                        .bucket(props.getBucket())
+                        .delete(Delete.builder()
+                                .objects(chunk.stream()
+                                        .map(key -> ObjectIdentifier.builder().key(key).build())
+                                        .toList())
+                                .quiet(true)
+                                .build())
+                        .build());
+                for (S3Error error : response.errors()) {
+                    log.warn("R2 could not delete {}: {} {}", error.key(), error.code(), error.message());
+                    failed.add(error.key());
+                }
+            } catch (SdkException e) {
+                log.warn("R2 DeleteObjects failed for {} keys: {}", chunk.size(), e.getMessage());
+                failed.addAll(chunk);
+            }
+        }
+        return failed;
+    }
+    
+    // ListObjectsV2 returns keys in ascending UTF-8 byte order, startAfter continues right after a key
+    @Override
+    public List<StoredKey> list(String prefix, String startAfter, int maxKeys) {
+        ListObjectsV2Request.Builder listReq = ListObjectsV2Request.builder()
+                .bucket(props.getBucket())
+                .prefix(prefix)
+                .maxKeys(Math.min(maxKeys, MAX_KEYS_PER_LIST));
+        if (startAfter != null) {
+            listReq.startAfter(startAfter);
+        }
+        return r2S3Client.listObjectsV2(listReq.build()).contents().stream()
+                .map(object -> new StoredKey(object.key(),
+                        object.size() != null ? object.size() : -1,
+                        object.lastModified()))
+                .toList();
+    }
 }
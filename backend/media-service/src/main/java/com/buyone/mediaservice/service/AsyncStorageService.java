@@ -0,0 +1,26 @@
+package com.buyone.mediaservice.service;
+
+import org.springframework.web.multipart.MultipartFile;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking counterpart of StorageService for multi-object work (gallery batches, variants,
+ * avatar replacement, product cleanup): calls return at once, so many objects are in flight
+ * together without holding a thread each for the round-trip.
+ *
+ * Futures may complete on the storage client's threads; blocking continuations belong on
+ * the caller's own executor.
+ */
+public interface AsyncStorageService {
+
+    // uploads are capped at 2MB, the part is read into memory once
+    CompletableFuture<Void> put(String key, MultipartFile file, String contentType);
+
+    CompletableFuture<Void> put(String key, byte[] content, String contentType);
+
+    // Same contract as StorageService.deleteAll: completes with the keys that could not be deleted, never exceptionally
+    CompletableFuture<List<String>> deleteAll(Collection<String> imagePaths);
+}
@@ -0,0 +1,282 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.exception.InvalidFileException;
+import com.buyone.mediaservice.model.Media;
+import com.buyone.mediaservice.model.StoredBlob;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Content-addressed, reference-counted image blobs on top of StorageService.
+ *
+ * - Uploads are keyed by the SHA-256 of their bytes; a StoredBlob document per digest counts
+ *   the Media pointing at it. A duplicate upload only increments the count, no PUT.
+ * - The count is changed with single-document atomic updates ($inc on an upsert), so
+ *   concurrent uploads / deletes of the same content never need a lock.
+ * - When the last reference goes the document is removed first, then the object. The storage
+ *   key carries a random suffix per incarnation, so a re-upload racing with that delete writes
+ *   a new key instead of one that is about to disappear.
+ *
+ * - The format is sniffed from the leading bytes in the same pass as the digest. It decides the
+ *   key's extension and the stored Content-Type; bytes that are not a supported image never get
+ *   a reference.
+ *
+ * Media without a contentHash (stored before this) still own their object and are deleted directly.
+ */
+@Component
+@Slf4j
+public class BlobStore {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final StorageService storageService;
+    private final AsyncStorageService asyncStorageService;
+    private final ImageDiskCache imageDiskCache;
+    private final MongoTemplate mongoTemplate;
+    private final Counter deduplicated;
+    private final Counter uploaded;
+
+    public BlobStore(StorageService storageService,
+                     AsyncStorageService asyncStorageService,
+                     ImageDiskCache imageDiskCache,
+                     MongoTemplate mongoTemplate,
+                     MeterRegistry meterRegistry) {
+        this.storageService = storageService;
+        this.asyncStorageService = asyncStorageService;
+        this.imageDiskCache = imageDiskCache;
+        this.mongoTemplate = mongoTemplate;
+        this.deduplicated = Counter.builder("media.blobs.uploads").tag("result", "deduplicated").register(meterRegistry);
+        this.uploaded = Counter.builder("media.blobs.uploads").tag("result", "stored").register(meterRegistry);
+    }
+
+    /**
+     * Takes one reference on the blob holding these bytes, storing them if nobody has yet.
+     * The caller owns the reference and must release it if it does not end up in a Media.
+     */
+    public StoredBlob store(MultipartFile file) {
+        StoredBlob blob = reference(file);
+        if (blob.isStored()) {
+            return blob;
+        }
+        // First upload of this content, or a concurrent one still in flight: writing the same
+        // bytes to the same key twice is harmless, and readers never see a missing object.
+        try {
+            storageService.put(blob.getImagePath(), file, blob.getContentType());
+        } catch (RuntimeException e) {
+            release(blob.getDigest(), e);
+            throw e;
+        }
+        return markStored(blob);
+    }
+
+    /**
+     * store() with the PUT left in flight: hashing and the reference are taken on the calling
+     * thread, the future completes once the object is written. A failed upload releases the reference.
+     */
+    public CompletableFuture<StoredBlob> storeAsync(MultipartFile file) {
+        StoredBlob blob = reference(file);
+        if (blob.isStored()) {
+            return CompletableFuture.completedFuture(blob);
+        }
+        return asyncStorageService.put(blob.getImagePath(), file, blob.getContentType())
+                .thenApply(ignored -> markStored(blob))
+                .whenComplete((stored, error) -> {
+                    if (error != null) {
+                        release(blob.getDigest(), error);
+                    }
+                });
+    }
+
+    private StoredBlob reference(MultipartFile file) {
+        Fingerprint fingerprint = fingerprint(file);
+        Update update = new Update()
+                .inc("refCount", 1)
+                .setOnInsert("imagePath", "media/" + fingerprint.digest() + "_" + incarnation() + fingerprint.format().extension())
+                .setOnInsert("contentType", fingerprint.format().mimeType())
+                .setOnInsert("size", file.getSize())
+                .setOnInsert("stored", false)
+                .setOnInsert("createdAt", Instant.now());
+        StoredBlob blob = mongoTemplate.findAndModify(byDigest(fingerprint.digest()), update,
+                FindAndModifyOptions.options().upsert(true).returnNew(true), StoredBlob.class);
+        if (blob.isStored()) {
+            deduplicated.increment();
+        }
+        return blob;
+    }
+
+    private StoredBlob markStored(StoredBlob blob) {
+        mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(blob.getDigest()).and("imagePath").is(blob.getImagePath())),
+                Update.update("stored", true),
+                StoredBlob.class);
+        blob.setStored(true);
+        uploaded.increment();
+        return blob;
+    }
+
+    /** Gives back a reference taken by store() that never made it into a Media document (cause may be null). */
+    public void release(StoredBlob blob, RuntimeException cause) {
+        release(blob.getDigest(), cause);
+    }
+
+    /** Drops the media's reference and deletes the object if it was the last one. */
+    public void release(Media media) {
+        String key = media.getContentHash() == null
+                ? media.getImagePath()
+                : dereference(media.getContentHash(), 1);
+        if (key != null) {
+            storageService.delete(key);
+            imageDiskCache.invalidate(key);
+        }
+    }
+
+    /**
+     * Drops one reference per media, grouped by digest (one atomic update per distinct blob).
+     * Returns the storage keys nothing points at anymore; deleting them is left to the caller.
+     */
+    public List<String> releaseAll(Collection<Media> medias) {
+        List<String> unreferenced = new ArrayList<>();
+        Map<String, Integer> references = new LinkedHashMap<>();
+        for (Media media : medias) {
+            if (media.getContentHash() == null) {
+                unreferenced.add(media.getImagePath());
+            } else {
+                references.merge(media.getContentHash(), 1, Integer::sum);
+            }
+        }
+        references.forEach((digest, count) -> {
+            String key = dereference(digest, count);
+            if (key != null) {
+                unreferenced.add(key);
+            }
+        });
+        return unreferenced;
+    }
+
+    /**
+     * releaseAll() plus the delete of the unreferenced objects, all sent at once.
+     * Completes with the keys that could not be deleted.
+     */
+    public CompletableFuture<List<String>> releaseAllAsync(Collection<Media> medias) {
+        List<String> unreferenced = releaseAll(medias);
+        if (unreferenced.isEmpty()) {
+            return CompletableFuture.completedFuture(List.of());
+        }
+        unreferenced.forEach(imageDiskCache::invalidate);
+        return asyncStorageService.deleteAll(unreferenced);
+    }
+
+    /**
+     * Lowers a leaked count (references taken for Media that were never written) to the number of
+     * Media actually pointing at the blob, only if the count is still the observed one.
+     * A blob left without references is removed like on the last release. False if the count had moved.
+     */
+    public boolean correctReferences(String digest, long observed, long actual) {
+        long corrected = mongoTemplate.updateFirst(
+                Query.query(Criteria.where("_id").is(digest).and("refCount").is(observed)),
+                Update.update("refCount", actual),
+                StoredBlob.class).getModifiedCount();
+        if (corrected == 0) {
+            return false;
+        }
+        if (actual == 0) {
+            StoredBlob removed = mongoTemplate.findAndRemove(
+                    Query.query(Criteria.where("_id").is(digest).and("refCount").lte(0)), StoredBlob.class);
+            if (removed != null) {
+                storageService.delete(removed.getImagePath());
+                imageDiskCache.invalidate(removed.getImagePath());
+            }
+        }
+        return true;
+    }
+
+    private void release(String digest, Throwable cause) {
+        try {
+            String key = dereference(digest, 1);
+            if (key != null) {
+                storageService.delete(key);
+            }
+        } catch (RuntimeException e) {
+            if (cause != null) {
+                cause.addSuppressed(e);
+            }
+            log.error("Failed to release blob {}; it may now be orphaned", digest, e);
+        }
+    }
+
+    // Returns the storage key if this removed the last reference (and the blob document)
+    private String dereference(String digest, int count) {
+        StoredBlob blob = mongoTemplate.findAndModify(byDigest(digest), new Update().inc("refCount", -count),
+                FindAndModifyOptions.options().returnNew(true), StoredBlob.class);
+        if (blob == null || blob.getRefCount() > 0) {
+            return null;
+        }
+        // Conditional: a concurrent store() may have taken a new reference in between
+        StoredBlob removed = mongoTemplate.findAndRemove(
+                Query.query(Criteria.where("_id").is(digest).and("refCount").lte(0)), StoredBlob.class);
+        return removed != null ? removed.getImagePath() : null;
+    }
+
+    private static Query byDigest(String digest) {
+        return Query.query(Criteria.where("_id").is(digest));
+    }
+
+    /** SHA-256 of the bytes and the format their leading bytes announce. */
+    record Fingerprint(String digest, ImageFormat format) {
+    }
+
+    // The whole part is hashed before the PUT: the digest is the key, and it decides whether to upload at all.
+    // The header is copied out of the read buffer as it passes, no second read and no extra buffering.
+    static Fingerprint fingerprint(MultipartFile file) {
+        try (InputStream in = file.getInputStream()) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] buffer = new byte[BUFFER_SIZE];
+            byte[] header = new byte[ImageFormat.HEADER_LENGTH];
+            int headerLength = 0;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                if (headerLength < header.length) {
+                    int n = Math.min(read, header.length - headerLength);
+                    System.arraycopy(buffer, 0, header, headerLength, n);
+                    headerLength += n;
+                }
+                digest.update(buffer, 0, read);
+            }
+            ImageFormat format = ImageFormat.detect(header, headerLength);
+            if (format == null) {
+                throw new InvalidFileException("Unsupported image format, only JPEG, PNG, GIF and WebP are allowed!");
+            }
+            return new Fingerprint(HexFormat.of().formatHex(digest.digest()), format);
+        } catch (IOException e) {
+            throw new InvalidFileException("Failed to read uploaded file", e);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private static String incarnation() {
+        return UUID.randomUUID().toString().substring(0, 8);
+    }
+}
@@ -0,0 +1,125 @@
+package com.buyone.mediaservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Storage keys whose bulk delete failed, retried with exponential backoff.
+ *
+ * - Due keys are drained and sent as one StorageService.deleteAll batch per run.
+ * - After maxAttempts a key is given up on (logged and counted); the object stays orphaned.
+ * - In memory only: pending keys are lost on restart, and the queue is capped so a long
+ *   storage outage cannot grow it without bound.
+ */
+@Component
+@Slf4j
+public class DeleteRetryQueue {
+
+    private static final long MAX_BACKOFF_MS = TimeUnit.MINUTES.toMillis(30);
+
+    private final DelayQueue<Pending> queue = new DelayQueue<>();
+    private final StorageService storageService;
+    private final int maxAttempts;
+    private final long baseDelayMs;
+    private final int capacity;
+
+    private final Counter retried;
+    private final Counter droppedFull;
+    private final Counter givenUp;
+
+    public DeleteRetryQueue(StorageService storageService,
+                            MeterRegistry meterRegistry,
+                            @Value("${app.media.delete-retry.max-attempts:8}") int maxAttempts,
+                            @Value("${app.media.delete-retry.base-delay-ms:5000}") long baseDelayMs,
+                            @Value("${app.media.delete-retry.capacity:100000}") int capacity) {
+        this.storageService = storageService;
+        this.maxAttempts = maxAttempts;
+        this.baseDelayMs = baseDelayMs;
+        this.capacity = capacity;
+        this.retried = Counter.builder("media.delete.retry.attempts").register(meterRegistry);
+        this.droppedFull = Counter.builder("media.delete.retry.dropped")
+                .tag("reason", "queue_full").register(meterRegistry);
+        this.givenUp = Counter.builder("media.delete.retry.dropped")
+                .tag("reason", "max_attempts").register(meterRegistry);
+        Gauge.builder("media.delete.retry.pending", queue, DelayQueue::size).register(meterRegistry);
+    }
+
+    /** Schedules the first retry of keys a bulk delete could not remove. */
+    public void enqueue(Collection<String> keys) {
+        for (String key : keys) {
+            offer(key, 1);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.media.delete-retry.interval-ms:10000}")
+    public void retryDue() {
+        Map<String, Integer> due = new HashMap<>();
+        List<Pending> drained = new ArrayList<>();
+        queue.drainTo(drained);
+        for (Pending pending : drained) {
+            due.merge(pending.key(), pending.attempt(), Math::max);
+        }
+        if (due.isEmpty()) {
+            return;
+        }
+        retried.increment(due.size());
+
+        List<String> failed;
+        try {
+            failed = storageService.deleteAll(due.keySet());
+        } catch (RuntimeException e) {
+            log.warn("Delete retry of {} keys failed: {}", due.size(), e.getMessage());
+            failed = new ArrayList<>(due.keySet());
+        }
+        for (String key : failed) {
+            int attempt = due.getOrDefault(key, 0) + 1;
+            if (attempt > maxAttempts) {
+                givenUp.increment();
+                log.error("Giving up deleting {} after {} attempts", key, maxAttempts);
+            } else {
+                offer(key, attempt);
+            }
+        }
+    }
+
+    public int size() {
+        return queue.size();
+    }
+
+    private void offer(String key, int attempt) {
+        if (queue.size() >= capacity) {
+            droppedFull.increment();
+            log.error("Delete retry queue full, dropping {}", key);
+            return;
+        }
+        // base, 2x base, 4x base ... capped
+        long delayMs = Math.min(MAX_BACKOFF_MS, baseDelayMs << Math.min(attempt - 1, 20));
+        queue.offer(new Pending(key, attempt, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs)));
+    }
+
+    private record Pending(String key, int attempt, long dueAtNanos) implements Delayed {
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(dueAtNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(dueAtNanos, ((Pending) other).dueAtNanos);
+        }
+    }
+}
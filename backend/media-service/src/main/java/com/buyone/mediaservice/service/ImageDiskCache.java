@@ -0,0 +1,321 @@
+package com.buyone.mediaservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Size-bounded LRU cache of image bytes on local disk, keyed by imagePath.
+ *
+ * - The index lives in memory (access-ordered LinkedHashMap); every entry is a file with a
+ *   random name, so an evicted or replaced file never collides with a newer one.
+ * - Misses are filled while the object streams to the client, hits are sent with
+ *   FileChannel.transferTo without copying through a heap buffer.
+ * - invalidate() bumps a generation so a fill that started before it is never committed.
+ *
+ * The directory is wiped on startup; the index is not persisted.
+ */
+@Component
+@Slf4j
+public class ImageDiskCache {
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final String FILE_SUFFIX = ".img";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    public record Entry(Path file, long size, String contentType, String eTag) {}
+
+    /** An entry with its file already open, so a concurrent eviction cannot pull it away mid-response. */
+    public record Hit(Entry entry, FileChannel channel) implements Closeable {
+        @Override
+        public void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.debug("Failed to close cached file {}", entry.file(), e);
+            }
+        }
+    }
+
+    private final Map<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private long currentBytes;   // guarded by this
+    private long generation;     // guarded by this
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long maxBytes;
+    private final long maxEntryBytes;
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter servedBytes;
+    private final Counter evictions;
+
+    public ImageDiskCache(MeterRegistry meterRegistry,
+                          @Value("${app.media.disk-cache.enabled:true}") boolean enabled,
+                          @Value("${app.media.disk-cache.dir:${java.io.tmpdir}/media-cache}") String directory,
+                          @Value("${app.media.disk-cache.max-bytes:536870912}") long maxBytes,
+                          @Value("${app.media.disk-cache.max-entry-bytes:8388608}") long maxEntryBytes) {
+        this.enabled = enabled;
+        this.directory = Paths.get(directory);
+        this.maxBytes = maxBytes;
+        this.maxEntryBytes = maxEntryBytes;
+
+        this.hits = Counter.builder("media.cache.requests").tag("result", "hit")
+                .description("Image file requests answered from the disk cache")
+                .register(meterRegistry);
+        this.misses = Counter.builder("media.cache.requests").tag("result", "miss")
+                .description("Image file requests that went to object storage")
+                .register(meterRegistry);
+        this.servedBytes = Counter.builder("media.cache.served.bytes").baseUnit("bytes")
+                .description("Bytes sent to clients from the disk cache")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("media.cache.evictions")
+                .description("Entries evicted to stay under max-bytes")
+                .register(meterRegistry);
+        Gauge.builder("media.cache.size.bytes", this, ImageDiskCache::sizeBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        Gauge.builder("media.cache.hit.ratio", this, ImageDiskCache::hitRatio)
+                .register(meterRegistry);
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        if (!enabled) {
+            return;
+        }
+        Files.createDirectories(directory);
+        // Leftovers from a previous run are unknown to the in-memory index
+        try (DirectoryStream<Path> stale = Files.newDirectoryStream(directory, "*{" + FILE_SUFFIX + "," + TMP_SUFFIX + "}")) {
+            for (Path file : stale) {
+                deleteQuietly(file);
+            }
+        }
+    }
+
+    /** Looks the key up and opens its file; records a hit or a miss. */
+    public Optional<Hit> open(String key) {
+        if (!enabled || key == null) {
+            return Optional.empty();
+        }
+        Entry entry;
+        synchronized (this) {
+            entry = entries.get(key);
+        }
+        if (entry != null) {
+            try {
+                Hit hit = new Hit(entry, FileChannel.open(entry.file(), StandardOpenOption.READ));
+                hits.increment();
+                return Optional.of(hit);
+            } catch (IOException e) {
+                // file removed under us (eviction / manual cleanup): treat as a miss
+                remove(key, entry);
+            }
+        }
+        misses.increment();
+        return Optional.empty();
+    }
+
+    public boolean accepts(long contentLength) {
+        return enabled && contentLength >= 0 && contentLength <= maxEntryBytes;
+    }
+
+    /**
+     * Streams the object to {@code out} and into a temp file at the same time, then commits the
+     * file as the entry for {@code key}. A failing disk only disables caching for this object,
+     * the client still gets its bytes.
+     */
+    public void fill(String key, StoredObject object, OutputStream out) throws IOException {
+        long startGeneration;
+        synchronized (this) {
+            startGeneration = generation;
+        }
+        Path tmp = directory.resolve(UUID.randomUUID() + TMP_SUFFIX);
+        OutputStream file = openQuietly(tmp);
+        long written = 0;
+        boolean complete = false;
+
+        try (InputStream in = object.content()) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                if (file != null) {
+                    try {
+                        file.write(buffer, 0, read);
+                        written += read;
+                    } catch (IOException e) {
+                        log.warn("Disk cache write failed for {}: {}", key, e.getMessage());
+                        closeQuietly(file);
+                        file = null;
+                    }
+                }
+            }
+            complete = true;
+        } finally {
+            if (file != null) {
+                closeQuietly(file);
+            }
+            if (complete && file != null) {
+                commit(key, tmp, written, object.contentType(), object.eTag(), startGeneration);
+            } else {
+                deleteQuietly(tmp);
+            }
+        }
+    }
+
+    /** Sends [position, position + count) of the cached file and closes the hit. */
+    public void transferTo(Hit hit, long position, long count, OutputStream out) throws IOException {
+        try (hit) {
+            WritableByteChannel target = Channels.newChannel(out);
+            FileChannel channel = hit.channel();
+            long sent = 0;
+            while (sent < count) {
+                long n = channel.transferTo(position + sent, count - sent, target);
+                if (n <= 0) {
+                    break;
+                }
+                sent += n;
+            }
+            servedBytes.increment(sent);
+        }
+    }
+
+    public void invalidate(String key) {
+        if (!enabled || key == null) {
+            return;
+        }
+        Entry removed;
+        synchronized (this) {
+            generation++;
+            removed = entries.remove(key);
+            if (removed != null) {
+                currentBytes -= removed.size();
+            }
+        }
+        if (removed != null) {
+            deleteQuietly(removed.file());
+        }
+    }
+
+    public synchronized long sizeBytes() {
+        return currentBytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    double hitRatio() {
+        double total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private void commit(String key, Path tmp, long size, String contentType, String eTag, long startGeneration) {
+        if (size > maxEntryBytes) {
+            deleteQuietly(tmp);
+            return;
+        }
+        Path target = directory.resolve(UUID.randomUUID() + FILE_SUFFIX);
+        List<Path> obsolete = new ArrayList<>();
+        synchronized (this) {
+            if (generation != startGeneration) {
+                // invalidated while we were reading: these bytes may be stale
+                obsolete.add(tmp);
+            } else {
+                try {
+                    Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException e) {
+                    log.warn("Disk cache commit failed for {}: {}", key, e.getMessage());
+                    obsolete.add(tmp);
+                    target = null;
+                }
+                if (target != null) {
+                    Entry previous = entries.put(key, new Entry(target, size, contentType, eTag));
+                    if (previous != null) {
+                        currentBytes -= previous.size();
+                        obsolete.add(previous.file());
+                    }
+                    currentBytes += size;
+                    evictOverflow(key, obsolete);
+                }
+            }
+        }
+        // Unlinking outside the lock; readers holding the file open keep their bytes on POSIX
+        obsolete.forEach(ImageDiskCache::deleteQuietly);
+    }
+
+    // caller holds the lock; iteration order is least recently used first
+    private void evictOverflow(String keep, List<Path> obsolete) {
+        Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Entry> eldest = it.next();
+            if (eldest.getKey().equals(keep)) {
+                continue;
+            }
+            it.remove();
+            currentBytes -= eldest.getValue().size();
+            obsolete.add(eldest.getValue().file());
+            evictions.increment();
+        }
+    }
+
+    private void remove(String key, Entry expected) {
+        synchronized (this) {
+            if (entries.remove(key, expected)) {
+                currentBytes -= expected.size();
+            }
+        }
+    }
+
+    private OutputStream openQuietly(Path tmp) {
+        try {
+            return Files.newOutputStream(tmp);
+        } catch (IOException e) {
+            log.warn("Disk cache unavailable at {}: {}", directory, e.getMessage());
+            return null;
+        }
+    }
+
+    private static void closeQuietly(OutputStream out) {
+        try {
+            out.close();
+        } catch (IOException e) {
+            log.debug("Failed to close disk cache file", e);
+        }
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("Failed to delete disk cache file {}", file, e);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.buyone.mediaservice.service;
+
+import java.util.Locale;
+
+/**
+ * The image formats we accept, recognised by their leading magic bytes rather than by the
+ * client's Content-Type or file name. HEADER_LENGTH bytes are enough for all of them.
+ */
+public enum ImageFormat {
+
+    JPEG("image/jpeg", ".jpg"),
+    PNG("image/png", ".png"),
+    GIF("image/gif", ".gif"),
+    WEBP("image/webp", ".webp");
+
+    public static final int HEADER_LENGTH = 12;
+
+    private final String mimeType;
+    private final String extension;
+
+    ImageFormat(String mimeType, String extension) {
+        this.mimeType = mimeType;
+        this.extension = extension;
+    }
+
+    public String mimeType() {
+        return mimeType;
+    }
+
+    public String extension() {
+        return extension;
+    }
+
+    /** Format of the first length bytes of header, or null if it is none of ours (or too short to tell). */
+    public static ImageFormat detect(byte[] header, int length) {
+        // FF D8 FF
+        if (length >= 3 && u(header[0]) == 0xFF && u(header[1]) == 0xD8 && u(header[2]) == 0xFF) {
+            return JPEG;
+        }
+        // 89 'P' 'N' 'G' CR LF SUB LF
+        if (length >= 8 && u(header[0]) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G'
+                && header[4] == 0x0D && header[5] == 0x0A && header[6] == 0x1A && header[7] == 0x0A) {
+            return PNG;
+        }
+        // "GIF87a" / "GIF89a"
+        if (length >= 6 && header[0] == 'G' && header[1] == 'I' && header[2] == 'F' && header[3] == '8'
+                && (header[4] == '7' || header[4] == '9') && header[5] == 'a') {
+            return GIF;
+        }
+        // "RIFF" <size> "WEBP"
+        if (length >= 12 && header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F'
+                && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+            return WEBP;
+        }
+        return null;
+    }
+
+    /** The format a MIME type names, or null; "image/jpg" is accepted as a common misspelling. */
+    public static ImageFormat fromMimeType(String mimeType) {
+        if (mimeType == null) {
+            return null;
+        }
+        String normalized = mimeType.toLowerCase(Locale.ROOT);
+        if (normalized.equals("image/jpg")) {
+            return JPEG;
+        }
+        for (ImageFormat format : values()) {
+            if (format.mimeType.equals(normalized)) {
+                return format;
+            }
+        }
+        return null;
+    }
+
+    private static int u(byte b) {
+        return b & 0xFF;
+    }
+}
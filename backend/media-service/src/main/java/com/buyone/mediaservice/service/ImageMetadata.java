@@ -0,0 +1,183 @@
+package com.buyone.mediaservice.service;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Byte-level metadata handling for JPEG and PNG, without decoding any pixels.
+ *
+ * - jpegOrientation reads the EXIF Orientation tag (1..8) from the APP1 segment.
+ * - strip removes metadata segments / chunks losslessly: EXIF and XMP (APP1), Photoshop / IPTC
+ *   (APP13) and comments in JPEG, text / time / EXIF chunks in PNG. Everything else is kept: JFIF,
+ *   the ICC profile (APP2) and Adobe (APP14, the colour transform of CMYK / YCCK and RGB JPEGs)
+ *   change how the pixels are rendered, unknown segments may too. Image data is copied untouched.
+ *
+ * Malformed input is never an error here: parsing stops and the input is returned as is.
+ */
+public final class ImageMetadata {
+
+    public static final int NORMAL_ORIENTATION = 1;
+
+    private static final int JPEG_APP1 = 0xE1;
+    private static final int JPEG_APP13 = 0xED;  // Photoshop IRB / IPTC
+    private static final int JPEG_COM = 0xFE;
+    private static final int JPEG_SOS = 0xDA;
+    private static final int JPEG_EOI = 0xD9;
+    private static final int EXIF_ORIENTATION_TAG = 0x0112;
+    private static final int PNG_SIGNATURE_LENGTH = 8;
+
+    private ImageMetadata() {
+    }
+
+    /** EXIF orientation of a JPEG, NORMAL_ORIENTATION when absent or unreadable. */
+    public static int jpegOrientation(byte[] jpeg) {
+        int i = 2;
+        while (i + 4 <= jpeg.length && u8(jpeg, i) == 0xFF) {
+            int marker = u8(jpeg, i + 1);
+            if (marker == JPEG_SOS || marker == JPEG_EOI) {
+                break;
+            }
+            int end = i + 2 + u16(jpeg, i + 2, true);
+            if (end > jpeg.length) {
+                break;
+            }
+            if (marker == JPEG_APP1 && startsWith(jpeg, i + 4, "Exif\0\0")) {
+                return exifOrientation(jpeg, i + 10, end);
+            }
+            i = end;
+        }
+        return NORMAL_ORIENTATION;
+    }
+
+    /** The image without its metadata; the same array if there was nothing to remove. */
+    public static byte[] strip(byte[] image, ImageFormat format) {
+        return switch (format) {
+            case JPEG -> stripJpeg(image);
+            case PNG -> stripPng(image);
+            default -> image;
+        };
+    }
+
+    private static byte[] stripJpeg(byte[] jpeg) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(jpeg.length);
+        out.write(jpeg, 0, 2); // SOI
+        int i = 2;
+        boolean stripped = false;
+        while (i + 4 <= jpeg.length && u8(jpeg, i) == 0xFF) {
+            int marker = u8(jpeg, i + 1);
+            if (marker == JPEG_SOS || marker == JPEG_EOI) {
+                break;
+            }
+            int end = i + 2 + u16(jpeg, i + 2, true);
+            if (end > jpeg.length) {
+                return jpeg;
+            }
+            if (isJpegMetadata(jpeg, marker, i + 4)) {
+                stripped = true;
+            } else {
+                out.write(jpeg, i, end - i);
+            }
+            i = end;
+        }
+        if (!stripped) {
+            return jpeg;
+        }
+        out.write(jpeg, i, jpeg.length - i); // scan data and everything after it
+        return out.toByteArray();
+    }
+
+    private static boolean isJpegMetadata(byte[] jpeg, int marker, int payload) {
+        if (marker == JPEG_APP1) {
+            return startsWith(jpeg, payload, "Exif\0") || startsWith(jpeg, payload, "http://ns.adobe.com/");
+        }
+        return marker == JPEG_APP13 || marker == JPEG_COM;
+    }
+
+    private static byte[] stripPng(byte[] png) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(png.length);
+        out.write(png, 0, PNG_SIGNATURE_LENGTH);
+        int i = PNG_SIGNATURE_LENGTH;
+        boolean stripped = false;
+        while (i + 12 <= png.length) {
+            long length = u32(png, i, true);
+            if (length > png.length - i - 12) {
+                return png;
+            }
+            int end = i + 12 + (int) length;
+            if (isPngMetadata(png, i + 4)) {
+                stripped = true;
+            } else {
+                out.write(png, i, end - i);
+            }
+            i = end;
+        }
+        if (!stripped) {
+            return png;
+        }
+        out.write(png, i, png.length - i);
+        return out.toByteArray();
+    }
+
+    private static boolean isPngMetadata(byte[] png, int type) {
+        return startsWith(png, type, "tEXt") || startsWith(png, type, "zTXt") || startsWith(png, type, "iTXt")
+                || startsWith(png, type, "eXIf") || startsWith(png, type, "tIME");
+    }
+
+    // TIFF header at tiff: byte order, magic 42, offset of IFD0; the orientation is a SHORT in IFD0
+    private static int exifOrientation(byte[] b, int tiff, int end) {
+        if (tiff + 8 > end) {
+            return NORMAL_ORIENTATION;
+        }
+        boolean bigEndian;
+        if (b[tiff] == 'M' && b[tiff + 1] == 'M') {
+            bigEndian = true;
+        } else if (b[tiff] == 'I' && b[tiff + 1] == 'I') {
+            bigEndian = false;
+        } else {
+            return NORMAL_ORIENTATION;
+        }
+        long ifd = tiff + u32(b, tiff + 4, bigEndian);
+        if (ifd + 2 > end) {
+            return NORMAL_ORIENTATION;
+        }
+        int entries = u16(b, (int) ifd, bigEndian);
+        for (int n = 0; n < entries; n++) {
+            int entry = (int) ifd + 2 + n * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+            if (u16(b, entry, bigEndian) == EXIF_ORIENTATION_TAG) {
+                int value = u16(b, entry + 8, bigEndian);
+                return value >= 1 && value <= 8 ? value : NORMAL_ORIENTATION;
+            }
+        }
+        return NORMAL_ORIENTATION;
+    }
+
+    private static boolean startsWith(byte[] b, int offset, String prefix) {
+        if (offset + prefix.length() > b.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (b[offset + i] != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int u8(byte[] b, int i) {
+        return b[i] & 0xFF;
+    }
+
+    private static int u16(byte[] b, int i, boolean bigEndian) {
+        return bigEndian
+                ? (u8(b, i) << 8) | u8(b, i + 1)
+                : (u8(b, i + 1) << 8) | u8(b, i);
+    }
+
+    private static long u32(byte[] b, int i, boolean bigEndian) {
+        return bigEndian
+                ? ((long) u16(b, i, true) << 16) | u16(b, i + 2, true)
+                : ((long) u16(b, i + 2, false) << 16) | u16(b, i, false);
+    }
+}
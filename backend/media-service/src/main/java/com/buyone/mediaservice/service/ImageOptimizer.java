@@ -0,0 +1,273 @@
+package com.buyone.mediaservice.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Ingest stage run on an upload before it is stored: strips metadata, bakes the EXIF
+ * orientation into the pixels and recompresses within a size budget. The decoded image also
+ * yields the stored dimensions and a BlurHash placeholder.
+ *
+ * - JPEG: the smaller of a lossless metadata strip and a re-encode (longest side capped at
+ *   max-dimension, quality stepped down from jpeg-quality until target-bytes fits). A rotated
+ *   photo is always re-encoded, dropping the tag alone would show it sideways.
+ * - PNG: the smaller of a lossless chunk strip and a re-encode.
+ * - GIF / WebP pass through untouched (animation, no ImageIO writer); GIF is still decoded for
+ *   its dimensions and placeholder.
+ * - Decoding is memory-heavy, so it runs on a small fixed pool. Callers wait for a slot for up
+ *   to max-wait-ms (backpressure on the upload threads); after that the upload is stored as it
+ *   came rather than failed. Any error also falls back to the original bytes.
+ *
+ * Metrics: media.ingest.images{result}, media.ingest.saved (bytes per image), media.ingest.duration.
+ */
+@Component
+@Slf4j
+public class ImageOptimizer {
+
+    private static final float MIN_JPEG_QUALITY = 0.6f;
+    private static final float QUALITY_STEP = 0.1f;
+
+    private final boolean enabled;
+    private final int maxDimension;
+    private final long targetBytes;
+    private final float jpegQuality;
+    private final long maxWaitMs;
+    private final Semaphore slots;
+    private final ThreadPoolExecutor executor;
+
+    private final MeterRegistry meterRegistry;
+    private final DistributionSummary savedBytes;
+    private final Timer duration;
+
+    public ImageOptimizer(MeterRegistry meterRegistry,
+                          @Value("${app.media.ingest.enabled:true}") boolean enabled,
+                          @Value("${app.media.ingest.workers:2}") int workers,
+                          @Value("${app.media.ingest.queue-capacity:16}") int queueCapacity,
+                          @Value("${app.media.ingest.max-wait-ms:2000}") long maxWaitMs,
+                          @Value("${app.media.ingest.max-dimension:2560}") int maxDimension,
+                          @Value("${app.media.ingest.target-bytes:1048576}") long targetBytes,
+                          @Value("${app.media.ingest.jpeg-quality:0.85}") float jpegQuality) {
+        this.meterRegistry = meterRegistry;
+        this.enabled = enabled;
+        this.maxDimension = maxDimension;
+        this.targetBytes = targetBytes;
+        this.jpegQuality = jpegQuality;
+        this.maxWaitMs = maxWaitMs;
+        // one permit per thread and queue slot: a caller holding a permit is never rejected
+        this.slots = new Semaphore(workers + queueCapacity);
+        AtomicInteger threadIds = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)),
+                r -> {
+                    Thread t = new Thread(r, "media-ingest-" + threadIds.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+        this.savedBytes = DistributionSummary.builder("media.ingest.saved")
+                .baseUnit("bytes")
+                .description("Bytes removed from an upload by the ingest stage")
+                .register(meterRegistry);
+        this.duration = Timer.builder("media.ingest.duration").register(meterRegistry);
+    }
+
+    /** The file to store in place of the upload (optimized, or the upload itself) and what is known about it. */
+    public IngestedImage ingest(MultipartFile file) {
+        if (!enabled) {
+            return IngestedImage.unchanged(file);
+        }
+        boolean acquired;
+        try {
+            acquired = slots.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return IngestedImage.unchanged(file);
+        }
+        if (!acquired) {
+            count("busy");
+            return IngestedImage.unchanged(file);
+        }
+        try {
+            Future<IngestedImage> result = executor.submit(() -> process(file));
+            return result.get();
+        } catch (ExecutionException e) {
+            log.warn("Ingest of {} failed, storing it unchanged: {}", file.getOriginalFilename(), e.getCause().toString());
+            count("failed");
+            return IngestedImage.unchanged(file);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return IngestedImage.unchanged(file);
+        } finally {
+            slots.release();
+        }
+    }
+
+    /** ingest() for bytes that reached storage without passing through this service (direct uploads). */
+    public IngestedImage ingest(byte[] content, String filename, String contentType) {
+        return ingest(new OptimizedFile(content, "file", filename, contentType));
+    }
+
+    // package-private so tests can run it synchronously
+    IngestedImage process(MultipartFile file) throws IOException {
+        long start = System.nanoTime();
+        byte[] original = file.getBytes();
+        ImageFormat format = ImageFormat.detect(original, Math.min(original.length, ImageFormat.HEADER_LENGTH));
+        if (format != ImageFormat.JPEG && format != ImageFormat.PNG) {
+            count("skipped");
+            return inspect(file, original);
+        }
+
+        int orientation = format == ImageFormat.JPEG
+                ? ImageMetadata.jpegOrientation(original)
+                : ImageMetadata.NORMAL_ORIENTATION;
+        byte[] best = orientation == ImageMetadata.NORMAL_ORIENTATION ? ImageMetadata.strip(original, format) : null;
+        String result = best != original ? "stripped" : "unchanged";
+        BufferedImage upright = null;
+        BufferedImage scaled = null;
+        try {
+            upright = ImageCodec.orient(ImageCodec.decode(new ByteArrayInputStream(original), ImageCodec.MAX_PIXELS), orientation);
+            scaled = Math.max(upright.getWidth(), upright.getHeight()) > maxDimension
+                    ? ImageCodec.resize(upright, maxDimension)
+                    : upright;
+            byte[] encoded = encode(scaled, format);
+            if (best == null || encoded.length < best.length) {
+                best = encoded;
+                result = "recompressed";
+            }
+        } catch (IOException | RuntimeException e) {
+            if (best == null) {
+                throw e;
+            }
+            log.debug("Re-encoding {} failed, keeping the stripped original: {}", file.getOriginalFilename(), e.getMessage());
+        }
+        duration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        count(result);
+
+        // dimensions of what is stored: only the re-encoded image is scaled
+        BufferedImage stored = "recompressed".equals(result) ? scaled : upright;
+        Integer width = stored != null ? stored.getWidth() : null;
+        Integer height = stored != null ? stored.getHeight() : null;
+        String placeholder = scaled != null ? BlurHash.encode(scaled) : null;
+        if (best == original) {
+            return new IngestedImage(file, width, height, placeholder);
+        }
+        savedBytes.record(Math.max(0, original.length - best.length));
+        return new IngestedImage(new OptimizedFile(best, file.getName(), file.getOriginalFilename(), format.mimeType()),
+                width, height, placeholder);
+    }
+
+    private byte[] encode(BufferedImage image, ImageFormat format) throws IOException {
+        if (format == ImageFormat.PNG) {
+            return ImageCodec.encode(image, true, jpegQuality);
+        }
+        float quality = jpegQuality;
+        byte[] encoded = ImageCodec.encode(image, false, quality);
+        while (encoded.length > targetBytes && quality - QUALITY_STEP >= MIN_JPEG_QUALITY) {
+            quality -= QUALITY_STEP;
+            encoded = ImageCodec.encode(image, false, quality);
+        }
+        return encoded;
+    }
+
+    // Formats stored as they are: decoded (first frame) only for dimensions and placeholder
+    private static IngestedImage inspect(MultipartFile file, byte[] content) {
+        try {
+            BufferedImage image = ImageCodec.decode(new ByteArrayInputStream(content), ImageCodec.MAX_PIXELS);
+            return new IngestedImage(file, image.getWidth(), image.getHeight(), BlurHash.encode(image));
+        } catch (IOException | RuntimeException e) {
+            return IngestedImage.unchanged(file);
+        }
+    }
+
+    private void count(String result) {
+        Counter.builder("media.ingest.images").tag("result", result).register(meterRegistry).increment();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /** Optimized bytes in place of the original upload; small enough (max 2MB) to hold in memory. */
+    static final class OptimizedFile implements MultipartFile {
+
+        private final byte[] content;
+        private final String name;
+        private final String originalFilename;
+        private final String contentType;
+
+        OptimizedFile(byte[] content, String name, String originalFilename, String contentType) {
+            this.content = content;
+            this.name = name;
+            this.originalFilename = originalFilename;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getOriginalFilename() {
+            return originalFilename;
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return content.length == 0;
+        }
+
+        @Override
+        public long getSize() {
+            return content.length;
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return content;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(content);
+        }
+
+        @Override
+        public void transferTo(File dest) throws IOException {
+            transferTo(dest.toPath());
+        }
+
+        @Override
+        public void transferTo(Path dest) throws IOException {
+            Files.write(dest, content);
+        }
+    }
+}
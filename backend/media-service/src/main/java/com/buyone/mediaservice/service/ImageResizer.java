@@ -0,0 +1,411 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.exception.BadRequestException;
+import com.buyone.mediaservice.exception.MediaNotFoundException;
+import com.buyone.mediaservice.exception.ServiceUnavailableException;
+import com.buyone.mediaservice.model.Media;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-demand resizes of an original (GET /media/images/{id}/file?w=&h=&fit=), for layouts the
+ * fixed ImageVariant set doesn't fit.
+ *
+ * - Only sizes from the allow-list are rendered, so the number of derivatives per image is bounded.
+ * - Tiers, each filled from the one below: memory (small byte-bounded LRU), the local disk cache,
+ *   the bucket, and finally a render from the original. Every size is rendered once; its key
+ *   carries the media id and upload timestamp, so a replaced original never serves old renders
+ *   and media sharing one blob never share renders.
+ * - Concurrent requests for the same key wait for the first one instead of rendering again.
+ * - Decoding is memory-heavy, so at most max-concurrent-renders run at once. A request waits
+ *   up to max-wait-ms for a slot, then gets a 503 with Retry-After (nothing to fall back to,
+ *   unlike ingest). Memory, disk and bucket hits never take a slot.
+ * - Rendered keys are recorded on the document (resizedPaths) and removed with the variants.
+ *
+ * Metrics: media.resize.requests{tier=memory|disk|bucket|rendered}, media.resize.render,
+ * media.resize.coalesced, media.resize.rejected.
+ */
+@Component
+@Slf4j
+public class ImageResizer {
+
+    public enum Fit {
+        CONTAIN, // within w x h, aspect ratio kept
+        COVER;   // fills w x h, the overflow is cropped around the centre
+
+        static Fit parse(String value) {
+            if (value == null || value.isBlank()) {
+                return CONTAIN;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new BadRequestException("fit must be contain or cover");
+            }
+        }
+    }
+
+    public record Resized(byte[] content, String contentType, String eTag) {}
+
+    private final StorageService storageService;
+    private final ImageDiskCache imageDiskCache;
+    private final MongoTemplate mongoTemplate;
+    private final int[] allowedSizes;
+    private final float jpegQuality;
+    private final Semaphore renderSlots;
+    private final long maxWaitMs;
+    private final MemoryTier memory;
+    private final Map<String, CompletableFuture<Resized>> inFlight = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+    private final Timer renderTime;
+    private final Counter coalesced;
+    private final Counter rejected;
+
+    public ImageResizer(StorageService storageService,
+                        ImageDiskCache imageDiskCache,
+                        MongoTemplate mongoTemplate,
+                        MeterRegistry meterRegistry,
+                        @Value("${app.media.resize.sizes:64,128,256,320,480,640,800,1024,1280,1600}") int[] allowedSizes,
+                        @Value("${app.media.resize.memory-max-bytes:33554432}") long memoryMaxBytes,
+                        @Value("${app.media.resize.memory-max-entry-bytes:524288}") long memoryMaxEntryBytes,
+                        @Value("${app.media.variants.jpeg-quality:0.8}") float jpegQuality,
+                        @Value("${app.media.resize.max-concurrent-renders:2}") int maxConcurrentRenders,
+                        @Value("${app.media.resize.max-wait-ms:2000}") long maxWaitMs) {
+        this.storageService = storageService;
+        this.imageDiskCache = imageDiskCache;
+        this.mongoTemplate = mongoTemplate;
+        this.allowedSizes = allowedSizes.clone();
+        Arrays.sort(this.allowedSizes);
+        this.jpegQuality = jpegQuality;
+        this.renderSlots = new Semaphore(maxConcurrentRenders);
+        this.maxWaitMs = maxWaitMs;
+        this.memory = new MemoryTier(memoryMaxBytes, memoryMaxEntryBytes);
+        this.meterRegistry = meterRegistry;
+        this.renderTime = Timer.builder("media.resize.render")
+                .description("Time to decode, resize and encode an on-demand size")
+                .register(meterRegistry);
+        this.coalesced = Counter.builder("media.resize.coalesced")
+                .description("Requests that waited for an identical render already in progress")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("media.resize.rejected")
+                .description("Renders refused with 503 after waiting max-wait-ms for a slot")
+                .register(meterRegistry);
+        Gauge.builder("media.resize.memory.bytes", memory, MemoryTier::sizeBytes)
+                .baseUnit("bytes")
+                .register(meterRegistry);
+    }
+
+    /** The original scaled to fit (or cover) width x height; either may be null, not both. */
+    public Resized resize(Media media, Integer width, Integer height, String fitParam) {
+        Fit fit = Fit.parse(fitParam);
+        if (width == null && height == null) {
+            throw new BadRequestException("w or h is required");
+        }
+        if (fit == Fit.COVER && (width == null || height == null)) {
+            throw new BadRequestException("fit=cover needs both w and h");
+        }
+        requireAllowed("w", width);
+        requireAllowed("h", height);
+
+        String key = resizedPath(media, width, height, fit);
+        Resized cached = memory.get(key);
+        if (cached != null) {
+            count("memory");
+            return cached;
+        }
+
+        CompletableFuture<Resized> pending = new CompletableFuture<>();
+        CompletableFuture<Resized> leader = inFlight.putIfAbsent(key, pending);
+        if (leader != null) {
+            coalesced.increment();
+            return await(leader);
+        }
+        try {
+            Resized resized = load(media, key, width, height, fit);
+            pending.complete(resized);
+            return resized;
+        } catch (RuntimeException e) {
+            pending.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, pending);
+        }
+    }
+
+    // media/<mediaId>_r320x0_contain_<uploadedAtMillis>.png (0: unbounded side); per media like the variants
+    static String resizedPath(Media media, Integer width, Integer height, Fit fit) {
+        long version = media.getCreatedAt() != null ? media.getCreatedAt().toEpochMilli() : 0L;
+        return StorageService.KEY_PREFIX + media.getId() + "_r" + (width != null ? width : 0) + "x" + (height != null ? height : 0)
+                + "_" + fit.name().toLowerCase(Locale.ROOT) + "_" + version + (isPng(media) ? ".png" : ".jpg");
+    }
+
+    // Renders keep the original's family: JPEG stays JPEG, everything else (alpha possible) is PNG
+    private static boolean isPng(Media media) {
+        if (media.getContentType() != null) {
+            return !ImageFormat.JPEG.mimeType().equals(media.getContentType());
+        }
+        String path = media.getImagePath().toLowerCase(Locale.ROOT);
+        return !(path.endsWith(".jpg") || path.endsWith(".jpeg"));
+    }
+
+    private Resized load(Media media, String key, Integer width, Integer height, Fit fit) {
+        // a leader that finished between our memory lookup and putIfAbsent
+        Resized cached = memory.get(key);
+        if (cached != null) {
+            count("memory");
+            return cached;
+        }
+
+        Optional<ImageDiskCache.Hit> hit = imageDiskCache.open(key);
+        if (hit.isPresent()) {
+            Resized fromDisk = read(hit.get());
+            if (fromDisk != null) {
+                memory.put(key, fromDisk);
+                count("disk");
+                return fromDisk;
+            }
+        }
+
+        Resized stored = loadStored(key);
+        if (stored != null) {
+            remember(key, stored);
+            count("bucket");
+            return stored;
+        }
+
+        Resized rendered = render(media, key, width, height, fit);
+        count("rendered");
+        if (persist(media, key, rendered)) {
+            remember(key, rendered);
+        }
+        return rendered;
+    }
+
+    private Resized render(Media media, String key, Integer width, Integer height, Fit fit) {
+        acquireRenderSlot();
+        long start = System.nanoTime();
+        try {
+            StoredObject object = storageService.load(media.getImagePath(), null, null);
+            try (InputStream in = object.content()) {
+                BufferedImage original = ImageCodec.decode(in, ImageCodec.MAX_PIXELS);
+                boolean png = isPng(media);
+                byte[] encoded = ImageCodec.encode(scale(original, width, height, fit), png, jpegQuality);
+                return new Resized(encoded, ImageCodec.contentType(png), eTagFor(key));
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to resize " + media.getImagePath(), e);
+            }
+        } finally {
+            renderTime.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            renderSlots.release();
+        }
+    }
+
+    private void acquireRenderSlot() {
+        boolean acquired;
+        try {
+            acquired = renderSlots.tryAcquire(maxWaitMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejected.increment();
+            throw new ServiceUnavailableException("Too many images are being resized, retry shortly");
+        }
+    }
+
+    // Never upscales: a small original is returned at its own size (cover still crops to the ratio)
+    static BufferedImage scale(BufferedImage source, Integer width, Integer height, Fit fit) {
+        int sourceWidth = source.getWidth();
+        int sourceHeight = source.getHeight();
+        double scaleX = width != null ? (double) width / sourceWidth : Double.MAX_VALUE;
+        double scaleY = height != null ? (double) height / sourceHeight : Double.MAX_VALUE;
+        double scale = Math.min(1.0, fit == Fit.COVER ? Math.max(scaleX, scaleY) : Math.min(scaleX, scaleY));
+        BufferedImage scaled = ImageCodec.resize(source,
+                Math.max(1, (int) Math.round(Math.max(sourceWidth, sourceHeight) * scale)));
+        if (fit != Fit.COVER) {
+            return scaled;
+        }
+
+        int cropWidth = Math.min(width, scaled.getWidth());
+        int cropHeight = Math.min(height, scaled.getHeight());
+        if (cropWidth == scaled.getWidth() && cropHeight == scaled.getHeight()) {
+            return scaled;
+        }
+        BufferedImage cropped = new BufferedImage(cropWidth, cropHeight, scaled.getType());
+        Graphics2D g = cropped.createGraphics();
+        try {
+            g.drawImage(scaled, -(scaled.getWidth() - cropWidth) / 2, -(scaled.getHeight() - cropHeight) / 2, null);
+        } finally {
+            g.dispose();
+        }
+        return cropped;
+    }
+
+    // Stores the render and records its key, only while the document still points at the same original
+    private boolean persist(Media media, String key, Resized rendered) {
+        try {
+            storageService.put(key, rendered.content(), rendered.contentType());
+        } catch (RuntimeException e) {
+            log.warn("Failed to store resized image {}: {}", key, e.getMessage());
+            return false;
+        }
+        Query stillCurrent = Query.query(Criteria.where("_id").is(media.getId())
+                .and("imagePath").is(media.getImagePath())
+                .and("createdAt").is(media.getCreatedAt()));
+        if (mongoTemplate.updateFirst(stillCurrent, new Update().addToSet("resizedPaths", key), Media.class)
+                .getMatchedCount() == 0) {
+            // replaced or deleted meanwhile: nothing would ever remove this object
+            storageService.delete(key);
+            return false;
+        }
+        return true;
+    }
+
+    private Resized loadStored(String key) {
+        StoredObject object;
+        try {
+            object = storageService.load(key, null, null);
+        } catch (MediaNotFoundException e) {
+            return null;
+        }
+        try (InputStream in = object.content()) {
+            String contentType = object.contentType() != null ? object.contentType() : ImageCodec.contentType(key.endsWith(".png"));
+            return new Resized(in.readAllBytes(), contentType, eTagFor(key));
+        } catch (IOException e) {
+            log.warn("Failed to read resized image {}, rendering it again: {}", key, e.getMessage());
+            return null;
+        }
+    }
+
+    private Resized read(ImageDiskCache.Hit hit) {
+        try (hit) {
+            ImageDiskCache.Entry entry = hit.entry();
+            ByteBuffer buffer = ByteBuffer.allocate((int) entry.size());
+            while (buffer.hasRemaining() && hit.channel().read(buffer) >= 0) {
+                // keep reading
+            }
+            return buffer.hasRemaining() ? null : new Resized(buffer.array(), entry.contentType(), entry.eTag());
+        } catch (IOException e) {
+            log.debug("Failed to read cached resize {}", hit.entry().file(), e);
+            return null;
+        }
+    }
+
+    private void remember(String key, Resized resized) {
+        memory.put(key, resized);
+        if (!imageDiskCache.accepts(resized.content().length)) {
+            return;
+        }
+        StoredObject object = new StoredObject(new ByteArrayInputStream(resized.content()),
+                resized.content().length, resized.contentType(), resized.eTag(), null, false);
+        try {
+            imageDiskCache.fill(key, object, OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            log.debug("Failed to write resize {} to the disk cache", key, e);
+        }
+    }
+
+    private void requireAllowed(String name, Integer size) {
+        if (size != null && Arrays.binarySearch(allowedSizes, size) < 0) {
+            throw new BadRequestException(name + " must be one of " + Arrays.toString(allowedSizes));
+        }
+    }
+
+    private static Resized await(CompletableFuture<Resized> leader) {
+        try {
+            return leader.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    // The bytes behind a key never change (the key carries the original's version), so the
+    // ETag is derived from the key and is the same on every tier and every instance
+    private static String eTagFor(String key) {
+        return "\"" + UUID.nameUUIDFromBytes(key.getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    private void count(String tier) {
+        Counter.builder("media.resize.requests").tag("tier", tier).register(meterRegistry).increment();
+    }
+
+    /** Byte-bounded LRU for the most requested renders; entries above maxEntryBytes stay on disk only. */
+    static final class MemoryTier {
+
+        private final Map<String, Resized> entries = new LinkedHashMap<>(64, 0.75f, true);
+        private final long maxBytes;
+        private final long maxEntryBytes;
+        private long currentBytes; // guarded by this
+
+        MemoryTier(long maxBytes, long maxEntryBytes) {
+            this.maxBytes = maxBytes;
+            this.maxEntryBytes = maxEntryBytes;
+        }
+
+        synchronized Resized get(String key) {
+            return entries.get(key);
+        }
+
+        synchronized void put(String key, Resized value) {
+            long size = value.content().length;
+            if (size > maxEntryBytes || size > maxBytes) {
+                return;
+            }
+            Resized previous = entries.put(key, value);
+            if (previous != null) {
+                currentBytes -= previous.content().length;
+            }
+            currentBytes += size;
+            // iteration order is least recently used first
+            Iterator<Map.Entry<String, Resized>> it = entries.entrySet().iterator();
+            while (currentBytes > maxBytes && it.hasNext()) {
+                Map.Entry<String, Resized> eldest = it.next();
+                if (eldest.getKey().equals(key)) {
+                    continue;
+                }
+                it.remove();
+                currentBytes -= eldest.getValue().content().length;
+            }
+        }
+
+        synchronized long sizeBytes() {
+            return currentBytes;
+        }
+    }
+}
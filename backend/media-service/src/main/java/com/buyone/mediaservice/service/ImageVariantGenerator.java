@@ -0,0 +1,209 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.model.ImageVariant;
+import com.buyone.mediaservice.model.Media;
+import com.buyone.mediaservice.model.MediaVariant;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the fixed ImageVariant set for an uploaded original, off the request thread.
+ *
+ * - A small fixed pool with a bounded queue: when it is full the job is dropped and the
+ *   media keeps being served from the original, uploads never wait for resizing.
+ * - Variants are cascaded from the largest down, each one resized from the previous while
+ *   the larger ones are still uploading; the document is only updated once all are stored.
+ * - Keys carry the media id (never the possibly shared blob path) and the upload timestamp, and
+ *   the document is only updated if it still points at the same original; otherwise (replaced /
+ *   deleted meanwhile) the new objects are removed.
+ * - Media stored without a decode in the ingest stage (ingest busy or failed) get their
+ *   dimensions and placeholder here, from the same decode.
+ */
+@Component
+@Slf4j
+public class ImageVariantGenerator {
+
+    private final StorageService storageService;
+    private final AsyncStorageService asyncStorageService;
+    private final ImageDiskCache imageDiskCache;
+    private final MongoTemplate mongoTemplate;
+    private final DeleteRetryQueue deleteRetryQueue;
+    private final ThreadPoolExecutor executor;
+    private final float jpegQuality;
+
+    public ImageVariantGenerator(StorageService storageService,
+                                 AsyncStorageService asyncStorageService,
+                                 ImageDiskCache imageDiskCache,
+                                 MongoTemplate mongoTemplate,
+                                 DeleteRetryQueue deleteRetryQueue,
+                                 @Value("${app.media.variants.workers:2}") int workers,
+                                 @Value("${app.media.variants.queue-capacity:100}") int queueCapacity,
+                                 @Value("${app.media.variants.jpeg-quality:0.8}") float jpegQuality) {
+        this.storageService = storageService;
+        this.asyncStorageService = asyncStorageService;
+        this.imageDiskCache = imageDiskCache;
+        this.mongoTemplate = mongoTemplate;
+        this.deleteRetryQueue = deleteRetryQueue;
+        this.jpegQuality = jpegQuality;
+        AtomicInteger threadIds = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "media-variants-" + threadIds.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public void generateAsync(Media media) {
+        if (media.getImagePath() == null) {
+            return;
+        }
+        try {
+            executor.execute(() -> generate(media));
+        } catch (RejectedExecutionException e) {
+            log.warn("Variant queue full, media {} is served from the original only", media.getId());
+        }
+    }
+
+    // package-private so tests can run it synchronously
+    void generate(Media media) {
+        String source = media.getImagePath();
+        List<MediaVariant> variants = new ArrayList<>();
+        List<CompletableFuture<Void>> uploads = new ArrayList<>();
+        Update update = new Update();
+        try {
+            BufferedImage original;
+            StoredObject object = storageService.load(source, null, null);
+            try (InputStream in = object.content()) {
+                original = ImageCodec.decode(in, ImageCodec.MAX_PIXELS);
+            }
+            if (media.getPlaceholder() == null) {
+                update.set("width", original.getWidth())
+                        .set("height", original.getHeight())
+                        .set("placeholder", BlurHash.encode(original));
+            }
+            boolean png = original.getColorModel().hasAlpha();
+            int longestSide = Math.max(original.getWidth(), original.getHeight());
+
+            BufferedImage previous = original;
+            ImageVariant[] sizes = ImageVariant.values();
+            for (int i = sizes.length - 1; i >= 0; i--) {
+                ImageVariant variant = sizes[i];
+                if (variant.getMaxDimension() >= longestSide) {
+                    continue; // would be an upscaled copy of the original
+                }
+                BufferedImage resized = ImageCodec.resize(previous, variant.getMaxDimension());
+                String key = variantPath(media, variant, png);
+                // uploaded while the next, smaller one is resized
+                uploads.add(asyncStorageService.put(key, ImageCodec.encode(resized, png, jpegQuality), ImageCodec.contentType(png)));
+                variants.add(MediaVariant.builder()
+                        .name(variant.getKey())
+                        .width(resized.getWidth())
+                        .height(resized.getHeight())
+                        .imagePath(key)
+                        .build());
+                previous = resized;
+            }
+            CompletableFuture.allOf(uploads.toArray(CompletableFuture[]::new)).join();
+        } catch (IOException | RuntimeException e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            log.warn("Failed to generate variants for media {}: {}", media.getId(), cause.getMessage());
+            // let the uploads still in flight land first, so the delete does not race them
+            CompletableFuture.allOf(uploads.toArray(CompletableFuture[]::new)).handle((done, error) -> null).join();
+            deleteObjects(pathsOf(variants));
+            return;
+        }
+        if (!variants.isEmpty()) {
+            Collections.reverse(variants);
+            update.set("variants", variants);
+        }
+        if (update.getUpdateObject().isEmpty()) {
+            return;
+        }
+
+        Query stillCurrent = Query.query(Criteria.where("_id").is(media.getId())
+                .and("imagePath").is(source)
+                .and("createdAt").is(media.getCreatedAt()));
+        if (mongoTemplate.updateFirst(stillCurrent, update, Media.class)
+                .getMatchedCount() == 0) {
+            deleteObjects(pathsOf(variants));
+        }
+    }
+
+    /** Removes the derivatives of a media (variants and on-demand sizes) from storage and from the disk cache. */
+    public void deleteVariants(Media media) {
+        List<String> keys = new ArrayList<>();
+        if (media.getVariants() != null) {
+            keys.addAll(pathsOf(media.getVariants()));
+        }
+        if (media.getResizedPaths() != null) {
+            keys.addAll(media.getResizedPaths());
+        }
+        deleteObjects(keys);
+    }
+
+    /** Smallest variant whose longer side covers the requested size, else the original. */
+    public static String imagePathFor(Media media, Integer size) {
+        if (size == null || media.getVariants() == null) {
+            return media.getImagePath();
+        }
+        return media.getVariants().stream()
+                .filter(v -> Math.max(v.getWidth(), v.getHeight()) >= size)
+                .min(Comparator.comparingInt(v -> Math.max(v.getWidth(), v.getHeight())))
+                .map(MediaVariant::getImagePath)
+                .orElse(media.getImagePath());
+    }
+
+    // media/<mediaId>_thumb_<uploadedAtMillis>.jpg: keyed by the media, not by its (possibly
+    // shared) blob, so deleting one media never removes variants another one still lists
+    static String variantPath(Media media, ImageVariant variant, boolean png) {
+        long version = media.getCreatedAt() != null ? media.getCreatedAt().toEpochMilli() : 0L;
+        return StorageService.KEY_PREFIX + media.getId() + "_" + variant.getKey() + "_" + version + (png ? ".png" : ".jpg");
+    }
+
+    private static List<String> pathsOf(List<MediaVariant> variants) {
+        return variants.stream().map(MediaVariant::getImagePath).toList();
+    }
+
+    // One bulk delete in the background; keys that could not be deleted are only logged
+    private void deleteObjects(List<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        keys.forEach(imageDiskCache::invalidate);
+        asyncStorageService.deleteAll(keys).thenAccept(failed -> {
+            if (!failed.isEmpty()) {
+                log.warn("{} of {} variants not deleted, queued for retry", failed.size(), keys.size());
+                deleteRetryQueue.enqueue(failed);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
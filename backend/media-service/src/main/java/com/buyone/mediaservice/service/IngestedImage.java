@@ -0,0 +1,14 @@
+package com.buyone.mediaservice.service;
+
+import org.springframework.web.multipart.MultipartFile;
+
+/**
+ * Result of the ingest stage: the file to store, plus what was learned while decoding it.
+ * width, height and placeholder are null when the image was not decoded (busy, unsupported).
+ */
+public record IngestedImage(MultipartFile file, Integer width, Integer height, String placeholder) {
+
+    public static IngestedImage unchanged(MultipartFile file) {
+        return new IngestedImage(file, null, null, null);
+    }
+}
@@ -0,0 +1,148 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.model.MediaOwnerType;
+import com.buyone.mediaservice.model.OwnerImageCount;
+import com.buyone.mediaservice.repository.MediaRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationExpression;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Per-product image quota kept in a counter document, so the cap holds under concurrent
+ * uploads and an upload doesn't need a count query.
+ *
+ * - Slots are reserved before anything is stored: one update that increments count only while
+ *   count + slots <= limit. Filter and $inc are applied atomically to the single document, so
+ *   two uploads can never both take the last slot.
+ * - Failed uploads and deleted images give their slots back (clamped at 0).
+ * - A product's counter is created on first use from a count of its Media, once.
+ * - Pending direct uploads removed by the TTL index keep their slot. When a product looks full
+ *   and its counter hasn't moved for QUIET_PERIOD, it is recounted from Media. Nothing holds a
+ *   reservation that long without its document existing, so the recount can't drop a live one.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MediaQuota {
+
+    static final Duration QUIET_PERIOD = Duration.ofMinutes(2);
+
+    private final MongoTemplate mongoTemplate;
+    private final MediaRepository mediaRepository;
+
+    /** Takes {@code slots} of the owner's quota; false (nothing taken) when they don't fit. */
+    public boolean tryReserve(String ownerId, int slots, int limit) {
+        if (slots > limit) {
+            return false;
+        }
+        if (reserve(ownerId, slots, limit)) {
+            return true;
+        }
+        OwnerImageCount counter = counter(ownerId);
+        if (counter.getCount() + slots <= limit) {
+            return reserve(ownerId, slots, limit); // counter was just created, or freed meanwhile
+        }
+        return recount(counter) && reserve(ownerId, slots, limit);
+    }
+
+    /** Whether {@code slots} would fit right now, without taking them (an early check only). */
+    public boolean hasRoom(String ownerId, int slots, int limit) {
+        OwnerImageCount counter = counter(ownerId);
+        if (counter.getCount() + slots <= limit) {
+            return true;
+        }
+        return recount(counter) && counter(ownerId).getCount() + slots <= limit;
+    }
+
+    public long used(String ownerId) {
+        return counter(ownerId).getCount();
+    }
+
+    /**
+     * Gives slots back after a failed upload or a delete. Never throws: a lost release is healed by the recount.
+     * Callers release only what they actually removed; should the counter still be lower (recounted
+     * meanwhile), it is clamped at 0 rather than left untouched, so no release is dropped.
+     */
+    public void release(String ownerId, int slots) {
+        if (slots <= 0) {
+            return;
+        }
+        // update pipeline: count = max(0, count - slots), in the same single-document write
+        AggregationExpression decremented = context -> new Document("$max",
+                List.of(0, new Document("$subtract", List.of("$count", slots))));
+        try {
+            mongoTemplate.updateFirst(
+                    Query.query(Criteria.where("_id").is(ownerId)),
+                    AggregationUpdate.update().set("count").toValue(decremented).set("updatedAt").toValue(Instant.now()),
+                    OwnerImageCount.class);
+        } catch (RuntimeException e) {
+            log.warn("Failed to release {} quota slot(s) of {}: {}", slots, ownerId, e.getMessage());
+        }
+    }
+
+    /** Drops the counters of owners that are gone (deleted products). */
+    public void forget(Collection<String> ownerIds) {
+        mongoTemplate.remove(Query.query(Criteria.where("_id").in(ownerIds)), OwnerImageCount.class);
+    }
+
+    private boolean reserve(String ownerId, int slots, int limit) {
+        Query fits = Query.query(Criteria.where("_id").is(ownerId).and("count").lte(limit - slots));
+        Update take = new Update().inc("count", slots).set("updatedAt", Instant.now());
+        return mongoTemplate.updateFirst(fits, take, OwnerImageCount.class).getModifiedCount() == 1;
+    }
+
+    // The owner's counter, created from the Media it already has if there is none yet
+    private OwnerImageCount counter(String ownerId) {
+        OwnerImageCount counter = mongoTemplate.findById(ownerId, OwnerImageCount.class);
+        if (counter != null) {
+            return counter;
+        }
+        OwnerImageCount seeded = OwnerImageCount.builder()
+                .ownerId(ownerId)
+                .count(mediaRepository.countByOwnerIdAndOwnerType(ownerId, MediaOwnerType.PRODUCT))
+                .updatedAt(Instant.now())
+                .build();
+        try {
+            return mongoTemplate.insert(seeded);
+        } catch (DuplicateKeyException e) {
+            // created concurrently, theirs counts
+            OwnerImageCount existing = mongoTemplate.findById(ownerId, OwnerImageCount.class);
+            return existing != null ? existing : seeded;
+        }
+    }
+
+    // Corrects a counter that is above its Media count and has been quiet; true if it changed
+    private boolean recount(OwnerImageCount counter) {
+        if (counter.getUpdatedAt() != null && counter.getUpdatedAt().isAfter(Instant.now().minus(QUIET_PERIOD))) {
+            return false;
+        }
+        long actual = mediaRepository.countByOwnerIdAndOwnerType(counter.getOwnerId(), MediaOwnerType.PRODUCT);
+        if (actual >= counter.getCount()) {
+            return false;
+        }
+        // only if nobody reserved or released since it was read
+        Query unchanged = Query.query(Criteria.where("_id").is(counter.getOwnerId())
+                .and("count").is(counter.getCount())
+                .and("updatedAt").is(counter.getUpdatedAt()));
+        boolean corrected = mongoTemplate.updateFirst(unchanged,
+                new Update().set("count", actual).set("updatedAt", Instant.now()), OwnerImageCount.class)
+                .getModifiedCount() == 1;
+        if (corrected) {
+            log.info("Quota of {} recounted: {} -> {}", counter.getOwnerId(), counter.getCount(), actual);
+        }
+        return corrected;
+    }
+}
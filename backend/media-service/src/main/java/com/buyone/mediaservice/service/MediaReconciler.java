@@ -0,0 +1,406 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.listener.ProductEventListener;
+import com.buyone.mediaservice.model.Media;
+import com.buyone.mediaservice.model.MediaOwnerType;
+import com.buyone.mediaservice.model.MediaVariant;
+import com.buyone.mediaservice.model.StoredBlob;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Background clean-up of what failed uploads and lost product.deleted events leave behind.
+ *
+ * - Dangling media: PRODUCT media whose product is gone (product-service answers 404) are removed
+ *   like a product.deleted event would. Owners are paged in ownerId order, one lookup per product.
+ * - Leaked references: blobs whose refCount is above the number of Media with their hash (a
+ *   reference taken for an upload that never got its document). Corrected only when a later run
+ *   sees the same counts again, so an upload or delete in flight is never mistaken for a leak.
+ * - Orphan objects: the listing of the service's own prefix (sorted) is merge-joined page by page against the keys
+ *   referenced in the same key window (blobs, originals, variants, on-demand sizes). Both sides are
+ *   bounded by the page, so memory stays constant however large the bucket is. Expired direct
+ *   uploads end up here once the TTL index has removed their document.
+ *
+ * Nothing younger than min-age is touched (uploads in progress). Deletes and product lookups are
+ * throttled to max-ops-per-second. In dry-run mode the run only reports what it would remove.
+ * Scheduled runs take a lease first, so with several replicas only one of them reconciles.
+ */
+@Component
+@Slf4j
+public class MediaReconciler {
+
+    private static final int SAMPLE_SIZE = 20;
+    private static final int MAX_SUSPECTED_LEAKS = 10_000;
+    static final String LOCK_NAME = "media-reconciler";
+
+    private final StorageService storageService;
+    private final MongoTemplate mongoTemplate;
+    private final BlobStore blobStore;
+    private final ProductDirectory productDirectory;
+    private final ProductEventListener productEventListener;
+    private final DeleteRetryQueue deleteRetryQueue;
+    private final ImageDiskCache imageDiskCache;
+    private final SchedulerLease schedulerLease;
+    private final boolean enabled;
+    private final boolean dryRun;
+    private final int pageSize;
+    private final int maxOpsPerSecond;
+    private final Duration minAge;
+    private final Duration lockAtMostFor;
+    private final Duration lockAtLeastFor;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    // digest -> counts seen by the previous run; a leak is corrected once it is seen unchanged twice
+    private Map<String, Leak> suspectedLeaks = new HashMap<>();
+
+    private final Timer runs;
+    private final Map<String, Counter> found = new HashMap<>();
+    private final Map<String, Counter> removed = new HashMap<>();
+
+    public MediaReconciler(StorageService storageService,
+                           MongoTemplate mongoTemplate,
+                           BlobStore blobStore,
+                           ProductDirectory productDirectory,
+                           ProductEventListener productEventListener,
+                           DeleteRetryQueue deleteRetryQueue,
+                           ImageDiskCache imageDiskCache,
+                           SchedulerLease schedulerLease,
+                           MeterRegistry meterRegistry,
+                           @Value("${app.media.reconciler.enabled:true}") boolean enabled,
+                           @Value("${app.media.reconciler.dry-run:true}") boolean dryRun,
+                           @Value("${app.media.reconciler.page-size:1000}") int pageSize,
+                           @Value("${app.media.reconciler.max-ops-per-second:20}") int maxOpsPerSecond,
+                           @Value("${app.media.reconciler.min-age-minutes:60}") long minAgeMinutes,
+                           @Value("${app.media.reconciler.lock-at-most-minutes:300}") long lockAtMostMinutes,
+                           @Value("${app.media.reconciler.lock-at-least-minutes:30}") long lockAtLeastMinutes) {
+        this.storageService = storageService;
+        this.mongoTemplate = mongoTemplate;
+        this.blobStore = blobStore;
+        this.productDirectory = productDirectory;
+        this.productEventListener = productEventListener;
+        this.deleteRetryQueue = deleteRetryQueue;
+        this.imageDiskCache = imageDiskCache;
+        this.schedulerLease = schedulerLease;
+        this.enabled = enabled;
+        this.dryRun = dryRun;
+        this.pageSize = pageSize;
+        this.maxOpsPerSecond = maxOpsPerSecond;
+        this.minAge = Duration.ofMinutes(minAgeMinutes);
+        this.lockAtMostFor = Duration.ofMinutes(lockAtMostMinutes);
+        this.lockAtLeastFor = Duration.ofMinutes(lockAtLeastMinutes);
+        this.runs = Timer.builder("media.reconcile.run").register(meterRegistry);
+        for (String kind : List.of("dangling_media", "leaked_reference", "orphan_object")) {
+            found.put(kind, Counter.builder("media.reconcile.found").tag("kind", kind).register(meterRegistry));
+            removed.put(kind, Counter.builder("media.reconcile.removed").tag("kind", kind).register(meterRegistry));
+        }
+    }
+
+    /** What one run found; the samples are the first few keys / product ids of each kind. */
+    public record Report(
+            boolean dryRun,
+            long productsGone,
+            long danglingMedia,
+            long leakedBlobs,
+            long correctedBlobs,
+            long scannedObjects,
+            long orphanObjects,
+            long orphanBytes,
+            long deletedObjects,
+            List<String> sampleProducts,
+            List<String> sampleObjects,
+            Duration took
+    ) {
+    }
+
+    @Scheduled(fixedDelayString = "${app.media.reconciler.interval-ms:21600000}",
+            initialDelayString = "${app.media.reconciler.initial-delay-ms:600000}")
+    public void scheduledRun() {
+        if (enabled) {
+            schedulerLease.runExclusively(LOCK_NAME, lockAtMostFor, lockAtLeastFor, () -> run(dryRun));
+        }
+    }
+
+    /** One full pass; null if another run is in progress, or this one failed or was interrupted. */
+    public Report run(boolean dryRun) {
+        if (!running.compareAndSet(false, true)) {
+            log.info("Media reconcile already running, skipped");
+            return null;
+        }
+        Run run = new Run(dryRun, Instant.now().minus(minAge));
+        long started = System.nanoTime();
+        try {
+            sweepProducts(run);
+            sweepReferences(run);
+            sweepObjects(run);
+            Report report = run.report(Duration.ofNanos(System.nanoTime() - started));
+            log.info("Media reconcile{}: {}", dryRun ? " (dry run)" : "", report);
+            return report;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Media reconcile interrupted");
+            return null;
+        } catch (RuntimeException e) {
+            log.error("Media reconcile failed", e);
+            return null;
+        } finally {
+            runs.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+            running.set(false);
+        }
+    }
+
+    // Dangling media: one page of owners at a time, in ownerId order (owner_gallery index)
+    private void sweepProducts(Run run) throws InterruptedException {
+        String after = null;
+        while (true) {
+            Criteria settled = Criteria.where("ownerType").is(MediaOwnerType.PRODUCT)
+                    .and("uploadExpiresAt").is(null)
+                    .and("createdAt").not().gt(run.cutoff);
+            if (after != null) {
+                settled = settled.and("ownerId").gt(after);
+            }
+            Query page = Query.query(settled).with(Sort.by("ownerId")).limit(pageSize);
+            page.fields().include("ownerId");
+            List<String> ownerIds = mongoTemplate.find(page, Media.class).stream()
+                    .map(Media::getOwnerId)
+                    .distinct()
+                    .toList();
+            if (ownerIds.isEmpty()) {
+                return;
+            }
+            List<String> gone = new ArrayList<>();
+            for (String productId : ownerIds) {
+                run.throttle.acquire(1);
+                if (productDirectory.isDeleted(productId)) {
+                    gone.add(productId);
+                }
+            }
+            if (!gone.isEmpty()) {
+                long images = mongoTemplate.count(Query.query(Criteria.where("ownerId").in(gone)
+                        .and("ownerType").is(MediaOwnerType.PRODUCT)), Media.class);
+                run.productsGone += gone.size();
+                run.danglingMedia += images;
+                sample(run.sampleProducts, gone);
+                found.get("dangling_media").increment(images);
+                if (!run.dryRun) {
+                    productEventListener.cleanUp(gone);
+                    removed.get("dangling_media").increment(images);
+                }
+            }
+            after = ownerIds.get(ownerIds.size() - 1);
+        }
+    }
+
+    // Leaked references: blobs in digest order against the Media counted in the same digest window
+    private void sweepReferences(Run run) throws InterruptedException {
+        Map<String, Leak> seen = new HashMap<>();
+        String after = null;
+        while (true) {
+            Query page = new Query();
+            if (after != null) {
+                page.addCriteria(Criteria.where("_id").gt(after));
+            }
+            page.with(Sort.by("_id")).limit(pageSize);
+            List<StoredBlob> blobs = mongoTemplate.find(page, StoredBlob.class);
+            if (blobs.isEmpty()) {
+                break;
+            }
+            Map<String, Long> references = referenceCounts(blobs.get(0).getDigest(), blobs.get(blobs.size() - 1).getDigest());
+            for (StoredBlob blob : blobs) {
+                long actual = references.getOrDefault(blob.getDigest(), 0L);
+                boolean settled = blob.getCreatedAt() == null || blob.getCreatedAt().isBefore(run.cutoff);
+                if (actual >= blob.getRefCount() || !settled) {
+                    continue;
+                }
+                Leak leak = new Leak(blob.getRefCount(), actual);
+                run.leakedBlobs++;
+                found.get("leaked_reference").increment();
+                if (leak.equals(suspectedLeaks.get(blob.getDigest())) && !run.dryRun) {
+                    run.throttle.acquire(1);
+                    if (blobStore.correctReferences(blob.getDigest(), leak.refCount(), leak.actual())) {
+                        run.correctedBlobs++;
+                        removed.get("leaked_reference").increment();
+                    }
+                } else if (seen.size() < MAX_SUSPECTED_LEAKS) {
+                    seen.put(blob.getDigest(), leak);
+                }
+            }
+            after = blobs.get(blobs.size() - 1).getDigest();
+        }
+        suspectedLeaks = seen;
+    }
+
+    private Map<String, Long> referenceCounts(String firstDigest, String lastDigest) {
+        Query inWindow = Query.query(Criteria.where("contentHash").gte(firstDigest).lte(lastDigest));
+        inWindow.fields().include("contentHash");
+        Map<String, Long> counts = new HashMap<>();
+        try (Stream<Media> medias = mongoTemplate.stream(inWindow, Media.class)) {
+            medias.forEach(media -> counts.merge(media.getContentHash(), 1L, Long::sum));
+        }
+        return counts;
+    }
+
+    // Orphan objects: each listing page merge-joined with the referenced keys of its key window
+    private void sweepObjects(Run run) throws InterruptedException {
+        String after = null;
+        while (true) {
+            List<StoredKey> page = storageService.list(StorageService.KEY_PREFIX, after, pageSize);
+            if (page.isEmpty()) {
+                return;
+            }
+            String first = page.get(0).key();
+            String last = page.get(page.size() - 1).key();
+            Iterator<String> referenced = referencedKeys(first, last).iterator();
+            String reference = referenced.hasNext() ? referenced.next() : null;
+            List<String> orphans = new ArrayList<>();
+            for (StoredKey object : page) {
+                while (reference != null && reference.compareTo(object.key()) < 0) {
+                    reference = referenced.hasNext() ? referenced.next() : null;
+                }
+                run.scannedObjects++;
+                boolean settled = object.lastModified() == null || object.lastModified().isBefore(run.cutoff);
+                if (object.key().equals(reference) || !settled) {
+                    continue;
+                }
+                run.orphanObjects++;
+                run.orphanBytes += Math.max(object.size(), 0);
+                found.get("orphan_object").increment();
+                orphans.add(object.key());
+            }
+            sample(run.sampleObjects, orphans);
+            deleteObjects(run, orphans);
+            after = last;
+        }
+    }
+
+    // Every key in [first, last] something still points at, in key order
+    private NavigableSet<String> referencedKeys(String first, String last) {
+        NavigableSet<String> keys = new TreeSet<>();
+
+        Query blobs = Query.query(Criteria.where("imagePath").gte(first).lte(last));
+        blobs.fields().include("imagePath");
+        try (Stream<StoredBlob> stream = mongoTemplate.stream(blobs, StoredBlob.class)) {
+            stream.forEach(blob -> keys.add(blob.getImagePath()));
+        }
+
+        Query medias = Query.query(new Criteria().orOperator(
+                Criteria.where("imagePath").gte(first).lte(last),
+                Criteria.where("variants").elemMatch(Criteria.where("imagePath").gte(first).lte(last)),
+                Criteria.where("resizedPaths").elemMatch(new Criteria().gte(first).lte(last))));
+        medias.fields().include("imagePath", "variants.imagePath", "resizedPaths");
+        try (Stream<Media> stream = mongoTemplate.stream(medias, Media.class)) {
+            stream.forEach(media -> {
+                keys.add(media.getImagePath());
+                if (media.getVariants() != null) {
+                    media.getVariants().stream().map(MediaVariant::getImagePath).forEach(keys::add);
+                }
+                if (media.getResizedPaths() != null) {
+                    keys.addAll(media.getResizedPaths());
+                }
+            });
+        }
+        keys.remove(null);
+        return keys.subSet(first, true, last, true);
+    }
+
+    private void deleteObjects(Run run, List<String> orphans) throws InterruptedException {
+        if (run.dryRun || orphans.isEmpty()) {
+            return;
+        }
+        // Last guard: whatever the listing returned, nothing outside the service's own prefix is deleted
+        List<String> keys = orphans.stream().filter(key -> key.startsWith(StorageService.KEY_PREFIX)).toList();
+        if (keys.size() < orphans.size()) {
+            log.warn("Media reconcile: {} key(s) outside {} not deleted", orphans.size() - keys.size(), StorageService.KEY_PREFIX);
+        }
+        for (int from = 0; from < keys.size(); from += maxOpsPerSecond) {
+            List<String> batch = keys.subList(from, Math.min(from + maxOpsPerSecond, keys.size()));
+            run.throttle.acquire(batch.size());
+            batch.forEach(imageDiskCache::invalidate);
+            List<String> failed = storageService.deleteAll(batch);
+            if (!failed.isEmpty()) {
+                deleteRetryQueue.enqueue(failed);
+            }
+            run.deletedObjects += batch.size() - failed.size();
+            removed.get("orphan_object").increment(batch.size() - failed.size());
+        }
+    }
+
+    private static void sample(List<String> sample, List<String> items) {
+        for (String item : items) {
+            if (sample.size() >= SAMPLE_SIZE) {
+                return;
+            }
+            sample.add(item);
+        }
+    }
+
+    private record Leak(long refCount, long actual) {
+    }
+
+    // State of one pass
+    private final class Run {
+        final boolean dryRun;
+        final Instant cutoff;
+        final Throttle throttle = new Throttle(maxOpsPerSecond);
+        final List<String> sampleProducts = new ArrayList<>();
+        final List<String> sampleObjects = new ArrayList<>();
+        long productsGone;
+        long danglingMedia;
+        long leakedBlobs;
+        long correctedBlobs;
+        long scannedObjects;
+        long orphanObjects;
+        long orphanBytes;
+        long deletedObjects;
+
+        Run(boolean dryRun, Instant cutoff) {
+            this.dryRun = dryRun;
+            this.cutoff = cutoff;
+        }
+
+        Report report(Duration took) {
+            return new Report(dryRun, productsGone, danglingMedia, leakedBlobs, correctedBlobs,
+                    scannedObjects, orphanObjects, orphanBytes, deletedObjects,
+                    List.copyOf(sampleProducts), List.copyOf(sampleObjects), took);
+        }
+    }
+
+    // At most opsPerSecond operations per second, averaged over the run
+    private static final class Throttle {
+        private final long nanosPerOp;
+        private long next = System.nanoTime();
+
+        Throttle(int opsPerSecond) {
+            this.nanosPerOp = TimeUnit.SECONDS.toNanos(1) / Math.max(opsPerSecond, 1);
+        }
+
+        void acquire(int ops) throws InterruptedException {
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            next = Math.max(next, System.nanoTime()) + ops * nanosPerOp;
+        }
+    }
+}
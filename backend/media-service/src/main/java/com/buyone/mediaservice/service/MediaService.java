@@ -2,11 +2,14 @@ package com.buyone.mediaservice.service;
 
 import com.buyone.mediaservice.model.Media;
 import com.buyone.mediaservice.model.MediaOwnerType;
+import com.buyone.mediaservice.response.BatchUploadResponse;
 import com.buyone.mediaservice.response.MediaResponse;
 import com.buyone.mediaservice.response.MediaListResponse;
+import com.buyone.mediaservice.response.PresignedUploadResponse;
 import com.buyone.mediaservice.response.DeleteMediaResponse;
 import org.springframework.web.multipart.MultipartFile;
 import java.util.List;
+import java.util.Map;
 
 public interface MediaService {
     MediaResponse uploadImage(MultipartFile file,
@@ -15,6 +18,31 @@ public interface MediaService {
                               String currentUserId,
                               String currentUserRole);
     
+    // Role / ownership rules and product quota of uploadImage, for flows that receive the bytes later
+    void checkUploadAllowed(String ownerId,
+                            MediaOwnerType ownerType,
+                            String currentUserId,
+                            String currentUserRole);
+    
+    // Product gallery: one quota check, parallel storage, one bulk insert, per-file results
+    BatchUploadResponse uploadProductImages(List<MultipartFile> files,
+                                            String productId,
+                                            String currentUserId,
+                                            String currentUserRole);
+    
+    // Direct upload, step 1: checks like uploadImage, reserves a Media id and returns a presigned PUT
+    PresignedUploadResponse createUpload(String ownerId,
+                                         MediaOwnerType ownerType,
+                                         String contentType,
+                                         long contentLength,
+                                         String currentUserId,
+                                         String currentUserRole);
+    
+    // Direct upload, step 2: verifies the uploaded object, runs it through ingest and makes the Media visible
+    MediaResponse completeUpload(String mediaId,
+                                 String currentUserId,
+                                 String currentUserRole);
+    
     MediaResponse getMedia(String id);
     
     MediaResponse updateMedia(MultipartFile file,
@@ -28,6 +56,10 @@ public interface MediaService {
     
     List<MediaResponse> mediaListForProduct(String productId);
     
+    // Galleries of many products in one query, keyed by product id in request order;
+    // products without images map to an empty list
+    Map<String, List<MediaResponse>> mediaListForProducts(List<String> productIds);
+    
     // calling from storage to media
     Media findMediaEntity(String id);
 }
@@ -0,0 +1,38 @@
+package com.buyone.mediaservice.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Asks product-service whether a product still exists, for media whose product.deleted event was lost.
+ * Only a 404 counts as deleted: timeouts and other errors leave the product's images alone.
+ */
+@Component
+@Slf4j
+public class ProductDirectory {
+
+    private final RestTemplate productServiceRestTemplate;
+    private final String baseUrl;
+
+    public ProductDirectory(RestTemplate productServiceRestTemplate,
+                            @Value("${app.product-service.url:http://product-service}") String baseUrl) {
+        this.productServiceRestTemplate = productServiceRestTemplate;
+        this.baseUrl = baseUrl;
+    }
+
+    public boolean isDeleted(String productId) {
+        try {
+            productServiceRestTemplate.headForHeaders(baseUrl + "/products/{id}", productId);
+            return false;
+        } catch (HttpClientErrorException.NotFound e) {
+            return true;
+        } catch (RestClientException e) {
+            log.warn("Could not check product {}: {}", productId, e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.exception.RangeNotSatisfiableException;
+import org.springframework.http.HttpRange;
+
+import java.util.List;
+
+/**
+ * Range / If-None-Match evaluation for objects whose bytes are served locally
+ * (disk cache, filesystem storage). Remote storage evaluates them itself.
+ */
+public final class RangeRequests {
+    
+    private RangeRequests() {
+    }
+    
+    /** Inclusive byte span of a single-range request; null means serve the full body. */
+    public record Span(long start, long end, long total) {
+        public long length() {
+            return end - start + 1;
+        }
+        
+        public String contentRange() {
+            return "bytes " + start + "-" + end + "/" + total;
+        }
+    }
+    
+    // Malformed and multi-range headers are ignored (full body), as RFC 9110 allows.
+    public static Span resolve(String range, long length) {
+        if (range == null) {
+            return null;
+        }
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (ranges.size() != 1) {
+            return null;
+        }
+        try {
+            return new Span(ranges.get(0).getRangeStart(length), ranges.get(0).getRangeEnd(length), length);
+        } catch (IllegalArgumentException e) {
+            throw new RangeNotSatisfiableException("Requested range not satisfiable: " + range, length);
+        }
+    }
+    
+    public static boolean eTagMatches(String ifNoneMatch, String eTag) {
+        if (ifNoneMatch == null || eTag == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
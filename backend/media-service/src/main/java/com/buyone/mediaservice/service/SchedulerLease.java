@@ -0,0 +1,78 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.model.SchedulerLock;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Runs a scheduled job on one replica at a time, through a lease document per job name.
+ *
+ * - Taking the lease is one upsert filtered on an expired lockedUntil: if another replica holds
+ *   it the filter misses and the insert of the same _id fails with a duplicate key.
+ * - lockAtMostFor bounds how long a crashed holder blocks the others.
+ * - lockAtLeastFor keeps the lease after a short run, so replicas whose timers fire a little
+ *   later skip this round instead of repeating it.
+ */
+@Component
+@Slf4j
+public class SchedulerLease {
+    
+    private final MongoTemplate mongoTemplate;
+    private final String instanceId = UUID.randomUUID().toString();
+    
+    public SchedulerLease(MongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+    
+    /** Runs the task if this replica got the lease; false if another one holds it. */
+    public boolean runExclusively(String name, Duration lockAtMostFor, Duration lockAtLeastFor, Runnable task) {
+        Instant now = Instant.now();
+        if (!tryAcquire(name, now, now.plus(lockAtMostFor))) {
+            log.debug("Scheduler lock {} held by another instance, skipped", name);
+            return false;
+        }
+        try {
+            task.run();
+        } finally {
+            release(name, now.plus(lockAtLeastFor));
+        }
+        return true;
+    }
+    
+    private boolean tryAcquire(String name, Instant now, Instant until) {
+        try {
+            mongoTemplate.upsert(
+                    Query.query(Criteria.where("_id").is(name).and("lockedUntil").lte(now)),
+                    new Update().set("lockedBy", instanceId).set("lockedAt", now).set("lockedUntil", until),
+                    SchedulerLock.class);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+    
+    // Only our own lease, and only ever shortened (a run longer than lockAtLeastFor ends it now)
+    private void release(String name, Instant notBefore) {
+        Instant now = Instant.now();
+        Instant until = now.isAfter(notBefore) ? now : notBefore;
+        try {
+            mongoTemplate.updateFirst(
+                    Query.query(Criteria.where("_id").is(name).and("lockedBy").is(instanceId)
+                            .and("lockedUntil").gt(until)),
+                    Update.update("lockedUntil", until),
+                    SchedulerLock.class);
+        } catch (RuntimeException e) {
+            // the lease still expires on its own after lockAtMostFor
+            log.warn("Failed to release scheduler lock {}", name, e);
+        }
+    }
+}
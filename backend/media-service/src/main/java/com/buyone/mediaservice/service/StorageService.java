@@ -1,13 +1,43 @@
 package com.buyone.mediaservice.service;
 
-import org.springframework.core.io.Resource;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+
 public interface StorageService {
     
+    // Every object this service writes lives under this prefix; the bucket may hold other data
+    String KEY_PREFIX = "media/";
+    
+    // Direct uploads land here and are never served: a client can re-PUT until its URL expires,
+    // so completion copies the checked bytes to a content-addressed key and drops the upload
+    String STAGING_PREFIX = KEY_PREFIX + "uploads/";
+    
     String store(MultipartFile file, String mediaId);
     
-    Resource loadAsResource(String imagePath);
+    // streams an uploaded file to a caller-chosen key (no validation, see store);
+    // contentType is what the caller determined, not necessarily the client's claim
+    void put(String key, MultipartFile file, String contentType);
+    
+    // small generated objects (derivatives) that are already in memory
+    void put(String key, byte[] content, String contentType);
+    
+    // range: a single "bytes=..." range or null; ifNoneMatch: client ETag(s) or null
+    StoredObject load(String imagePath, String range, String ifNoneMatch);
+    
+    // metadata only (content is null); MediaNotFoundException if the key does not exist
+    StoredObject head(String imagePath);
+    
+    // URL a client can PUT exactly this content type and length to, without going through us
+    String presignPut(String key, String contentType, long contentLength, Duration ttl);
     
     void delete(String imagePath);
+    
+    // Batched delete; never throws for individual keys, returns the ones that could not be deleted
+    List<String> deleteAll(Collection<String> imagePaths);
+    
+    // One page of the keys starting with prefix, in ascending order: keys after startAfter (null = from the first), at most maxKeys
+    List<StoredKey> list(String prefix, String startAfter, int maxKeys);
 }
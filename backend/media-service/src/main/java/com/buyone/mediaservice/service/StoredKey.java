@@ -0,0 +1,11 @@
+package com.buyone.mediaservice.service;
+
+import java.time.Instant;
+
+/** One entry of a storage listing. */
+public record StoredKey(
+        String key,
+        long size,
+        Instant lastModified
+) {
+}
@@ -0,0 +1,24 @@
+package com.buyone.mediaservice.service;
+
+import java.io.InputStream;
+
+/**
+ * An object (or byte range of it) opened for streaming from storage.
+ * The caller owns {@code content} and must close it; it is null when {@code notModified}.
+ */
+public record StoredObject(
+        InputStream content,
+        long contentLength,   // bytes in this response (the range length for partial content)
+        String contentType,
+        String eTag,
+        String contentRange,  // e.g. "bytes 0-1023/52311", null for the full object
+        boolean notModified   // If-None-Match matched, nothing to send
+) {
+    public static StoredObject unchanged(String eTag) {
+        return new StoredObject(null, 0, null, eTag, null, true);
+    }
+    
+    public boolean partial() {
+        return contentRange != null;
+    }
+}
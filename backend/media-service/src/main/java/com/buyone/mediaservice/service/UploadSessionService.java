@@ -0,0 +1,387 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.exception.BadRequestException;
+import com.buyone.mediaservice.exception.ConflictException;
+import com.buyone.mediaservice.exception.ForbiddenException;
+import com.buyone.mediaservice.exception.InvalidFileException;
+import com.buyone.mediaservice.exception.MediaNotFoundException;
+import com.buyone.mediaservice.model.MediaOwnerType;
+import com.buyone.mediaservice.response.MediaResponse;
+import com.buyone.mediaservice.response.UploadSessionResponse;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Resumable uploads: create a session, PUT numbered fixed-size chunks in any order and as
+ * often as needed, ask how far the contiguous prefix got, then complete.
+ *
+ * - Chunks are staged on local disk (one directory per session, one file per chunk, written to a
+ *   temp file and renamed so a dropped connection never leaves a half chunk behind).
+ * - Completing concatenates the chunk files with FileChannel.transferTo and hands the result to
+ *   MediaService.uploadImage, so validation, quota, dedup and variants stay in one place.
+ * - Session metadata is a small properties file next to the chunks, so sessions survive a restart.
+ *   Sessions are local to the instance: clients must reach the same instance (sticky routing),
+ *   or the staging directory must be shared.
+ * - Directories untouched for longer than the TTL are removed by a scheduled sweep.
+ */
+@Component
+@Slf4j
+public class UploadSessionService {
+
+    private static final long MAX_FILE_SIZE_BYTES = 2L * 1024 * 1024;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final String META_FILE = "session.properties";
+    private static final String PART_SUFFIX = ".part";
+    private static final String ASSEMBLED_FILE = "assembled.bin";
+    private static final Pattern SESSION_ID = Pattern.compile("[0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12}");
+
+    public record Session(String id,
+                          String ownerId,
+                          MediaOwnerType ownerType,
+                          String userId,
+                          String contentType,
+                          String filename,
+                          long totalSize,
+                          int chunkSize) {
+
+        public int chunkCount() {
+            return (int) ((totalSize + chunkSize - 1) / chunkSize);
+        }
+
+        long chunkLength(int index) {
+            return Math.min(chunkSize, totalSize - (long) index * chunkSize);
+        }
+    }
+
+    private final MediaService mediaService;
+    private final Path root;
+    private final int chunkSize;
+    private final Duration ttl;
+    private final int maxSessions;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Set<String> completing = ConcurrentHashMap.newKeySet();
+
+    public UploadSessionService(MediaService mediaService,
+                                @Value("${app.media.upload-sessions.dir:${java.io.tmpdir}/media-upload-sessions}") String dir,
+                                @Value("${app.media.upload-sessions.chunk-size:262144}") int chunkSize,
+                                @Value("${app.media.upload-sessions.ttl-minutes:1440}") long ttlMinutes,
+                                @Value("${app.media.upload-sessions.max-sessions:1000}") int maxSessions) {
+        this.mediaService = mediaService;
+        this.root = Paths.get(dir).toAbsolutePath().normalize();
+        this.chunkSize = chunkSize;
+        this.ttl = Duration.ofMinutes(ttlMinutes);
+        this.maxSessions = maxSessions;
+    }
+
+    @PostConstruct
+    void init() throws IOException {
+        Files.createDirectories(root);
+    }
+
+    public UploadSessionResponse create(String ownerId,
+                                        MediaOwnerType ownerType,
+                                        String contentType,
+                                        String filename,
+                                        long totalSize,
+                                        String currentUserId,
+                                        String currentUserRole) {
+        if (totalSize <= 0 || totalSize > MAX_FILE_SIZE_BYTES) {
+            throw new InvalidFileException("File exceeds 2MB size limit!");
+        }
+        if (contentType == null || !contentType.startsWith("image/")) {
+            throw new InvalidFileException("Only image files are allowed!");
+        }
+        // fail before any byte is sent; checked again on completion
+        mediaService.checkUploadAllowed(ownerId, ownerType, currentUserId, currentUserRole);
+        if (countSessionDirs() >= maxSessions) {
+            throw new ConflictException("Too many uploads in progress, try again later.");
+        }
+
+        Session session = new Session(UUID.randomUUID().toString(), ownerId, ownerType, currentUserId,
+                contentType, filename, totalSize, chunkSize);
+        try {
+            Path dir = Files.createDirectories(dirOf(session.id()));
+            writeMetadata(dir, session);
+        } catch (IOException e) {
+            deleteSessionFiles(session.id());
+            throw new UncheckedIOException("Failed to create upload session", e);
+        }
+        sessions.put(session.id(), session);
+        return status(session);
+    }
+
+    /** Stores one chunk; re-sending a chunk replaces it. The body must be exactly the chunk's length. */
+    public UploadSessionResponse writeChunk(String sessionId, int index, InputStream body, String currentUserId) {
+        Session session = require(sessionId, currentUserId);
+        if (index < 0 || index >= session.chunkCount()) {
+            throw new BadRequestException("Chunk index must be between 0 and " + (session.chunkCount() - 1));
+        }
+        long expected = session.chunkLength(index);
+        Path dir = dirOf(sessionId);
+        Path tmp = dir.resolve(index + "." + UUID.randomUUID() + ".tmp");
+        try {
+            long received;
+            try (OutputStream out = Files.newOutputStream(tmp, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                received = copyAtMost(body, out, expected + 1);
+            }
+            if (received != expected) {
+                Files.deleteIfExists(tmp);
+                throw new BadRequestException("Chunk " + index + " must be " + expected + " bytes, got "
+                        + (received > expected ? "more" : String.valueOf(received)));
+            }
+            Files.move(tmp, partOf(sessionId, index), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            deleteQuietly(tmp);
+            throw new UncheckedIOException("Failed to store chunk " + index, e);
+        }
+        return status(session);
+    }
+
+    public UploadSessionResponse status(String sessionId, String currentUserId) {
+        return status(require(sessionId, currentUserId));
+    }
+
+    /** Assembles the chunks and runs the regular upload; the session is gone once this returns. */
+    public MediaResponse complete(String sessionId, String currentUserId, String currentUserRole) {
+        Session session = require(sessionId, currentUserId);
+        if (!completing.add(sessionId)) {
+            throw new ConflictException("Upload session " + sessionId + " is already being completed.");
+        }
+        try {
+            int missing = contiguousChunks(session);
+            if (missing < session.chunkCount()) {
+                throw new BadRequestException("Chunk " + missing + " has not been received yet.");
+            }
+            Path assembled = dirOf(sessionId).resolve(ASSEMBLED_FILE);
+            try (FileChannel out = FileChannel.open(assembled, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                for (int i = 0; i < session.chunkCount(); i++) {
+                    try (FileChannel in = FileChannel.open(partOf(sessionId, i), StandardOpenOption.READ)) {
+                        long position = 0;
+                        long size = in.size();
+                        while (position < size) {
+                            position += in.transferTo(position, size - position, out);
+                        }
+                    }
+                }
+            }
+            MediaResponse media = mediaService.uploadImage(
+                    new StagedFile(assembled, session.filename(), session.contentType()),
+                    session.ownerId(), session.ownerType(), currentUserId, currentUserRole);
+            discard(sessionId);
+            return media;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to assemble upload session " + sessionId, e);
+        } finally {
+            completing.remove(sessionId);
+        }
+    }
+
+    public void abort(String sessionId, String currentUserId) {
+        require(sessionId, currentUserId);
+        discard(sessionId);
+    }
+
+    // Sessions idle for longer than the TTL; every stored chunk touches the directory's mtime
+    @Scheduled(fixedDelayString = "${app.media.upload-sessions.gc-interval-ms:600000}")
+    public void collectExpired() {
+        Instant cutoff = Instant.now().minus(ttl);
+        int removed = 0;
+        try (DirectoryStream<Path> dirs = Files.newDirectoryStream(root, Files::isDirectory)) {
+            for (Path dir : dirs) {
+                String id = dir.getFileName().toString();
+                if (completing.contains(id)) {
+                    continue;
+                }
+                try {
+                    if (Files.getLastModifiedTime(dir).toInstant().isBefore(cutoff)) {
+                        discard(id);
+                        removed++;
+                    }
+                } catch (IOException e) {
+                    log.debug("Skipping upload session {}: {}", id, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to scan upload sessions in {}: {}", root, e.getMessage());
+        }
+        if (removed > 0) {
+            log.info("Removed {} expired upload sessions", removed);
+        }
+    }
+
+    private Session require(String sessionId, String currentUserId) {
+        Session session = SESSION_ID.matcher(sessionId).matches()
+                ? sessions.computeIfAbsent(sessionId, this::readMetadata)
+                : null;
+        if (session == null) {
+            throw new MediaNotFoundException("Upload session not found: " + sessionId, null);
+        }
+        if (!session.userId().equals(currentUserId)) {
+            throw new ForbiddenException("You can only use your own upload sessions.");
+        }
+        return session;
+    }
+
+    private UploadSessionResponse status(Session session) {
+        int received = contiguousChunks(session);
+        Instant lastActivity;
+        try {
+            lastActivity = Files.getLastModifiedTime(dirOf(session.id())).toInstant();
+        } catch (IOException e) {
+            lastActivity = Instant.now();
+        }
+        return new UploadSessionResponse(
+                session.id(),
+                session.totalSize(),
+                session.chunkSize(),
+                session.chunkCount(),
+                Math.min((long) received * session.chunkSize(), session.totalSize()),
+                received,
+                lastActivity.plus(ttl)
+        );
+    }
+
+    // Number of chunks present from index 0 on; a chunk only counts with its full length
+    private int contiguousChunks(Session session) {
+        int index = 0;
+        while (index < session.chunkCount()) {
+            Path part = partOf(session.id(), index);
+            try {
+                if (!Files.isRegularFile(part) || Files.size(part) != session.chunkLength(index)) {
+                    break;
+                }
+            } catch (IOException e) {
+                break;
+            }
+            index++;
+        }
+        return index;
+    }
+
+    private void discard(String sessionId) {
+        sessions.remove(sessionId);
+        deleteSessionFiles(sessionId);
+    }
+
+    private void deleteSessionFiles(String sessionId) {
+        Path dir = dirOf(sessionId);
+        if (!Files.exists(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(UploadSessionService::deleteQuietly);
+        } catch (IOException e) {
+            log.warn("Failed to delete upload session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    private int countSessionDirs() {
+        try (Stream<Path> dirs = Files.list(root)) {
+            return (int) dirs.filter(Files::isDirectory).count();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to list upload sessions", e);
+        }
+    }
+
+    private Path dirOf(String sessionId) {
+        return root.resolve(sessionId);
+    }
+
+    private Path partOf(String sessionId, int index) {
+        return dirOf(sessionId).resolve(index + PART_SUFFIX);
+    }
+
+    private static void writeMetadata(Path dir, Session session) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("ownerId", session.ownerId());
+        props.setProperty("ownerType", session.ownerType().name());
+        props.setProperty("userId", session.userId());
+        props.setProperty("contentType", session.contentType());
+        if (session.filename() != null) {
+            props.setProperty("filename", session.filename());
+        }
+        props.setProperty("totalSize", String.valueOf(session.totalSize()));
+        props.setProperty("chunkSize", String.valueOf(session.chunkSize()));
+        Path tmp = dir.resolve(META_FILE + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp)) {
+            props.store(writer, null);
+        }
+        Files.move(tmp, dir.resolve(META_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // null when the session does not exist (never created, completed, aborted or collected)
+    private Session readMetadata(String sessionId) {
+        Path meta = dirOf(sessionId).resolve(META_FILE);
+        if (!Files.isRegularFile(meta)) {
+            return null;
+        }
+        Properties props = new Properties();
+        try (Reader reader = Files.newBufferedReader(meta)) {
+            props.load(reader);
+            return new Session(
+                    sessionId,
+                    props.getProperty("ownerId"),
+                    MediaOwnerType.valueOf(props.getProperty("ownerType")),
+                    props.getProperty("userId"),
+                    props.getProperty("contentType"),
+                    props.getProperty("filename"),
+                    Long.parseLong(props.getProperty("totalSize")),
+                    Integer.parseInt(props.getProperty("chunkSize")));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Unreadable upload session {}: {}", sessionId, e.getMessage());
+            return null;
+        }
+    }
+
+    // Copies until EOF or limit bytes, whichever comes first; returns the number of bytes copied
+    private static long copyAtMost(InputStream in, OutputStream out, long limit) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long total = 0;
+        while (total < limit) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, limit - total));
+            if (read == -1) {
+                break;
+            }
+            out.write(buffer, 0, read);
+            total += read;
+        }
+        return total;
+    }
+
+    private static void deleteQuietly(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            log.debug("Failed to delete {}", file, e);
+        }
+    }
+}
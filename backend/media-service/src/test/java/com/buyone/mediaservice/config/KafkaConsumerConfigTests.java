@@ -0,0 +1,73 @@
+package com.buyone.mediaservice.config;
+
+import com.buyone.productservice.event.ProductDeletedEvent;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class KafkaConsumerConfigTests {
+    
+    private static final String DLT = "product.deleted.DLT";
+    
+    @Mock
+    private KafkaTemplate<Object, Object> kafkaTemplate;
+    
+    private final Serializer<Object> valueSerializer = KafkaConsumerConfig.deadLetterProducerFactory(
+            Map.of(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class)).getValueSerializer();
+    
+    @Test
+    void deadLetter_keepsTheOriginalBytesOfAnUndeserializableRecord() throws IOException {
+        byte[] original = "{not json".getBytes(StandardCharsets.UTF_8);
+        ConsumerRecord<Object, Object> record = new ConsumerRecord<>("product.deleted", 0, 42L, "p1", null);
+        record.headers().add(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER,
+                javaSerialized(new DeserializationException("bad json", original, false, null)));
+        when(kafkaTemplate.send(any(ProducerRecord.class))).thenReturn(CompletableFuture.completedFuture(null));
+        
+        KafkaConsumerConfig.deadLetterRecoverer(kafkaTemplate, DLT)
+                .accept(record, new DeserializationException("bad json", original, false, null));
+        
+        ArgumentCaptor<ProducerRecord<Object, Object>> sent = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(kafkaTemplate).send(sent.capture());
+        assertThat(sent.getValue().topic()).isEqualTo(DLT);
+        assertThat(valueSerializer.serialize(DLT, sent.getValue().value())).isEqualTo(original);
+    }
+    
+    @Test
+    void deadLetter_writesEventsThatFailedCleanUpAsJson() {
+        byte[] bytes = valueSerializer.serialize(DLT, new ProductDeletedEvent("p1", "seller-1"));
+        
+        assertThat(new String(bytes, StandardCharsets.UTF_8))
+                .isEqualTo("{\"productId\":\"p1\",\"sellerId\":\"seller-1\"}");
+    }
+    
+    private static byte[] javaSerialized(Object value) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ObjectOutputStream objects = new ObjectOutputStream(out)) {
+            objects.writeObject(value);
+        }
+        return out.toByteArray();
+    }
+}
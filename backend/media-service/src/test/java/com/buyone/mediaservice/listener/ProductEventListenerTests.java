@@ -0,0 +1,141 @@
+package com.buyone.mediaservice.listener;
+
+import com.buyone.mediaservice.model.Media;
+import com.buyone.mediaservice.model.MediaOwnerType;
+import com.buyone.mediaservice.model.MediaVariant;
+import com.buyone.mediaservice.repository.MediaRepository;
+import com.buyone.mediaservice.service.AsyncStorageService;
+import com.buyone.mediaservice.service.BlobStore;
+import com.buyone.mediaservice.service.DeleteRetryQueue;
+import com.buyone.mediaservice.service.ImageDiskCache;
+import com.buyone.mediaservice.service.MediaQuota;
+import com.buyone.productservice.event.ProductDeletedEvent;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.Acknowledgment;
+import org.springframework.kafka.support.serializer.DeserializationException;
+import org.springframework.kafka.support.serializer.SerializationUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ProductEventListenerTests {
+    
+    @Mock
+    private MediaRepository mediaRepository;
+    
+    @Mock
+    private AsyncStorageService asyncStorageService;
+    
+    @Mock
+    private BlobStore blobStore;
+    
+    @Mock
+    private ImageDiskCache imageDiskCache;
+    
+    @Mock
+    private DeleteRetryQueue deleteRetryQueue;
+    
+    @Mock
+    private MediaQuota mediaQuota;
+    
+    @Mock
+    private Acknowledgment ack;
+    
+    @InjectMocks
+    private ProductEventListener listener;
+    
+    @Test
+    void onProductDeleted_cleansWholeBatchWithBulkCalls_thenAcks() {
+        Media withVariant = Media.builder().id("m1").ownerId("p1").imagePath("media/m1.jpg")
+                .variants(List.of(MediaVariant.builder().name("thumb").imagePath("media/m1_thumb_1.jpg").build()))
+                .build();
+        Media plain = Media.builder().id("m2").ownerId("p2").imagePath("media/m2.png").build();
+        when(mediaRepository.findAllByOwnerIdInAndOwnerType(List.of("p1", "p2"), MediaOwnerType.PRODUCT))
+                .thenReturn(List.of(withVariant, plain));
+        // m1's original is still used by another media, only m2's goes away
+        when(blobStore.releaseAll(List.of(withVariant, plain))).thenReturn(List.of("media/m2.png"));
+        when(asyncStorageService.deleteAll(anyCollection())).thenReturn(CompletableFuture.completedFuture(List.of("media/m2.png")));
+        
+        listener.onProductDeleted(records(event("p1"), event("p2"), event("p1"), null), ack);
+        
+        verify(mediaRepository).deleteAllById(List.of("m1", "m2"));
+        verify(asyncStorageService).deleteAll(List.of("media/m2.png", "media/m1_thumb_1.jpg"));
+        verify(imageDiskCache).invalidate("media/m1_thumb_1.jpg");
+        verify(deleteRetryQueue).enqueue(List.of("media/m2.png"));
+        verify(mediaQuota).forget(List.of("p1", "p2"));
+        verify(ack).acknowledge();
+    }
+    
+    @Test
+    void onProductDeleted_doesNotAck_whenCleanupFails() {
+        when(mediaRepository.findAllByOwnerIdInAndOwnerType(anyCollection(), any()))
+                .thenThrow(new IllegalStateException("mongo down"));
+        
+        assertThatThrownBy(() -> listener.onProductDeleted(records(event("p1")), ack))
+                .isInstanceOf(IllegalStateException.class);
+        
+        verify(ack, never()).acknowledge();
+        verify(asyncStorageService, never()).deleteAll(anyCollection());
+    }
+    
+    @Test
+    void onProductDeleted_cleansUpRecordsBeforeAnUndeserializableOne_thenReportsItsIndex() {
+        when(mediaRepository.findAllByOwnerIdInAndOwnerType(List.of("p1"), MediaOwnerType.PRODUCT)).thenReturn(List.of());
+        List<ConsumerRecord<String, ProductDeletedEvent>> batch = records(event("p1"), null, event("p3"));
+        batch.get(1).headers().add(SerializationUtils.VALUE_DESERIALIZER_EXCEPTION_HEADER,
+                "not json".getBytes(StandardCharsets.UTF_8));
+        
+        assertThatThrownBy(() -> listener.onProductDeleted(batch, ack))
+                .isInstanceOfSatisfying(BatchListenerFailedException.class, e -> {
+                    assertThat(e.getIndex()).isEqualTo(1);
+                    assertThat(e.getCause()).isInstanceOf(DeserializationException.class);
+                });
+        
+        verify(mediaQuota).forget(List.of("p1"));
+        verify(ack, never()).acknowledge();
+    }
+    
+    @Test
+    void cleanUp_queuesEveryKey_whenTheBulkDeleteThrows() {
+        Media plain = Media.builder().id("m2").ownerId("p2").imagePath("media/m2.png").build();
+        when(mediaRepository.findAllByOwnerIdInAndOwnerType(List.of("p2"), MediaOwnerType.PRODUCT)).thenReturn(List.of(plain));
+        when(blobStore.releaseAll(List.of(plain))).thenReturn(List.of("media/m2.png"));
+        when(asyncStorageService.deleteAll(anyCollection()))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("pool shut down")));
+        
+        listener.cleanUp(List.of("p2"));
+        
+        verify(mediaRepository).deleteAllById(List.of("m2"));
+        verify(deleteRetryQueue).enqueue(List.of("media/m2.png"));
+    }
+    
+    // one record per event, in offset order; null stands for a tombstone
+    private static List<ConsumerRecord<String, ProductDeletedEvent>> records(ProductDeletedEvent... events) {
+        List<ConsumerRecord<String, ProductDeletedEvent>> records = new ArrayList<>();
+        for (ProductDeletedEvent event : events) {
+            records.add(new ConsumerRecord<>("product.deleted", 0, records.size(), null, event));
+        }
+        return records;
+    }
+    
+    private static ProductDeletedEvent event(String productId) {
+        return ProductDeletedEvent.builder().productId(productId).sellerId("s1").build();
+    }
+}
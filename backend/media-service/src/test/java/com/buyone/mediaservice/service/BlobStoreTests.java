@@ -0,0 +1,244 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.exception.InvalidFileException;
+import com.buyone.mediaservice.model.Media;
+import com.buyone.mediaservice.model.StoredBlob;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class BlobStoreTests {
+
+    // PNG signature followed by arbitrary bytes: only the header is sniffed
+    private static final byte[] CONTENT = concat(
+            new byte[] {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A},
+            "same photo bytes".getBytes(StandardCharsets.UTF_8));
+
+    @Mock
+    private StorageService storageService;
+
+    @Mock
+    private AsyncStorageService asyncStorageService;
+
+    @Mock
+    private ImageDiskCache imageDiskCache;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private BlobStore blobStore;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        blobStore = new BlobStore(storageService, asyncStorageService, imageDiskCache, mongoTemplate, meterRegistry);
+    }
+
+    @Test
+    void store_firstUpload_putsUnderDigestKey_andMarksStored() throws NoSuchAlgorithmException {
+        // the client's name and type are ignored, the bytes say PNG
+        MockMultipartFile file = new MockMultipartFile("file", "Photo.jpeg", "application/octet-stream", CONTENT);
+        String digest = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(CONTENT));
+        givenUpsertReturns(blob(digest, 1, false));
+
+        StoredBlob stored = blobStore.store(file);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).findAndModify(query.capture(), update.capture(), any(FindAndModifyOptions.class), eq(StoredBlob.class));
+        assertThat(query.getValue().getQueryObject().get("_id")).isEqualTo(digest);
+        Document setOnInsert = update.getValue().getUpdateObject().get("$setOnInsert", Document.class);
+        assertThat(setOnInsert.getString("imagePath")).matches("media/" + digest + "_[0-9a-f]{8}\\.png");
+        assertThat(setOnInsert.getString("contentType")).isEqualTo("image/png");
+
+        verify(storageService).put("media/" + digest + "_0a1b2c3d.png", file, "image/png");
+        verify(mongoTemplate).updateFirst(any(Query.class), any(Update.class), eq(StoredBlob.class));
+        assertThat(stored.isStored()).isTrue();
+    }
+
+    @Test
+    void store_rejectsBytesThatAreNoSupportedImage() {
+        MockMultipartFile file = new MockMultipartFile("file", "photo.png", "image/png",
+                "%PDF-1.7 not an image".getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> blobStore.store(file))
+                .isInstanceOf(InvalidFileException.class)
+                .hasMessageContaining("Unsupported image format");
+        verifyNoInteractions(mongoTemplate, storageService);
+    }
+
+    @Test
+    void store_duplicateContent_skipsPut() {
+        givenUpsertReturns(blob("d1", 4, true));
+
+        StoredBlob stored = blobStore.store(new MockMultipartFile("file", "copy.png", "image/png", CONTENT));
+
+        assertThat(stored.getImagePath()).isEqualTo("media/d1_0a1b2c3d.png");
+        verify(storageService, never()).put(anyString(), any(MockMultipartFile.class), anyString());
+        assertThat(meterRegistry.get("media.blobs.uploads").tag("result", "deduplicated").counter().count())
+                .isEqualTo(1.0);
+    }
+
+    @Test
+    void store_releasesReference_whenPutFails() {
+        StoredBlob blob = blob("d1", 1, false);
+        givenUpsertReturns(blob, blob("d1", 0, false));
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(StoredBlob.class))).thenReturn(blob);
+        MockMultipartFile file = new MockMultipartFile("file", "a.png", "image/png", CONTENT);
+        doThrow(new RuntimeException("Failed to store file in R2")).when(storageService).put(blob.getImagePath(), file, "image/png");
+
+        assertThatThrownBy(() -> blobStore.store(file)).hasMessageContaining("Failed to store file");
+
+        verify(storageService).delete(blob.getImagePath());
+    }
+
+    @Test
+    void storeAsync_marksStoredOnceThePutCompletes() {
+        givenUpsertReturns(blob("d1", 1, false));
+        MockMultipartFile file = new MockMultipartFile("file", "a.png", "image/png", CONTENT);
+        CompletableFuture<Void> put = new CompletableFuture<>();
+        when(asyncStorageService.put("media/d1_0a1b2c3d.png", file, "image/png")).thenReturn(put);
+
+        CompletableFuture<StoredBlob> stored = blobStore.storeAsync(file);
+
+        assertThat(stored).isNotDone();
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(StoredBlob.class));
+        put.complete(null);
+        assertThat(stored.join().isStored()).isTrue();
+        verify(mongoTemplate).updateFirst(any(Query.class), any(Update.class), eq(StoredBlob.class));
+        verify(storageService, never()).put(anyString(), any(MockMultipartFile.class), anyString());
+    }
+
+    @Test
+    void storeAsync_releasesReference_whenPutFails() {
+        StoredBlob blob = blob("d1", 1, false);
+        givenUpsertReturns(blob, blob("d1", 0, false));
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(StoredBlob.class))).thenReturn(blob);
+        MockMultipartFile file = new MockMultipartFile("file", "a.png", "image/png", CONTENT);
+        when(asyncStorageService.put(blob.getImagePath(), file, "image/png"))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("Failed to store file in R2")));
+
+        assertThatThrownBy(() -> blobStore.storeAsync(file).join()).hasMessageContaining("Failed to store file");
+
+        verify(storageService).delete(blob.getImagePath());
+    }
+
+    @Test
+    void releaseAllAsync_deletesUnreferencedObjectsInOneCall() {
+        givenUpsertReturns(blob("d1", 0, true));
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(StoredBlob.class))).thenReturn(blob("d1", 0, true));
+        when(asyncStorageService.deleteAll(List.of("media/legacy.png", "media/d1_0a1b2c3d.png")))
+                .thenReturn(CompletableFuture.completedFuture(List.of()));
+
+        List<String> failed = blobStore.releaseAllAsync(List.of(
+                media("d1"), Media.builder().id("legacy").imagePath("media/legacy.png").build())).join();
+
+        assertThat(failed).isEmpty();
+        verify(imageDiskCache).invalidate("media/d1_0a1b2c3d.png");
+        verify(storageService, never()).delete(anyString());
+    }
+
+    @Test
+    void release_lastReference_removesBlobAndObject() {
+        givenUpsertReturns(blob("d1", 0, true));
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(StoredBlob.class))).thenReturn(blob("d1", 0, true));
+
+        blobStore.release(media("d1"));
+
+        verify(storageService).delete("media/d1_0a1b2c3d.png");
+        verify(imageDiskCache).invalidate("media/d1_0a1b2c3d.png");
+    }
+
+    @Test
+    void release_sharedBlob_keepsObject() {
+        givenUpsertReturns(blob("d1", 2, true));
+
+        blobStore.release(media("d1"));
+
+        verify(mongoTemplate, never()).findAndRemove(any(Query.class), eq(StoredBlob.class));
+        verify(storageService, never()).delete(anyString());
+    }
+
+    @Test
+    void release_legacyMediaWithoutHash_deletesItsOwnObject() {
+        blobStore.release(Media.builder().id("m1").imagePath("media/m1.png").build());
+
+        verify(storageService).delete("media/m1.png");
+        verify(mongoTemplate, never()).findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(StoredBlob.class));
+    }
+
+    @Test
+    void releaseAll_decrementsOncePerDigest_andReturnsUnreferencedKeys() {
+        givenUpsertReturns(blob("d1", 0, true));
+        when(mongoTemplate.findAndRemove(any(Query.class), eq(StoredBlob.class))).thenReturn(blob("d1", 0, true));
+
+        List<String> keys = blobStore.releaseAll(List.of(
+                media("d1"), media("d1"), Media.builder().id("legacy").imagePath("media/legacy.png").build()));
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).findAndModify(any(Query.class), update.capture(), any(FindAndModifyOptions.class), eq(StoredBlob.class));
+        assertThat(update.getValue().getUpdateObject().get("$inc", Document.class).get("refCount")).isEqualTo(-2);
+        assertThat(keys).containsExactly("media/legacy.png", "media/d1_0a1b2c3d.png");
+        verify(storageService, never()).delete(anyString());
+    }
+
+    private void givenUpsertReturns(StoredBlob first, StoredBlob... next) {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(StoredBlob.class)))
+                .thenReturn(first, next);
+    }
+
+    private static StoredBlob blob(String digest, long refCount, boolean stored) {
+        return StoredBlob.builder()
+                .digest(digest)
+                .imagePath("media/" + digest + "_0a1b2c3d.png")
+                .contentType("image/png")
+                .refCount(refCount)
+                .stored(stored)
+                .build();
+    }
+
+    private static Media media(String contentHash) {
+        return Media.builder()
+                .id("m-" + contentHash)
+                .imagePath("media/" + contentHash + "_0a1b2c3d.png")
+                .contentHash(contentHash)
+                .build();
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+}
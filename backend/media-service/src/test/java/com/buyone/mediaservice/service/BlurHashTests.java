@@ -0,0 +1,49 @@
+package com.buyone.mediaservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BlurHashTests {
+
+    @Test
+    void encode_landscape_uses4x3Components() {
+        String hash = BlurHash.encode(solid(400, 300, Color.RED));
+
+        assertThat(hash).hasSize(28);
+        assertThat(hash.charAt(0)).isEqualTo('L'); // (4 - 1) + (3 - 1) * 9 = 21
+        assertThat(hash.substring(2, 6)).isEqualTo("TI:j"); // average colour 0xFF0000
+    }
+
+    @Test
+    void encode_portrait_uses3x4Components() {
+        String hash = BlurHash.encode(solid(300, 400, Color.BLUE));
+
+        assertThat(hash).hasSize(28);
+        assertThat(hash.charAt(0)).isEqualTo('T'); // (3 - 1) + (4 - 1) * 9 = 29
+    }
+
+    @Test
+    void encode_differsForDifferentImages() {
+        BufferedImage split = solid(64, 64, Color.WHITE);
+        Graphics2D g = split.createGraphics();
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, 32, 64);
+        g.dispose();
+
+        assertThat(BlurHash.encode(split)).isNotEqualTo(BlurHash.encode(solid(64, 64, Color.GRAY)));
+    }
+
+    private static BufferedImage solid(int width, int height, Color color) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        g.setColor(color);
+        g.fillRect(0, 0, width, height);
+        g.dispose();
+        return image;
+    }
+}
@@ -0,0 +1,83 @@
+package com.buyone.mediaservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class DeleteRetryQueueTests {
+
+    @Mock
+    private StorageService storageService;
+
+    private SimpleMeterRegistry meterRegistry;
+    private DeleteRetryQueue queue;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // zero base delay: every enqueued key is due immediately
+        queue = new DeleteRetryQueue(storageService, meterRegistry, 2, 0, 3);
+    }
+
+    @Test
+    void retryDue_deletesPendingKeysInOneBatch() {
+        when(storageService.deleteAll(anyCollection())).thenReturn(List.of());
+        queue.enqueue(List.of("media/a.jpg", "media/b.jpg"));
+
+        queue.retryDue();
+
+        verify(storageService).deleteAll(Set.of("media/a.jpg", "media/b.jpg"));
+        assertThat(queue.size()).isZero();
+    }
+
+    @Test
+    void retryDue_requeuesFailures_untilMaxAttempts() {
+        when(storageService.deleteAll(anyCollection())).thenReturn(List.of("media/a.jpg"));
+        queue.enqueue(List.of("media/a.jpg"));
+
+        queue.retryDue();
+        assertThat(queue.size()).isEqualTo(1);
+        queue.retryDue();
+        assertThat(queue.size()).isZero();
+        queue.retryDue();
+
+        verify(storageService, times(2)).deleteAll(anyCollection());
+        assertThat(meterRegistry.get("media.delete.retry.dropped").tag("reason", "max_attempts")
+                .counter().count()).isEqualTo(1.0);
+    }
+
+    @Test
+    void retryDue_treatsExceptionAsWholeBatchFailed() {
+        when(storageService.deleteAll(anyCollection())).thenThrow(new RuntimeException("down"));
+        queue.enqueue(List.of("media/a.jpg", "media/b.jpg"));
+
+        queue.retryDue();
+
+        assertThat(queue.size()).isEqualTo(2);
+    }
+
+    @Test
+    void enqueue_dropsKeysBeyondCapacity() {
+        queue.enqueue(List.of("k1", "k2", "k3", "k4"));
+
+        assertThat(queue.size()).isEqualTo(3);
+        assertThat(meterRegistry.get("media.delete.retry.dropped").tag("reason", "queue_full")
+                .counter().count()).isEqualTo(1.0);
+        verify(storageService, never()).deleteAll(any());
+    }
+}
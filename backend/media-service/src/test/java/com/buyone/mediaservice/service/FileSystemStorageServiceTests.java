@@ -0,0 +1,161 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.exception.InvalidFileException;
+import com.buyone.mediaservice.exception.MediaNotFoundException;
+import com.buyone.mediaservice.exception.RangeNotSatisfiableException;
+import com.buyone.mediaservice.service.impl.FileSystemStorageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class FileSystemStorageServiceTests {
+
+    @TempDir
+    Path root;
+
+    private FileSystemStorageService storageService;
+
+    @BeforeEach
+    void setUp() {
+        storageService = new FileSystemStorageService(root.toString());
+    }
+
+    @Test
+    void store_writesIntoTwoLevelShard_withoutLeavingTempFiles() throws IOException {
+        String key = storageService.store(image("photo.png", 1000), "m1");
+
+        assertThat(key).isEqualTo("media/m1.png");
+        List<Path> files = listFiles();
+        assertThat(files).hasSize(1);
+        Path relative = root.relativize(files.get(0));
+        assertThat(relative.getNameCount()).isEqualTo(3);
+        assertThat(relative.getName(0).toString()).hasSize(2);
+        assertThat(relative.getName(1).toString()).hasSize(2);
+        assertThat(relative.getFileName().toString()).isEqualTo("media%2Fm1.png");
+    }
+
+    @Test
+    void load_streamsWholeFileWithTypeAndEtag_viaTransferTo() throws IOException {
+        byte[] bytes = pattern(5000);
+        storageService.store(new MockMultipartFile("file", "photo.png", "image/png", bytes), "m1");
+
+        StoredObject object = storageService.load("media/m1.png", null, null);
+
+        assertThat(object.partial()).isFalse();
+        assertThat(object.contentLength()).isEqualTo(5000);
+        assertThat(object.contentType()).isEqualTo("image/png");
+        assertThat(object.eTag()).startsWith("\"").endsWith("\"");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = object.content()) {
+            assertThat(in.transferTo(out)).isEqualTo(5000);
+        }
+        assertThat(out.toByteArray()).isEqualTo(bytes);
+    }
+
+    @Test
+    void load_servesSingleRange() throws IOException {
+        byte[] bytes = pattern(5000);
+        storageService.store(new MockMultipartFile("file", "photo.jpg", "image/jpeg", bytes), "m1");
+
+        StoredObject object = storageService.load("media/m1.jpg", "bytes=100-199", null);
+
+        assertThat(object.partial()).isTrue();
+        assertThat(object.contentRange()).isEqualTo("bytes 100-199/5000");
+        assertThat(object.contentLength()).isEqualTo(100);
+        try (InputStream in = object.content()) {
+            assertThat(in.readAllBytes()).isEqualTo(Arrays.copyOfRange(bytes, 100, 200));
+        }
+    }
+
+    @Test
+    void load_returnsNotModified_forMatchingEtag() throws IOException {
+        storageService.store(image("photo.png", 10), "m1");
+        StoredObject first = storageService.load("media/m1.png", null, null);
+        first.content().close();
+        String eTag = first.eTag();
+
+        StoredObject object = storageService.load("media/m1.png", null, eTag);
+
+        assertThat(object.notModified()).isTrue();
+    }
+
+    @Test
+    void load_rejectsUnsatisfiableRange_andMissingKeys() {
+        storageService.store(image("photo.png", 10), "m1");
+
+        assertThatThrownBy(() -> storageService.load("media/m1.png", "bytes=50-", null))
+                .isInstanceOfSatisfying(RangeNotSatisfiableException.class, e -> assertThat(e.getSize()).isEqualTo(10));
+        assertThatThrownBy(() -> storageService.load("media/missing.png", null, null))
+                .isInstanceOf(MediaNotFoundException.class);
+    }
+
+    @Test
+    void store_replacesAtomically_andDeleteIsIdempotent() throws IOException {
+        storageService.store(image("photo.png", 10), "m1");
+        storageService.store(image("photo.png", 20), "m1");
+
+        assertThat(storageService.load("media/m1.png", null, null).contentLength()).isEqualTo(20);
+        assertThat(listFiles()).hasSize(1);
+
+        storageService.delete("media/m1.png");
+        storageService.delete("media/m1.png");
+        assertThat(listFiles()).isEmpty();
+    }
+
+    @Test
+    void store_rejectsNonImages() {
+        MockMultipartFile pdf = new MockMultipartFile("file", "doc.pdf", "application/pdf", new byte[10]);
+
+        assertThatThrownBy(() -> storageService.store(pdf, "m1"))
+                .isInstanceOf(InvalidFileException.class);
+    }
+
+    @Test
+    void list_pagesThroughKeysInOrder_acrossShards() {
+        for (String id : List.of("m3", "m1", "m5", "m2", "m4")) {
+            storageService.store(image("photo.png", 10), id);
+        }
+        storageService.put("assets/logo.png", new byte[10], "image/png"); // not ours, never listed
+
+        List<StoredKey> first = storageService.list("media/", null, 2);
+        List<StoredKey> second = storageService.list("media/", first.get(1).key(), 2);
+        List<StoredKey> last = storageService.list("media/", second.get(1).key(), 2);
+
+        assertThat(first).extracting(StoredKey::key).containsExactly("media/m1.png", "media/m2.png");
+        assertThat(second).extracting(StoredKey::key).containsExactly("media/m3.png", "media/m4.png");
+        assertThat(last).extracting(StoredKey::key).containsExactly("media/m5.png");
+        assertThat(last.get(0).size()).isEqualTo(10);
+        assertThat(storageService.list("media/", "media/m5.png", 2)).isEmpty();
+    }
+
+    private List<Path> listFiles() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            return paths.filter(Files::isRegularFile).toList();
+        }
+    }
+
+    private static MockMultipartFile image(String name, int size) {
+        return new MockMultipartFile("file", name, "image/png", pattern(size));
+    }
+
+    private static byte[] pattern(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,118 @@
+package com.buyone.mediaservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageDiskCacheTests {
+
+    @TempDir
+    Path dir;
+
+    private SimpleMeterRegistry registry;
+    private ImageDiskCache cache;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        registry = new SimpleMeterRegistry();
+        cache = new ImageDiskCache(registry, true, dir.toString(), 250, 200);
+        cache.init();
+    }
+
+    @Test
+    void missThenFill_thenHitServesSameBytesViaTransferTo() throws IOException {
+        byte[] bytes = bytes(100, (byte) 7);
+        assertThat(cache.open("media/a.png")).isEmpty();
+
+        ByteArrayOutputStream firstResponse = new ByteArrayOutputStream();
+        cache.fill("media/a.png", object(bytes), firstResponse);
+        assertThat(firstResponse.toByteArray()).isEqualTo(bytes);
+
+        ImageDiskCache.Hit hit = cache.open("media/a.png").orElseThrow();
+        assertThat(hit.entry().eTag()).isEqualTo("\"e\"");
+        assertThat(hit.entry().contentType()).isEqualTo("image/png");
+        ByteArrayOutputStream secondResponse = new ByteArrayOutputStream();
+        cache.transferTo(hit, 10, 20, secondResponse);
+
+        assertThat(secondResponse.toByteArray()).isEqualTo(Arrays.copyOfRange(bytes, 10, 30));
+        assertThat(registry.get("media.cache.requests").tag("result", "hit").counter().count()).isEqualTo(1);
+        assertThat(registry.get("media.cache.requests").tag("result", "miss").counter().count()).isEqualTo(1);
+        assertThat(registry.get("media.cache.served.bytes").counter().count()).isEqualTo(20);
+        assertThat(registry.get("media.cache.hit.ratio").gauge().value()).isEqualTo(0.5);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed_whenOverMaxBytes() throws IOException {
+        cache.fill("a", object(bytes(100, (byte) 1)), new ByteArrayOutputStream());
+        cache.fill("b", object(bytes(100, (byte) 2)), new ByteArrayOutputStream());
+        cache.open("a").orElseThrow().close(); // a is now more recent than b
+
+        cache.fill("c", object(bytes(100, (byte) 3)), new ByteArrayOutputStream());
+
+        assertThat(cache.open("b")).isEmpty();
+        assertThat(cache.open("a")).isPresent();
+        assertThat(cache.open("c")).isPresent();
+        assertThat(cache.sizeBytes()).isEqualTo(200);
+        assertThat(registry.get("media.cache.evictions").counter().count()).isEqualTo(1);
+        try (var files = Files.list(dir)) {
+            assertThat(files.count()).isEqualTo(2);
+        }
+    }
+
+    @Test
+    void invalidate_removesEntryAndFile() throws IOException {
+        cache.fill("a", object(bytes(50, (byte) 1)), new ByteArrayOutputStream());
+
+        cache.invalidate("a");
+
+        assertThat(cache.open("a")).isEmpty();
+        assertThat(cache.sizeBytes()).isZero();
+        try (var files = Files.list(dir)) {
+            assertThat(files.count()).isZero();
+        }
+    }
+
+    @Test
+    void fillStartedBeforeInvalidate_isNotCommitted() throws IOException {
+        byte[] bytes = bytes(50, (byte) 1);
+        StoredObject object = new StoredObject(new ByteArrayInputStream(bytes) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                // an update lands while the old bytes are still streaming
+                cache.invalidate("a");
+                return super.read(b, off, len);
+            }
+        }, bytes.length, "image/png", "\"old\"", null, false);
+
+        cache.fill("a", object, new ByteArrayOutputStream());
+
+        assertThat(cache.open("a")).isEmpty();
+    }
+
+    @Test
+    void accepts_rejectsUnknownOrOversizedLengths() {
+        assertThat(cache.accepts(200)).isTrue();
+        assertThat(cache.accepts(201)).isFalse();
+        assertThat(cache.accepts(-1)).isFalse();
+    }
+
+    private static StoredObject object(byte[] bytes) {
+        return new StoredObject(new ByteArrayInputStream(bytes), bytes.length, "image/png", "\"e\"", null, false);
+    }
+
+    private static byte[] bytes(int length, byte value) {
+        byte[] bytes = new byte[length];
+        Arrays.fill(bytes, value);
+        return bytes;
+    }
+}
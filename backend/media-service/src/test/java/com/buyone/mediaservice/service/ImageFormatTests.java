@@ -0,0 +1,44 @@
+package com.buyone.mediaservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageFormatTests {
+
+    @Test
+    void detect_recognisesSupportedSignatures() {
+        assertThat(detect(new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xE0})).isEqualTo(ImageFormat.JPEG);
+        assertThat(detect(new byte[] {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A})).isEqualTo(ImageFormat.PNG);
+        assertThat(detect(ascii("GIF87a"))).isEqualTo(ImageFormat.GIF);
+        assertThat(detect(ascii("GIF89a"))).isEqualTo(ImageFormat.GIF);
+        assertThat(detect(ascii("RIFF\0\0\0\0WEBPVP8 "))).isEqualTo(ImageFormat.WEBP);
+    }
+
+    @Test
+    void detect_rejectsEverythingElse() {
+        assertThat(detect(ascii("%PDF-1.7"))).isNull();
+        assertThat(detect(ascii("<svg xmlns="))).isNull();
+        assertThat(detect(ascii("RIFF\0\0\0\0WAVE"))).isNull();
+        assertThat(detect(new byte[] {(byte) 0x89, 'P', 'N', 'G'})).isNull(); // truncated
+        assertThat(detect(new byte[0])).isNull();
+    }
+
+    @Test
+    void fromMimeType_isCaseInsensitive_andAcceptsImageJpg() {
+        assertThat(ImageFormat.fromMimeType("IMAGE/PNG")).isEqualTo(ImageFormat.PNG);
+        assertThat(ImageFormat.fromMimeType("image/jpg")).isEqualTo(ImageFormat.JPEG);
+        assertThat(ImageFormat.fromMimeType("image/svg+xml")).isNull();
+        assertThat(ImageFormat.fromMimeType(null)).isNull();
+    }
+
+    private static ImageFormat detect(byte[] bytes) {
+        return ImageFormat.detect(bytes, bytes.length);
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
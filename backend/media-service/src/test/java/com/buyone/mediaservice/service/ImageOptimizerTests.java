@@ -0,0 +1,225 @@
+package com.buyone.mediaservice.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ImageOptimizerTests {
+
+    private SimpleMeterRegistry meterRegistry;
+    private ImageOptimizer optimizer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        optimizer = new ImageOptimizer(meterRegistry, true, 1, 2, 1000, 1000, 1_048_576, 0.85f);
+    }
+
+    @AfterEach
+    void tearDown() {
+        optimizer.shutdown();
+    }
+
+    @Test
+    void rotatedJpeg_isTurnedUpright_andLosesItsExif() throws IOException {
+        byte[] jpeg = withSegment(ImageCodec.encode(noise(400, 200, false), false, 0.9f), 0xE1, exif(6, 20_000));
+
+        IngestedImage ingested = optimizer.process(new MockMultipartFile("file", "phone.jpg", "image/jpeg", jpeg));
+        MultipartFile result = ingested.file();
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(result.getBytes()));
+        assertThat(decoded.getWidth()).isEqualTo(200);
+        assertThat(decoded.getHeight()).isEqualTo(400);
+        assertThat(contains(result.getBytes(), "Exif")).isFalse();
+        assertThat(result.getContentType()).isEqualTo("image/jpeg");
+        assertThat(result.getOriginalFilename()).isEqualTo("phone.jpg");
+        assertThat(counter("recompressed")).isEqualTo(1.0);
+        assertThat(meterRegistry.get("media.ingest.saved").summary().totalAmount()).isGreaterThan(20_000);
+        assertThat(ingested.width()).isEqualTo(200);
+        assertThat(ingested.height()).isEqualTo(400);
+        assertThat(ingested.placeholder()).hasSize(28); // portrait: 3x4 components
+    }
+
+    @Test
+    void alreadyCompactJpeg_isStrippedLosslessly() throws IOException {
+        // re-encoding a low-quality noisy image at 0.85 only makes it bigger
+        byte[] compact = ImageCodec.encode(noise(300, 300, false), false, 0.4f);
+        byte[] comment = "shot on a very long camera model name".getBytes(StandardCharsets.US_ASCII);
+
+        IngestedImage ingested = optimizer.process(new MockMultipartFile("file", "a.jpg", "image/jpeg",
+                withSegment(compact, 0xFE, comment)));
+        MultipartFile result = ingested.file();
+
+        assertThat(result.getBytes()).isEqualTo(compact);
+        assertThat(counter("stripped")).isEqualTo(1.0);
+        assertThat(ingested.width()).isEqualTo(300);
+        assertThat(ingested.placeholder()).isNotBlank();
+    }
+
+    // ImageIO cannot decode CMYK, so the stripped bytes are stored: the Adobe segment carries their
+    // colour transform and must survive, like unknown application segments
+    @Test
+    void undecodableCmykJpeg_keepsAdobeSegment_andLosesOnlyMetadata() throws IOException {
+        byte[] sof = {(byte) 0xFF, (byte) 0xC0, 0x00, 0x14, 0x08, 0x00, 0x10, 0x00, 0x10, 0x04,
+                0x01, 0x11, 0x00, 0x02, 0x11, 0x00, 0x03, 0x11, 0x00, 0x04, 0x11, 0x00, (byte) 0xFF, (byte) 0xD9};
+        byte[] adobe = concat("Adobe".getBytes(StandardCharsets.US_ASCII), new byte[] {0x00, 0x64, 0x00, 0x00, 0x00, 0x00, 0x02});
+        byte[] jpeg = concat(new byte[] {(byte) 0xFF, (byte) 0xD8}, sof);
+        jpeg = withSegment(jpeg, 0xFE, "comment".getBytes(StandardCharsets.US_ASCII));
+        jpeg = withSegment(jpeg, 0xED, "Photoshop 3.0\0IPTC".getBytes(StandardCharsets.US_ASCII));
+        jpeg = withSegment(jpeg, 0xE1, "http://ns.adobe.com/xap/1.0/\0<x:xmpmeta/>".getBytes(StandardCharsets.US_ASCII));
+        jpeg = withSegment(jpeg, 0xE1, exif(1, 100));
+        jpeg = withSegment(jpeg, 0xEC, "Ducky".getBytes(StandardCharsets.US_ASCII));
+        jpeg = withSegment(jpeg, 0xEE, adobe);
+
+        byte[] result = optimizer.process(new MockMultipartFile("file", "print.jpg", "image/jpeg", jpeg)).file().getBytes();
+
+        assertThat(result).isEqualTo(withSegment(withSegment(concat(new byte[] {(byte) 0xFF, (byte) 0xD8}, sof), 0xEC,
+                "Ducky".getBytes(StandardCharsets.US_ASCII)), 0xEE, adobe));
+        assertThat(counter("stripped")).isEqualTo(1.0);
+    }
+
+    @Test
+    void png_losesTextChunks() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(noise(64, 64, true), "png", out);
+        byte[] png = withPngText(out.toByteArray(), "Comment", "x".repeat(5_000));
+
+        MultipartFile result = optimizer.process(new MockMultipartFile("file", "a.png", "image/png", png)).file();
+
+        assertThat(contains(result.getBytes(), "tEXt")).isFalse();
+        assertThat(result.getSize()).isLessThan(png.length);
+        assertThat(ImageIO.read(new ByteArrayInputStream(result.getBytes())).getWidth()).isEqualTo(64);
+    }
+
+    @Test
+    void largeJpeg_isScaledDownToMaxDimension() throws IOException {
+        byte[] jpeg = ImageCodec.encode(noise(3000, 1000, false), false, 0.9f);
+
+        IngestedImage ingested = optimizer.process(new MockMultipartFile("file", "wide.jpg", "image/jpeg", jpeg));
+        MultipartFile result = ingested.file();
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(result.getBytes()));
+        assertThat(decoded.getWidth()).isEqualTo(1000);
+        assertThat(decoded.getHeight()).isEqualTo(333);
+        assertThat(result.getSize()).isLessThan(jpeg.length);
+        assertThat(ingested.width()).isEqualTo(1000);
+        assertThat(ingested.height()).isEqualTo(333);
+    }
+
+    @Test
+    void gif_passesThroughUntouched() throws IOException {
+        MockMultipartFile gif = new MockMultipartFile("file", "a.gif", "image/gif",
+                "GIF89a....".getBytes(StandardCharsets.US_ASCII));
+
+        IngestedImage ingested = optimizer.process(gif);
+
+        assertThat(ingested.file()).isSameAs(gif);
+        assertThat(ingested.width()).isNull(); // not decodable either
+        assertThat(counter("skipped")).isEqualTo(1.0);
+    }
+
+    @Test
+    void ingest_runsOnThePool_andFallsBackToTheOriginalOnFailure() {
+        // rotated, so it has to be decoded, but there is no image data behind the EXIF block
+        MockMultipartFile broken = new MockMultipartFile("file", "a.jpg", "image/jpeg",
+                withSegment(new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9}, 0xE1, exif(6, 0)));
+
+        assertThat(optimizer.ingest(broken)).isEqualTo(IngestedImage.unchanged(broken));
+        assertThat(counter("failed")).isEqualTo(1.0);
+    }
+
+    @Test
+    void disabled_returnsTheUpload() {
+        ImageOptimizer disabled = new ImageOptimizer(meterRegistry, false, 1, 2, 1000, 1000, 1_048_576, 0.85f);
+        MockMultipartFile file = new MockMultipartFile("file", "a.gif", "image/gif", new byte[10]);
+
+        assertThat(disabled.ingest(file).file()).isSameAs(file);
+        disabled.shutdown();
+    }
+
+    @Test
+    void jpegOrientation_readsLittleEndianExif() {
+        byte[] tiff = ByteBuffer.allocate(26).order(ByteOrder.LITTLE_ENDIAN)
+                .put((byte) 'I').put((byte) 'I').putShort((short) 42).putInt(8)
+                .putShort((short) 1).putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) 8).putShort((short) 0)
+                .putInt(0)
+                .array();
+        byte[] app1 = concat("Exif\0\0".getBytes(StandardCharsets.US_ASCII), tiff);
+
+        assertThat(ImageMetadata.jpegOrientation(withSegment(new byte[] {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF, (byte) 0xD9}, 0xE1, app1)))
+                .isEqualTo(8);
+    }
+
+    private double counter(String result) {
+        return meterRegistry.get("media.ingest.images").tag("result", result).counter().count();
+    }
+
+    private static BufferedImage noise(int width, int height, boolean alpha) {
+        Random random = new Random(42);
+        BufferedImage image = new BufferedImage(width, height, alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                image.setRGB(x, y, random.nextInt());
+            }
+        }
+        return image;
+    }
+
+    // Big-endian EXIF with only the Orientation tag, padded to simulate a phone's metadata block
+    private static byte[] exif(int orientation, int padding) {
+        ByteBuffer tiff = ByteBuffer.allocate(6 + 8 + 2 + 12 + 4 + padding)
+                .put("Exif\0\0".getBytes(StandardCharsets.US_ASCII))
+                .put((byte) 'M').put((byte) 'M').putShort((short) 42).putInt(8)
+                .putShort((short) 1)
+                .putShort((short) 0x0112).putShort((short) 3).putInt(1).putShort((short) orientation).putShort((short) 0)
+                .putInt(0);
+        return tiff.array();
+    }
+
+    // Inserts a marker segment right after SOI
+    private static byte[] withSegment(byte[] jpeg, int marker, byte[] payload) {
+        ByteBuffer out = ByteBuffer.allocate(jpeg.length + 4 + payload.length)
+                .put(jpeg, 0, 2)
+                .put((byte) 0xFF).put((byte) marker).putShort((short) (payload.length + 2))
+                .put(payload)
+                .put(jpeg, 2, jpeg.length - 2);
+        return out.array();
+    }
+
+    // Inserts a tEXt chunk right after IHDR (signature 8 + IHDR 25 bytes)
+    private static byte[] withPngText(byte[] png, String keyword, String text) {
+        byte[] data = concat((keyword + "\0").getBytes(StandardCharsets.ISO_8859_1), text.getBytes(StandardCharsets.ISO_8859_1));
+        CRC32 crc = new CRC32();
+        crc.update("tEXt".getBytes(StandardCharsets.US_ASCII));
+        crc.update(data);
+        ByteBuffer out = ByteBuffer.allocate(png.length + 12 + data.length)
+                .put(png, 0, 33)
+                .putInt(data.length).put("tEXt".getBytes(StandardCharsets.US_ASCII)).put(data).putInt((int) crc.getValue())
+                .put(png, 33, png.length - 33);
+        return out.array();
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        return ByteBuffer.allocate(a.length + b.length).put(a).put(b).array();
+    }
+
+    private static boolean contains(byte[] haystack, String needle) {
+        return new String(haystack, StandardCharsets.ISO_8859_1).contains(needle);
+    }
+}
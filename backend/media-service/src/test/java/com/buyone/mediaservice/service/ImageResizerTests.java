@@ -0,0 +1,272 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.exception.BadRequestException;
+import com.buyone.mediaservice.exception.MediaNotFoundException;
+import com.buyone.mediaservice.exception.ServiceUnavailableException;
+import com.buyone.mediaservice.model.Media;
+import com.mongodb.client.result.UpdateResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ImageResizerTests {
+
+    private static final Instant UPLOADED_AT = Instant.ofEpochMilli(1_700_000_000_000L);
+    private static final int[] SIZES = {64, 128, 256, 320, 640};
+
+    @Mock
+    private StorageService storageService;
+
+    @Mock
+    private ImageDiskCache imageDiskCache;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    private SimpleMeterRegistry meterRegistry;
+    private ImageResizer resizer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        resizer = new ImageResizer(storageService, imageDiskCache, mongoTemplate, meterRegistry,
+                SIZES, 1_048_576, 262_144, 0.8f, 2, 1000);
+    }
+
+    @Test
+    void contain_rendersOnce_thenServesFromMemory() throws IOException {
+        Media media = media("media/m1.jpg", "image/jpeg");
+        givenOriginal("media/m1.jpg", 1000, 500);
+        givenNotStored("media/m1_r320x0_contain_1700000000000.jpg");
+        givenStillCurrent(1);
+
+        ImageResizer.Resized first = resizer.resize(media, 320, null, null);
+        ImageResizer.Resized second = resizer.resize(media, 320, null, "contain");
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(first.content()));
+        assertThat(decoded.getWidth()).isEqualTo(320);
+        assertThat(decoded.getHeight()).isEqualTo(160);
+        assertThat(first.contentType()).isEqualTo("image/jpeg");
+        assertThat(second).isSameAs(first);
+        verify(storageService).put(eq("media/m1_r320x0_contain_1700000000000.jpg"), eq(first.content()), eq("image/jpeg"));
+        verify(storageService, times(1)).load("media/m1.jpg", null, null);
+        assertThat(tier("rendered")).isEqualTo(1.0);
+        assertThat(tier("memory")).isEqualTo(1.0);
+        assertThat(meterRegistry.get("media.resize.render").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    void cover_cropsToTheExactBox() throws IOException {
+        Media media = media("media/m2.png", "image/png");
+        givenOriginal("media/m2.png", 1000, 500);
+        givenNotStored("media/m2_r256x256_cover_1700000000000.png");
+        givenStillCurrent(1);
+
+        ImageResizer.Resized resized = resizer.resize(media, 256, 256, "cover");
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(resized.content()));
+        assertThat(decoded.getWidth()).isEqualTo(256);
+        assertThat(decoded.getHeight()).isEqualTo(256);
+        assertThat(resized.contentType()).isEqualTo("image/png");
+    }
+
+    @Test
+    void smallOriginal_isNeverUpscaled() {
+        BufferedImage source = new BufferedImage(100, 50, BufferedImage.TYPE_INT_RGB);
+
+        BufferedImage contained = ImageResizer.scale(source, 640, null, ImageResizer.Fit.CONTAIN);
+        BufferedImage covered = ImageResizer.scale(source, 64, 64, ImageResizer.Fit.COVER);
+
+        assertThat(contained.getWidth()).isEqualTo(100);
+        assertThat(covered.getWidth()).isEqualTo(64);
+        assertThat(covered.getHeight()).isEqualTo(50);
+    }
+
+    @Test
+    void resizedPath_isPerMedia_evenWhenTheBlobIsShared() {
+        Media first = Media.builder().id("m1").imagePath("media/abc_0a1b2c3d.jpg")
+                .contentType("image/jpeg").createdAt(UPLOADED_AT).build();
+        Media second = Media.builder().id("m2").imagePath("media/abc_0a1b2c3d.jpg")
+                .contentType("image/jpeg").createdAt(UPLOADED_AT).build();
+
+        assertThat(ImageResizer.resizedPath(first, 320, null, ImageResizer.Fit.CONTAIN))
+                .isEqualTo("media/m1_r320x0_contain_1700000000000.jpg");
+        assertThat(ImageResizer.resizedPath(second, 320, null, ImageResizer.Fit.CONTAIN))
+                .isEqualTo("media/m2_r320x0_contain_1700000000000.jpg");
+    }
+
+    @Test
+    void renderAlreadyInTheBucket_isServedWithoutDecoding() {
+        Media media = media("media/m3.jpg", "image/jpeg");
+        byte[] stored = {1, 2, 3};
+        when(storageService.load("media/m3_r0x128_contain_1700000000000.jpg", null, null)).thenReturn(new StoredObject(
+                new ByteArrayInputStream(stored), stored.length, "image/jpeg", "\"s3\"", null, false));
+
+        ImageResizer.Resized resized = resizer.resize(media, null, 128, null);
+
+        assertThat(resized.content()).isEqualTo(stored);
+        verify(storageService, never()).load("media/m3.jpg", null, null);
+        verify(storageService, never()).put(any(), any(byte[].class), any());
+        assertThat(tier("bucket")).isEqualTo(1.0);
+    }
+
+    @Test
+    void invalidRequests_areRejected() {
+        Media media = media("media/m4.jpg", "image/jpeg");
+
+        assertThatThrownBy(() -> resizer.resize(media, 300, null, null))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("[64, 128, 256, 320, 640]");
+        assertThatThrownBy(() -> resizer.resize(media, 320, null, "cover"))
+                .isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> resizer.resize(media, 320, 320, "stretch"))
+                .isInstanceOf(BadRequestException.class);
+        verify(storageService, never()).load(any(), any(), any());
+    }
+
+    @Test
+    void replacedMeanwhile_renderIsServedButNotKept() throws IOException {
+        Media media = media("media/m5.jpg", "image/jpeg");
+        givenOriginal("media/m5.jpg", 800, 800);
+        givenNotStored("media/m5_r64x64_contain_1700000000000.jpg");
+        givenStillCurrent(0);
+
+        resizer.resize(media, 64, 64, null);
+        resizer.resize(media, 64, 64, null);
+
+        verify(storageService, times(2)).delete("media/m5_r64x64_contain_1700000000000.jpg");
+        assertThat(tier("rendered")).isEqualTo(2.0);
+    }
+
+    @Test
+    void concurrentIdenticalRequests_renderOnce() throws Exception {
+        Media media = media("media/m6.jpg", "image/jpeg");
+        byte[] original = encode(1000, 500);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(storageService.load("media/m6.jpg", null, null)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new StoredObject(new ByteArrayInputStream(original), original.length, "image/jpeg", "\"e\"", null, false);
+        });
+        givenNotStored("media/m6_r128x0_contain_1700000000000.jpg");
+        givenStillCurrent(1);
+
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try {
+            Future<ImageResizer.Resized> leader = pool.submit(() -> resizer.resize(media, 128, null, null));
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<ImageResizer.Resized> follower = pool.submit(() -> resizer.resize(media, 128, null, null));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (meterRegistry.get("media.resize.coalesced").counter().count() < 1 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            assertThat(follower.get(5, TimeUnit.SECONDS)).isSameAs(leader.get(5, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+        assertThat(meterRegistry.get("media.resize.coalesced").counter().count()).isEqualTo(1.0);
+        verify(storageService, times(1)).load("media/m6.jpg", null, null);
+        verify(storageService, times(1)).put(any(), any(byte[].class), any());
+    }
+
+    @Test
+    void allRenderSlotsTaken_rejectsAfterMaxWait_withoutLoadingTheOriginal() throws Exception {
+        resizer = new ImageResizer(storageService, imageDiskCache, mongoTemplate, meterRegistry,
+                SIZES, 1_048_576, 262_144, 0.8f, 1, 50);
+        Media busy = media("media/m7.jpg", "image/jpeg");
+        Media waiting = media("media/m8.jpg", "image/jpeg");
+        byte[] original = encode(1000, 500);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(storageService.load("media/m7.jpg", null, null)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return new StoredObject(new ByteArrayInputStream(original), original.length, "image/jpeg", "\"e\"", null, false);
+        });
+        givenNotStored("media/m7_r128x0_contain_1700000000000.jpg");
+        givenNotStored("media/m8_r128x0_contain_1700000000000.jpg");
+        givenStillCurrent(1);
+
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            Future<ImageResizer.Resized> rendering = pool.submit(() -> resizer.resize(busy, 128, null, null));
+            assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+
+            assertThatThrownBy(() -> resizer.resize(waiting, 128, null, null))
+                    .isInstanceOf(ServiceUnavailableException.class);
+
+            release.countDown();
+            assertThat(rendering.get(5, TimeUnit.SECONDS).content()).isNotEmpty();
+        } finally {
+            pool.shutdownNow();
+        }
+        verify(storageService, never()).load("media/m8.jpg", null, null);
+        assertThat(meterRegistry.get("media.resize.rejected").counter().count()).isEqualTo(1.0);
+    }
+
+    private static Media media(String imagePath, String contentType) {
+        return Media.builder()
+                .id(imagePath.substring(6, imagePath.indexOf('.')))
+                .imagePath(imagePath)
+                .contentType(contentType)
+                .createdAt(UPLOADED_AT)
+                .build();
+    }
+
+    private void givenOriginal(String key, int width, int height) throws IOException {
+        byte[] bytes = encode(width, height);
+        when(storageService.load(key, null, null)).thenAnswer(invocation -> new StoredObject(
+                new ByteArrayInputStream(bytes), bytes.length, "image/jpeg", "\"e\"", null, false));
+    }
+
+    private void givenNotStored(String key) {
+        when(storageService.load(key, null, null)).thenThrow(new MediaNotFoundException(key));
+    }
+
+    private void givenStillCurrent(long matched) {
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Media.class)))
+                .thenReturn(UpdateResult.acknowledged(matched, matched, null));
+    }
+
+    private static byte[] encode(int width, int height) throws IOException {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x += 10) {
+            image.setRGB(x, x * height / width, 0xFF3366CC);
+        }
+        return ImageCodec.encode(image, false, 0.9f);
+    }
+
+    private double tier(String tier) {
+        return meterRegistry.get("media.resize.requests").tag("tier", tier).counter().count();
+    }
+}
@@ -0,0 +1,247 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.model.ImageVariant;
+import com.buyone.mediaservice.model.Media;
+import com.buyone.mediaservice.model.MediaOwnerType;
+import com.buyone.mediaservice.model.MediaVariant;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ImageVariantGeneratorTests {
+
+    private static final Instant UPLOADED_AT = Instant.ofEpochMilli(1_700_000_000_000L);
+
+    @Mock
+    private StorageService storageService;
+
+    @Mock
+    private AsyncStorageService asyncStorageService;
+
+    @Mock
+    private ImageDiskCache imageDiskCache;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private DeleteRetryQueue deleteRetryQueue;
+
+    private ImageVariantGenerator generator;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(asyncStorageService.put(anyString(), any(byte[].class), anyString()))
+                .thenReturn(CompletableFuture.completedFuture(null));
+        lenient().when(asyncStorageService.deleteAll(anyCollection()))
+                .thenReturn(CompletableFuture.completedFuture(List.of()));
+        generator = new ImageVariantGenerator(storageService, asyncStorageService, imageDiskCache, mongoTemplate,
+                deleteRetryQueue, 1, 10, 0.8f);
+    }
+
+    @Test
+    void generate_createsEveryVariantSmallerThanOriginal_asJpeg() throws IOException {
+        Media media = media("media/m1.jpg");
+        givenStored("media/m1.jpg", image(2000, 1000, BufferedImage.TYPE_INT_RGB), "jpg");
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Media.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        generator.generate(media);
+
+        ArgumentCaptor<String> keys = ArgumentCaptor.forClass(String.class);
+        verify(asyncStorageService, times(4)).put(keys.capture(), any(byte[].class), eq("image/jpeg"));
+        assertThat(keys.getAllValues()).containsExactly(
+                "media/m1_large_1700000000000.jpg",
+                "media/m1_medium_1700000000000.jpg",
+                "media/m1_small_1700000000000.jpg",
+                "media/m1_thumb_1700000000000.jpg");
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), update.capture(), eq(Media.class));
+        @SuppressWarnings("unchecked")
+        List<MediaVariant> variants = (List<MediaVariant>) update.getValue().getUpdateObject()
+                .get("$set", Document.class).get("variants");
+        assertThat(variants).extracting(MediaVariant::getName)
+                .containsExactly("thumb", "small", "medium", "large");
+        assertThat(variants).extracting(MediaVariant::getWidth)
+                .containsExactly(150, 320, 640, 1280);
+        assertThat(variants.get(0).getHeight()).isEqualTo(75);
+        verify(asyncStorageService, never()).deleteAll(anyCollection());
+    }
+
+    @Test
+    void generate_keepsPngForTransparentImages_andNeverUpscales() throws IOException {
+        Media media = media("media/m2.png");
+        givenStored("media/m2.png", image(200, 100, BufferedImage.TYPE_INT_ARGB), "png");
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Media.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        generator.generate(media);
+
+        verify(asyncStorageService).put(eq("media/m2_thumb_1700000000000.png"), any(byte[].class), eq("image/png"));
+        verify(asyncStorageService, times(1)).put(anyString(), any(byte[].class), anyString());
+    }
+
+    @Test
+    void generate_removesVariants_whenMediaWasReplacedMeanwhile() throws IOException {
+        Media media = media("media/m3.jpg");
+        givenStored("media/m3.jpg", image(400, 400, BufferedImage.TYPE_INT_RGB), "jpg");
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Media.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+
+        generator.generate(media);
+
+        verify(asyncStorageService).deleteAll(List.of(
+                "media/m3_small_1700000000000.jpg", "media/m3_thumb_1700000000000.jpg"));
+        verify(imageDiskCache).invalidate("media/m3_thumb_1700000000000.jpg");
+    }
+
+    @Test
+    void generate_queuesVariantsThatCouldNotBeRemoved_forRetry() throws IOException {
+        Media media = media("media/m3.jpg");
+        givenStored("media/m3.jpg", image(400, 400, BufferedImage.TYPE_INT_RGB), "jpg");
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Media.class)))
+                .thenReturn(UpdateResult.acknowledged(0, 0L, null));
+        when(asyncStorageService.deleteAll(anyCollection()))
+                .thenReturn(CompletableFuture.completedFuture(List.of("media/m3_thumb_1700000000000.jpg")));
+
+        generator.generate(media);
+
+        verify(deleteRetryQueue).enqueue(List.of("media/m3_thumb_1700000000000.jpg"));
+    }
+
+    @Test
+    void generate_removesEveryVariant_whenOneUploadFails() throws IOException {
+        Media media = media("media/m7.jpg");
+        givenStored("media/m7.jpg", image(400, 400, BufferedImage.TYPE_INT_RGB), "jpg");
+        when(asyncStorageService.put(eq("media/m7_small_1700000000000.jpg"), any(byte[].class), anyString()))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("Failed to store file in R2")));
+
+        generator.generate(media);
+
+        verify(asyncStorageService).put(eq("media/m7_thumb_1700000000000.jpg"), any(byte[].class), anyString());
+        verify(asyncStorageService).deleteAll(List.of(
+                "media/m7_small_1700000000000.jpg", "media/m7_thumb_1700000000000.jpg"));
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(Media.class));
+    }
+
+    @Test
+    void generate_fillsInDimensionsAndPlaceholder_forMediaThatSkippedIngest() throws IOException {
+        Media media = media("media/m5.jpg");
+        givenStored("media/m5.jpg", image(100, 50, BufferedImage.TYPE_INT_RGB), "jpg");
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(Media.class)))
+                .thenReturn(UpdateResult.acknowledged(1, 1L, null));
+
+        generator.generate(media);
+
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), update.capture(), eq(Media.class));
+        Document set = update.getValue().getUpdateObject().get("$set", Document.class);
+        assertThat(set.get("width")).isEqualTo(100);
+        assertThat(set.get("height")).isEqualTo(50);
+        assertThat(set.getString("placeholder")).hasSize(28);
+        assertThat(set).doesNotContainKey("variants"); // smaller than every variant
+    }
+
+    @Test
+    void generate_writesNothing_whenNoVariantsAndPlaceholderKnown() throws IOException {
+        Media media = media("media/m6.jpg");
+        media.setPlaceholder("LEHV6nWB2yk8pyo0adR*.7kCMdnj");
+        givenStored("media/m6.jpg", image(100, 50, BufferedImage.TYPE_INT_RGB), "jpg");
+
+        generator.generate(media);
+
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(Media.class));
+    }
+
+    @Test
+    void generate_skipsUndecodableOriginal() {
+        when(storageService.load("media/m4.jpg", null, null)).thenReturn(new StoredObject(
+                new ByteArrayInputStream(new byte[]{1, 2, 3}), 3, "image/jpeg", "\"e\"", null, false));
+
+        generator.generate(media("media/m4.jpg"));
+
+        verify(asyncStorageService, never()).put(anyString(), any(byte[].class), anyString());
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(Media.class));
+    }
+
+    @Test
+    void imagePathFor_picksSmallestVariantCoveringRequestedSize() {
+        Media media = media("media/m1.jpg");
+        media.setVariants(List.of(
+                MediaVariant.builder().name("thumb").width(150).height(75).imagePath("t.jpg").build(),
+                MediaVariant.builder().name("small").width(320).height(160).imagePath("s.jpg").build()));
+
+        assertThat(ImageVariantGenerator.imagePathFor(media, null)).isEqualTo("media/m1.jpg");
+        assertThat(ImageVariantGenerator.imagePathFor(media, 100)).isEqualTo("t.jpg");
+        assertThat(ImageVariantGenerator.imagePathFor(media, 151)).isEqualTo("s.jpg");
+        assertThat(ImageVariantGenerator.imagePathFor(media, 1000)).isEqualTo("media/m1.jpg");
+    }
+
+    @Test
+    void variantPath_isPerMedia_evenWhenTheBlobIsShared() {
+        // two media of one gallery batch, same content and the same createdAt
+        Media first = Media.builder().id("m1").imagePath("media/abc_0a1b2c3d.png").createdAt(UPLOADED_AT).build();
+        Media second = Media.builder().id("m2").imagePath("media/abc_0a1b2c3d.png").createdAt(UPLOADED_AT).build();
+
+        assertThat(ImageVariantGenerator.variantPath(first, ImageVariant.THUMB, false))
+                .isEqualTo("media/m1_thumb_1700000000000.jpg");
+        assertThat(ImageVariantGenerator.variantPath(second, ImageVariant.SMALL, true))
+                .isEqualTo("media/m2_small_1700000000000.png");
+    }
+
+    private static Media media(String imagePath) {
+        return Media.builder()
+                .id(imagePath.substring(6, imagePath.indexOf('.')))
+                .ownerId("p1")
+                .ownerType(MediaOwnerType.PRODUCT)
+                .imagePath(imagePath)
+                .createdAt(UPLOADED_AT)
+                .build();
+    }
+
+    private void givenStored(String key, BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, format, out);
+        byte[] bytes = out.toByteArray();
+        when(storageService.load(key, null, null)).thenReturn(new StoredObject(
+                new ByteArrayInputStream(bytes), bytes.length, "image/" + format, "\"e\"", null, false));
+    }
+
+    private static BufferedImage image(int width, int height, int type) {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int x = 0; x < width; x += 10) {
+            image.setRGB(x, x * height / width, 0xFF3366CC);
+        }
+        return image;
+    }
+}
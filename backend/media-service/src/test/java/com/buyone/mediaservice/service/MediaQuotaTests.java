@@ -0,0 +1,341 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.exception.ConflictException;
+import com.buyone.mediaservice.model.Media;
+import com.buyone.mediaservice.model.MediaOwnerType;
+import com.buyone.mediaservice.model.OwnerImageCount;
+import com.buyone.mediaservice.model.StoredBlob;
+import com.buyone.mediaservice.repository.MediaRepository;
+import com.buyone.mediaservice.service.impl.MediaServiceImpl;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class MediaQuotaTests {
+
+    private static final int LIMIT = 5;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private MediaRepository mediaRepository;
+
+    // media_quotas as Mongo would keep it: every update applied atomically to one document
+    private final Map<String, OwnerImageCount> counters = new HashMap<>();
+    private final Map<String, AtomicInteger> mediaPerOwner = new ConcurrentHashMap<>();
+
+    private MediaQuota quota;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(mongoTemplate.findById(any(), eq(OwnerImageCount.class)))
+                .thenAnswer(inv -> find(inv.getArgument(0)));
+        lenient().when(mongoTemplate.insert(any(OwnerImageCount.class)))
+                .thenAnswer(inv -> insert(inv.getArgument(0)));
+        lenient().when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(OwnerImageCount.class)))
+                .thenAnswer(inv -> update(inv.getArgument(0), inv.getArgument(1)));
+        lenient().when(mongoTemplate.updateFirst(any(Query.class), any(AggregationUpdate.class), eq(OwnerImageCount.class)))
+                .thenAnswer(inv -> update(inv.getArgument(0), (AggregationUpdate) inv.getArgument(1)));
+        lenient().when(mediaRepository.countByOwnerIdAndOwnerType(anyString(), eq(MediaOwnerType.PRODUCT)))
+                .thenAnswer(inv -> (long) mediaPerOwner.computeIfAbsent(inv.getArgument(0), k -> new AtomicInteger()).get());
+        quota = new MediaQuota(mongoTemplate, mediaRepository);
+    }
+
+    @Test
+    void firstUse_seedsTheCounterFromExistingMedia() {
+        mediaPerOwner.put("p1", new AtomicInteger(3));
+
+        assertThat(quota.tryReserve("p1", 2, LIMIT)).isTrue();
+        assertThat(quota.tryReserve("p1", 1, LIMIT)).isFalse();
+        assertThat(quota.used("p1")).isEqualTo(5);
+    }
+
+    @Test
+    void reservations_stopAtTheLimit_andReleasesFreeSlots() {
+        assertThat(quota.tryReserve("p1", 3, LIMIT)).isTrue();
+        assertThat(quota.tryReserve("p1", 3, LIMIT)).isFalse(); // all or nothing
+        assertThat(quota.tryReserve("p1", 2, LIMIT)).isTrue();
+        assertThat(quota.hasRoom("p1", 1, LIMIT)).isFalse();
+
+        quota.release("p1", 1);
+
+        assertThat(quota.hasRoom("p1", 1, LIMIT)).isTrue();
+        assertThat(quota.tryReserve("p1", 1, LIMIT)).isTrue();
+        assertThat(quota.used("p1")).isEqualTo(5);
+    }
+
+    // The fake above trusts the filter it is given, so pin the filter itself: one conditional
+    // $inc on the existing counter, never an upsert that could create a second document
+    @Test
+    void reserve_isOneConditionalIncrement_onTheExistingCounter() {
+        counters.put("p1", new OwnerImageCount("p1", 1, Instant.now()));
+
+        assertThat(quota.tryReserve("p1", 2, LIMIT)).isTrue();
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(query.capture(), update.capture(), eq(OwnerImageCount.class));
+        assertThat(query.getValue().getQueryObject())
+                .isEqualTo(new Document("_id", "p1").append("count", new Document("$lte", LIMIT - 2)));
+        Document updateObject = update.getValue().getUpdateObject();
+        assertThat(updateObject).containsOnlyKeys("$inc", "$set");
+        assertThat(updateObject.get("$inc")).isEqualTo(new Document("count", 2));
+        assertThat((Document) updateObject.get("$set")).containsOnlyKeys("updatedAt");
+        verify(mongoTemplate, never()).upsert(any(Query.class), any(Update.class), any(Class.class));
+        verify(mongoTemplate, never()).insert(any(OwnerImageCount.class));
+    }
+
+    // A release larger than the count (counter recounted meanwhile) is clamped, not dropped
+    @Test
+    void release_isClampedAtZero() {
+        quota.tryReserve("p1", 1, LIMIT);
+
+        quota.release("p1", 2);
+
+        assertThat(quota.used("p1")).isZero();
+    }
+
+    @Test
+    void release_isOnePipelineUpdate_filteredOnlyByOwner() {
+        counters.put("p1", new OwnerImageCount("p1", 3, Instant.now()));
+
+        quota.release("p1", 2);
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<AggregationUpdate> update = ArgumentCaptor.forClass(AggregationUpdate.class);
+        verify(mongoTemplate).updateFirst(query.capture(), update.capture(), eq(OwnerImageCount.class));
+        assertThat(query.getValue().getQueryObject()).isEqualTo(new Document("_id", "p1"));
+        Document set = update.getValue().toPipeline(Aggregation.DEFAULT_CONTEXT).get(0).get("$set", Document.class);
+        assertThat(set.get("count")).isEqualTo(new Document("$max", List.of(0, new Document("$subtract", List.of("$count", 2)))));
+        assertThat(quota.used("p1")).isEqualTo(1);
+    }
+
+    @Test
+    void fullCounter_isRecountedOnlyOnceQuiet() {
+        // 5 slots held, but only 2 Media left: pending uploads that the TTL index removed
+        counters.put("p1", new OwnerImageCount("p1", 5, Instant.now()));
+        mediaPerOwner.put("p1", new AtomicInteger(2));
+
+        assertThat(quota.tryReserve("p1", 1, LIMIT)).isFalse(); // recently active, a reservation may be in flight
+
+        counters.get("p1").setUpdatedAt(Instant.now().minus(MediaQuota.QUIET_PERIOD).minusSeconds(1));
+
+        assertThat(quota.tryReserve("p1", 1, LIMIT)).isTrue();
+        assertThat(quota.used("p1")).isEqualTo(3);
+    }
+
+    @Test
+    void forget_removesTheCounters() {
+        quota.forget(List.of("p1", "p2"));
+
+        verify(mongoTemplate).remove(any(Query.class), eq(OwnerImageCount.class));
+        verify(mediaRepository, never()).countByOwnerIdAndOwnerType(anyString(), any());
+    }
+
+    // Many sellers' requests for the same few products at once, with injected storage failures:
+    // no product may end up with more than LIMIT images, and failed uploads must free their slot.
+    @Test
+    void parallelUploads_neverExceedTheCap() throws Exception {
+        BlobStore blobStore = mock(BlobStore.class);
+        ImageOptimizer imageOptimizer = mock(ImageOptimizer.class);
+        lenient().when(imageOptimizer.ingest(any(MultipartFile.class)))
+                .thenAnswer(inv -> IngestedImage.unchanged(inv.getArgument(0)));
+        lenient().when(blobStore.store(any(MultipartFile.class))).thenAnswer(inv -> {
+            pause();
+            if (ThreadLocalRandom.current().nextInt(5) == 0) {
+                throw new RuntimeException("Failed to store file in R2");
+            }
+            String digest = UUID.randomUUID().toString();
+            return StoredBlob.builder().digest(digest).imagePath("media/" + digest + ".png")
+                    .contentType("image/png").size(100).refCount(1).stored(true).build();
+        });
+        Map<String, List<Media>> documents = new ConcurrentHashMap<>();
+        lenient().when(mediaRepository.insert(any(Media.class))).thenAnswer(inv -> {
+            Media media = inv.getArgument(0);
+            pause();
+            documents.computeIfAbsent(media.getOwnerId(), k -> new ArrayList<>());
+            synchronized (documents) {
+                documents.get(media.getOwnerId()).add(media);
+            }
+            mediaPerOwner.computeIfAbsent(media.getOwnerId(), k -> new AtomicInteger()).incrementAndGet();
+            return media;
+        });
+        MediaServiceImpl mediaService = new MediaServiceImpl(mediaRepository, blobStore,
+                mock(StorageService.class), mock(ImageVariantGenerator.class),
+                imageOptimizer, quota, mock(DeleteRetryQueue.class), 4);
+        ReflectionTestUtils.setField(mediaService, "publicBucketBaseUrl", "https://cdn.example.com");
+        MultipartFile file = new MockMultipartFile("file", "a.png", "image/png", new byte[100]);
+
+        int products = 4;
+        int uploads = 240;
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(32);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < uploads; i++) {
+                String productId = "product-" + (i % products);
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    try {
+                        mediaService.uploadImage(file, productId, MediaOwnerType.PRODUCT, "seller-1", "SELLER");
+                    } catch (ConflictException e) {
+                        rejected.incrementAndGet();
+                    } catch (RuntimeException e) {
+                        failed.incrementAndGet();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> f : futures) {
+                f.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+            mediaService.shutdown();
+        }
+
+        int stored = 0;
+        for (int p = 0; p < products; p++) {
+            String productId = "product-" + p;
+            List<Media> images = documents.getOrDefault(productId, List.of());
+            assertThat(images).as(productId).hasSizeLessThanOrEqualTo(LIMIT);
+            assertThat(quota.used(productId)).as(productId).isEqualTo(images.size()); // no slot leaked
+            stored += images.size();
+        }
+        assertThat(failed.get()).isPositive();
+        assertThat(rejected.get()).isPositive();
+        assertThat(stored + rejected.get() + failed.get()).isEqualTo(uploads);
+    }
+
+    private static void pause() throws InterruptedException {
+        Thread.sleep(ThreadLocalRandom.current().nextInt(3));
+    }
+
+    private synchronized OwnerImageCount find(String ownerId) {
+        OwnerImageCount counter = counters.get(ownerId);
+        return counter == null ? null : new OwnerImageCount(counter.getOwnerId(), counter.getCount(), counter.getUpdatedAt());
+    }
+
+    private synchronized OwnerImageCount insert(OwnerImageCount counter) {
+        if (counters.containsKey(counter.getOwnerId())) {
+            throw new DuplicateKeyException("E11000 duplicate key: " + counter.getOwnerId());
+        }
+        counters.put(counter.getOwnerId(), new OwnerImageCount(counter.getOwnerId(), counter.getCount(), counter.getUpdatedAt()));
+        return counter;
+    }
+
+    private synchronized UpdateResult update(Query query, Update update) {
+        Document filter = query.getQueryObject();
+        OwnerImageCount counter = counters.get(filter.getString("_id"));
+        if (counter == null || !matches(counter, filter)) {
+            return UpdateResult.acknowledged(0, 0L, null);
+        }
+        Document inc = update.getUpdateObject().get("$inc", Document.class);
+        Document set = update.getUpdateObject().get("$set", Document.class);
+        if (inc != null && inc.containsKey("count")) {
+            counter.setCount(counter.getCount() + ((Number) inc.get("count")).longValue());
+        }
+        if (set != null && set.containsKey("count")) {
+            counter.setCount(((Number) set.get("count")).longValue());
+        }
+        if (set != null && set.containsKey("updatedAt")) {
+            counter.setUpdatedAt((Instant) set.get("updatedAt"));
+        }
+        return UpdateResult.acknowledged(1, 1L, null);
+    }
+
+    // the pipeline form of release: { $set: { count: <expression>, updatedAt: ... } }
+    private synchronized UpdateResult update(Query query, AggregationUpdate update) {
+        OwnerImageCount counter = counters.get(query.getQueryObject().getString("_id"));
+        if (counter == null || !matches(counter, query.getQueryObject())) {
+            return UpdateResult.acknowledged(0, 0L, null);
+        }
+        for (Document stage : update.toPipeline(Aggregation.DEFAULT_CONTEXT)) {
+            Document set = stage.get("$set", Document.class);
+            if (set.containsKey("count")) {
+                counter.setCount(evaluate(set.get("count"), counter));
+            }
+            if (set.containsKey("updatedAt")) {
+                counter.setUpdatedAt((Instant) set.get("updatedAt"));
+            }
+        }
+        return UpdateResult.acknowledged(1, 1L, null);
+    }
+
+    // just the operators release uses: $max, $subtract, "$count" and numbers
+    private static long evaluate(Object expression, OwnerImageCount counter) {
+        if (expression instanceof Number number) {
+            return number.longValue();
+        }
+        if ("$count".equals(expression)) {
+            return counter.getCount();
+        }
+        Document operation = (Document) expression;
+        String operator = operation.keySet().iterator().next();
+        List<Long> args = ((List<?>) operation.get(operator)).stream().map(arg -> evaluate(arg, counter)).toList();
+        return switch (operator) {
+            case "$max" -> Math.max(args.get(0), args.get(1));
+            case "$subtract" -> args.get(0) - args.get(1);
+            default -> throw new IllegalArgumentException("Unsupported operator " + operator);
+        };
+    }
+
+    private static boolean matches(OwnerImageCount counter, Document filter) {
+        Object count = filter.get("count");
+        if (count instanceof Document range) {
+            if (range.containsKey("$lte") && counter.getCount() > ((Number) range.get("$lte")).longValue()) {
+                return false;
+            }
+            if (range.containsKey("$gte") && counter.getCount() < ((Number) range.get("$gte")).longValue()) {
+                return false;
+            }
+        } else if (count != null && counter.getCount() != ((Number) count).longValue()) {
+            return false;
+        }
+        return !filter.containsKey("updatedAt") || Objects.equals(filter.get("updatedAt"), counter.getUpdatedAt());
+    }
+}
@@ -0,0 +1,189 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.listener.ProductEventListener;
+import com.buyone.mediaservice.model.Media;
+import com.buyone.mediaservice.model.MediaVariant;
+import com.buyone.mediaservice.model.StoredBlob;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class MediaReconcilerTests {
+
+    private static final Instant OLD = Instant.now().minus(Duration.ofDays(2));
+    private static final Instant FRESH = Instant.now();
+
+    @Mock
+    private StorageService storageService;
+
+    @Mock
+    private MongoTemplate mongoTemplate;
+
+    @Mock
+    private BlobStore blobStore;
+
+    @Mock
+    private ProductDirectory productDirectory;
+
+    @Mock
+    private ProductEventListener productEventListener;
+
+    @Mock
+    private DeleteRetryQueue deleteRetryQueue;
+
+    @Mock
+    private ImageDiskCache imageDiskCache;
+
+    @Mock
+    private SchedulerLease schedulerLease;
+
+    private MediaReconciler reconciler;
+
+    @BeforeEach
+    void setUp() {
+        reconciler = new MediaReconciler(storageService, mongoTemplate, blobStore, productDirectory,
+                productEventListener, deleteRetryQueue, imageDiskCache, schedulerLease, new SimpleMeterRegistry(),
+                true, true, 1000, 1000, 60, 300, 30);
+    }
+
+    @Test
+    void dryRun_mergesListingWithReferences_andOnlyReports() {
+        givenObjects(
+                new StoredKey("media/a_1.png", 10, OLD),               // blob
+                new StoredKey("media/b.png", 10, OLD),                 // legacy original
+                new StoredKey("media/b_r64x0_contain_1.jpg", 10, OLD), // on-demand size
+                new StoredKey("media/b_thumb_1.jpg", 10, OLD),         // variant
+                new StoredKey("media/c.png", 100, OLD),                // orphan
+                new StoredKey("media/d.png", 10, FRESH));              // upload in progress
+        when(mongoTemplate.stream(any(Query.class), eq(StoredBlob.class)))
+                .thenAnswer(inv -> Stream.of(StoredBlob.builder().imagePath("media/a_1.png").build()));
+        when(mongoTemplate.stream(any(Query.class), eq(Media.class)))
+                .thenAnswer(inv -> Stream.of(Media.builder()
+                        .imagePath("media/b.png")
+                        .variants(List.of(MediaVariant.builder().imagePath("media/b_thumb_1.jpg").build()))
+                        .resizedPaths(List.of("media/b_r64x0_contain_1.jpg", "media/z_r64x0_contain_1.jpg"))
+                        .build()));
+
+        MediaReconciler.Report report = reconciler.run(true);
+
+        assertThat(report.scannedObjects()).isEqualTo(6);
+        assertThat(report.orphanObjects()).isEqualTo(1);
+        assertThat(report.orphanBytes()).isEqualTo(100);
+        assertThat(report.sampleObjects()).containsExactly("media/c.png");
+        assertThat(report.deletedObjects()).isZero();
+        verify(storageService, never()).deleteAll(anyCollection());
+    }
+
+    @Test
+    void run_deletesOrphans_andQueuesFailedDeletes() {
+        givenObjects(new StoredKey("media/c.png", 10, OLD), new StoredKey("media/e.png", 10, OLD));
+        when(storageService.deleteAll(List.of("media/c.png", "media/e.png"))).thenReturn(List.of("media/e.png"));
+
+        MediaReconciler.Report report = reconciler.run(false);
+
+        assertThat(report.orphanObjects()).isEqualTo(2);
+        assertThat(report.deletedObjects()).isEqualTo(1);
+        verify(imageDiskCache).invalidate("media/c.png");
+        verify(deleteRetryQueue).enqueue(List.of("media/e.png"));
+    }
+
+    @Test
+    void run_neverDeletesKeysOutsideTheServicePrefix() {
+        givenObjects(new StoredKey("assets/logo.png", 10, OLD), new StoredKey("media/c.png", 10, OLD));
+        when(storageService.deleteAll(List.of("media/c.png"))).thenReturn(List.of());
+
+        MediaReconciler.Report report = reconciler.run(false);
+
+        assertThat(report.deletedObjects()).isEqualTo(1);
+        verify(storageService).deleteAll(List.of("media/c.png"));
+        verify(imageDiskCache, never()).invalidate("assets/logo.png");
+    }
+
+    @Test
+    void mediaOfDeletedProducts_areCleanedUpLikeTheLostEvent() {
+        when(mongoTemplate.find(any(Query.class), eq(Media.class))).thenReturn(
+                List.of(owner("p1"), owner("p1"), owner("p2")),
+                List.of());
+        when(productDirectory.isDeleted("p1")).thenReturn(false);
+        when(productDirectory.isDeleted("p2")).thenReturn(true);
+        when(mongoTemplate.count(any(Query.class), eq(Media.class))).thenReturn(3L);
+
+        MediaReconciler.Report dryRun = reconciler.run(true);
+
+        assertThat(dryRun.productsGone()).isEqualTo(1);
+        assertThat(dryRun.danglingMedia()).isEqualTo(3);
+        assertThat(dryRun.sampleProducts()).containsExactly("p2");
+        verify(productEventListener, never()).cleanUp(anyList());
+
+        when(mongoTemplate.find(any(Query.class), eq(Media.class))).thenReturn(List.of(owner("p2")), List.of());
+
+        reconciler.run(false);
+
+        verify(productEventListener).cleanUp(List.of("p2"));
+    }
+
+    @Test
+    void leakedReferences_areCorrectedOnlyOnceSeenTwice() {
+        StoredBlob leaked = StoredBlob.builder().digest("d1").imagePath("media/d1_x.png").refCount(3).createdAt(OLD).build();
+        StoredBlob uploading = StoredBlob.builder().digest("d2").imagePath("media/d2_x.png").refCount(1).createdAt(FRESH).build();
+        when(mongoTemplate.find(any(Query.class), eq(StoredBlob.class))).thenReturn(
+                List.of(leaked, uploading), List.of(),
+                List.of(leaked, uploading), List.of());
+        when(mongoTemplate.stream(any(Query.class), eq(Media.class)))
+                .thenAnswer(inv -> Stream.of(Media.builder().contentHash("d1").build(),
+                        Media.builder().contentHash("d1").build()));
+        when(blobStore.correctReferences("d1", 3, 2)).thenReturn(true);
+
+        MediaReconciler.Report first = reconciler.run(false);
+
+        assertThat(first.leakedBlobs()).isEqualTo(1);
+        verify(blobStore, never()).correctReferences(anyString(), anyLong(), anyLong());
+
+        MediaReconciler.Report second = reconciler.run(false);
+
+        assertThat(second.correctedBlobs()).isEqualTo(1);
+        verify(blobStore).correctReferences("d1", 3, 2);
+    }
+
+    @Test
+    void scheduledRun_doesNothing_whileAnotherReplicaHoldsTheLease() {
+        when(schedulerLease.runExclusively(eq(MediaReconciler.LOCK_NAME), eq(Duration.ofMinutes(300)),
+                eq(Duration.ofMinutes(30)), any(Runnable.class))).thenReturn(false);
+
+        reconciler.scheduledRun();
+
+        verify(storageService, never()).list(anyString(), any(), anyInt());
+        verify(productDirectory, never()).isDeleted(anyString());
+    }
+
+    private void givenObjects(StoredKey... objects) {
+        when(storageService.list(eq(StorageService.KEY_PREFIX), any(), anyInt())).thenReturn(List.of(objects), List.of());
+    }
+
+    private static Media owner(String productId) {
+        return Media.builder().ownerId(productId).build();
+    }
+}
@@ -1,31 +1,69 @@
 package com.buyone.mediaservice.service;
 
+import com.buyone.mediaservice.exception.BadRequestException;
 import com.buyone.mediaservice.exception.ConflictException;
 import com.buyone.mediaservice.exception.ForbiddenException;
 import com.buyone.mediaservice.exception.InvalidFileException;
 import com.buyone.mediaservice.exception.MediaNotFoundException;
 import com.buyone.mediaservice.model.Media;
 import com.buyone.mediaservice.model.MediaOwnerType;
+import com.buyone.mediaservice.model.MediaVariant;
+import com.buyone.mediaservice.model.StoredBlob;
 import com.buyone.mediaservice.repository.MediaRepository;
+import com.buyone.mediaservice.response.BatchUploadResponse;
+import com.buyone.mediaservice.response.BatchUploadResult;
 import com.buyone.mediaservice.response.DeleteMediaResponse;
 import com.buyone.mediaservice.response.MediaResponse;
+import com.buyone.mediaservice.response.PresignedUploadResponse;
 import com.buyone.mediaservice.service.impl.MediaServiceImpl;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
-import org.mockito.InjectMocks;
+import org.mockito.InOrder;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -35,15 +73,47 @@ class MediaServiceImplTests {
     @Mock
     private MediaRepository mediaRepository;
     
+    @Mock
+    private BlobStore blobStore;
+    
     @Mock
     private StorageService storageService;
     
+    @Mock
+    private ImageVariantGenerator imageVariantGenerator;
+    
+    @Mock
+    private ImageOptimizer imageOptimizer;
+    
+    @Mock
+    private MediaQuota mediaQuota;
+    
+    @Mock
+    private DeleteRetryQueue deleteRetryQueue;
+    
     @Mock
     private MultipartFile multipartFile;
     
-    @InjectMocks
     private MediaServiceImpl mediaService;
     
+    @BeforeEach
+    void passUploadsThroughIngest() {
+        mediaService = new MediaServiceImpl(mediaRepository, blobStore, storageService,
+                imageVariantGenerator, imageOptimizer, mediaQuota, deleteRetryQueue, 4);
+        lenient().when(imageOptimizer.ingest(any(MultipartFile.class)))
+                .thenAnswer(inv -> IngestedImage.unchanged(inv.getArgument(0)));
+        lenient().when(imageOptimizer.ingest(any(byte[].class), anyString(), anyString()))
+                .thenAnswer(inv -> IngestedImage.unchanged(new MockMultipartFile("file", inv.getArgument(1),
+                        inv.getArgument(2), (byte[]) inv.getArgument(0))));
+        lenient().when(mediaQuota.tryReserve(anyString(), anyInt(), anyInt())).thenReturn(true);
+        lenient().when(mediaQuota.hasRoom(anyString(), anyInt(), anyInt())).thenReturn(true);
+    }
+    
+    @AfterEach
+    void shutdownPool() {
+        mediaService.shutdown();
+    }
+    
     private void setPublicBaseUrl() {
         ReflectionTestUtils.setField(mediaService, "publicBucketBaseUrl", "https://cdn.example.com");
     }
@@ -59,7 +129,6 @@ class MediaServiceImplTests {
         
         when(multipartFile.isEmpty()).thenReturn(false);
         when(multipartFile.getSize()).thenReturn(1000L);
-        when(multipartFile.getContentType()).thenReturn("image/png");
         
         Media oldAvatar = Media.builder()
                 .id("m-old")
@@ -71,18 +140,10 @@ class MediaServiceImplTests {
         when(mediaRepository.findAllByOwnerIdAndOwnerType(ownerId, MediaOwnerType.USER))
                 .thenReturn(List.of(oldAvatar));
         
-        Media savedInitial = Media.builder()
-                .id("m-new")
-                .ownerId(ownerId)
-                .ownerType(MediaOwnerType.USER)
-                .createdAt(Instant.now())
-                .build();
-        when(mediaRepository.save(any(Media.class)))
-                .thenReturn(savedInitial)
-                .thenReturn(savedInitial);
-        
-        when(storageService.store(multipartFile, "m-new"))
-                .thenReturn("media/m-new.png");
+        when(imageOptimizer.ingest(multipartFile)).thenReturn(new IngestedImage(multipartFile, 640, 480, "LEHV6nWB2yk8pyo0adR*.7kCMdnj"));
+        when(blobStore.store(multipartFile)).thenReturn(blob("d1"));
+        when(mediaRepository.insert(any(Media.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(blobStore.releaseAllAsync(List.of(oldAvatar))).thenReturn(CompletableFuture.completedFuture(List.of()));
         
         MediaResponse response = mediaService.uploadImage(
                 multipartFile,
@@ -92,21 +153,524 @@ class MediaServiceImplTests {
                 currentUserRole
         );
         
-        verify(storageService).delete("media/m-old.png");
-        verify(mediaRepository).delete(oldAvatar);
+        verify(mediaRepository).deleteAll(List.of(oldAvatar));
+        verify(blobStore).releaseAllAsync(List.of(oldAvatar));
+        verify(imageVariantGenerator).deleteVariants(oldAvatar);
         
-        // Commented out because save() is legitimately called twice
-        // ArgumentCaptor<Media> mediaCaptor = ArgumentCaptor.forClass(Media.class);
-        // verify(mediaRepository).save(mediaCaptor.capture());
-        // Media firstSaved = mediaCaptor.getValue();
-        // assertThat(firstSaved.getOwnerId()).isEqualTo(ownerId);
-        // assertThat(firstSaved.getOwnerType()).isEqualTo(MediaOwnerType.USER);
+        // one complete insert, no save-then-update
+        ArgumentCaptor<Media> mediaCaptor = ArgumentCaptor.forClass(Media.class);
+        verify(mediaRepository).insert(mediaCaptor.capture());
+        verify(mediaRepository, never()).save(any(Media.class));
+        Media inserted = mediaCaptor.getValue();
+        assertThat(inserted.getId()).isNotBlank();
+        assertThat(inserted.getOwnerId()).isEqualTo(ownerId);
+        assertThat(inserted.getOwnerType()).isEqualTo(MediaOwnerType.USER);
+        assertThat(inserted.getImagePath()).isEqualTo("media/d1_0a1b2c3d.png");
+        assertThat(inserted.getContentHash()).isEqualTo("d1");
+        assertThat(inserted.getContentType()).isEqualTo("image/png");
+        assertThat(inserted.getSize()).isEqualTo(1000L);
         
-        verify(storageService).store(multipartFile, "m-new");
+        verify(imageVariantGenerator).generateAsync(inserted);
         
-        assertThat(response.id()).isEqualTo("m-new");
+        assertThat(response.id()).isEqualTo(inserted.getId());
         assertThat(response.ownerId()).isEqualTo(ownerId);
-        assertThat(response.url()).isEqualTo("https://cdn.example.com/media/m-new.png");
+        assertThat(response.url()).isEqualTo("https://cdn.example.com/media/d1_0a1b2c3d.png");
+        // everything for the first paint comes with the metadata
+        assertThat(response.width()).isEqualTo(640);
+        assertThat(response.height()).isEqualTo(480);
+        assertThat(response.placeholder()).isEqualTo("LEHV6nWB2yk8pyo0adR*.7kCMdnj");
+    }
+    
+    @Test
+    void uploadImage_userAvatar_queuesReplacedObjectsThatCouldNotBeDeleted() {
+        setPublicBaseUrl();
+        when(multipartFile.isEmpty()).thenReturn(false);
+        when(multipartFile.getSize()).thenReturn(1000L);
+        Media oldAvatar = Media.builder()
+                .id("m-old")
+                .ownerId("user-1")
+                .ownerType(MediaOwnerType.USER)
+                .imagePath("media/m-old.png")
+                .build();
+        when(mediaRepository.findAllByOwnerIdAndOwnerType("user-1", MediaOwnerType.USER))
+                .thenReturn(List.of(oldAvatar));
+        when(blobStore.store(multipartFile)).thenReturn(blob("d1"));
+        when(mediaRepository.insert(any(Media.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(blobStore.releaseAllAsync(List.of(oldAvatar)))
+                .thenReturn(CompletableFuture.completedFuture(List.of("media/m-old.png")));
+        
+        mediaService.uploadImage(multipartFile, "user-1", MediaOwnerType.USER, "user-1", "CLIENT");
+        
+        verify(deleteRetryQueue).enqueue(List.of("media/m-old.png"));
+    }
+    
+    @Test
+    void uploadImage_releasesStoredBlob_whenInsertFails() {
+        setPublicBaseUrl();
+        givenValidPng();
+        StoredBlob blob = blob("d1");
+        when(blobStore.store(multipartFile)).thenReturn(blob);
+        when(mediaRepository.insert(any(Media.class)))
+                .thenThrow(new DataAccessResourceFailureException("mongo down"));
+        
+        assertThatThrownBy(() -> mediaService.uploadImage(
+                multipartFile, "product-1", MediaOwnerType.PRODUCT, "seller-1", "SELLER"
+        )).isInstanceOf(DataAccessResourceFailureException.class);
+        
+        verify(blobStore).release(eq(blob), any(DataAccessResourceFailureException.class));
+        verify(imageVariantGenerator, never()).generateAsync(any(Media.class));
+        verify(mediaQuota).release("product-1", 1);
+    }
+    
+    @Test
+    void uploadImage_writesNoDocument_whenStoreFails() {
+        setPublicBaseUrl();
+        givenValidPng();
+        when(blobStore.store(multipartFile))
+                .thenThrow(new RuntimeException("Failed to store file in R2"));
+        
+        assertThatThrownBy(() -> mediaService.uploadImage(
+                multipartFile, "product-1", MediaOwnerType.PRODUCT, "seller-1", "SELLER"
+        )).hasMessageContaining("Failed to store file");
+        
+        verify(mediaRepository, never()).insert(any(Media.class));
+        verify(mediaRepository, never()).save(any(Media.class));
+        verify(mediaQuota).tryReserve("product-1", 1, 5);
+        verify(mediaQuota).release("product-1", 1);
+    }
+    
+    @Test
+    void uploadImage_userAvatar_keepsOldAvatar_whenNewOneFails() {
+        setPublicBaseUrl();
+        givenValidPng();
+        Media oldAvatar = Media.builder()
+                .id("m-old")
+                .ownerId("user-1")
+                .ownerType(MediaOwnerType.USER)
+                .imagePath("media/m-old.png")
+                .build();
+        when(mediaRepository.findAllByOwnerIdAndOwnerType("user-1", MediaOwnerType.USER))
+                .thenReturn(List.of(oldAvatar));
+        when(blobStore.store(multipartFile))
+                .thenThrow(new RuntimeException("Failed to store file in R2"));
+        
+        assertThatThrownBy(() -> mediaService.uploadImage(
+                multipartFile, "user-1", MediaOwnerType.USER, "user-1", "CLIENT"
+        )).isInstanceOf(RuntimeException.class);
+        
+        verify(blobStore, never()).releaseAllAsync(anyCollection());
+        verify(mediaRepository, never()).deleteAll(anyList());
+    }
+    
+    // Failure injection under concurrency: every surviving document must be complete and
+    // point at an existing blob, and no blob may be left without a document.
+    @Test
+    void uploadImage_concurrentUploadsWithInjectedFailures_leaveNoHalfWrittenMedia() throws Exception {
+        setPublicBaseUrl();
+        givenValidPng();
+        Map<String, Media> documents = new ConcurrentHashMap<>();
+        Set<String> blobs = ConcurrentHashMap.newKeySet();
+        
+        when(blobStore.store(multipartFile)).thenAnswer(inv -> {
+            if (ThreadLocalRandom.current().nextInt(4) == 0) {
+                throw new RuntimeException("Failed to store file in R2");
+            }
+            StoredBlob blob = blob(UUID.randomUUID().toString());
+            blobs.add(blob.getImagePath());
+            return blob;
+        });
+        doAnswer(inv -> blobs.remove(inv.<StoredBlob>getArgument(0).getImagePath()))
+                .when(blobStore).release(any(StoredBlob.class), any(RuntimeException.class));
+        when(mediaRepository.insert(any(Media.class))).thenAnswer(inv -> {
+            if (ThreadLocalRandom.current().nextInt(4) == 0) {
+                throw new DataAccessResourceFailureException("mongo down");
+            }
+            Media m = inv.getArgument(0);
+            documents.put(m.getId(), m);
+            return m;
+        });
+        
+        int uploads = 400;
+        ExecutorService pool = Executors.newFixedThreadPool(16);
+        AtomicInteger succeeded = new AtomicInteger();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < uploads; i++) {
+                String productId = "product-" + (i % 20);
+                futures.add(pool.submit(() -> {
+                    try {
+                        mediaService.uploadImage(multipartFile, productId, MediaOwnerType.PRODUCT, "seller-1", "SELLER");
+                        succeeded.incrementAndGet();
+                    } catch (RuntimeException expected) {
+                        // injected failure
+                    }
+                }));
+            }
+            for (Future<?> f : futures) {
+                f.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        
+        assertThat(succeeded.get()).isEqualTo(documents.size()).isGreaterThan(0).isLessThan(uploads);
+        assertThat(documents.values()).allSatisfy(m -> {
+            assertThat(m.getImagePath()).isEqualTo("media/" + m.getContentHash() + "_0a1b2c3d.png");
+            assertThat(m.getCreatedAt()).isNotNull();
+            assertThat(blobs).contains(m.getImagePath());
+        });
+        assertThat(blobs).hasSize(documents.size());
+        verify(mediaRepository, never()).save(any(Media.class));
+    }
+    
+    // -------- uploadProductImages (gallery batch) --------
+    
+    @Test
+    void uploadProductImages_checksQuotaOnce_storesAll_andInsertsInBulk() {
+        setPublicBaseUrl();
+        List<MultipartFile> files = List.of(png("a.png"), png("b.png"), png("c.png"));
+        when(blobStore.storeAsync(any(MultipartFile.class)))
+                .thenAnswer(inv -> CompletableFuture.completedFuture(blob(inv.<MultipartFile>getArgument(0).getOriginalFilename())));
+        when(mediaRepository.insert(anyList())).thenAnswer(inv -> inv.getArgument(0));
+        
+        BatchUploadResponse response = mediaService.uploadProductImages(files, "product-1", "seller-1", "SELLER");
+        
+        assertThat(response.uploaded()).isEqualTo(3);
+        assertThat(response.failed()).isZero();
+        assertThat(response.results()).extracting(BatchUploadResult::filename)
+                .containsExactly("a.png", "b.png", "c.png");
+        assertThat(response.results()).allSatisfy(r -> {
+            assertThat(r.success()).isTrue();
+            assertThat(r.media().url()).isEqualTo("https://cdn.example.com/media/" + r.filename() + "_0a1b2c3d.png");
+        });
+        
+        verify(mediaQuota, times(1)).tryReserve("product-1", 3, 5);
+        verify(mediaQuota).release("product-1", 0);
+        verify(mediaRepository, never()).countByOwnerIdAndOwnerType(anyString(), any());
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<Media>> inserted = ArgumentCaptor.forClass((Class<List<Media>>) (Class<?>) List.class);
+        verify(mediaRepository, times(1)).insert(inserted.capture());
+        assertThat(inserted.getValue()).hasSize(3)
+                .allSatisfy(m -> assertThat(m.getImagePath()).isEqualTo("media/" + m.getContentHash() + "_0a1b2c3d.png"));
+        verify(mediaRepository, never()).save(any(Media.class));
+        verify(imageVariantGenerator, times(3)).generateAsync(any(Media.class));
+    }
+    
+    @Test
+    void uploadProductImages_rejectsWholeBatch_whenOverQuota() {
+        when(mediaQuota.tryReserve("product-1", 3, 5)).thenReturn(false);
+        when(mediaQuota.used("product-1")).thenReturn(3L);
+        
+        assertThatThrownBy(() -> mediaService.uploadProductImages(
+                List.of(png("a.png"), png("b.png"), png("c.png")), "product-1", "seller-1", "SELLER"
+        )).isInstanceOf(ConflictException.class)
+                .hasMessageContaining("2 more image(s)");
+        
+        verify(blobStore, never()).storeAsync(any(MultipartFile.class));
+    }
+    
+    @Test
+    void uploadProductImages_reportsPerFileFailures() {
+        setPublicBaseUrl();
+        MultipartFile pdf = new MockMultipartFile("files", "doc.pdf", "application/pdf", new byte[10]);
+        MultipartFile broken = png("broken.png");
+        when(blobStore.storeAsync(any(MultipartFile.class))).thenAnswer(inv -> {
+            if (inv.getArgument(0) == pdf) {
+                return CompletableFuture.failedFuture(new InvalidFileException(
+                        "Unsupported image format, only JPEG, PNG, GIF and WebP are allowed!"));
+            }
+            if (inv.getArgument(0) == broken) {
+                return CompletableFuture.failedFuture(new RuntimeException("Failed to store file in R2"));
+            }
+            return CompletableFuture.completedFuture(blob("ok"));
+        });
+        when(mediaRepository.insert(anyList())).thenAnswer(inv -> inv.getArgument(0));
+        
+        BatchUploadResponse response = mediaService.uploadProductImages(
+                List.of(png("ok.png"), pdf, broken), "product-1", "seller-1", "SELLER");
+        
+        assertThat(response.uploaded()).isEqualTo(1);
+        assertThat(response.failed()).isEqualTo(2);
+        assertThat(response.results().get(0).success()).isTrue();
+        assertThat(response.results().get(1).error()).contains("Unsupported image format");
+        assertThat(response.results().get(2).error()).isEqualTo("Upload failed");
+        verify(mediaQuota).release("product-1", 2);
+    }
+    
+    @Test
+    void uploadProductImages_releasesAllStoredBlobs_whenBulkInsertFails() {
+        when(blobStore.storeAsync(any(MultipartFile.class)))
+                .thenAnswer(inv -> CompletableFuture.completedFuture(blob(inv.<MultipartFile>getArgument(0).getOriginalFilename())));
+        when(mediaRepository.insert(anyList())).thenThrow(new DataAccessResourceFailureException("mongo down"));
+        
+        assertThatThrownBy(() -> mediaService.uploadProductImages(
+                List.of(png("a.png"), png("b.png")), "product-1", "seller-1", "SELLER"
+        )).isInstanceOf(DataAccessResourceFailureException.class);
+        
+        verify(blobStore, times(2)).release(any(StoredBlob.class), any(DataAccessResourceFailureException.class));
+        verify(mediaQuota).release("product-1", 2);
+    }
+    
+    @Test
+    void uploadProductImages_forbidden_whenNotSeller() {
+        assertThatThrownBy(() -> mediaService.uploadProductImages(
+                List.of(png("a.png")), "product-1", "client-1", "CLIENT"
+        )).isInstanceOf(ForbiddenException.class);
+    }
+    
+    // -------- direct (presigned) uploads --------
+    
+    @Test
+    void createUpload_checksQuota_presigns_andInsertsPendingMedia() {
+        ReflectionTestUtils.setField(mediaService, "directUploadUrlTtlSeconds", 300L);
+        when(storageService.presignPut(anyString(), eq("image/png"), eq(1000L), eq(Duration.ofMinutes(5))))
+                .thenReturn("https://bucket.r2/signed");
+        
+        PresignedUploadResponse upload = mediaService.createUpload(
+                "product-1", MediaOwnerType.PRODUCT, "image/png", 1000L, "seller-1", "SELLER");
+        
+        ArgumentCaptor<Media> pending = ArgumentCaptor.forClass(Media.class);
+        verify(mediaRepository).insert(pending.capture());
+        assertThat(pending.getValue().getId()).isEqualTo(upload.mediaId());
+        assertThat(pending.getValue().getImagePath()).isEqualTo("media/uploads/" + upload.mediaId() + ".png");
+        assertThat(pending.getValue().getUploadedBy()).isEqualTo("seller-1");
+        assertThat(pending.getValue().getUploadExpiresAt()).isAfter(upload.expiresAt());
+        verify(storageService).presignPut(pending.getValue().getImagePath(), "image/png", 1000L, Duration.ofMinutes(5));
+        assertThat(upload.uploadUrl()).isEqualTo("https://bucket.r2/signed");
+        assertThat(upload.method()).isEqualTo("PUT");
+        assertThat(upload.headers()).containsEntry("Content-Type", "image/png");
+        verify(mediaQuota).tryReserve("product-1", 1, 5); // held by the pending document
+        verify(mediaQuota, never()).release(anyString(), anyInt());
+    }
+    
+    @Test
+    void createUpload_appliesQuotaAndRoleChecks() {
+        when(mediaQuota.tryReserve("product-1", 1, 5)).thenReturn(false);
+        
+        assertThatThrownBy(() -> mediaService.createUpload(
+                "product-1", MediaOwnerType.PRODUCT, "image/png", 1000L, "seller-1", "SELLER"))
+                .isInstanceOf(ConflictException.class);
+        assertThatThrownBy(() -> mediaService.createUpload(
+                "user-2", MediaOwnerType.USER, "image/png", 1000L, "user-1", "CLIENT"))
+                .isInstanceOf(ForbiddenException.class);
+        assertThatThrownBy(() -> mediaService.createUpload(
+                "product-1", MediaOwnerType.PRODUCT, "image/png", 3L * 1024 * 1024, "seller-1", "SELLER"))
+                .isInstanceOf(InvalidFileException.class);
+        assertThatThrownBy(() -> mediaService.createUpload(
+                "product-1", MediaOwnerType.PRODUCT, "image/svg+xml", 1000L, "seller-1", "SELLER"))
+                .isInstanceOf(InvalidFileException.class);
+        verify(storageService, never()).presignPut(anyString(), anyString(), anyLong(), any(Duration.class));
+    }
+    
+    @Test
+    void completeUpload_verifiesObject_andPublishesMedia() {
+        setPublicBaseUrl();
+        Media pending = pendingUpload("m1", MediaOwnerType.USER, "user-1");
+        Media oldAvatar = Media.builder().id("m-old").ownerId("user-1").ownerType(MediaOwnerType.USER)
+                .imagePath("media/m-old.png").build();
+        when(mediaRepository.findById("m1")).thenReturn(Optional.of(pending));
+        when(storageService.head("media/uploads/m1.png"))
+                .thenReturn(new StoredObject(null, 1000L, "image/png", "\"e\"", null, false));
+        givenObjectContent("media/uploads/m1.png", PNG_SIGNATURE);
+        when(mediaRepository.findAllByOwnerIdAndOwnerType("user-1", MediaOwnerType.USER))
+                .thenReturn(List.of(oldAvatar, pending));
+        when(blobStore.store(any(MultipartFile.class))).thenReturn(blob("d1"));
+        when(mediaRepository.completePendingUpload(eq("m1"), anyString(), anyString(), any(Instant.class), anyLong(), any(), any(), any())).thenReturn(1L);
+        when(blobStore.releaseAllAsync(List.of(oldAvatar))).thenReturn(CompletableFuture.completedFuture(List.of()));
+        
+        MediaResponse response = mediaService.completeUpload("m1", "user-1", "CLIENT");
+        
+        assertThat(pending.getUploadExpiresAt()).isNull();
+        assertThat(pending.getCreatedAt()).isNotNull();
+        verify(mediaRepository).completePendingUpload("m1", "media/d1_0a1b2c3d.png", "d1", pending.getCreatedAt(),
+                1000L, null, null, null);
+        verify(mediaRepository, never()).save(any(Media.class));
+        // published under the content-addressed key, the client-writable staging key is gone
+        assertThat(response.url()).isEqualTo("https://cdn.example.com/media/d1_0a1b2c3d.png");
+        assertThat(pending.getContentHash()).isEqualTo("d1");
+        verify(storageService).delete("media/uploads/m1.png");
+        verify(mediaRepository).deleteAll(List.of(oldAvatar));
+        verify(blobStore).releaseAllAsync(List.of(oldAvatar));
+        verify(imageVariantGenerator).deleteVariants(oldAvatar);
+        verify(imageVariantGenerator).generateAsync(pending);
+    }
+    
+    @Test
+    void completeUpload_storesTheIngestedBytes_underTheirContentHash() throws IOException {
+        Media pending = pendingUpload("m1", MediaOwnerType.PRODUCT, "seller-1");
+        byte[] optimized = {(byte) 0x89, 'P', 'N', 'G', 1, 2, 3};
+        when(mediaRepository.findById("m1")).thenReturn(Optional.of(pending));
+        when(storageService.head("media/uploads/m1.png"))
+                .thenReturn(new StoredObject(null, 1000L, "image/png", "\"e\"", null, false));
+        givenObjectContent("media/uploads/m1.png", PNG_SIGNATURE);
+        when(imageOptimizer.ingest(PNG_SIGNATURE, "media/uploads/m1.png", "image/png")).thenReturn(new IngestedImage(
+                new MockMultipartFile("file", "m1.png", "image/png", optimized), 640, 480, "LEHV6nWB2yk8pyo0adR*.7kCMdnj"));
+        ArgumentCaptor<MultipartFile> stored = ArgumentCaptor.forClass(MultipartFile.class);
+        StoredBlob blob = blob("d1");
+        blob.setSize((long) optimized.length);
+        when(blobStore.store(stored.capture())).thenReturn(blob);
+        when(mediaRepository.completePendingUpload(eq("m1"), anyString(), anyString(), any(Instant.class), anyLong(), any(), any(), any())).thenReturn(1L);
+        
+        mediaService.completeUpload("m1", "seller-1", "SELLER");
+        
+        assertThat(stored.getValue().getBytes()).isEqualTo(optimized);
+        verify(storageService, never()).put(anyString(), any(byte[].class), anyString());
+        verify(mediaRepository).completePendingUpload(eq("m1"), eq("media/d1_0a1b2c3d.png"), eq("d1"), any(Instant.class),
+                eq((long) optimized.length), eq(640), eq(480), eq("LEHV6nWB2yk8pyo0adR*.7kCMdnj"));
+        assertThat(pending.getWidth()).isEqualTo(640);
+        assertThat(pending.getPlaceholder()).isEqualTo("LEHV6nWB2yk8pyo0adR*.7kCMdnj");
+        verify(imageVariantGenerator).generateAsync(pending);
+    }
+    
+    @Test
+    void completeUpload_rejectsAndRemoves_whenUploadDoesNotMatchDeclaration() {
+        Media pending = pendingUpload("m1", MediaOwnerType.PRODUCT, "seller-1");
+        when(mediaRepository.findById("m1")).thenReturn(Optional.of(pending));
+        when(storageService.head("media/uploads/m1.png"))
+                .thenReturn(new StoredObject(null, 5_000_000L, "image/png", "\"e\"", null, false));
+        
+        when(mediaRepository.deleteByIdAndUploadExpiresAtNotNull("m1")).thenReturn(1L);
+        
+        assertThatThrownBy(() -> mediaService.completeUpload("m1", "seller-1", "SELLER"))
+                .isInstanceOf(InvalidFileException.class);
+        
+        verify(storageService).delete("media/uploads/m1.png");
+        verify(mediaQuota).release("product-1", 1);
+        verify(mediaRepository, never()).completePendingUpload(anyString(), anyString(), anyString(), any(Instant.class), anyLong(), any(), any(), any());
+    }
+    
+    @Test
+    void completeUpload_rejects_whenBytesAreNotTheDeclaredFormat() {
+        Media pending = pendingUpload("m1", MediaOwnerType.PRODUCT, "seller-1");
+        when(mediaRepository.findById("m1")).thenReturn(Optional.of(pending));
+        when(storageService.head("media/uploads/m1.png"))
+                .thenReturn(new StoredObject(null, 1000L, "image/png", "\"e\"", null, false));
+        givenObjectContent("media/uploads/m1.png", "GIF89a".getBytes(StandardCharsets.US_ASCII));
+        
+        assertThatThrownBy(() -> mediaService.completeUpload("m1", "seller-1", "SELLER"))
+                .isInstanceOf(InvalidFileException.class);
+        
+        verify(storageService).delete("media/uploads/m1.png");
+        verify(mediaRepository).deleteByIdAndUploadExpiresAtNotNull("m1");
+    }
+    
+    @Test
+    void completeUpload_rejectsExpiredUpload_andFreesItsSlot() {
+        Media pending = pendingUpload("m1", MediaOwnerType.PRODUCT, "seller-1");
+        pending.setUploadExpiresAt(Instant.now().minusSeconds(5));
+        when(mediaRepository.findById("m1")).thenReturn(Optional.of(pending));
+        when(mediaRepository.deleteByIdAndUploadExpiresAtNotNull("m1")).thenReturn(1L);
+        
+        assertThatThrownBy(() -> mediaService.completeUpload("m1", "seller-1", "SELLER"))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("expired");
+        
+        verify(storageService).delete("media/uploads/m1.png");
+        verify(mediaQuota).release("product-1", 1);
+        verify(storageService, never()).head(anyString());
+        verify(mediaRepository, never()).completePendingUpload(anyString(), anyString(), anyString(), any(Instant.class), anyLong(), any(), any(), any());
+    }
+    
+    @Test
+    void completeUpload_discardedConcurrently_releasesTheSlotOnlyOnce() {
+        Media pending = pendingUpload("m1", MediaOwnerType.PRODUCT, "seller-1");
+        pending.setUploadExpiresAt(Instant.now().minusSeconds(5));
+        when(mediaRepository.findById("m1")).thenReturn(Optional.of(pending));
+        when(mediaRepository.deleteByIdAndUploadExpiresAtNotNull("m1")).thenReturn(1L, 0L);
+        
+        assertThatThrownBy(() -> mediaService.completeUpload("m1", "seller-1", "SELLER"))
+                .isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> mediaService.completeUpload("m1", "seller-1", "SELLER"))
+                .isInstanceOf(BadRequestException.class);
+        
+        verify(mediaQuota, times(1)).release("product-1", 1);
+    }
+    
+    @Test
+    void completeUpload_completedConcurrently_publishesOnlyOnce() {
+        setPublicBaseUrl();
+        Media pending = pendingUpload("m1", MediaOwnerType.PRODUCT, "seller-1");
+        Media completed = pendingUpload("m1", MediaOwnerType.PRODUCT, "seller-1");
+        completed.setUploadExpiresAt(null);
+        when(mediaRepository.findById("m1")).thenReturn(Optional.of(pending), Optional.of(completed));
+        when(storageService.head("media/uploads/m1.png"))
+                .thenReturn(new StoredObject(null, 1000L, "image/png", "\"e\"", null, false));
+        givenObjectContent("media/uploads/m1.png", PNG_SIGNATURE);
+        StoredBlob blob = blob("d1");
+        completed.setImagePath(blob.getImagePath());
+        when(blobStore.store(any(MultipartFile.class))).thenReturn(blob);
+        when(mediaRepository.completePendingUpload(eq("m1"), anyString(), anyString(), any(Instant.class), anyLong(), any(), any(), any())).thenReturn(0L);
+        
+        MediaResponse response = mediaService.completeUpload("m1", "seller-1", "SELLER");
+        
+        assertThat(response.url()).isEqualTo("https://cdn.example.com/media/d1_0a1b2c3d.png");
+        verify(blobStore).release(blob, null); // the reference taken by this call; the winner holds its own
+        verify(imageVariantGenerator, never()).generateAsync(any(Media.class));
+    }
+    
+    @Test
+    void completeUpload_failsWithoutUpload_andForOtherUsers() {
+        Media pending = pendingUpload("m1", MediaOwnerType.PRODUCT, "seller-1");
+        when(mediaRepository.findById("m1")).thenReturn(Optional.of(pending));
+        when(storageService.head("media/uploads/m1.png")).thenThrow(new MediaNotFoundException("media/uploads/m1.png"));
+        
+        assertThatThrownBy(() -> mediaService.completeUpload("m1", "seller-2", "SELLER"))
+                .isInstanceOf(ForbiddenException.class);
+        assertThatThrownBy(() -> mediaService.completeUpload("m1", "seller-1", "SELLER"))
+                .isInstanceOf(BadRequestException.class);
+        verify(mediaRepository, never()).completePendingUpload(anyString(), anyString(), anyString(), any(Instant.class), anyLong(), any(), any(), any());
+    }
+    
+    @Test
+    void pendingUploads_areHiddenFromReaders() {
+        Media pending = pendingUpload("m1", MediaOwnerType.PRODUCT, "seller-1");
+        when(mediaRepository.findById("m1")).thenReturn(Optional.of(pending));
+        when(mediaRepository.findAllByOwnerIdAndOwnerType("product-1", MediaOwnerType.PRODUCT))
+                .thenReturn(List.of(pending));
+        
+        assertThatThrownBy(() -> mediaService.getMedia("m1")).isInstanceOf(MediaNotFoundException.class);
+        assertThatThrownBy(() -> mediaService.findMediaEntity("m1")).isInstanceOf(MediaNotFoundException.class);
+        assertThat(mediaService.mediaListForProduct("product-1")).isEmpty();
+    }
+    
+    private static Media pendingUpload(String id, MediaOwnerType ownerType, String uploadedBy) {
+        return Media.builder()
+                .id(id)
+                .ownerId(ownerType == MediaOwnerType.USER ? uploadedBy : "product-1")
+                .ownerType(ownerType)
+                .imagePath("media/uploads/" + id + ".png")
+                .contentType("image/png")
+                .size(1000L)
+                .uploadedBy(uploadedBy)
+                .uploadExpiresAt(Instant.now().plusSeconds(600))
+                .build();
+    }
+    
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', 0x0D, 0x0A, 0x1A, 0x0A, 0, 0, 0, 0x0D};
+    
+    private void givenObjectContent(String imagePath, byte[] content) {
+        when(storageService.load(imagePath, null, null)).thenReturn(new StoredObject(
+                new ByteArrayInputStream(content), content.length, "image/png", "\"e\"", null, false));
+    }
+    
+    private static StoredBlob blob(String digest) {
+        return StoredBlob.builder()
+                .digest(digest)
+                .imagePath("media/" + digest + "_0a1b2c3d.png")
+                .contentType("image/png")
+                .size(1000L)
+                .refCount(1)
+                .stored(true)
+                .build();
+    }
+    
+    private static MultipartFile png(String name) {
+        return new MockMultipartFile("files", name, "image/png", new byte[100]);
+    }
+    
+    private void givenValidPng() {
+        when(multipartFile.isEmpty()).thenReturn(false);
+        when(multipartFile.getSize()).thenReturn(1000L);
     }
     
     @Test
@@ -114,7 +678,6 @@ class MediaServiceImplTests {
         setPublicBaseUrl();
         when(multipartFile.isEmpty()).thenReturn(false);
         when(multipartFile.getSize()).thenReturn(1000L);
-        when(multipartFile.getContentType()).thenReturn("image/png");
         
         assertThatThrownBy(() -> mediaService.uploadImage(
                 multipartFile,
@@ -131,7 +694,6 @@ class MediaServiceImplTests {
         setPublicBaseUrl();
         when(multipartFile.isEmpty()).thenReturn(false);
         when(multipartFile.getSize()).thenReturn(1000L);
-        when(multipartFile.getContentType()).thenReturn("image/png");
         
         assertThatThrownBy(() -> mediaService.uploadImage(
                 multipartFile,
@@ -150,7 +712,6 @@ class MediaServiceImplTests {
         setPublicBaseUrl();
         when(multipartFile.isEmpty()).thenReturn(false);
         when(multipartFile.getSize()).thenReturn(1000L);
-        when(multipartFile.getContentType()).thenReturn("image/png");
         
         assertThatThrownBy(() -> mediaService.uploadImage(
                 multipartFile,
@@ -167,10 +728,8 @@ class MediaServiceImplTests {
         setPublicBaseUrl();
         when(multipartFile.isEmpty()).thenReturn(false);
         when(multipartFile.getSize()).thenReturn(1000L);
-        when(multipartFile.getContentType()).thenReturn("image/png");
         
-        when(mediaRepository.countByOwnerIdAndOwnerType("product-1", MediaOwnerType.PRODUCT))
-                .thenReturn(5L);
+        when(mediaQuota.tryReserve("product-1", 1, 5)).thenReturn(false);
         
         assertThatThrownBy(() -> mediaService.uploadImage(
                 multipartFile,
@@ -183,7 +742,7 @@ class MediaServiceImplTests {
     }
     
     @Test
-    void uploadImage_throwsInvalidFile_forEmptyOrTooLargeOrNotImage() {
+    void uploadImage_throwsInvalidFile_forEmptyOrTooLarge() {
         when(multipartFile.isEmpty()).thenReturn(true);
         assertThatThrownBy(() -> mediaService.uploadImage(
                 multipartFile,
@@ -195,7 +754,6 @@ class MediaServiceImplTests {
         
         when(multipartFile.isEmpty()).thenReturn(false);
         when(multipartFile.getSize()).thenReturn(3L * 1024 * 1024);
-        when(multipartFile.getContentType()).thenReturn("image/png");
         assertThatThrownBy(() -> mediaService.uploadImage(
                 multipartFile,
                 "owner",
@@ -204,18 +762,26 @@ class MediaServiceImplTests {
                 "CLIENT"
         )).isInstanceOf(InvalidFileException.class)
                 .hasMessageContaining("File exceeds 2MB");
-        
+    }
+    
+    // Decided by the bytes (BlobStore's format detection), whatever the client's Content-Type says
+    @Test
+    void uploadImage_rejectsContentThatIsNotAnImage_andFreesTheSlot() {
         when(multipartFile.isEmpty()).thenReturn(false);
         when(multipartFile.getSize()).thenReturn(1000L);
-        when(multipartFile.getContentType()).thenReturn("application/pdf");
+        when(blobStore.store(multipartFile)).thenThrow(
+                new InvalidFileException("Unsupported image format, only JPEG, PNG, GIF and WebP are allowed!"));
+        
         assertThatThrownBy(() -> mediaService.uploadImage(
                 multipartFile,
-                "owner",
-                MediaOwnerType.USER,
-                "owner",
-                "CLIENT"
+                "product-1",
+                MediaOwnerType.PRODUCT,
+                "seller-1",
+                "SELLER"
         )).isInstanceOf(InvalidFileException.class)
-                .hasMessageContaining("Only image files are allowed");
+                .hasMessageContaining("Unsupported image format");
+        verify(mediaQuota).release("product-1", 1);
+        verify(multipartFile, never()).getContentType();
     }
     
     // -------- getMedia --------
@@ -237,6 +803,29 @@ class MediaServiceImplTests {
         assertThat(response.id()).isEqualTo("m1");
         assertThat(response.ownerId()).isEqualTo("owner-1");
         assertThat(response.url()).isEqualTo("https://cdn.example.com/media/m1.png");
+        assertThat(response.variants()).isEmpty();
+    }
+    
+    @Test
+    void getMedia_listsVariantUrls() {
+        setPublicBaseUrl();
+        Media media = Media.builder()
+                .id("m1")
+                .ownerId("owner-1")
+                .ownerType(MediaOwnerType.PRODUCT)
+                .imagePath("media/m1.png")
+                .createdAt(Instant.now())
+                .variants(List.of(
+                        MediaVariant.builder().name("thumb").width(150).height(100).imagePath("media/m1_thumb_1.jpg").build(),
+                        MediaVariant.builder().name("small").width(320).height(213).imagePath("media/m1_small_1.jpg").build()))
+                .build();
+        when(mediaRepository.findById("m1")).thenReturn(Optional.of(media));
+        
+        MediaResponse response = mediaService.getMedia("m1");
+        
+        assertThat(response.variants()).containsExactly(
+                entry("thumb", "https://cdn.example.com/media/m1_thumb_1.jpg"),
+                entry("small", "https://cdn.example.com/media/m1_small_1.jpg"));
     }
     
     @Test
@@ -258,13 +847,13 @@ class MediaServiceImplTests {
         
         when(multipartFile.isEmpty()).thenReturn(false);
         when(multipartFile.getSize()).thenReturn(1000L);
-        when(multipartFile.getContentType()).thenReturn("image/jpeg");
         
         Media existing = Media.builder()
                 .id(mediaId)
                 .ownerId(ownerId)
                 .ownerType(MediaOwnerType.PRODUCT)
                 .imagePath("media/old.png")
+                .contentHash("old")
                 .createdAt(Instant.now().minusSeconds(3600))
                 .build();
         when(mediaRepository.findById(mediaId)).thenReturn(Optional.of(existing));
@@ -276,7 +865,7 @@ class MediaServiceImplTests {
                 .imagePath("media/new.png")
                 .createdAt(Instant.now())
                 .build();
-        when(storageService.store(multipartFile, mediaId)).thenReturn("media/new.png");
+        when(blobStore.store(multipartFile)).thenReturn(blob("new"));
         when(mediaRepository.save(any(Media.class))).thenReturn(saved);
         
         MediaResponse response = mediaService.updateMedia(
@@ -286,9 +875,16 @@ class MediaServiceImplTests {
                 "SELLER"
         );
         
-        verify(storageService).delete("media/old.png");
-        verify(storageService).store(multipartFile, mediaId);
-        verify(mediaRepository).save(any(Media.class));
+        // the old blob is released only after the document points at the new one
+        ArgumentCaptor<Media> savedCaptor = ArgumentCaptor.forClass(Media.class);
+        ArgumentCaptor<Media> released = ArgumentCaptor.forClass(Media.class);
+        InOrder order = inOrder(blobStore, mediaRepository);
+        order.verify(blobStore).store(multipartFile);
+        order.verify(mediaRepository).save(savedCaptor.capture());
+        order.verify(blobStore).release(released.capture());
+        assertThat(savedCaptor.getValue().getContentHash()).isEqualTo("new");
+        assertThat(released.getValue().getImagePath()).isEqualTo("media/old.png");
+        assertThat(released.getValue().getContentHash()).isEqualTo("old");
         
         assertThat(response.id()).isEqualTo(mediaId);
         assertThat(response.ownerId()).isEqualTo(ownerId);
@@ -300,7 +896,6 @@ class MediaServiceImplTests {
         setPublicBaseUrl();
         when(multipartFile.isEmpty()).thenReturn(false);
         when(multipartFile.getSize()).thenReturn(1000L);
-        when(multipartFile.getContentType()).thenReturn("image/png");
         
         assertThatThrownBy(() -> mediaService.updateMedia(
                 multipartFile,
@@ -316,7 +911,6 @@ class MediaServiceImplTests {
         setPublicBaseUrl();
         when(multipartFile.isEmpty()).thenReturn(false);
         when(multipartFile.getSize()).thenReturn(1000L);
-        when(multipartFile.getContentType()).thenReturn("image/png");
         
         Media existing = Media.builder()
                 .id("m1")
@@ -341,7 +935,6 @@ class MediaServiceImplTests {
         setPublicBaseUrl();
         when(multipartFile.isEmpty()).thenReturn(false);
         when(multipartFile.getSize()).thenReturn(1000L);
-        when(multipartFile.getContentType()).thenReturn("image/png");
         when(mediaRepository.findById("m1")).thenReturn(Optional.empty());
         
         assertThatThrownBy(() -> mediaService.updateMedia(
@@ -364,6 +957,7 @@ class MediaServiceImplTests {
                 .createdAt(Instant.now())
                 .build();
         when(mediaRepository.findById("m1")).thenReturn(Optional.of(media));
+        when(mediaRepository.removeById("m1")).thenReturn(1L);
         
         DeleteMediaResponse response = mediaService.deleteMedia(
                 "m1",
@@ -371,8 +965,9 @@ class MediaServiceImplTests {
                 "CLIENT"
         );
         
-        verify(storageService).delete("media/m1.png");
-        verify(mediaRepository).deleteById("m1");
+        verify(blobStore).release(media);
+        verify(imageVariantGenerator).deleteVariants(media);
+        verify(mediaRepository).removeById("m1");
         assertThat(response.mediaId()).isEqualTo("m1");
         assertThat(response.message()).contains("Deleted successfully");
     }
@@ -425,6 +1020,7 @@ class MediaServiceImplTests {
                 .createdAt(Instant.now())
                 .build();
         when(mediaRepository.findById("m1")).thenReturn(Optional.of(media));
+        when(mediaRepository.removeById("m1")).thenReturn(1L);
         
         DeleteMediaResponse response = mediaService.deleteMedia(
                 "m1",
@@ -432,11 +1028,33 @@ class MediaServiceImplTests {
                 "SELLER"
         );
         
-        verify(storageService).delete("media/m1.png");
-        verify(mediaRepository).deleteById("m1");
+        verify(blobStore).release(media);
+        verify(mediaRepository).removeById("m1");
+        verify(mediaQuota).release("seller-1", 1);
         assertThat(response.mediaId()).isEqualTo("m1");
     }
     
+    @Test
+    void deleteMedia_releasesBlobAndSlotOnce_whenTwoDeletesRace() {
+        Media media = Media.builder()
+                .id("m1")
+                .ownerId("seller-1")
+                .ownerType(MediaOwnerType.PRODUCT)
+                .imagePath("media/m1.png")
+                .createdAt(Instant.now())
+                .build();
+        when(mediaRepository.findById("m1")).thenReturn(Optional.of(media));
+        when(mediaRepository.removeById("m1")).thenReturn(1L, 0L);
+        
+        mediaService.deleteMedia("m1", "seller-1", "SELLER");
+        DeleteMediaResponse second = mediaService.deleteMedia("m1", "seller-1", "SELLER");
+        
+        verify(blobStore, times(1)).release(media);
+        verify(imageVariantGenerator, times(1)).deleteVariants(media);
+        verify(mediaQuota, times(1)).release("seller-1", 1);
+        assertThat(second.mediaId()).isEqualTo("m1");
+    }
+    
     @Test
     void deleteMedia_productImage_forbidden_whenNotSeller() {
         Media media = Media.builder()
@@ -517,6 +1135,30 @@ class MediaServiceImplTests {
         assertThat(responses.get(0).url()).startsWith("https://cdn.example.com/");
     }
     
+    @Test
+    void mediaListForProducts_groupsOneInQuery_inRequestOrder() {
+        setPublicBaseUrl();
+        Media a1 = Media.builder().id("a1").ownerId("p2").ownerType(MediaOwnerType.PRODUCT)
+                .imagePath("media/a1.png").createdAt(Instant.now()).build();
+        Media b1 = Media.builder().id("b1").ownerId("p1").ownerType(MediaOwnerType.PRODUCT)
+                .imagePath("media/b1.png").createdAt(Instant.now()).build();
+        Media pending = Media.builder().id("x1").ownerId("p1").ownerType(MediaOwnerType.PRODUCT)
+                .imagePath("media/x1.png").uploadExpiresAt(Instant.now().plusSeconds(60)).build();
+        Media a2 = Media.builder().id("a2").ownerId("p2").ownerType(MediaOwnerType.PRODUCT)
+                .imagePath("media/a2.png").createdAt(Instant.now()).build();
+        when(mediaRepository.findAllByOwnerIdInAndOwnerTypeOrderByCreatedAtAsc(Set.of("p1", "p2", "p3"), MediaOwnerType.PRODUCT))
+                .thenReturn(List.of(a1, b1, pending, a2));
+        
+        Map<String, List<MediaResponse>> galleries = mediaService.mediaListForProducts(List.of("p2", "p3", "p1", "p2"));
+        
+        assertThat(galleries).containsOnlyKeys("p2", "p3", "p1");
+        assertThat(galleries.keySet()).containsExactly("p2", "p3", "p1");
+        assertThat(galleries.get("p2")).extracting(MediaResponse::id).containsExactly("a1", "a2");
+        assertThat(galleries.get("p1")).extracting(MediaResponse::id).containsExactly("b1");
+        assertThat(galleries.get("p3")).isEmpty();
+        verify(mediaRepository, times(1)).findAllByOwnerIdInAndOwnerTypeOrderByCreatedAtAsc(any(), any());
+    }
+    
     @Test
     void findMediaEntity_returnsEntity_whenFound() {
         Media media = Media.builder()
@@ -0,0 +1,94 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.config.CloudflareR2Properties;
+import com.buyone.mediaservice.service.impl.R2AsyncStorageService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class R2AsyncStorageServiceTests {
+
+    @Mock
+    private S3AsyncClient r2S3AsyncClient;
+
+    private R2AsyncStorageService storageService;
+
+    @BeforeEach
+    void setUp() {
+        CloudflareR2Properties props = new CloudflareR2Properties();
+        props.setBucket("bucket");
+        storageService = new R2AsyncStorageService(r2S3AsyncClient, props);
+    }
+
+    @Test
+    void put_sendsOneRequestWithKnownLength() {
+        when(r2S3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(CompletableFuture.completedFuture(PutObjectResponse.builder().build()));
+
+        storageService.put("media/m1.png", new MockMultipartFile("file", "a.png", "image/png", new byte[1234]), "image/png").join();
+
+        ArgumentCaptor<PutObjectRequest> request = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(r2S3AsyncClient).putObject(request.capture(), any(AsyncRequestBody.class));
+        assertThat(request.getValue().key()).isEqualTo("media/m1.png");
+        assertThat(request.getValue().contentLength()).isEqualTo(1234L);
+        assertThat(request.getValue().contentType()).isEqualTo("image/png");
+    }
+
+    @Test
+    void put_wrapsStorageErrors() {
+        when(r2S3AsyncClient.putObject(any(PutObjectRequest.class), any(AsyncRequestBody.class)))
+                .thenReturn(CompletableFuture.failedFuture(S3Exception.builder().statusCode(503).message("unavailable").build()));
+
+        assertThatThrownBy(() -> storageService.put("media/m1.png", new byte[10], "image/png").join())
+                .hasCauseInstanceOf(RuntimeException.class)
+                .hasMessageContaining("Failed to store file in R2");
+    }
+
+    @Test
+    void deleteAll_sendsEveryChunkBeforeAnyCompletes_andReturnsFailedKeys() {
+        List<String> keys = IntStream.range(0, 2500).mapToObj(i -> "media/m" + i + ".jpg").toList();
+        CompletableFuture<DeleteObjectsResponse> first = new CompletableFuture<>();
+        CompletableFuture<DeleteObjectsResponse> second = new CompletableFuture<>();
+        CompletableFuture<DeleteObjectsResponse> third = new CompletableFuture<>();
+        when(r2S3AsyncClient.deleteObjects(any(DeleteObjectsRequest.class))).thenReturn(first, second, third);
+
+        CompletableFuture<List<String>> failed = storageService.deleteAll(keys);
+
+        ArgumentCaptor<DeleteObjectsRequest> request = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(r2S3AsyncClient, times(3)).deleteObjects(request.capture());
+        assertThat(request.getAllValues()).extracting(r -> r.delete().objects().size()).containsExactly(1000, 1000, 500);
+        assertThat(failed).isNotDone();
+
+        third.complete(DeleteObjectsResponse.builder().build());
+        first.complete(DeleteObjectsResponse.builder()
+                .errors(S3Error.builder().key("media/m7.jpg").code("InternalError").build())
+                .build());
+        second.completeExceptionally(S3Exception.builder().statusCode(503).message("unavailable").build());
+
+        assertThat(failed.join()).hasSize(1001).contains("media/m7.jpg", "media/m1000.jpg", "media/m1999.jpg");
+    }
+}
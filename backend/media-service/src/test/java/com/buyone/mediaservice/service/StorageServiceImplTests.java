@@ -0,0 +1,323 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.config.CloudflareR2Properties;
+import com.buyone.mediaservice.exception.MediaNotFoundException;
+import com.buyone.mediaservice.exception.RangeNotSatisfiableException;
+import com.buyone.mediaservice.service.impl.StorageServiceImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockMultipartFile;
+import software.amazon.awssdk.auth.credentials.AwsBasicCredentials;
+import software.amazon.awssdk.auth.credentials.StaticCredentialsProvider;
+import software.amazon.awssdk.core.ResponseInputStream;
+import software.amazon.awssdk.awscore.exception.AwsErrorDetails;
+import software.amazon.awssdk.core.sync.RequestBody;
+import software.amazon.awssdk.http.AbortableInputStream;
+import software.amazon.awssdk.http.SdkHttpResponse;
+import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsRequest;
+import software.amazon.awssdk.services.s3.model.DeleteObjectsResponse;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Request;
+import software.amazon.awssdk.services.s3.model.ListObjectsV2Response;
+import software.amazon.awssdk.services.s3.model.PutObjectRequest;
+import software.amazon.awssdk.services.s3.model.PutObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Error;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+import software.amazon.awssdk.services.s3.model.S3Object;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class StorageServiceImplTests {
+    
+    private static final int FILE_SIZE = 2 * 1024 * 1024 - 1;
+    
+    @Mock
+    private S3Client r2S3Client;
+    
+    private CloudflareR2Properties props;
+    private StorageServiceImpl storageService;
+    
+    @BeforeEach
+    void setUp() {
+        props = new CloudflareR2Properties();
+        props.setBucket("bucket");
+        // signing is local, no request is made
+        S3Presigner presigner = S3Presigner.builder()
+                .credentialsProvider(StaticCredentialsProvider.create(AwsBasicCredentials.create("key", "secret")))
+                .region(Region.of("auto"))
+                .endpointOverride(URI.create("https://account.r2.cloudflarestorage.com"))
+                .build();
+        storageService = new StorageServiceImpl(r2S3Client, props, presigner);
+    }
+    
+    @Test
+    void store_streamsBodyWithKnownContentLength() {
+        MockMultipartFile file = new MockMultipartFile("file", "photo.png", "image/png", new byte[1024]);
+        when(r2S3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenAnswer(inv -> drain(inv.getArgument(1)));
+        
+        String key = storageService.store(file, "m1");
+        
+        ArgumentCaptor<PutObjectRequest> request = ArgumentCaptor.forClass(PutObjectRequest.class);
+        verify(r2S3Client).putObject(request.capture(), any(RequestBody.class));
+        assertThat(key).isEqualTo("media/m1.png");
+        assertThat(request.getValue().contentLength()).isEqualTo(1024L);
+    }
+    
+    @Test
+    void store_streamsFromThePart_andNeverCopiesItIntoAByteArray() throws IOException {
+        byte[] content = new byte[FILE_SIZE];
+        content[FILE_SIZE - 1] = 42;
+        MockMultipartFile file = spy(new MockMultipartFile("file", "photo.jpg", "image/jpeg", content));
+        ByteArrayOutputStream sent = new ByteArrayOutputStream(FILE_SIZE);
+        when(r2S3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class))).thenAnswer(inv -> {
+            RequestBody body = inv.getArgument(1);
+            drain(body); // first attempt, as if the SDK retried
+            try (InputStream in = body.contentStreamProvider().newStream()) {
+                in.transferTo(sent);
+            }
+            return PutObjectResponse.builder().build();
+        });
+        
+        storageService.store(file, "m1");
+        
+        assertThat(sent.toByteArray()).isEqualTo(content);
+        verify(file, never()).getBytes();
+        verify(file, times(2)).getInputStream(); // reopened for the retry
+    }
+    
+    // Heap allocated on the calling thread per upload, old vs new body. Depends on the JVM's
+    // allocation accounting, so excluded from the normal build, run with: mvn test -Pbenchmark
+    @Test
+    @Tag("benchmark")
+    void store_allocatesFarLessThanFileSize_comparedToFromBytes() throws IOException {
+        MockMultipartFile file = new MockMultipartFile("file", "photo.jpg", "image/jpeg", new byte[FILE_SIZE]);
+        when(r2S3Client.putObject(any(PutObjectRequest.class), any(RequestBody.class)))
+                .thenAnswer(inv -> drain(inv.getArgument(1)));
+        // warm up class loading / mockito paths so they don't count against either side
+        storageService.store(file, "warmup");
+        drain(RequestBody.fromBytes(file.getBytes()));
+        
+        long before = allocatedBytes();
+        drain(RequestBody.fromBytes(file.getBytes()));
+        long bufferedAllocation = allocatedBytes() - before;
+        
+        before = allocatedBytes();
+        storageService.store(file, "m1");
+        long streamingAllocation = allocatedBytes() - before;
+        
+        System.out.printf("per-upload allocation: fromBytes=%d bytes, streaming=%d bytes%n",
+                bufferedAllocation, streamingAllocation);
+        assertThat(bufferedAllocation).isGreaterThanOrEqualTo(FILE_SIZE);
+        assertThat(streamingAllocation).isLessThan(FILE_SIZE / 8);
+    }
+    
+    @Test
+    void store_usesMultipartUpload_aboveThreshold() {
+        props.setMultipartThreshold(1000);
+        props.setPartSize(400);
+        MockMultipartFile file = new MockMultipartFile("file", "big.png", "image/png", new byte[1000]);
+        when(r2S3Client.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CreateMultipartUploadResponse.builder().uploadId("u1").build());
+        when(r2S3Client.uploadPart(any(UploadPartRequest.class), any(RequestBody.class)))
+                .thenReturn(UploadPartResponse.builder().eTag("etag").build());
+        
+        storageService.store(file, "m1");
+        
+        ArgumentCaptor<UploadPartRequest> parts = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(r2S3Client, times(3)).uploadPart(parts.capture(), any(RequestBody.class));
+        assertThat(parts.getAllValues()).extracting(UploadPartRequest::contentLength)
+                .containsExactly(400L, 400L, 200L);
+        verify(r2S3Client).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+    }
+    
+    @Test
+    void load_passesSingleRangeThroughAndKeepsStreamOpen() throws IOException {
+        GetObjectResponse meta = GetObjectResponse.builder()
+                .contentLength(100L)
+                .contentType("image/png")
+                .eTag("\"abc\"")
+                .contentRange("bytes 0-99/5000")
+                .build();
+        when(r2S3Client.getObject(any(GetObjectRequest.class)))
+                .thenReturn(new ResponseInputStream<>(meta,
+                        AbortableInputStream.create(new ByteArrayInputStream(new byte[100]))));
+        
+        StoredObject object = storageService.load("media/m1.png", "bytes=0-99", null);
+        
+        ArgumentCaptor<GetObjectRequest> request = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(r2S3Client).getObject(request.capture());
+        assertThat(request.getValue().range()).isEqualTo("bytes=0-99");
+        assertThat(object.partial()).isTrue();
+        assertThat(object.contentLength()).isEqualTo(100L);
+        assertThat(object.contentType()).isEqualTo("image/png");
+        assertThat(object.eTag()).isEqualTo("\"abc\"");
+        assertThat(object.content().readAllBytes()).hasSize(100);
+    }
+    
+    @Test
+    void load_ignoresMultiRange() {
+        GetObjectResponse meta = GetObjectResponse.builder().contentLength(10L).build();
+        when(r2S3Client.getObject(any(GetObjectRequest.class)))
+                .thenReturn(new ResponseInputStream<>(meta,
+                        AbortableInputStream.create(new ByteArrayInputStream(new byte[10]))));
+        
+        StoredObject object = storageService.load("media/m1.png", "bytes=0-1,5-6", null);
+        
+        ArgumentCaptor<GetObjectRequest> request = ArgumentCaptor.forClass(GetObjectRequest.class);
+        verify(r2S3Client).getObject(request.capture());
+        assertThat(request.getValue().range()).isNull();
+        assertThat(object.partial()).isFalse();
+    }
+    
+    @Test
+    void load_returnsNotModified_withTheObjectsOwnEtag() {
+        when(r2S3Client.getObject(any(GetObjectRequest.class))).thenThrow(S3Exception.builder()
+                .statusCode(304)
+                .message("Not Modified")
+                .awsErrorDetails(AwsErrorDetails.builder()
+                        .sdkHttpResponse(SdkHttpResponse.builder().statusCode(304).putHeader("ETag", "\"abc\"").build())
+                        .build())
+                .build());
+        
+        StoredObject object = storageService.load("media/m1.png", null, "\"old\", \"abc\"");
+        
+        assertThat(object.notModified()).isTrue();
+        assertThat(object.eTag()).isEqualTo("\"abc\"");
+        assertThat(object.content()).isNull();
+    }
+    
+    @Test
+    void load_returnsNotModified_withoutEtag_whenR2SendsNone() {
+        when(r2S3Client.getObject(any(GetObjectRequest.class)))
+                .thenThrow(S3Exception.builder().statusCode(304).message("Not Modified").build());
+        
+        StoredObject object = storageService.load("media/m1.png", null, "*");
+        
+        assertThat(object.notModified()).isTrue();
+        assertThat(object.eTag()).isNull();
+    }
+    
+    @Test
+    void load_throwsRangeNotSatisfiable_withTheObjectSize_on416() {
+        when(r2S3Client.getObject(any(GetObjectRequest.class)))
+                .thenThrow(S3Exception.builder().statusCode(416).message("InvalidRange").build());
+        when(r2S3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(HeadObjectResponse.builder().contentLength(1234L).contentType("image/png").build());
+        
+        assertThatThrownBy(() -> storageService.load("media/m1.png", "bytes=9000-", null))
+                .isInstanceOfSatisfying(RangeNotSatisfiableException.class,
+                        e -> assertThat(e.getSize()).isEqualTo(1234L));
+    }
+    
+    @Test
+    void head_returnsMetadata_andNotFoundForMissingKeys() {
+        when(r2S3Client.headObject(any(HeadObjectRequest.class)))
+                .thenReturn(HeadObjectResponse.builder().contentLength(1234L).contentType("image/png").eTag("\"e\"").build())
+                .thenThrow(S3Exception.builder().statusCode(404).message("Not Found").build());
+        
+        StoredObject object = storageService.head("media/m1.png");
+        
+        assertThat(object.contentLength()).isEqualTo(1234L);
+        assertThat(object.contentType()).isEqualTo("image/png");
+        assertThat(object.content()).isNull();
+        assertThatThrownBy(() -> storageService.head("media/missing.png"))
+                .isInstanceOf(MediaNotFoundException.class);
+    }
+    
+    @Test
+    void presignPut_signsUrlForKeyWithExpiry() {
+        String url = storageService.presignPut("media/m1.png", "image/png", 1234L, Duration.ofMinutes(5));
+        
+        assertThat(url).startsWith("https://").contains("/media/m1.png").contains("X-Amz-Expires=300")
+                .contains("X-Amz-Signature=");
+    }
+    
+    @Test
+    void deleteAll_chunksByThousand_andReturnsFailedKeys() {
+        List<String> keys = IntStream.range(0, 1500).mapToObj(i -> "media/m" + i + ".jpg").toList();
+        when(r2S3Client.deleteObjects(any(DeleteObjectsRequest.class)))
+                .thenReturn(DeleteObjectsResponse.builder()
+                        .errors(S3Error.builder().key("media/m7.jpg").code("InternalError").build())
+                        .build())
+                .thenThrow(S3Exception.builder().statusCode(503).message("unavailable").build());
+        
+        List<String> failed = storageService.deleteAll(keys);
+        
+        ArgumentCaptor<DeleteObjectsRequest> request = ArgumentCaptor.forClass(DeleteObjectsRequest.class);
+        verify(r2S3Client, times(2)).deleteObjects(request.capture());
+        assertThat(request.getAllValues().get(0).delete().objects()).hasSize(1000);
+        assertThat(request.getAllValues().get(0).delete().quiet()).isTrue();
+        assertThat(request.getAllValues().get(1).delete().objects()).hasSize(500);
+        assertThat(failed).hasSize(501).contains("media/m7.jpg", "media/m1000.jpg", "media/m1499.jpg");
+    }
+    
+    @Test
+    void list_continuesAfterTheGivenKey() {
+        Instant modified = Instant.parse("2024-01-01T00:00:00Z");
+        when(r2S3Client.listObjectsV2(any(ListObjectsV2Request.class)))
+                .thenReturn(ListObjectsV2Response.builder()
+                        .contents(S3Object.builder().key("media/b.png").size(10L).lastModified(modified).build())
+                        .build());
+        
+        List<StoredKey> page = storageService.list("media/", "media/a.png", 5000);
+        
+        ArgumentCaptor<ListObjectsV2Request> request = ArgumentCaptor.forClass(ListObjectsV2Request.class);
+        verify(r2S3Client).listObjectsV2(request.capture());
+        assertThat(request.getValue().prefix()).isEqualTo("media/");
+        assertThat(request.getValue().startAfter()).isEqualTo("media/a.png");
+        assertThat(request.getValue().maxKeys()).isEqualTo(1000);
+        assertThat(page).containsExactly(new StoredKey("media/b.png", 10, modified));
+    }
+    
+    private static PutObjectResponse drain(RequestBody body) {
+        try (InputStream in = body.contentStreamProvider().newStream()) {
+            in.transferTo(OutputStream.nullOutputStream());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return PutObjectResponse.builder().build();
+    }
+    
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+                .getCurrentThreadAllocatedBytes();
+    }
+}
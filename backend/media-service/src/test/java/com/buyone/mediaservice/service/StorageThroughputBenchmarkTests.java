@@ -0,0 +1,234 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.config.CloudflareR2Config;
+import com.buyone.mediaservice.config.CloudflareR2Properties;
+import com.buyone.mediaservice.service.impl.R2AsyncStorageService;
+import com.buyone.mediaservice.service.impl.StorageServiceImpl;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3Client;
+import software.amazon.awssdk.services.s3.presigner.S3Presigner;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Blocking vs async storage clients against a local S3 stand-in with a fixed per-request
+ * latency (a WAN round-trip to R2), at fixed caller thread counts.
+ * Excluded from the normal build, run with: mvn test -Pbenchmark
+ */
+@Tag("benchmark")
+class StorageThroughputBenchmarkTests {
+
+    private static final long LATENCY_MS = 25;
+    private static final int GALLERY = 5;            // images per gallery upload
+    private static final int GALLERIES_PER_THREAD = 8;
+    private static final int CLEANUP_KEYS = 5000;    // 5 DeleteObjects chunks
+    private static final byte[] IMAGE = new byte[64 * 1024];
+
+    private final AtomicInteger keys = new AtomicInteger();
+
+    private HttpServer standIn;
+    private ExecutorService standInThreads;
+    private S3Client s3Client;
+    private S3AsyncClient s3AsyncClient;
+    private S3Presigner presigner;
+    private StorageService blocking;
+    private AsyncStorageService async;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        standInThreads = Executors.newCachedThreadPool();
+        standIn = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        standIn.createContext("/", StorageThroughputBenchmarkTests::handle);
+        standIn.setExecutor(standInThreads);
+        standIn.start();
+
+        CloudflareR2Properties props = new CloudflareR2Properties();
+        props.setAccessKeyId("key");
+        props.setSecretAccessKey("secret");
+        props.setRegion("auto");
+        props.setBucket("bucket");
+        props.setEndpoint("http://127.0.0.1:" + standIn.getAddress().getPort());
+        props.setPathStyleAccess(true);
+        CloudflareR2Config config = new CloudflareR2Config(props);
+        s3Client = config.r2S3Client();
+        s3AsyncClient = config.r2S3AsyncClient();
+        presigner = config.r2S3Presigner();
+        blocking = new StorageServiceImpl(s3Client, props, presigner);
+        async = new R2AsyncStorageService(s3AsyncClient, props);
+    }
+
+    @AfterEach
+    void tearDown() {
+        s3Client.close();
+        s3AsyncClient.close();
+        presigner.close();
+        standIn.stop(0);
+        standInThreads.shutdownNow();
+    }
+
+    @Test
+    void galleryUploads_objectsPerSecond_atFixedThreadCounts() throws Exception {
+        Runnable sequential = () -> {
+            for (int i = 0; i < GALLERY; i++) {
+                blocking.put(nextKey(), IMAGE, "image/jpeg");
+            }
+        };
+        Runnable parallel = () -> CompletableFuture.allOf(IntStream.range(0, GALLERY)
+                        .mapToObj(i -> async.put(nextKey(), IMAGE, "image/jpeg"))
+                        .toArray(CompletableFuture[]::new))
+                .join();
+        // connections, JIT and SDK class loading
+        objectsPerSecond(4, sequential);
+        objectsPerSecond(4, parallel);
+
+        for (int threads : new int[] {1, 4, 16}) {
+            double blockingRate = objectsPerSecond(threads, sequential);
+            double asyncRate = objectsPerSecond(threads, parallel);
+            System.out.printf("gallery uploads, %2d threads: blocking=%7.1f objects/s, async=%7.1f objects/s (x%.1f)%n",
+                    threads, blockingRate, asyncRate, asyncRate / blockingRate);
+            assertThat(asyncRate).as("%d threads", threads).isGreaterThan(2 * blockingRate);
+        }
+    }
+
+    @Test
+    void productCleanup_bulkDeleteLatency() {
+        List<String> cleanup = IntStream.range(0, CLEANUP_KEYS).mapToObj(i -> "media/p" + i + ".jpg").toList();
+        blocking.deleteAll(cleanup);
+        async.deleteAll(cleanup).join();
+
+        long blockingMs = millis(() -> blocking.deleteAll(cleanup));
+        long asyncMs = millis(() -> async.deleteAll(cleanup).join());
+
+        System.out.printf("cleanup of %d keys: blocking=%d ms, async=%d ms%n", CLEANUP_KEYS, blockingMs, asyncMs);
+        assertThat(blockingMs).isGreaterThanOrEqualTo(5 * LATENCY_MS);
+        assertThat(asyncMs).isLessThan(blockingMs / 2);
+    }
+
+    private String nextKey() {
+        return "media/bench_" + keys.incrementAndGet() + ".jpg";
+    }
+
+    // Every thread uploads GALLERIES_PER_THREAD galleries back to back, all threads start together
+    private static double objectsPerSecond(int threads, Runnable gallery) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                futures.add(pool.submit((Callable<Void>) () -> {
+                    start.await();
+                    for (int g = 0; g < GALLERIES_PER_THREAD; g++) {
+                        gallery.run();
+                    }
+                    return null;
+                }));
+            }
+            long began = System.nanoTime();
+            start.countDown();
+            for (Future<?> f : futures) {
+                f.get(2, TimeUnit.MINUTES);
+            }
+            double seconds = (System.nanoTime() - began) / 1e9;
+            return threads * GALLERIES_PER_THREAD * GALLERY / seconds;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static long millis(Runnable work) {
+        long began = System.nanoTime();
+        work.run();
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - began);
+    }
+
+    // Just enough of S3 for PutObject and DeleteObjects; every request waits LATENCY_MS
+    private static void handle(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = exchange.getRequestBody().readAllBytes();
+            try {
+                Thread.sleep(LATENCY_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            String query = exchange.getRequestURI().getQuery();
+            if ("PUT".equals(exchange.getRequestMethod())) {
+                String contentSha256 = exchange.getRequestHeaders().getFirst("x-amz-content-sha256");
+                if (contentSha256 != null && contentSha256.startsWith("STREAMING-")) {
+                    body = decodeAwsChunked(body);
+                }
+                // the SDK checks the ETag against the MD5 of what it sent
+                exchange.getResponseHeaders().add("ETag", "\"" + md5Hex(body) + "\"");
+                exchange.sendResponseHeaders(200, -1);
+            } else if ("POST".equals(exchange.getRequestMethod()) && query != null && query.startsWith("delete")) {
+                byte[] result = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><DeleteResult xmlns=\"http://s3.amazonaws.com/doc/2006-03-01/\"/>"
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().add("Content-Type", "application/xml");
+                exchange.sendResponseHeaders(200, result.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(result);
+                }
+            } else {
+                exchange.sendResponseHeaders(501, -1);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // "<hex size>;chunk-signature=...\r\n<data>\r\n" ... "0;chunk-signature=...\r\n\r\n"
+    private static byte[] decodeAwsChunked(byte[] body) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream(body.length);
+        int pos = 0;
+        while (pos < body.length) {
+            int lineEnd = pos;
+            while (body[lineEnd] != '\r') {
+                lineEnd++;
+            }
+            String header = new String(body, pos, lineEnd - pos, StandardCharsets.US_ASCII);
+            int size = Integer.parseInt(header.substring(0, header.indexOf(';')), 16);
+            if (size == 0) {
+                break;
+            }
+            pos = lineEnd + 2;
+            content.write(body, pos, size);
+            pos += size + 2;
+        }
+        return content.toByteArray();
+    }
+
+    private static String md5Hex(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("MD5").digest(body));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.buyone.mediaservice.service;
+
+import com.buyone.mediaservice.exception.BadRequestException;
+import com.buyone.mediaservice.exception.ForbiddenException;
+import com.buyone.mediaservice.exception.MediaNotFoundException;
+import com.buyone.mediaservice.model.MediaOwnerType;
+import com.buyone.mediaservice.response.MediaResponse;
+import com.buyone.mediaservice.response.UploadSessionResponse;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class UploadSessionServiceTests {
+
+    // 10 bytes in chunks of 4: 4 + 4 + 2
+    private static final byte[] CONTENT = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    @Mock
+    private MediaService mediaService;
+
+    @TempDir
+    Path root;
+
+    private UploadSessionService sessions;
+
+    @BeforeEach
+    void setUp() {
+        sessions = new UploadSessionService(mediaService, root.toString(), 4, 60, 10);
+    }
+
+    @Test
+    void create_checksPermissions_andSplitsIntoChunks() {
+        UploadSessionResponse session = create();
+
+        verify(mediaService).checkUploadAllowed("p1", MediaOwnerType.PRODUCT, "seller-1", "SELLER");
+        assertThat(session.chunkCount()).isEqualTo(3);
+        assertThat(session.receivedBytes()).isZero();
+        assertThat(session.nextChunk()).isZero();
+    }
+
+    @Test
+    void writeChunk_outOfOrder_offsetIsContiguousPrefix() {
+        String id = create().sessionId();
+
+        UploadSessionResponse afterLast = sessions.writeChunk(id, 2, chunk(8, 10), "seller-1");
+        assertThat(afterLast.receivedBytes()).isZero();
+
+        sessions.writeChunk(id, 0, chunk(0, 4), "seller-1");
+        UploadSessionResponse status = sessions.status(id, "seller-1");
+        assertThat(status.receivedBytes()).isEqualTo(4);
+        assertThat(status.nextChunk()).isEqualTo(1);
+
+        UploadSessionResponse done = sessions.writeChunk(id, 1, chunk(4, 8), "seller-1");
+        assertThat(done.receivedBytes()).isEqualTo(10);
+        assertThat(done.nextChunk()).isEqualTo(3);
+    }
+
+    @Test
+    void writeChunk_rejectsWrongLength_andKeepsNothing() {
+        String id = create().sessionId();
+
+        assertThatThrownBy(() -> sessions.writeChunk(id, 0, chunk(0, 3), "seller-1"))
+                .isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> sessions.writeChunk(id, 2, chunk(0, 4), "seller-1"))
+                .isInstanceOf(BadRequestException.class);
+        assertThatThrownBy(() -> sessions.writeChunk(id, 3, chunk(0, 4), "seller-1"))
+                .isInstanceOf(BadRequestException.class);
+
+        assertThat(sessions.status(id, "seller-1").receivedBytes()).isZero();
+    }
+
+    @Test
+    void complete_assemblesChunks_andUploadsThroughMediaService() throws IOException {
+        String id = create().sessionId();
+        sessions.writeChunk(id, 1, chunk(4, 8), "seller-1");
+        sessions.writeChunk(id, 0, chunk(0, 4), "seller-1");
+        sessions.writeChunk(id, 2, chunk(8, 10), "seller-1");
+        MediaResponse uploaded = new MediaResponse("m1", "p1", "/media/images/m1", Instant.now(), Map.of(), 4, 3, null);
+        ArgumentCaptor<MultipartFile> file = ArgumentCaptor.forClass(MultipartFile.class);
+        byte[][] received = new byte[1][];
+        when(mediaService.uploadImage(file.capture(), eq("p1"), eq(MediaOwnerType.PRODUCT), eq("seller-1"), eq("SELLER")))
+                .thenAnswer(invocation -> {
+                    received[0] = invocation.getArgument(0, MultipartFile.class).getBytes();
+                    return uploaded;
+                });
+
+        MediaResponse result = sessions.complete(id, "seller-1", "SELLER");
+
+        assertThat(result).isSameAs(uploaded);
+        assertThat(received[0]).isEqualTo(CONTENT);
+        assertThat(file.getValue().getSize()).isEqualTo(10);
+        assertThat(file.getValue().getContentType()).isEqualTo("image/png");
+        assertThat(file.getValue().getOriginalFilename()).isEqualTo("photo.png");
+        assertThat(root.resolve(id)).doesNotExist();
+        assertThatThrownBy(() -> sessions.status(id, "seller-1")).isInstanceOf(MediaNotFoundException.class);
+    }
+
+    @Test
+    void complete_withMissingChunk_isRejected() {
+        String id = create().sessionId();
+        sessions.writeChunk(id, 0, chunk(0, 4), "seller-1");
+        sessions.writeChunk(id, 2, chunk(8, 10), "seller-1");
+
+        assertThatThrownBy(() -> sessions.complete(id, "seller-1", "SELLER"))
+                .isInstanceOf(BadRequestException.class)
+                .hasMessageContaining("Chunk 1");
+        verify(mediaService).checkUploadAllowed(any(), any(), any(), any());
+        verifyNoMoreInteractions(mediaService);
+    }
+
+    @Test
+    void otherUsers_cannotTouchTheSession() {
+        String id = create().sessionId();
+
+        assertThatThrownBy(() -> sessions.writeChunk(id, 0, chunk(0, 4), "seller-2"))
+                .isInstanceOf(ForbiddenException.class);
+        assertThatThrownBy(() -> sessions.complete(id, "seller-2", "SELLER"))
+                .isInstanceOf(ForbiddenException.class);
+    }
+
+    @Test
+    void sessions_surviveARestart() {
+        String id = create().sessionId();
+        sessions.writeChunk(id, 0, chunk(0, 4), "seller-1");
+
+        UploadSessionService restarted = new UploadSessionService(mediaService, root.toString(), 4, 60, 10);
+
+        assertThat(restarted.status(id, "seller-1").receivedBytes()).isEqualTo(4);
+    }
+
+    @Test
+    void unknownOrMalformedIds_areNotFound() {
+        assertThatThrownBy(() -> sessions.status("00000000-0000-0000-0000-000000000000", "seller-1"))
+                .isInstanceOf(MediaNotFoundException.class);
+        assertThatThrownBy(() -> sessions.status("../media-store", "seller-1"))
+                .isInstanceOf(MediaNotFoundException.class);
+    }
+
+    @Test
+    void collectExpired_removesIdleSessionsOnly() throws IOException {
+        String idle = create().sessionId();
+        String active = create().sessionId();
+        Files.setLastModifiedTime(root.resolve(idle), FileTime.from(Instant.now().minus(Duration.ofHours(2))));
+
+        sessions.collectExpired();
+
+        assertThat(root.resolve(idle)).doesNotExist();
+        assertThat(root.resolve(active)).exists();
+        assertThatThrownBy(() -> sessions.status(idle, "seller-1")).isInstanceOf(MediaNotFoundException.class);
+    }
+
+    private UploadSessionResponse create() {
+        return sessions.create("p1", MediaOwnerType.PRODUCT, "image/png", "photo.png", CONTENT.length, "seller-1", "SELLER");
+    }
+
+    private static ByteArrayInputStream chunk(int from, int to) {
+        return new ByteArrayInputStream(CONTENT, from, to - from);
+    }
+}
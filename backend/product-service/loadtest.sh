@@ -0,0 +1,20 @@
+#!/usr/bin/env bash
+# Load comparison of the blocking vs. reactive read path at the same Tomcat thread budget.
+#
+#   1. ./mvnw spring-boot:run -Dspring-boot.run.arguments="--server.tomcat.threads.max=${THREADS}"
+#   2. ./loadtest.sh            -> blocking numbers
+#   3. restart with --spring.profiles.active=reactive and the same threads.max
+#   4. ./loadtest.sh            -> reactive numbers
+#
+# Requires `hey` (https://github.com/rakyll/hey).
+set -e
+
+BASE_URL="${BASE_URL:-http://localhost:8567}"
+CONCURRENCY="${CONCURRENCY:-200}"
+REQUESTS="${REQUESTS:-20000}"
+PRODUCT_ID="${PRODUCT_ID:?set PRODUCT_ID to an existing product id}"
+
+for path in "/products" "/products/${PRODUCT_ID}" "/categories"; do
+  echo "[loadtest] GET ${path} (c=${CONCURRENCY}, n=${REQUESTS})"
+  hey -c "${CONCURRENCY}" -n "${REQUESTS}" "${BASE_URL}${path}" | grep -E "Requests/sec|Average|99%|\[[0-9]{3}\]"
+done
@@ -0,0 +1,10 @@
+package com.buyone.productservice.config;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+// Caffeine-backed caches, sized/expired via spring.cache.caffeine.spec
+@Configuration
+@EnableCaching
+public class CacheConfig {
+}
@@ -8,8 +8,6 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
-import java.util.List;
-
 @RestController
 @RequestMapping("/categories")
 @RequiredArgsConstructor
@@ -17,10 +15,8 @@ public class CategoryController {
     
     private final CategoryService categoryService;
     
-    @GetMapping
-    public ResponseEntity<List<CategoryResponse>> getAll() {
-        return ResponseEntity.ok(categoryService.getAllCategories());
-    }
+    // GET /categories lives in CategoryQueryController (blocking)
+    // or ReactiveCategoryQueryController ("reactive" profile).
     
     @GetMapping("/{id}")
     public ResponseEntity<CategoryResponse> getOne(@PathVariable String id) {
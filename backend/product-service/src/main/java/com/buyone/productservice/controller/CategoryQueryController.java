@@ -0,0 +1,27 @@
+package com.buyone.productservice.controller;
+
+import com.buyone.productservice.response.CategoryResponse;
+import com.buyone.productservice.service.CategoryService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+// Blocking GET /categories; replaced by ReactiveCategoryQueryController under the "reactive" profile
+@RestController
+@RequestMapping("/categories")
+@Profile("!reactive")
+@RequiredArgsConstructor
+public class CategoryQueryController {
+    
+    private final CategoryService categoryService;
+    
+    @GetMapping
+    public ResponseEntity<List<CategoryResponse>> getAll() {
+        return ResponseEntity.ok(categoryService.getAllCategories());
+    }
+}
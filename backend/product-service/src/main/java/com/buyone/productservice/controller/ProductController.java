@@ -3,15 +3,21 @@ package com.buyone.productservice.controller;
 import com.buyone.productservice.request.CreateProductRequest;
 import com.buyone.productservice.request.UpdateProductRequest;
 import com.buyone.productservice.response.ProductResponse;
+import com.buyone.productservice.response.PriceHistoryResponse;
 import com.buyone.productservice.response.ApiResponse;
 import com.buyone.productservice.exception.ForbiddenException;
 import com.buyone.productservice.service.ProductService;
+import com.buyone.productservice.service.PriceHistoryService;
+import com.buyone.productservice.service.SimilarProductsService;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.HttpStatus;
 
 import jakarta.validation.Valid;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
 import java.util.List;
 
 @RestController
@@ -20,42 +26,42 @@ import java.util.List;
 public class ProductController {
     
     private static final String SELLER_ROLE = "SELLER";
+    private static final int DEFAULT_HISTORY_DAYS = 30;
     private final ProductService productService;
+    private final PriceHistoryService priceHistoryService;
+    private final SimilarProductsService similarProductsService;
     
-    public ProductController(ProductService productService) {
+    public ProductController(ProductService productService,
+                             PriceHistoryService priceHistoryService,
+                             SimilarProductsService similarProductsService) {
         this.productService = productService;
+        this.priceHistoryService = priceHistoryService;
+        this.similarProductsService = similarProductsService;
     }
     
-    // GET /products (public)
-    // @GetMapping
-    // public ResponseEntity<ApiResponse<List<ProductResponse>>> getAllProducts() {
-    //     List<ProductResponse> products = productService.getAllProducts();
-    //     return ResponseEntity.ok(okResponse("Products fetched successfully", products));
-    // }
-
+    // GET /products and GET /products/{id} live in ProductQueryController (blocking)
+    // or ReactiveProductQueryController ("reactive" profile).
     
-    // GET /products (public) or GET /products?sellerId=... (public)
-    @GetMapping
-    public ResponseEntity<ApiResponse<List<ProductResponse>>> getProducts(
-            @RequestParam(required = false) String sellerId) {
-
-        List<ProductResponse> products;
-
-        if (sellerId != null) {
-            products = productService.getProductsBySeller(sellerId);
-        } else {
-            products = productService.getAllProducts();
-        }
-
-        return ResponseEntity.ok(okResponse("Products fetched successfully", products));
+    // GET /products/{id}/price-history?from=2026-01-01&to=2026-01-31&maxPoints=60 (public)
+    // Defaults to the last 30 days (UTC), one OHLC point per day unless maxPoints forces merging.
+    @GetMapping("/{id}/price-history")
+    public ResponseEntity<ApiResponse<PriceHistoryResponse>> getPriceHistory(
+            @PathVariable String id,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(defaultValue = "90") int maxPoints
+    ) {
+        LocalDate end = to != null ? to : LocalDate.now(ZoneOffset.UTC);
+        LocalDate start = from != null ? from : end.minusDays(DEFAULT_HISTORY_DAYS - 1L);
+        PriceHistoryResponse history = priceHistoryService.getPriceHistory(id, start, end, maxPoints);
+        return ResponseEntity.ok(okResponse("Price history fetched successfully", history));
     }
-
     
-    // GET /products/{id} (public)
-    @GetMapping("/{id}")
-    public ResponseEntity<ApiResponse<ProductResponse>> getProductById(@PathVariable String id) {
-        ProductResponse product = productService.getProductById(id);
-        return ResponseEntity.ok(okResponse("Product fetched successfully", product));
+    // GET /products/{id}/similar (public) - precomputed nightly by SimilarProductsJob
+    @GetMapping("/{id}/similar")
+    public ResponseEntity<ApiResponse<List<ProductResponse>>> getSimilarProducts(@PathVariable String id) {
+        List<ProductResponse> similar = similarProductsService.getSimilarProducts(id);
+        return ResponseEntity.ok(okResponse("Similar products fetched successfully", similar));
     }
     
     // POST /products (seller only)
@@ -0,0 +1,59 @@
+package com.buyone.productservice.controller;
+
+import com.buyone.productservice.response.ApiResponse;
+import com.buyone.productservice.response.ProductResponse;
+import com.buyone.productservice.service.HotKeyTracker;
+import com.buyone.productservice.service.ProductService;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+// Blocking read endpoints; replaced by ReactiveProductQueryController under the "reactive" profile
+@RestController
+@RequestMapping("/products")
+@Profile("!reactive")
+public class ProductQueryController {
+    
+    private final ProductService productService;
+    private final HotKeyTracker hotKeyTracker;
+    
+    public ProductQueryController(ProductService productService, HotKeyTracker hotKeyTracker) {
+        this.productService = productService;
+        this.hotKeyTracker = hotKeyTracker;
+    }
+    
+    // GET /products (public) or GET /products?sellerId=... (public)
+    @GetMapping
+    public ResponseEntity<ApiResponse<List<ProductResponse>>> getProducts(
+            @RequestParam(required = false) String sellerId) {
+        
+        List<ProductResponse> products;
+        
+        if (sellerId != null) {
+            products = productService.getProductsBySeller(sellerId);
+        } else {
+            products = productService.getAllProducts();
+        }
+        
+        return ResponseEntity.ok(okResponse("Products fetched successfully", products));
+    }
+    
+    // GET /products/{id} (public)
+    @GetMapping("/{id}")
+    public ResponseEntity<ApiResponse<ProductResponse>> getProductById(@PathVariable String id) {
+        // counted here, before the cache, so cache hits still show up as hot keys
+        hotKeyTracker.record(id);
+        ProductResponse product = productService.getProductById(id);
+        return ResponseEntity.ok(okResponse("Product fetched successfully", product));
+    }
+    
+    private <T> ApiResponse<T> okResponse(String message, T data) {
+        return ApiResponse.<T>builder()
+                .success(true)
+                .message(message)
+                .data(data)
+                .build();
+    }
+}
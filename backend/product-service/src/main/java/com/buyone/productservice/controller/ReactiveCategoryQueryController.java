@@ -0,0 +1,37 @@
+package com.buyone.productservice.controller;
+
+import com.buyone.productservice.response.CategoryResponse;
+import com.buyone.productservice.service.ReactiveProductService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+// Non-blocking GET /categories ("reactive" profile), see ReactiveProductQueryController
+@RestController
+@RequestMapping("/categories")
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveCategoryQueryController {
+    
+    private final ReactiveProductService reactiveProductService;
+    
+    @GetMapping
+    public Mono<ResponseEntity<List<CategoryResponse>>> getAll() {
+        return reactiveProductService.getAllCategories()
+                .collectList()
+                .map(ResponseEntity::ok);
+    }
+    
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<CategoryResponse> streamAll() {
+        return reactiveProductService.getAllCategories();
+    }
+}
@@ -0,0 +1,73 @@
+package com.buyone.productservice.controller;
+
+import com.buyone.productservice.exception.ProductNotFoundException;
+import com.buyone.productservice.response.ApiResponse;
+import com.buyone.productservice.response.ProductResponse;
+import com.buyone.productservice.service.HotKeyTracker;
+import com.buyone.productservice.service.ReactiveProductService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+// Non-blocking read endpoints ("reactive" profile).
+// Spring MVC runs Mono/Flux return values as async requests, so the Tomcat thread is
+// released while Mongo is working instead of being parked on the query.
+//  - Accept: application/json (default) -> same ApiResponse envelope as the blocking controller
+//  - Accept: application/x-ndjson       -> one ProductResponse per line, streamed as it is read
+@RestController
+@RequestMapping("/products")
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveProductQueryController {
+    
+    private final ReactiveProductService reactiveProductService;
+    private final HotKeyTracker hotKeyTracker;
+    
+    // GET /products (public) or GET /products?sellerId=... (public)
+    @GetMapping
+    public Mono<ResponseEntity<ApiResponse<List<ProductResponse>>>> getProducts(
+            @RequestParam(required = false) String sellerId) {
+        
+        if (sellerId != null) {
+            return reactiveProductService.getProductsBySeller(sellerId)
+                    .collectList()
+                    .map(products -> ResponseEntity.ok(okResponse("Products fetched successfully", products)));
+        }
+        
+        return reactiveProductService.getAllProducts()
+                .collectList()
+                .filter(products -> !products.isEmpty())
+                .switchIfEmpty(Mono.error(() -> new ProductNotFoundException("No products found.")))
+                .map(products -> ResponseEntity.ok(okResponse("Products fetched successfully", products)));
+    }
+    
+    // GET /products with Accept: application/x-ndjson (streaming)
+    @GetMapping(produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flux<ProductResponse> streamProducts(@RequestParam(required = false) String sellerId) {
+        return sellerId != null
+                ? reactiveProductService.getProductsBySeller(sellerId)
+                : reactiveProductService.getAllProducts();
+    }
+    
+    // GET /products/{id} (public)
+    @GetMapping("/{id}")
+    public Mono<ResponseEntity<ApiResponse<ProductResponse>>> getProductById(@PathVariable String id) {
+        hotKeyTracker.record(id);
+        return reactiveProductService.getProductById(id)
+                .map(product -> ResponseEntity.ok(okResponse("Product fetched successfully", product)));
+    }
+    
+    private <T> ApiResponse<T> okResponse(String message, T data) {
+        return ApiResponse.<T>builder()
+                .success(true)
+                .message(message)
+                .data(data)
+                .build();
+    }
+}
@@ -0,0 +1,38 @@
+package com.buyone.productservice.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * One document per product per UTC day (bucket pattern).
+ * The _id is "<productId>|<yyyyMMdd>" so a date range for one product is a plain _id range scan.
+ * open/high/low/close are maintained on write, so reads never need the raw points.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+
+@Document(collection = "product_price_history")
+public class PriceHistoryBucket {
+    @Id
+    private String id;
+    private String productId;
+    private LocalDate day;
+    private Double open;
+    private Double high;
+    private Double low;
+    private Double close;
+    private Integer count;
+    private Instant firstAt;
+    private Instant lastAt;
+    private List<PriceSample> points; // capped raw samples, kept for alerting/debugging
+}
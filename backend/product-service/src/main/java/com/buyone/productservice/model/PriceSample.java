@@ -0,0 +1,15 @@
+package com.buyone.productservice.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PriceSample {
+    private Instant at;
+    private Double price;
+}
@@ -0,0 +1,25 @@
+package com.buyone.productservice.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+
+// Lease on a scheduled job shared by every replica: held by lockedBy until lockedUntil.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+
+@Document(collection = "scheduler_locks")
+public class SchedulerLock {
+    @Id
+    private String name;
+    private String lockedBy;
+    private Instant lockedAt;
+    private Instant lockedUntil;
+}
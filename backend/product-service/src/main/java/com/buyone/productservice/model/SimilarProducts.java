@@ -0,0 +1,27 @@
+package com.buyone.productservice.model;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.time.Instant;
+import java.util.List;
+
+// Precomputed top-k neighbours of one product, written by SimilarProductsJob.
+// Only ids and scores are stored; product details are resolved at read time.
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+
+@Document(collection = "similar_products")
+public class SimilarProducts {
+    @Id
+    private String id; // productId
+    private List<String> similarIds;
+    private List<Float> scores;
+    private Instant computedAt;
+}
@@ -0,0 +1,9 @@
+package com.buyone.productservice.repository;
+
+import com.buyone.productservice.model.Category;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+
+@Profile("reactive")
+public interface ReactiveCategoryRepository extends ReactiveMongoRepository<Category, String> {
+}
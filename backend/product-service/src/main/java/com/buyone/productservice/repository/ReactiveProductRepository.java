@@ -0,0 +1,12 @@
+package com.buyone.productservice.repository;
+
+import com.buyone.productservice.model.Product;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.repository.ReactiveMongoRepository;
+import reactor.core.publisher.Flux;
+
+// Non-blocking read side of the products collection, used by the "reactive" profile
+@Profile("reactive")
+public interface ReactiveProductRepository extends ReactiveMongoRepository<Product, String> {
+    Flux<Product> findByUserId(String userId);
+}
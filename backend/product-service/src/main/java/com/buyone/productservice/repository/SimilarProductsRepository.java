@@ -0,0 +1,7 @@
+package com.buyone.productservice.repository;
+
+import com.buyone.productservice.model.SimilarProducts;
+import org.springframework.data.mongodb.repository.MongoRepository;
+
+public interface SimilarProductsRepository extends MongoRepository<SimilarProducts, String> {
+}
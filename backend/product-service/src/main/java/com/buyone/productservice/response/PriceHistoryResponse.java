@@ -0,0 +1,8 @@
+package com.buyone.productservice.response;
+
+import java.util.List;
+
+public record PriceHistoryResponse(
+        String productId,
+        List<PricePointResponse> points
+) {}
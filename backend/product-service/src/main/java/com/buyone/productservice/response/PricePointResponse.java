@@ -0,0 +1,13 @@
+package com.buyone.productservice.response;
+
+import java.time.LocalDate;
+
+// One downsampled interval [from, to] of the price series (OHLC)
+public record PricePointResponse(
+        LocalDate from,
+        LocalDate to,
+        Double open,
+        Double high,
+        Double low,
+        Double close
+) {}
@@ -0,0 +1,415 @@
+package com.buyone.productservice.service;
+
+import com.buyone.productservice.model.Product;
+import com.buyone.productservice.response.ProductResponse;
+import com.mongodb.MongoException;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import jakarta.annotation.PreDestroy;
+import org.bson.BsonDocument;
+import org.bson.BsonTimestamp;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Local binary snapshot of the catalog so a fresh instance does not stampede Mongo.
+ *
+ * - Every interval-ms the full catalog is streamed into a temp file and atomically renamed.
+ * - On startup the file is memory-mapped and decoded; a change stream on the products collection
+ *   is opened at the snapshot time first, and only if it starts are the records put into the
+ *   "products" cache. The stream then replays every write made since and keeps the cache in
+ *   sync with other instances.
+ * - Snapshots older than max-age-ms are ignored: keep it well below the oplog window, or the
+ *   replay cannot reach back to the snapshot time.
+ * - A broken stream is resumed from its last resume token with exponential backoff; when that
+ *   history is gone the cache is cleared and the stream restarts from now.
+ *
+ * File layout (big-endian): MAGIC, VERSION, createdAt millis, record count, then records of
+ * length-prefixed UTF-8 strings (-1 = null), price as double (NaN = null), stock as int.
+ */
+@Component
+public class CatalogSnapshotService {
+
+    private static final Logger log = LoggerFactory.getLogger(CatalogSnapshotService.class);
+
+    static final int MAGIC = 0x50435331; // "PCS1"
+    static final int VERSION = 1;
+    private static final long COUNT_OFFSET = 16;
+    private static final int NULL_LENGTH = -1;
+    private static final int NULL_QUANTITY = Integer.MIN_VALUE;
+    private static final long INITIAL_BACKOFF_MS = 1_000;
+    private static final long MAX_BACKOFF_MS = 60_000;
+    // CappedPositionLost, ChangeStreamFatalError, ChangeStreamHistoryLost
+    private static final Set<Integer> HISTORY_LOST_CODES = Set.of(136, 280, 286);
+    // "$changeStream stage is only supported on replica sets"
+    private static final int CHANGE_STREAMS_UNSUPPORTED = 40573;
+
+    private final MongoTemplate mongoTemplate;
+    private final CacheManager cacheManager;
+    private final ExecutorService changeLogExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "catalog-change-log");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile MongoChangeStreamCursor<ChangeStreamDocument<Document>> changeCursor;
+    private volatile boolean running = true;
+
+    @Value("${app.catalog-snapshot.enabled:true}")
+    private boolean enabled;
+    @Value("${app.catalog-snapshot.path:${java.io.tmpdir}/product-catalog.snapshot}")
+    private String snapshotPath;
+    @Value("${app.catalog-snapshot.max-age-ms:3600000}")
+    private long maxAgeMs;
+
+    public CatalogSnapshotService(MongoTemplate mongoTemplate, CacheManager cacheManager) {
+        this.mongoTemplate = mongoTemplate;
+        this.cacheManager = cacheManager;
+    }
+
+    @Scheduled(fixedDelayString = "${app.catalog-snapshot.interval-ms:900000}",
+            initialDelayString = "${app.catalog-snapshot.initial-delay-ms:60000}")
+    public void writeSnapshot() {
+        if (!enabled) {
+            return;
+        }
+        Path target = Paths.get(snapshotPath);
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        // taken before reading so the change log replay also covers writes made during the scan
+        Instant createdAt = Instant.now();
+        try (Stream<Product> products = mongoTemplate.stream(new Query(), Product.class)) {
+            int count = write(tmp, products.map(this::toProductResponse).iterator(), createdAt);
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Catalog snapshot written: {} products -> {}", count, target);
+        } catch (IOException e) {
+            log.error("Failed to write catalog snapshot to {}", target, e);
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        Cache cache = cacheManager.getCache(ProductServiceImpl.PRODUCT_CACHE);
+        if (cache == null) {
+            return;
+        }
+        Path source = Paths.get(snapshotPath);
+        List<ProductResponse> snapshot = new ArrayList<>();
+        Instant catchUpFrom = Instant.now();
+
+        if (Files.isReadable(source)) {
+            try {
+                Instant createdAt = read(source, snapshot::add);
+                if (isFresh(createdAt, Instant.now(), maxAgeMs)) {
+                    catchUpFrom = createdAt;
+                } else {
+                    log.info("Ignoring catalog snapshot {} taken at {}: older than {} ms", source, createdAt, maxAgeMs);
+                    snapshot.clear();
+                }
+            } catch (IOException e) {
+                log.warn("Ignoring unreadable catalog snapshot {}: {}", source, e.getMessage());
+                snapshot.clear();
+            }
+        }
+
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = null;
+        try {
+            cursor = openChangeStream(null, catchUpFrom);
+        } catch (RuntimeException e) {
+            // without the replay the snapshot would be served stale until expiry
+            if (!snapshot.isEmpty()) {
+                log.warn("Catalog change log could not start at {}, not serving the snapshot: {}",
+                        catchUpFrom, e.getMessage());
+            }
+            if (isUnsupported(e)) {
+                log.info("Change streams unsupported, product cache relies on expiry");
+                return;
+            }
+        }
+        if (cursor != null) {
+            snapshot.forEach(product -> cache.put(product.getId(), product));
+            log.info("Product cache warmed from snapshot: {} products", snapshot.size());
+        }
+
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> first = cursor;
+        changeLogExecutor.submit(() -> followChangeLog(cache, first));
+    }
+
+    static boolean isFresh(Instant createdAt, Instant now, long maxAgeMs) {
+        return !createdAt.isBefore(now.minusMillis(maxAgeMs));
+    }
+
+    // Change streams need a replica set (Atlas is one); on a standalone server the
+    // cache simply falls back to TTL expiry.
+    private void followChangeLog(Cache cache, MongoChangeStreamCursor<ChangeStreamDocument<Document>> first) {
+        MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor = first;
+        BsonDocument resumeToken = null;
+        long backoffMs = INITIAL_BACKOFF_MS;
+        while (running) {
+            try {
+                if (cursor == null) {
+                    cursor = resumeToken != null ? openChangeStream(resumeToken, null) : restartChangeStream(cache);
+                    backoffMs = INITIAL_BACKOFF_MS;
+                }
+                changeCursor = cursor;
+                if (cursor.getResumeToken() != null) {
+                    resumeToken = cursor.getResumeToken();
+                }
+                while (running && cursor.hasNext()) {
+                    apply(cache, cursor.next());
+                    resumeToken = cursor.getResumeToken();
+                }
+                // the stream was invalidated (collection dropped or renamed)
+                resumeToken = null;
+            } catch (RuntimeException e) {
+                if (!running) {
+                    return;
+                }
+                if (isUnsupported(e)) {
+                    log.info("Change streams unsupported, product cache relies on expiry");
+                    return;
+                }
+                if (e instanceof MongoException mongo && HISTORY_LOST_CODES.contains(mongo.getCode())) {
+                    resumeToken = null;
+                }
+                log.warn("Catalog change log interrupted, retrying in {} ms: {}", backoffMs, e.getMessage());
+                close(cursor);
+                cursor = null;
+                try {
+                    Thread.sleep(backoffMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                backoffMs = Math.min(backoffMs * 2, MAX_BACKOFF_MS);
+                continue;
+            }
+            close(cursor);
+            cursor = null;
+        }
+    }
+
+    // Writes made while no stream was open were missed, so nothing cached before now can be trusted
+    private MongoChangeStreamCursor<ChangeStreamDocument<Document>> restartChangeStream(Cache cache) {
+        Instant from = Instant.now();
+        cache.clear();
+        log.info("Catalog change log restarted at {}, product cache cleared", from);
+        return openChangeStream(null, from);
+    }
+
+    private MongoChangeStreamCursor<ChangeStreamDocument<Document>> openChangeStream(BsonDocument resumeToken, Instant from) {
+        String collection = mongoTemplate.getCollectionName(Product.class);
+        ChangeStreamIterable<Document> stream = mongoTemplate.getCollection(collection)
+                .watch()
+                .fullDocument(FullDocument.UPDATE_LOOKUP);
+        stream = resumeToken != null
+                ? stream.resumeAfter(resumeToken)
+                : stream.startAtOperationTime(new BsonTimestamp((int) from.getEpochSecond(), 0));
+        return stream.cursor();
+    }
+
+    private static boolean isUnsupported(RuntimeException e) {
+        return e instanceof MongoException mongo && mongo.getCode() == CHANGE_STREAMS_UNSUPPORTED;
+    }
+
+    private static void close(MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor) {
+        if (cursor == null) {
+            return;
+        }
+        try {
+            cursor.close();
+        } catch (RuntimeException ignored) {
+            // already broken
+        }
+    }
+
+    private void apply(Cache cache, ChangeStreamDocument<Document> change) {
+        OperationType type = change.getOperationType();
+        if (type == OperationType.DELETE) {
+            if (change.getDocumentKey() != null) {
+                cache.evict(idOf(change.getDocumentKey().get("_id")));
+            }
+            return;
+        }
+        Document fullDocument = change.getFullDocument();
+        if (fullDocument != null) {
+            Product product = mongoTemplate.getConverter().read(Product.class, fullDocument);
+            cache.put(product.getId(), toProductResponse(product));
+        } else if (change.getDocumentKey() != null) {
+            // updated then deleted before the lookup ran
+            cache.evict(idOf(change.getDocumentKey().get("_id")));
+        }
+    }
+
+    private static String idOf(BsonValue id) {
+        return id.isObjectId() ? id.asObjectId().getValue().toHexString() : id.asString().getValue();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        close(changeCursor);
+        changeLogExecutor.shutdownNow();
+    }
+
+    static int write(Path file, Iterator<ProductResponse> products, Instant createdAt) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(createdAt.toEpochMilli());
+            out.writeInt(0); // record count, patched below
+            int count = 0;
+            while (products.hasNext()) {
+                writeRecord(out, products.next());
+                count++;
+            }
+            out.flush();
+            channel.write(ByteBuffer.allocate(Integer.BYTES).putInt(0, count), COUNT_OFFSET);
+            channel.force(false);
+            return count;
+        }
+    }
+
+    /** Maps the file read-only and hands each record to the consumer; returns the snapshot time. */
+    static Instant read(Path file, Consumer<ProductResponse> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < COUNT_OFFSET + Integer.BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException("Unexpected snapshot size " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                throw new IOException("Unrecognised snapshot format");
+            }
+            Instant createdAt = Instant.ofEpochMilli(buffer.getLong());
+            int count = buffer.getInt();
+            for (int i = 0; i < count; i++) {
+                consumer.accept(readRecord(buffer));
+            }
+            return createdAt;
+        }
+    }
+
+    private static void writeRecord(DataOutputStream out, ProductResponse p) throws IOException {
+        writeString(out, p.getId());
+        writeString(out, p.getName());
+        out.writeDouble(p.getPrice() != null ? p.getPrice() : Double.NaN);
+        out.writeInt(p.getQuantity() != null ? p.getQuantity() : NULL_QUANTITY);
+        writeString(out, p.getCategoryId());
+        writeString(out, p.getUserId());
+        writeString(out, p.getDescription());
+        List<String> images = p.getImages();
+        out.writeInt(images != null ? images.size() : NULL_LENGTH);
+        if (images != null) {
+            for (String image : images) {
+                writeString(out, image);
+            }
+        }
+    }
+
+    private static ProductResponse readRecord(ByteBuffer in) {
+        String id = readString(in);
+        String name = readString(in);
+        double price = in.getDouble();
+        int quantity = in.getInt();
+        String categoryId = readString(in);
+        String userId = readString(in);
+        String description = readString(in);
+        int imageCount = in.getInt();
+        List<String> images = null;
+        if (imageCount != NULL_LENGTH) {
+            images = new ArrayList<>(imageCount);
+            for (int i = 0; i < imageCount; i++) {
+                images.add(readString(in));
+            }
+        }
+        return ProductResponse.builder()
+                .id(id)
+                .name(name)
+                .price(Double.isNaN(price) ? null : price)
+                .quantity(quantity == NULL_QUANTITY ? null : quantity)
+                .categoryId(categoryId)
+                .userId(userId)
+                .description(description)
+                .images(images)
+                .build();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(NULL_LENGTH);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private ProductResponse toProductResponse(Product product) {
+        return ProductResponse.builder()
+                .id(product.getId())
+                .name(product.getName())
+                .description(product.getDescription())
+                .price(product.getPrice())
+                .images(product.getImages())
+                .quantity(product.getQuantity())
+                .userId(product.getUserId())
+                .categoryId(product.getCategoryId())
+                .build();
+    }
+}
@@ -0,0 +1,121 @@
+package com.buyone.productservice.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Heavy-hitter detection for product lookups.
+ *
+ * A count-min sketch (DEPTH x WIDTH counters) estimates per-id request counts in fixed memory;
+ * ids whose estimate beats the current minimum are kept in a small candidate set. Every window
+ * the top-N candidates are published as the "products.hot.requests" multi-gauge
+ * (tags: productId, rank) and all counters are halved, so the ranking follows current traffic.
+ */
+@Component
+public class HotKeyTracker {
+
+    private static final int DEPTH = 4;
+    private static final int WIDTH = 2048;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    private final AtomicLongArray counters = new AtomicLongArray(DEPTH * WIDTH);
+    private final Map<String, Long> candidates = new ConcurrentHashMap<>();
+    private final MultiGauge hotProducts;
+    private final int topN;
+    private final int candidateCapacity;
+    private volatile long admissionThreshold = 0;
+    // gauges only hold weak references, keep the published values reachable
+    private volatile List<MultiGauge.Row<?>> publishedRows = List.of();
+
+    public HotKeyTracker(MeterRegistry meterRegistry, @Value("${app.hot-keys.top-n:10}") int topN) {
+        this.topN = topN;
+        this.candidateCapacity = topN * 8;
+        this.hotProducts = MultiGauge.builder("products.hot.requests")
+                .description("Estimated GET /products/{id} requests in the last window for the hottest ids")
+                .register(meterRegistry);
+    }
+
+    public void record(String productId) {
+        if (productId == null) {
+            return;
+        }
+        long estimate = increment(productId);
+        if (candidates.containsKey(productId)) {
+            candidates.put(productId, estimate);
+        } else if (estimate > admissionThreshold || candidates.size() < candidateCapacity) {
+            admit(productId, estimate);
+        }
+    }
+
+    public List<Map.Entry<String, Long>> hottest() {
+        return candidates.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(topN)
+                .map(e -> Map.entry(e.getKey(), e.getValue()))
+                .toList();
+    }
+
+    @Scheduled(fixedRateString = "${app.hot-keys.window-ms:60000}")
+    public void publishAndDecay() {
+        List<Map.Entry<String, Long>> top = hottest();
+        List<MultiGauge.Row<?>> rows = new ArrayList<>(top.size());
+        for (int rank = 0; rank < top.size(); rank++) {
+            Map.Entry<String, Long> entry = top.get(rank);
+            rows.add(MultiGauge.Row.of(
+                    Tags.of("productId", entry.getKey(), "rank", String.valueOf(rank + 1)),
+                    entry.getValue()));
+        }
+        // overwrite drops gauges for ids that fell out of the top-N
+        hotProducts.register(rows, true);
+        publishedRows = rows;
+
+        for (int i = 0; i < counters.length(); i++) {
+            counters.set(i, counters.get(i) >>> 1);
+        }
+        candidates.replaceAll((id, count) -> count >>> 1);
+        candidates.values().removeIf(count -> count == 0);
+        admissionThreshold = admissionThreshold >>> 1;
+    }
+
+    // min over rows of the incremented counters = count-min estimate
+    private long increment(String key) {
+        int h = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = row * WIDTH + bucket(h, row);
+            estimate = Math.min(estimate, counters.incrementAndGet(index));
+        }
+        return estimate;
+    }
+
+    private static int bucket(int hash, int row) {
+        int h = hash * SEEDS[row];
+        h ^= h >>> 16;
+        return (h & 0x7fffffff) % WIDTH;
+    }
+
+    private synchronized void admit(String productId, long estimate) {
+        candidates.put(productId, estimate);
+        if (candidates.size() <= candidateCapacity) {
+            return;
+        }
+        Map.Entry<String, Long> coldest = candidates.entrySet().stream()
+                .min(Comparator.comparingLong(Map.Entry::getValue))
+                .orElse(null);
+        if (coldest != null) {
+            candidates.remove(coldest.getKey());
+            admissionThreshold = coldest.getValue();
+        }
+    }
+}
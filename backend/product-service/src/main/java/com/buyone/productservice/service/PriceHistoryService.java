@@ -0,0 +1,10 @@
+package com.buyone.productservice.service;
+
+import com.buyone.productservice.response.PriceHistoryResponse;
+
+import java.time.LocalDate;
+
+public interface PriceHistoryService {
+    void recordPrice(String productId, Double price);
+    PriceHistoryResponse getPriceHistory(String productId, LocalDate from, LocalDate to, int maxPoints);
+}
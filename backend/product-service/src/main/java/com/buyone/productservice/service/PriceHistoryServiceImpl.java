@@ -0,0 +1,129 @@
+package com.buyone.productservice.service;
+
+import com.buyone.productservice.exception.BadRequestException;
+import com.buyone.productservice.exception.ProductNotFoundException;
+import com.buyone.productservice.model.PriceHistoryBucket;
+import com.buyone.productservice.model.PriceSample;
+import com.buyone.productservice.repository.ProductRepository;
+import com.buyone.productservice.response.PriceHistoryResponse;
+import com.buyone.productservice.response.PricePointResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+@Service
+public class PriceHistoryServiceImpl implements PriceHistoryService {
+
+    private static final Logger log = LoggerFactory.getLogger(PriceHistoryServiceImpl.class);
+
+    // Raw samples kept per daily bucket; OHLC fields cover everything older
+    static final int MAX_SAMPLES_PER_BUCKET = 100;
+
+    private final MongoTemplate mongoTemplate;
+    private final ProductRepository productRepository;
+
+    public PriceHistoryServiceImpl(MongoTemplate mongoTemplate, ProductRepository productRepository) {
+        this.mongoTemplate = mongoTemplate;
+        this.productRepository = productRepository;
+    }
+
+    // Single upsert into today's bucket: creates it on the first change of the day,
+    // otherwise folds the new price into high/low/close and appends a capped sample.
+    @Override
+    public void recordPrice(String productId, Double price) {
+        if (productId == null || price == null) {
+            return;
+        }
+        Instant now = Instant.now();
+        LocalDate day = LocalDate.ofInstant(now, ZoneOffset.UTC);
+
+        Query query = Query.query(Criteria.where("_id").is(bucketId(productId, day)));
+        Update update = new Update()
+                .setOnInsert("productId", productId)
+                .setOnInsert("day", day)
+                .setOnInsert("open", price)
+                .setOnInsert("firstAt", now)
+                .min("low", price)
+                .max("high", price)
+                .set("close", price)
+                .set("lastAt", now)
+                .inc("count", 1)
+                .push("points").slice(-MAX_SAMPLES_PER_BUCKET).each(new PriceSample(now, price));
+
+        try {
+            mongoTemplate.upsert(query, update, PriceHistoryBucket.class);
+        } catch (DataAccessException ex) {
+            // History is best effort, the product write itself already succeeded
+            log.error("Failed to record price history for product {}", productId, ex);
+        }
+    }
+
+    // Reads only the per-day OHLC summary (raw points are projected out),
+    // then merges consecutive days when the range holds more buckets than maxPoints.
+    @Override
+    public PriceHistoryResponse getPriceHistory(String productId, LocalDate from, LocalDate to, int maxPoints) {
+        if (maxPoints < 1) {
+            throw new BadRequestException("maxPoints must be at least 1.");
+        }
+        if (from.isAfter(to)) {
+            throw new BadRequestException("'from' must not be after 'to'.");
+        }
+        if (!productRepository.existsById(productId)) {
+            throw new ProductNotFoundException("Product not found with ID: " + productId);
+        }
+
+        Query query = Query.query(Criteria.where("_id")
+                        .gte(bucketId(productId, from))
+                        .lte(bucketId(productId, to)))
+                .with(Sort.by(Sort.Direction.ASC, "_id"));
+        query.fields().exclude("points");
+
+        List<PriceHistoryBucket> buckets = mongoTemplate.find(query, PriceHistoryBucket.class);
+        return new PriceHistoryResponse(productId, downsample(buckets, maxPoints));
+    }
+
+    static List<PricePointResponse> downsample(List<PriceHistoryBucket> buckets, int maxPoints) {
+        int groupSize = (buckets.size() + maxPoints - 1) / maxPoints;
+        List<PricePointResponse> points = new ArrayList<>(Math.min(buckets.size(), maxPoints));
+
+        for (int start = 0; start < buckets.size(); start += Math.max(groupSize, 1)) {
+            int end = Math.min(start + Math.max(groupSize, 1), buckets.size());
+            PriceHistoryBucket first = buckets.get(start);
+            PriceHistoryBucket last = buckets.get(end - 1);
+
+            double high = first.getHigh();
+            double low = first.getLow();
+            for (int i = start + 1; i < end; i++) {
+                high = Math.max(high, buckets.get(i).getHigh());
+                low = Math.min(low, buckets.get(i).getLow());
+            }
+            points.add(new PricePointResponse(
+                    first.getDay(),
+                    last.getDay(),
+                    first.getOpen(),
+                    high,
+                    low,
+                    last.getClose()
+            ));
+        }
+        return points;
+    }
+
+    // yyyyMMdd keeps lexicographic _id order equal to date order
+    static String bucketId(String productId, LocalDate day) {
+        return productId + "|" + day.format(DateTimeFormatter.BASIC_ISO_DATE);
+    }
+}
@@ -11,6 +11,9 @@ import com.buyone.productservice.exception.ConflictException;
 import com.buyone.productservice.exception.ForbiddenException;
 import com.buyone.productservice.event.ProductDeletedEvent;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.kafka.core.KafkaTemplate;
@@ -18,14 +21,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.Optional;
 
 @Service
 public class ProductServiceImpl implements ProductService {
     
     private final ProductRepository productRepository;
     private final KafkaTemplate<String, Object> kafkaTemplate;
+    private final PriceHistoryService priceHistoryService;
     private static final Logger log = LoggerFactory.getLogger(ProductServiceImpl.class);
     
+    // Warmed from the local catalog snapshot on startup, see CatalogSnapshotService
+    static final String PRODUCT_CACHE = "products";
+    
+    // Concurrent cache misses for the same id share one findById
+    private final SingleFlight<String, Optional<Product>> productLookups = new SingleFlight<>();
+    
     
     @Value("${app.kafka.topic.product-created}")
     private String productCreatedTopic;
@@ -34,9 +45,12 @@ public class ProductServiceImpl implements ProductService {
     @Value("${app.kafka.topic.product-deleted}")
     private String productDeletedTopic;
     
-    public ProductServiceImpl(ProductRepository productRepository, KafkaTemplate<String, Object> kafkaTemplate) {
+    public ProductServiceImpl(ProductRepository productRepository,
+                              KafkaTemplate<String, Object> kafkaTemplate,
+                              PriceHistoryService priceHistoryService) {
         this.productRepository = productRepository;
         this.kafkaTemplate = kafkaTemplate;
+        this.priceHistoryService = priceHistoryService;
     }
     
     // Create Product (seller only, enforce at controller)
@@ -72,14 +86,16 @@ public class ProductServiceImpl implements ProductService {
                 .build();
         
         Product savedProduct = productRepository.save(product);
+        priceHistoryService.recordPrice(savedProduct.getId(), savedProduct.getPrice());
         // Event creation intentionally omitted because publishing is disabled.
         return toProductResponse(savedProduct);
     }
     
     // Get single product by ID
     @Override
+    @Cacheable(cacheNames = PRODUCT_CACHE, key = "#id")
     public ProductResponse getProductById(String id) {
-        return productRepository.findById(id)
+        return productLookups.execute(id, () -> productRepository.findById(id))
                 .map(this::toProductResponse)
                 .orElseThrow(() ->
                         new ProductNotFoundException("Product not found with ID: " + id)
@@ -101,15 +117,20 @@ public class ProductServiceImpl implements ProductService {
     
     // Update product (seller only)
     @Override
+    @CachePut(cacheNames = PRODUCT_CACHE, key = "#id")
     public ProductResponse updateProduct(String id, UpdateProductRequest request, String sellerId) {
         Product product = productRepository.findById(id)
                 .orElseThrow(() -> new ProductNotFoundException("Cannot update — Product not found with ID: " + id));
         
         validateOwnership(product, sellerId);
         validateUpdateRequest(request, product, sellerId);
+        Double previousPrice = product.getPrice();
         updateProductFields(product, request);
 
         Product updatedProduct = productRepository.save(product);
+        if (updatedProduct.getPrice() != null && !updatedProduct.getPrice().equals(previousPrice)) {
+            priceHistoryService.recordPrice(updatedProduct.getId(), updatedProduct.getPrice());
+        }
         // Event creation intentionally omitted because publishing is disabled.
         return toProductResponse(updatedProduct);
     }
@@ -117,6 +138,7 @@ public class ProductServiceImpl implements ProductService {
     // Delete product (seller only)
     @Override
     @Transactional
+    @CacheEvict(cacheNames = PRODUCT_CACHE, key = "#id")
     public void deleteProduct(String id, String sellerId) {
         Product product = productRepository.findById(id)
                 .orElseThrow(() -> new ProductNotFoundException("Cannot delete — Product not found with ID: " + id));
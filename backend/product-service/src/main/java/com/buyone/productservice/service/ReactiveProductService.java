@@ -0,0 +1,15 @@
+package com.buyone.productservice.service;
+
+import com.buyone.productservice.response.CategoryResponse;
+import com.buyone.productservice.response.ProductResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+// Read-only, non-blocking counterpart of ProductService / CategoryService.
+// Only active with the "reactive" profile; writes always go through the blocking services.
+public interface ReactiveProductService {
+    Flux<ProductResponse> getAllProducts();
+    Flux<ProductResponse> getProductsBySeller(String sellerId);
+    Mono<ProductResponse> getProductById(String id);
+    Flux<CategoryResponse> getAllCategories();
+}
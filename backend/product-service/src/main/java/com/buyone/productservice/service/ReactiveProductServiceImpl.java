@@ -0,0 +1,74 @@
+package com.buyone.productservice.service;
+
+import com.buyone.productservice.exception.ProductNotFoundException;
+import com.buyone.productservice.model.Category;
+import com.buyone.productservice.model.Product;
+import com.buyone.productservice.repository.ReactiveCategoryRepository;
+import com.buyone.productservice.repository.ReactiveProductRepository;
+import com.buyone.productservice.response.CategoryResponse;
+import com.buyone.productservice.response.ProductResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveProductServiceImpl implements ReactiveProductService {
+    
+    private final ReactiveProductRepository productRepository;
+    private final ReactiveCategoryRepository categoryRepository;
+    
+    // Streams documents as the driver delivers them, no intermediate List
+    @Override
+    public Flux<ProductResponse> getAllProducts() {
+        return productRepository.findAll()
+                .map(this::toProductResponse);
+    }
+    
+    @Override
+    public Flux<ProductResponse> getProductsBySeller(String sellerId) {
+        return productRepository.findByUserId(sellerId)
+                .map(this::toProductResponse);
+    }
+    
+    @Override
+    public Mono<ProductResponse> getProductById(String id) {
+        return productRepository.findById(id)
+                .map(this::toProductResponse)
+                .switchIfEmpty(Mono.error(() ->
+                        new ProductNotFoundException("Product not found with ID: " + id)));
+    }
+    
+    @Override
+    public Flux<CategoryResponse> getAllCategories() {
+        return categoryRepository.findAll()
+                .map(this::toCategoryResponse);
+    }
+    
+    // Same mapping as ProductServiceImpl so both profiles return identical payloads
+    private ProductResponse toProductResponse(Product product) {
+        return ProductResponse.builder()
+                .id(product.getId())
+                .name(product.getName())
+                .description(product.getDescription())
+                .price(product.getPrice())
+                .images(product.getImages())
+                .quantity(product.getQuantity())
+                .userId(product.getUserId())
+                .categoryId(product.getCategoryId())
+                .build();
+    }
+    
+    private CategoryResponse toCategoryResponse(Category c) {
+        return new CategoryResponse(
+                c.getId(),
+                c.getSlug(),
+                c.getName(),
+                c.getIcon(),
+                c.getDescription()
+        );
+    }
+}
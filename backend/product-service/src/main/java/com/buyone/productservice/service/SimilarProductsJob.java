@@ -0,0 +1,163 @@
+package com.buyone.productservice.service;
+
+import com.buyone.productservice.model.Product;
+import com.buyone.productservice.model.SimilarProducts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * Nightly batch that precomputes "similar items" for every product.
+ *
+ * The catalog is streamed category by category (the shard key) and sliced into
+ * shards of at most max-shard-size products, so memory stays bounded however large
+ * the catalog grows. Each shard is scored by SimilarityCalculator on a dedicated
+ * ForkJoinPool and written back with unordered bulk upserts. Every replica schedules it,
+ * the SchedulerLease lets only one of them compute a given night.
+ */
+@Component
+public class SimilarProductsJob {
+
+    private static final Logger log = LoggerFactory.getLogger(SimilarProductsJob.class);
+    private static final int WRITE_BATCH_SIZE = 1000;
+    static final String LOCK_NAME = "similar-products";
+
+    private final MongoTemplate mongoTemplate;
+    private final CacheManager cacheManager;
+    private final SchedulerLease schedulerLease;
+
+    @Value("${app.similar-products.enabled:true}")
+    private boolean enabled;
+    @Value("${app.similar-products.top-k:12}")
+    private int topK;
+    @Value("${app.similar-products.max-shard-size:100000}")
+    private int maxShardSize;
+    @Value("${app.similar-products.lock-at-most-minutes:360}")
+    private long lockAtMostMinutes;
+    @Value("${app.similar-products.lock-at-least-minutes:60}")
+    private long lockAtLeastMinutes;
+
+    public SimilarProductsJob(MongoTemplate mongoTemplate, CacheManager cacheManager, SchedulerLease schedulerLease) {
+        this.mongoTemplate = mongoTemplate;
+        this.cacheManager = cacheManager;
+        this.schedulerLease = schedulerLease;
+    }
+
+    @Scheduled(cron = "${app.similar-products.cron:0 30 3 * * *}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        schedulerLease.runExclusively(LOCK_NAME, Duration.ofMinutes(lockAtMostMinutes),
+                Duration.ofMinutes(lockAtLeastMinutes), this::computeAll);
+    }
+
+    private void computeAll() {
+        Instant runStartedAt = Instant.now();
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        long processed = 0;
+        try {
+            SimilarityCalculator calculator = new SimilarityCalculator(topK, pool);
+            List<String> categoryIds = mongoTemplate.findDistinct(new Query(), "categoryId", Product.class, String.class);
+            for (String categoryId : categoryIds) {
+                if (categoryId == null) {
+                    continue; // the no-category shard below
+                }
+                processed += processShard(Criteria.where("categoryId").is(categoryId), calculator, runStartedAt);
+            }
+            // products without a category form their own shard
+            processed += processShard(Criteria.where("categoryId").is(null), calculator, runStartedAt);
+
+            // anything not rewritten in this run belongs to a deleted product
+            mongoTemplate.remove(Query.query(Criteria.where("computedAt").lt(runStartedAt)), SimilarProducts.class);
+        } finally {
+            pool.shutdown();
+        }
+
+        Cache cache = cacheManager.getCache(SimilarProductsServiceImpl.CACHE_NAME);
+        if (cache != null) {
+            cache.clear();
+        }
+        log.info("Similar products computed for {} products in {} ms",
+                processed, Instant.now().toEpochMilli() - runStartedAt.toEpochMilli());
+    }
+
+    private long processShard(Criteria criteria, SimilarityCalculator calculator, Instant computedAt) {
+        Query query = Query.query(criteria).with(Sort.by(Sort.Direction.ASC, "_id"));
+        query.fields().include("name").include("description");
+
+        List<String> ids = new ArrayList<>();
+        List<String> texts = new ArrayList<>();
+        long processed = 0;
+        try (Stream<Product> products = mongoTemplate.stream(query, Product.class)) {
+            Iterator<Product> it = products.iterator();
+            while (it.hasNext()) {
+                Product product = it.next();
+                ids.add(product.getId());
+                texts.add((product.getName() != null ? product.getName() : "") + " "
+                        + (product.getDescription() != null ? product.getDescription() : ""));
+                if (ids.size() >= maxShardSize) {
+                    processed += scoreAndStore(ids, texts, calculator, computedAt);
+                    ids.clear();
+                    texts.clear();
+                }
+            }
+        }
+        if (!ids.isEmpty()) {
+            processed += scoreAndStore(ids, texts, calculator, computedAt);
+        }
+        return processed;
+    }
+
+    private int scoreAndStore(List<String> ids, List<String> texts, SimilarityCalculator calculator, Instant computedAt) {
+        SimilarityCalculator.Result result = calculator.compute(texts);
+        int k = result.k();
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SimilarProducts.class);
+        int pending = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            List<String> similarIds = new ArrayList<>(k);
+            List<Float> scores = new ArrayList<>(k);
+            for (int r = 0; r < k; r++) {
+                int j = result.neighbours()[i * k + r];
+                if (j < 0) {
+                    break;
+                }
+                similarIds.add(ids.get(j));
+                scores.add(result.scores()[i * k + r]);
+            }
+            bulk.upsert(Query.query(Criteria.where("_id").is(ids.get(i))),
+                    new Update()
+                            .set("similarIds", similarIds)
+                            .set("scores", scores)
+                            .set("computedAt", computedAt));
+            if (++pending == WRITE_BATCH_SIZE) {
+                bulk.execute();
+                bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SimilarProducts.class);
+                pending = 0;
+            }
+        }
+        if (pending > 0) {
+            bulk.execute();
+        }
+        return ids.size();
+    }
+}
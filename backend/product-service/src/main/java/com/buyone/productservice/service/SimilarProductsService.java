@@ -0,0 +1,9 @@
+package com.buyone.productservice.service;
+
+import com.buyone.productservice.response.ProductResponse;
+
+import java.util.List;
+
+public interface SimilarProductsService {
+    List<ProductResponse> getSimilarProducts(String productId);
+}
@@ -0,0 +1,68 @@
+package com.buyone.productservice.service;
+
+import com.buyone.productservice.exception.ProductNotFoundException;
+import com.buyone.productservice.model.Product;
+import com.buyone.productservice.model.SimilarProducts;
+import com.buyone.productservice.repository.ProductRepository;
+import com.buyone.productservice.repository.SimilarProductsRepository;
+import com.buyone.productservice.response.ProductResponse;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Service
+public class SimilarProductsServiceImpl implements SimilarProductsService {
+
+    static final String CACHE_NAME = "similarProducts";
+
+    private final SimilarProductsRepository similarProductsRepository;
+    private final ProductRepository productRepository;
+
+    public SimilarProductsServiceImpl(SimilarProductsRepository similarProductsRepository,
+                                      ProductRepository productRepository) {
+        this.similarProductsRepository = similarProductsRepository;
+        this.productRepository = productRepository;
+    }
+
+    // Precomputed ids + one findAllById; cached until the next job run or the cache TTL
+    @Override
+    @Cacheable(cacheNames = CACHE_NAME, key = "#productId")
+    public List<ProductResponse> getSimilarProducts(String productId) {
+        SimilarProducts similar = similarProductsRepository.findById(productId).orElse(null);
+        if (similar == null || similar.getSimilarIds() == null || similar.getSimilarIds().isEmpty()) {
+            if (!productRepository.existsById(productId)) {
+                throw new ProductNotFoundException("Product not found with ID: " + productId);
+            }
+            return List.of();
+        }
+
+        Map<String, Product> byId = productRepository.findAllById(similar.getSimilarIds())
+                .stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+
+        // keep the similarity order; skip products deleted since the last run
+        return similar.getSimilarIds().stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .map(this::toProductResponse)
+                .toList();
+    }
+
+    private ProductResponse toProductResponse(Product product) {
+        return ProductResponse.builder()
+                .id(product.getId())
+                .name(product.getName())
+                .description(product.getDescription())
+                .price(product.getPrice())
+                .images(product.getImages())
+                .quantity(product.getQuantity())
+                .userId(product.getUserId())
+                .categoryId(product.getCategoryId())
+                .build();
+    }
+}
@@ -0,0 +1,245 @@
+package com.buyone.productservice.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Top-k text similarity for one catalog shard (products of the same category).
+ *
+ * Name + description are tokenized into hashed term ids (no vocabulary map), weighted with
+ * TF-IDF computed inside the shard and L2-normalised, so the dot product is the cosine.
+ * Candidates come from a CSR inverted index; scoring is split over a ForkJoinPool.
+ * Memory is O(shard size * MAX_TERMS_PER_PRODUCT) and never depends on the catalog size.
+ */
+class SimilarityCalculator {
+
+    static final int VOCAB_SIZE = 1 << 20;
+    static final int MAX_TERMS_PER_PRODUCT = 24;
+    // Terms shared by more products than this carry almost no signal and dominate the cost
+    static final int MAX_POSTINGS_PER_TERM = 20_000;
+    private static final int MIN_TOKEN_LENGTH = 2;
+
+    private final int topK;
+    private final ForkJoinPool pool;
+
+    SimilarityCalculator(int topK, ForkJoinPool pool) {
+        this.topK = topK;
+        this.pool = pool;
+    }
+
+    /** neighbours[i * k + r] is the index of the r-th most similar product to i, or -1. */
+    record Result(int k, int[] neighbours, float[] scores) {}
+
+    Result compute(List<String> texts) {
+        int n = texts.size();
+        int[] termIds = new int[n * MAX_TERMS_PER_PRODUCT];
+        float[] weights = new float[n * MAX_TERMS_PER_PRODUCT];
+        int[] termCounts = new int[n];
+        int[] df = new int[VOCAB_SIZE];
+
+        // 1. term frequencies per product + document frequencies per term
+        int[] scratch = new int[256];
+        for (int i = 0; i < n; i++) {
+            scratch = tokenize(texts.get(i), scratch);
+            int tokens = scratch[0];
+            termCounts[i] = collectTopTerms(scratch, tokens, termIds, weights, i * MAX_TERMS_PER_PRODUCT);
+            for (int s = i * MAX_TERMS_PER_PRODUCT, end = s + termCounts[i]; s < end; s++) {
+                df[termIds[s]]++;
+            }
+        }
+
+        // 2. tf-idf, L2-normalised
+        for (int i = 0; i < n; i++) {
+            int base = i * MAX_TERMS_PER_PRODUCT;
+            double norm = 0;
+            for (int s = base; s < base + termCounts[i]; s++) {
+                double w = (1 + Math.log(weights[s])) * Math.log(1 + (double) n / df[termIds[s]]);
+                weights[s] = (float) w;
+                norm += w * w;
+            }
+            float inv = norm > 0 ? (float) (1 / Math.sqrt(norm)) : 0f;
+            for (int s = base; s < base + termCounts[i]; s++) {
+                weights[s] *= inv;
+            }
+        }
+
+        // 3. CSR inverted index over useful terms (shared by 2..MAX_POSTINGS_PER_TERM products)
+        int[] offsets = new int[VOCAB_SIZE + 1];
+        for (int t = 0; t < VOCAB_SIZE; t++) {
+            offsets[t + 1] = offsets[t] + (isIndexed(df[t]) ? df[t] : 0);
+        }
+        int[] postingDocs = new int[offsets[VOCAB_SIZE]];
+        float[] postingWeights = new float[offsets[VOCAB_SIZE]];
+        int[] cursor = Arrays.copyOf(offsets, VOCAB_SIZE);
+        for (int i = 0; i < n; i++) {
+            int base = i * MAX_TERMS_PER_PRODUCT;
+            for (int s = base; s < base + termCounts[i]; s++) {
+                int t = termIds[s];
+                if (isIndexed(df[t])) {
+                    int p = cursor[t]++;
+                    postingDocs[p] = i;
+                    postingWeights[p] = weights[s];
+                }
+            }
+        }
+
+        // 4. parallel top-k scoring
+        int[] neighbours = new int[n * topK];
+        float[] scores = new float[n * topK];
+        Arrays.fill(neighbours, -1);
+        int threshold = Math.max(64, n / (pool.getParallelism() * 4));
+        pool.invoke(new ScoreTask(0, n, threshold, new Index(n, termIds, weights, termCounts, df,
+                offsets, postingDocs, postingWeights), neighbours, scores));
+        return new Result(topK, neighbours, scores);
+    }
+
+    private static boolean isIndexed(int df) {
+        return df >= 2 && df <= MAX_POSTINGS_PER_TERM;
+    }
+
+    private record Index(int n, int[] termIds, float[] weights, int[] termCounts, int[] df,
+                         int[] offsets, int[] postingDocs, float[] postingWeights) {}
+
+    private class ScoreTask extends RecursiveAction {
+        private final int lo;
+        private final int hi;
+        private final int threshold;
+        private final Index index;
+        private final int[] neighbours;
+        private final float[] scores;
+
+        ScoreTask(int lo, int hi, int threshold, Index index, int[] neighbours, float[] scores) {
+            this.lo = lo;
+            this.hi = hi;
+            this.threshold = threshold;
+            this.index = index;
+            this.neighbours = neighbours;
+            this.scores = scores;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo > threshold) {
+                int mid = (lo + hi) >>> 1;
+                invokeAll(new ScoreTask(lo, mid, threshold, index, neighbours, scores),
+                        new ScoreTask(mid, hi, threshold, index, neighbours, scores));
+                return;
+            }
+            // one accumulator per leaf, reset sparsely via the touched list
+            float[] acc = new float[index.n()];
+            int[] touched = new int[index.n()];
+            for (int i = lo; i < hi; i++) {
+                int touchedCount = 0;
+                int base = i * MAX_TERMS_PER_PRODUCT;
+                for (int s = base; s < base + index.termCounts()[i]; s++) {
+                    int t = index.termIds()[s];
+                    float wi = index.weights()[s];
+                    for (int p = index.offsets()[t]; p < index.offsets()[t + 1]; p++) {
+                        int j = index.postingDocs()[p];
+                        if (j == i) {
+                            continue;
+                        }
+                        if (acc[j] == 0f) {
+                            touched[touchedCount++] = j;
+                        }
+                        acc[j] += wi * index.postingWeights()[p];
+                    }
+                }
+                selectTopK(i, acc, touched, touchedCount);
+                for (int c = 0; c < touchedCount; c++) {
+                    acc[touched[c]] = 0f;
+                }
+            }
+        }
+
+        // insertion into a k-sized sorted window; k is small (~12)
+        private void selectTopK(int i, float[] acc, int[] touched, int touchedCount) {
+            int base = i * topK;
+            int filled = 0;
+            for (int c = 0; c < touchedCount; c++) {
+                int j = touched[c];
+                float score = acc[j];
+                if (filled == topK && score <= scores[base + topK - 1]) {
+                    continue;
+                }
+                int pos = Math.min(filled, topK - 1);
+                while (pos > 0 && scores[base + pos - 1] < score) {
+                    scores[base + pos] = scores[base + pos - 1];
+                    neighbours[base + pos] = neighbours[base + pos - 1];
+                    pos--;
+                }
+                scores[base + pos] = score;
+                neighbours[base + pos] = j;
+                if (filled < topK) {
+                    filled++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes hashed token ids into buf[1..] and the token count into buf[0],
+     * hashing char by char so no substrings are allocated.
+     */
+    static int[] tokenize(String text, int[] buf) {
+        int count = 0;
+        int hash = 0;
+        int length = 0;
+        int len = text == null ? 0 : text.length();
+        for (int c = 0; c <= len; c++) {
+            char ch = c < len ? Character.toLowerCase(text.charAt(c)) : ' ';
+            if (Character.isLetterOrDigit(ch)) {
+                hash = 31 * hash + ch;
+                length++;
+                continue;
+            }
+            if (length >= MIN_TOKEN_LENGTH) {
+                if (count + 1 >= buf.length) {
+                    buf = Arrays.copyOf(buf, buf.length * 2);
+                }
+                buf[++count] = (hash & 0x7fffffff) % VOCAB_SIZE;
+            }
+            hash = 0;
+            length = 0;
+        }
+        buf[0] = count;
+        return buf;
+    }
+
+    /**
+     * Collapses buf[1..tokens] into (termId, tf) pairs written at dest offset,
+     * keeping the MAX_TERMS_PER_PRODUCT most frequent terms. Raw tf goes into weights.
+     */
+    private static int collectTopTerms(int[] buf, int tokens, int[] termIds, float[] weights, int offset) {
+        Arrays.sort(buf, 1, tokens + 1);
+        int kept = 0;
+        for (int s = 1; s <= tokens; ) {
+            int term = buf[s];
+            int tf = 0;
+            while (s <= tokens && buf[s] == term) {
+                tf++;
+                s++;
+            }
+            if (kept < MAX_TERMS_PER_PRODUCT) {
+                termIds[offset + kept] = term;
+                weights[offset + kept] = tf;
+                kept++;
+                continue;
+            }
+            // replace the least frequent kept term if this one is more frequent
+            int min = offset;
+            for (int m = offset + 1; m < offset + kept; m++) {
+                if (weights[m] < weights[min]) {
+                    min = m;
+                }
+            }
+            if (tf > weights[min]) {
+                termIds[min] = term;
+                weights[min] = tf;
+            }
+        }
+        return kept;
+    }
+}
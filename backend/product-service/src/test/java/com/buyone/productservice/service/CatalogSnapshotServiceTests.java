@@ -0,0 +1,176 @@
+package com.buyone.productservice.service;
+
+import com.buyone.productservice.model.Product;
+import com.buyone.productservice.response.ProductResponse;
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+import com.mongodb.client.ChangeStreamIterable;
+import com.mongodb.client.MongoChangeStreamCursor;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.BsonTimestamp;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class CatalogSnapshotServiceTests {
+    
+    private static final ProductResponse PRODUCT = ProductResponse.builder().id("p1").name("A").build();
+    
+    @TempDir
+    Path tempDir;
+    
+    @Mock
+    private MongoTemplate mongoTemplate;
+    @Mock
+    private MongoCollection<Document> collection;
+    @Mock
+    private MongoChangeStreamCursor<ChangeStreamDocument<Document>> cursor;
+    
+    private final ChangeStreamIterable<Document> changeStream = mock(ChangeStreamIterable.class, RETURNS_SELF);
+    private final ConcurrentMapCacheManager cacheManager = new ConcurrentMapCacheManager(ProductServiceImpl.PRODUCT_CACHE);
+    private final CountDownLatch untilStopped = new CountDownLatch(1);
+    private CatalogSnapshotService snapshotService;
+    
+    @BeforeEach
+    void setUp() {
+        snapshotService = new CatalogSnapshotService(mongoTemplate, cacheManager);
+        ReflectionTestUtils.setField(snapshotService, "enabled", true);
+        ReflectionTestUtils.setField(snapshotService, "snapshotPath", tempDir.resolve("catalog.snapshot").toString());
+        ReflectionTestUtils.setField(snapshotService, "maxAgeMs", Duration.ofHours(1).toMillis());
+    }
+    
+    @AfterEach
+    void tearDown() {
+        snapshotService.stop();
+    }
+    
+    @Test
+    void writeThenRead_roundTripsAllFieldsIncludingNulls() throws IOException {
+        Path file = tempDir.resolve("catalog.snapshot");
+        Instant createdAt = Instant.ofEpochMilli(1_700_000_000_000L);
+        ProductResponse full = ProductResponse.builder()
+                .id("p1").name("Prod Ä").description("desc")
+                .price(19.99).quantity(3)
+                .userId("seller-1").categoryId("cat-1")
+                .images(List.of("img1", "img2"))
+                .build();
+        ProductResponse sparse = ProductResponse.builder().id("p2").name("B").build();
+        
+        int written = CatalogSnapshotService.write(file, List.of(full, sparse).iterator(), createdAt);
+        
+        List<ProductResponse> read = new ArrayList<>();
+        Instant readCreatedAt = CatalogSnapshotService.read(file, read::add);
+        
+        assertThat(written).isEqualTo(2);
+        assertThat(readCreatedAt).isEqualTo(createdAt);
+        assertThat(read).containsExactly(full, sparse);
+    }
+    
+    @Test
+    void read_rejectsFilesWithUnknownFormat() throws IOException {
+        Path file = tempDir.resolve("garbage.snapshot");
+        Files.write(file, new byte[64]);
+        
+        assertThatThrownBy(() -> CatalogSnapshotService.read(file, p -> { }))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("Unrecognised snapshot format");
+    }
+    
+    @Test
+    void warmUp_servesFreshSnapshot_onceTheChangeLogHasStartedAtItsTime() throws Exception {
+        Instant createdAt = Instant.now().minus(Duration.ofMinutes(10));
+        CatalogSnapshotService.write(tempDir.resolve("catalog.snapshot"), List.of(PRODUCT).iterator(), createdAt);
+        givenChangeStream();
+        givenCursorOpens();
+        
+        snapshotService.warmUp();
+        
+        verify(changeStream).startAtOperationTime(new BsonTimestamp((int) createdAt.getEpochSecond(), 0));
+        assertThat(productCache().get("p1", ProductResponse.class)).isEqualTo(PRODUCT);
+    }
+    
+    @Test
+    void warmUp_ignoresSnapshotOlderThanMaxAge() throws Exception {
+        Instant createdAt = Instant.now().minus(Duration.ofHours(2));
+        CatalogSnapshotService.write(tempDir.resolve("catalog.snapshot"), List.of(PRODUCT).iterator(), createdAt);
+        givenChangeStream();
+        givenCursorOpens();
+        
+        snapshotService.warmUp();
+        
+        assertThat(productCache().get("p1")).isNull();
+    }
+    
+    @Test
+    void warmUp_doesNotServeSnapshot_whenTheChangeLogCannotReachItsTime() throws Exception {
+        Instant createdAt = Instant.now().minus(Duration.ofMinutes(10));
+        CatalogSnapshotService.write(tempDir.resolve("catalog.snapshot"), List.of(PRODUCT).iterator(), createdAt);
+        givenChangeStream();
+        when(changeStream.cursor()).thenThrow(new MongoCommandException(
+                new BsonDocument("code", new BsonInt32(286)).append("errmsg", new BsonString("history lost")),
+                new ServerAddress()));
+        
+        snapshotService.warmUp();
+        
+        assertThat(productCache().get("p1")).isNull();
+    }
+    
+    @Test
+    void isFresh_comparesSnapshotAgeWithMaxAge() {
+        Instant now = Instant.ofEpochSecond(1_700_000_000L);
+        
+        assertThat(CatalogSnapshotService.isFresh(now.minusSeconds(3599), now, 3_600_000)).isTrue();
+        assertThat(CatalogSnapshotService.isFresh(now.minusSeconds(3601), now, 3_600_000)).isFalse();
+    }
+    
+    private void givenChangeStream() {
+        when(mongoTemplate.getCollectionName(Product.class)).thenReturn("products");
+        when(mongoTemplate.getCollection("products")).thenReturn(collection);
+        when(collection.watch()).thenReturn(changeStream);
+    }
+    
+    // the follower blocks on the open cursor until stop() interrupts it
+    private void givenCursorOpens() {
+        when(changeStream.cursor()).thenReturn(cursor);
+        // lenient: the follower thread may not have reached it when the test ends
+        lenient().when(cursor.hasNext()).thenAnswer(invocation -> {
+            untilStopped.await();
+            return false;
+        });
+    }
+    
+    private Cache productCache() {
+        return cacheManager.getCache(ProductServiceImpl.PRODUCT_CACHE);
+    }
+}
@@ -0,0 +1,48 @@
+package com.buyone.productservice.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotKeyTrackerTests {
+    
+    @Test
+    void hottest_findsHeavyHittersAmongLongTail() {
+        HotKeyTracker tracker = new HotKeyTracker(new SimpleMeterRegistry(), 3);
+        for (int i = 0; i < 5_000; i++) {
+            tracker.record("tail-" + i);
+            if (i % 5 == 0) {
+                tracker.record("flash-sale");
+            }
+            if (i % 10 == 0) {
+                tracker.record("runner-up");
+            }
+        }
+        
+        List<Map.Entry<String, Long>> hottest = tracker.hottest();
+        
+        assertThat(hottest).extracting(Map.Entry::getKey).startsWith("flash-sale", "runner-up");
+        assertThat(hottest.get(0).getValue()).isGreaterThanOrEqualTo(1_000L);
+    }
+    
+    @Test
+    void publishAndDecay_exportsGaugesAndHalvesCounts() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        HotKeyTracker tracker = new HotKeyTracker(registry, 2);
+        for (int i = 0; i < 100; i++) {
+            tracker.record("p1");
+        }
+        
+        tracker.publishAndDecay();
+        
+        Gauge gauge = registry.find("products.hot.requests").tag("productId", "p1").gauge();
+        assertThat(gauge).isNotNull();
+        assertThat(gauge.value()).isEqualTo(100.0);
+        assertThat(tracker.hottest().get(0).getValue()).isEqualTo(50L);
+    }
+}
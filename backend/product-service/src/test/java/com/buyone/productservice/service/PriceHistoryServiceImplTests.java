@@ -0,0 +1,124 @@
+package com.buyone.productservice.service;
+
+import com.buyone.productservice.exception.BadRequestException;
+import com.buyone.productservice.exception.ProductNotFoundException;
+import com.buyone.productservice.model.PriceHistoryBucket;
+import com.buyone.productservice.repository.ProductRepository;
+import com.buyone.productservice.response.PriceHistoryResponse;
+import com.buyone.productservice.response.PricePointResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class PriceHistoryServiceImplTests {
+    
+    private static final LocalDate DAY_1 = LocalDate.of(2026, 1, 1);
+    
+    @Mock
+    private MongoTemplate mongoTemplate;
+    
+    @Mock
+    private ProductRepository productRepository;
+    
+    @InjectMocks
+    private PriceHistoryServiceImpl priceHistoryService;
+    
+    @Test
+    void recordPrice_issuesSingleUpsertIntoDailyBucket() {
+        priceHistoryService.recordPrice("p1", 12.5);
+        
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).upsert(query.capture(), update.capture(), eq(PriceHistoryBucket.class));
+        
+        assertThat(query.getValue().getQueryObject().getString("_id")).startsWith("p1|");
+        assertThat(update.getValue().getUpdateObject())
+                .containsKeys("$setOnInsert", "$min", "$max", "$set", "$inc", "$push");
+    }
+    
+    @Test
+    void getPriceHistory_returnsOnePointPerDay_whenUnderMaxPoints() {
+        when(productRepository.existsById("p1")).thenReturn(true);
+        when(mongoTemplate.find(any(Query.class), eq(PriceHistoryBucket.class)))
+                .thenReturn(List.of(bucket(DAY_1, 10, 12, 9, 11), bucket(DAY_1.plusDays(1), 11, 13, 10, 12)));
+        
+        PriceHistoryResponse result = priceHistoryService.getPriceHistory("p1", DAY_1, DAY_1.plusDays(1), 90);
+        
+        assertThat(result.points()).hasSize(2);
+        assertThat(result.points().get(1).close()).isEqualTo(12.0);
+    }
+    
+    @Test
+    void getPriceHistory_excludesRawPointsFromQuery() {
+        when(productRepository.existsById("p1")).thenReturn(true);
+        when(mongoTemplate.find(any(Query.class), eq(PriceHistoryBucket.class))).thenReturn(List.of());
+        
+        priceHistoryService.getPriceHistory("p1", DAY_1, DAY_1.plusDays(30), 90);
+        
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate).find(query.capture(), eq(PriceHistoryBucket.class));
+        assertThat(query.getValue().getFieldsObject().getInteger("points")).isZero();
+    }
+    
+    @Test
+    void downsample_mergesConsecutiveBucketsIntoOhlc() {
+        List<PriceHistoryBucket> buckets = List.of(
+                bucket(DAY_1, 10, 15, 8, 12),
+                bucket(DAY_1.plusDays(1), 12, 20, 11, 18),
+                bucket(DAY_1.plusDays(2), 18, 19, 5, 6)
+        );
+        
+        List<PricePointResponse> points = PriceHistoryServiceImpl.downsample(buckets, 2);
+        
+        assertThat(points).hasSize(2);
+        PricePointResponse merged = points.get(0);
+        assertThat(merged.from()).isEqualTo(DAY_1);
+        assertThat(merged.to()).isEqualTo(DAY_1.plusDays(1));
+        assertThat(merged.open()).isEqualTo(10.0);
+        assertThat(merged.high()).isEqualTo(20.0);
+        assertThat(merged.low()).isEqualTo(8.0);
+        assertThat(merged.close()).isEqualTo(18.0);
+        assertThat(points.get(1).low()).isEqualTo(5.0);
+    }
+    
+    @Test
+    void getPriceHistory_throwsNotFound_whenProductMissing() {
+        when(productRepository.existsById("p1")).thenReturn(false);
+        
+        assertThatThrownBy(() -> priceHistoryService.getPriceHistory("p1", DAY_1, DAY_1, 10))
+                .isInstanceOf(ProductNotFoundException.class);
+    }
+    
+    @Test
+    void getPriceHistory_throwsBadRequest_whenRangeInverted() {
+        assertThatThrownBy(() -> priceHistoryService.getPriceHistory("p1", DAY_1.plusDays(1), DAY_1, 10))
+                .isInstanceOf(BadRequestException.class);
+    }
+    
+    private PriceHistoryBucket bucket(LocalDate day, double open, double high, double low, double close) {
+        return PriceHistoryBucket.builder()
+                .id(PriceHistoryServiceImpl.bucketId("p1", day))
+                .productId("p1")
+                .day(day)
+                .open(open).high(high).low(low).close(close)
+                .count(1)
+                .build();
+    }
+}
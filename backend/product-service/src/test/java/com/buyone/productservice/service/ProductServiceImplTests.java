@@ -25,6 +25,8 @@ import java.util.Optional;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -44,6 +46,9 @@ class ProductServiceImplTests {
     @Mock
     private KafkaTemplate<String, Object> kafkaTemplate;
     
+    @Mock
+    private PriceHistoryService priceHistoryService;
+    
     @InjectMocks
     private ProductServiceImpl productService;
     
@@ -85,6 +90,7 @@ class ProductServiceImplTests {
         assertThat(toSave.getName()).isEqualTo(PROD_A);
         assertThat(result.getId()).isEqualTo("p1");
         assertThat(result.getPrice()).isEqualTo(10.0);
+        verify(priceHistoryService).recordPrice("p1", 10.0);
     }
     
     @Test
@@ -240,6 +246,29 @@ void getProductsBySeller_returnsMappedList_whenProductsExist() {
         assertThat(result.getPrice()).isEqualTo(20.0);
         assertThat(result.getQuantity()).isEqualTo(10);
         assertThat(result.getCategoryId()).isEqualTo("cat-2");
+        verify(priceHistoryService).recordPrice("p1", 20.0);
+    }
+    
+    @Test
+    void updateProduct_doesNotRecordPrice_whenPriceUnchanged() {
+        Product existing = Product.builder()
+                .id("p1")
+                .name("Old")
+                .price(10.0)
+                .userId(SELLER_1)
+                .build();
+        
+        UpdateProductRequest req = UpdateProductRequest.builder()
+                .description("new")
+                .price(10.0)
+                .build();
+        
+        when(productRepository.findById("p1")).thenReturn(Optional.of(existing));
+        when(productRepository.save(any(Product.class))).thenAnswer(inv -> inv.getArgument(0));
+        
+        productService.updateProduct("p1", req, SELLER_1);
+        
+        verify(priceHistoryService, never()).recordPrice(anyString(), any());
     }
     
     @Test
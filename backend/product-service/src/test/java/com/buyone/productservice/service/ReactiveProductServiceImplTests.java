@@ -0,0 +1,89 @@
+package com.buyone.productservice.service;
+
+import com.buyone.productservice.exception.ProductNotFoundException;
+import com.buyone.productservice.model.Category;
+import com.buyone.productservice.model.Product;
+import com.buyone.productservice.repository.ReactiveCategoryRepository;
+import com.buyone.productservice.repository.ReactiveProductRepository;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class ReactiveProductServiceImplTests {
+    
+    private static final String SELLER_1 = "seller-1";
+    
+    @Mock
+    private ReactiveProductRepository productRepository;
+    
+    @Mock
+    private ReactiveCategoryRepository categoryRepository;
+    
+    @InjectMocks
+    private ReactiveProductServiceImpl reactiveProductService;
+    
+    @Test
+    void getAllProducts_streamsMappedResponses() {
+        Product p1 = Product.builder().id("p1").name("A").price(1.0).build();
+        Product p2 = Product.builder().id("p2").name("B").price(2.0).build();
+        when(productRepository.findAll()).thenReturn(Flux.just(p1, p2));
+        
+        StepVerifier.create(reactiveProductService.getAllProducts())
+                .assertNext(r -> assertThat(r.getId()).isEqualTo("p1"))
+                .assertNext(r -> assertThat(r.getId()).isEqualTo("p2"))
+                .verifyComplete();
+    }
+    
+    @Test
+    void getProductsBySeller_streamsOnlySellerProducts() {
+        Product p1 = Product.builder().id("p1").name("A").userId(SELLER_1).build();
+        when(productRepository.findByUserId(SELLER_1)).thenReturn(Flux.just(p1));
+        
+        StepVerifier.create(reactiveProductService.getProductsBySeller(SELLER_1))
+                .assertNext(r -> assertThat(r.getUserId()).isEqualTo(SELLER_1))
+                .verifyComplete();
+    }
+    
+    @Test
+    void getProductById_returnsResponse_whenFound() {
+        Product p = Product.builder().id("p1").name("Prod A").price(10.0).userId(SELLER_1).build();
+        when(productRepository.findById("p1")).thenReturn(Mono.just(p));
+        
+        StepVerifier.create(reactiveProductService.getProductById("p1"))
+                .assertNext(r -> {
+                    assertThat(r.getId()).isEqualTo("p1");
+                    assertThat(r.getName()).isEqualTo("Prod A");
+                })
+                .verifyComplete();
+    }
+    
+    @Test
+    void getProductById_errorsNotFound_whenMissing() {
+        when(productRepository.findById("p1")).thenReturn(Mono.empty());
+        
+        StepVerifier.create(reactiveProductService.getProductById("p1"))
+                .expectErrorSatisfies(ex -> assertThat(ex)
+                        .isInstanceOf(ProductNotFoundException.class)
+                        .hasMessageContaining("Product not found with ID"))
+                .verify();
+    }
+    
+    @Test
+    void getAllCategories_streamsMappedResponses() {
+        Category c1 = Category.builder().id("c1").slug("slug-1").name("Cat 1").build();
+        when(categoryRepository.findAll()).thenReturn(Flux.just(c1));
+        
+        StepVerifier.create(reactiveProductService.getAllCategories())
+                .assertNext(r -> assertThat(r.id()).isEqualTo("c1"))
+                .verifyComplete();
+    }
+}
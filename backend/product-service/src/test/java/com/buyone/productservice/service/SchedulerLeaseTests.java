@@ -0,0 +1,81 @@
+package com.buyone.productservice.service;
+
+import com.buyone.productservice.model.SchedulerLock;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SchedulerLeaseTests {
+    
+    @Mock
+    private MongoTemplate mongoTemplate;
+    
+    @Test
+    void runExclusively_takesAnExpiredLease_runsTheTask_andKeepsItForTheMinimum() {
+        SchedulerLease lease = new SchedulerLease(mongoTemplate);
+        AtomicInteger runs = new AtomicInteger();
+        Instant before = Instant.now();
+        
+        boolean ran = lease.runExclusively("job", Duration.ofHours(5), Duration.ofMinutes(30), runs::incrementAndGet);
+        
+        assertThat(ran).isTrue();
+        assertThat(runs.get()).isEqualTo(1);
+        ArgumentCaptor<Query> acquire = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> taken = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).upsert(acquire.capture(), taken.capture(), eq(SchedulerLock.class));
+        assertThat(acquire.getValue().getQueryObject().getString("_id")).isEqualTo("job");
+        assertThat(acquire.getValue().getQueryObject().get("lockedUntil", Document.class)).containsKey("$lte");
+        Instant lockedUntil = (Instant) taken.getValue().getUpdateObject().get("$set", Document.class).get("lockedUntil");
+        assertThat(lockedUntil).isAfterOrEqualTo(before.plus(Duration.ofHours(5)));
+        
+        ArgumentCaptor<Update> released = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate).updateFirst(any(Query.class), released.capture(), eq(SchedulerLock.class));
+        Instant releasedUntil = (Instant) released.getValue().getUpdateObject().get("$set", Document.class).get("lockedUntil");
+        assertThat(releasedUntil).isAfterOrEqualTo(before.plus(Duration.ofMinutes(30))).isBefore(lockedUntil);
+    }
+    
+    @Test
+    void runExclusively_skipsTheTask_whileAnotherInstanceHoldsTheLease() {
+        SchedulerLease lease = new SchedulerLease(mongoTemplate);
+        when(mongoTemplate.upsert(any(Query.class), any(Update.class), eq(SchedulerLock.class)))
+                .thenThrow(new DuplicateKeyException("E11000 duplicate key"));
+        AtomicInteger runs = new AtomicInteger();
+        
+        boolean ran = lease.runExclusively("job", Duration.ofHours(5), Duration.ofMinutes(30), runs::incrementAndGet);
+        
+        assertThat(ran).isFalse();
+        assertThat(runs.get()).isZero();
+        verify(mongoTemplate, never()).updateFirst(any(Query.class), any(Update.class), eq(SchedulerLock.class));
+    }
+    
+    @Test
+    void runExclusively_releasesTheLease_whenTheTaskFails() {
+        SchedulerLease lease = new SchedulerLease(mongoTemplate);
+        
+        assertThatThrownBy(() -> lease.runExclusively("job", Duration.ofHours(5), Duration.ofMinutes(30), () -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+        
+        verify(mongoTemplate).updateFirst(any(Query.class), any(Update.class), eq(SchedulerLock.class));
+    }
+}
@@ -0,0 +1,93 @@
+package com.buyone.productservice.service;
+
+import com.buyone.productservice.model.Product;
+import com.buyone.productservice.model.SimilarProducts;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SimilarProductsJobTests {
+    
+    @Mock
+    private MongoTemplate mongoTemplate;
+    @Mock
+    private CacheManager cacheManager;
+    @Mock
+    private SchedulerLease schedulerLease;
+    
+    private SimilarProductsJob job;
+    
+    @BeforeEach
+    void setUp() {
+        job = new SimilarProductsJob(mongoTemplate, cacheManager, schedulerLease);
+        ReflectionTestUtils.setField(job, "enabled", true);
+        ReflectionTestUtils.setField(job, "topK", 12);
+        ReflectionTestUtils.setField(job, "maxShardSize", 100_000);
+        ReflectionTestUtils.setField(job, "lockAtMostMinutes", 360L);
+        ReflectionTestUtils.setField(job, "lockAtLeastMinutes", 60L);
+    }
+    
+    @Test
+    void run_doesNothing_whileAnotherReplicaHoldsTheLease() {
+        when(schedulerLease.runExclusively(eq(SimilarProductsJob.LOCK_NAME), eq(Duration.ofMinutes(360)),
+                eq(Duration.ofMinutes(60)), any(Runnable.class))).thenReturn(false);
+        
+        job.run();
+        
+        verify(mongoTemplate, never()).findDistinct(any(Query.class), eq("categoryId"), eq(Product.class), eq(String.class));
+        verify(mongoTemplate, never()).remove(any(Query.class), eq(SimilarProducts.class));
+    }
+    
+    @Test
+    void run_scoresTheNoCategoryShardOnce_andToleratesProductsWithoutName() {
+        givenTheLeaseIsFree();
+        when(mongoTemplate.findDistinct(any(Query.class), eq("categoryId"), eq(Product.class), eq(String.class)))
+                .thenReturn(Arrays.asList("c1", null));
+        when(mongoTemplate.stream(any(Query.class), eq(Product.class))).thenAnswer(inv -> Stream.of(
+                Product.builder().id("p1").name(null).description("red running shoe").build(),
+                Product.builder().id("p2").name("Running shoe").description("blue").build()));
+        when(mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, SimilarProducts.class))
+                .thenReturn(mock(BulkOperations.class));
+        
+        job.run();
+        
+        ArgumentCaptor<Query> shards = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, times(2)).stream(shards.capture(), eq(Product.class));
+        assertThat(shards.getAllValues()).extracting(Query::getQueryObject).containsExactly(
+                new Document("categoryId", "c1"),
+                new Document("categoryId", null));
+        verify(mongoTemplate).remove(any(Query.class), eq(SimilarProducts.class));
+    }
+    
+    private void givenTheLeaseIsFree() {
+        when(schedulerLease.runExclusively(eq(SimilarProductsJob.LOCK_NAME), any(Duration.class), any(Duration.class),
+                any(Runnable.class))).thenAnswer(inv -> {
+                    inv.<Runnable>getArgument(3).run();
+                    return true;
+                });
+    }
+}
@@ -0,0 +1,68 @@
+package com.buyone.productservice.service;
+
+import com.buyone.productservice.exception.ProductNotFoundException;
+import com.buyone.productservice.model.Product;
+import com.buyone.productservice.model.SimilarProducts;
+import com.buyone.productservice.repository.ProductRepository;
+import com.buyone.productservice.repository.SimilarProductsRepository;
+import com.buyone.productservice.response.ProductResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+class SimilarProductsServiceImplTests {
+    
+    @Mock
+    private SimilarProductsRepository similarProductsRepository;
+    
+    @Mock
+    private ProductRepository productRepository;
+    
+    @InjectMocks
+    private SimilarProductsServiceImpl similarProductsService;
+    
+    @Test
+    void getSimilarProducts_keepsPrecomputedOrder_andSkipsDeletedProducts() {
+        SimilarProducts similar = SimilarProducts.builder()
+                .id("p1")
+                .similarIds(List.of("p3", "gone", "p2"))
+                .scores(List.of(0.9f, 0.8f, 0.7f))
+                .build();
+        when(similarProductsRepository.findById("p1")).thenReturn(Optional.of(similar));
+        when(productRepository.findAllById(List.of("p3", "gone", "p2"))).thenReturn(List.of(
+                Product.builder().id("p2").name("B").build(),
+                Product.builder().id("p3").name("C").build()
+        ));
+        
+        List<ProductResponse> result = similarProductsService.getSimilarProducts("p1");
+        
+        assertThat(result).extracting(ProductResponse::getId).containsExactly("p3", "p2");
+    }
+    
+    @Test
+    void getSimilarProducts_returnsEmpty_whenNotComputedYet() {
+        when(similarProductsRepository.findById("p1")).thenReturn(Optional.empty());
+        when(productRepository.existsById("p1")).thenReturn(true);
+        
+        assertThat(similarProductsService.getSimilarProducts("p1")).isEmpty();
+    }
+    
+    @Test
+    void getSimilarProducts_throwsNotFound_whenProductMissing() {
+        when(similarProductsRepository.findById("p1")).thenReturn(Optional.empty());
+        when(productRepository.existsById("p1")).thenReturn(false);
+        
+        assertThatThrownBy(() -> similarProductsService.getSimilarProducts("p1"))
+                .isInstanceOf(ProductNotFoundException.class);
+    }
+}
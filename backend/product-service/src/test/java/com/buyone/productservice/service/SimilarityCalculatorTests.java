@@ -0,0 +1,76 @@
+package com.buyone.productservice.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SimilarityCalculatorTests {
+    
+    private ForkJoinPool pool;
+    
+    @BeforeEach
+    void setUp() {
+        pool = new ForkJoinPool(2);
+    }
+    
+    @AfterEach
+    void tearDown() {
+        pool.shutdown();
+    }
+    
+    @Test
+    void compute_ranksProductsSharingRareTermsFirst() {
+        List<String> texts = List.of(
+                "red cotton shirt",
+                "blue cotton shirt",
+                "steel hammer tool",
+                "steel wrench tool",
+                "red wool shirt"
+        );
+        
+        SimilarityCalculator.Result result = new SimilarityCalculator(2, pool).compute(texts);
+        
+        // hammer -> wrench, never a shirt
+        assertThat(result.neighbours()[2 * 2]).isEqualTo(3);
+        assertThat(result.neighbours()[2 * 2 + 1]).isEqualTo(-1);
+        // scores are sorted descending
+        assertThat(result.scores()[0]).isGreaterThanOrEqualTo(result.scores()[1]);
+    }
+    
+    @Test
+    void compute_neverReturnsProductAsItsOwnNeighbour() {
+        List<String> texts = List.of("same words here", "same words here", "same words here");
+        
+        SimilarityCalculator.Result result = new SimilarityCalculator(2, pool).compute(texts);
+        
+        for (int i = 0; i < texts.size(); i++) {
+            assertThat(result.neighbours()[i * 2]).isNotEqualTo(i);
+            assertThat(result.neighbours()[i * 2 + 1]).isNotEqualTo(i);
+        }
+    }
+    
+    @Test
+    void compute_handlesEmptyAndNullText() {
+        List<String> texts = Arrays.asList("", null, "a");
+        
+        SimilarityCalculator.Result result = new SimilarityCalculator(3, pool).compute(texts);
+        
+        assertThat(result.neighbours()).containsOnly(-1);
+    }
+    
+    @Test
+    void tokenize_skipsSingleCharacterTokensAndIsCaseInsensitive() {
+        int[] upper = SimilarityCalculator.tokenize("Red A Shirt", new int[4]);
+        int[] lower = SimilarityCalculator.tokenize("red shirt", new int[4]);
+        
+        assertThat(upper[0]).isEqualTo(2);
+        assertThat(upper[1]).isEqualTo(lower[1]);
+        assertThat(upper[2]).isEqualTo(lower[2]);
+    }
+}
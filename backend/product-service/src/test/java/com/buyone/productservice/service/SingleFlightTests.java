@@ -0,0 +1,108 @@
+package com.buyone.productservice.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTests {
+    
+    private static final int CALLERS = 32;
+    
+    @Test
+    void execute_concurrentCallersForSameKey_shareOneCall() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(CALLERS);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < CALLERS; i++) {
+                results.add(executor.submit(() -> singleFlight.execute("p1", () -> {
+                    calls.incrementAndGet();
+                    awaitQuietly(release);
+                    return "value";
+                })));
+            }
+            // let every caller reach the in-flight call before the "database" answers
+            Thread.sleep(200);
+            release.countDown();
+            
+            for (Future<String> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("value");
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        assertThat(calls.get()).isEqualTo(1);
+        assertThat(singleFlight.inFlightCount()).isZero();
+    }
+    
+    @Test
+    void execute_sequentialCalls_areNotCached() {
+        SingleFlight<String, Integer> singleFlight = new SingleFlight<>();
+        AtomicInteger calls = new AtomicInteger();
+        
+        singleFlight.execute("p1", calls::incrementAndGet);
+        singleFlight.execute("p1", calls::incrementAndGet);
+        
+        assertThat(calls.get()).isEqualTo(2);
+    }
+    
+    @Test
+    void execute_propagatesExceptionAndClearsKey() {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        
+        assertThatThrownBy(() -> singleFlight.execute("p1", () -> {
+            throw new IllegalStateException("boom");
+        })).isInstanceOf(IllegalStateException.class);
+        
+        assertThat(singleFlight.inFlightCount()).isZero();
+        assertThat(singleFlight.execute("p1", () -> "ok")).isEqualTo("ok");
+    }
+    
+    @Test
+    void execute_errorInTheCall_isSharedWithWaitingCallers() throws Exception {
+        SingleFlight<String, String> singleFlight = new SingleFlight<>();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(() -> singleFlight.execute("p1", () -> {
+                started.countDown();
+                awaitQuietly(release);
+                throw new OutOfMemoryError("boom");
+            }));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            Future<String> waiter = executor.submit(() -> singleFlight.execute("p1", () -> "not called"));
+            // let the second caller join the in-flight call before it fails
+            Thread.sleep(200);
+            release.countDown();
+            
+            assertThatThrownBy(() -> leader.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(OutOfMemoryError.class);
+            assertThatThrownBy(() -> waiter.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(OutOfMemoryError.class);
+        } finally {
+            executor.shutdownNow();
+        }
+        
+        assertThat(singleFlight.inFlightCount()).isZero();
+    }
+    
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}